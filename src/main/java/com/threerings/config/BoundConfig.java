@@ -60,22 +60,25 @@ public class BoundConfig extends ParameterizedConfig
         if (scope == null || bindings.length == 0) {
             return this;
         }
-        if (_bound == null) {
-            _bound = CacheBuilder.newBuilder()
-                .concurrencyLevel(1)
-                .softValues()
-                .weakKeys()
-                .initialCapacity(1)
-                .<Scope, BoundConfig>build().asMap();
-        }
-        BoundConfig bound = _bound.get(scope);
-        if (bound == null) {
-            _bound.put(scope, bound = (BoundConfig)clone());
-            bound.init(_cfgmgr);
-            bound._base = this;
-            bound.bind(scope);
+        synchronized (this) {
+            if (_bound == null) {
+                _bound = CacheBuilder.newBuilder()
+                    .concurrencyLevel(1)
+                    .softValues()
+                    .weakKeys()
+                    .initialCapacity(1)
+                    .<Scope, BoundConfig>build().asMap();
+            }
+            BoundConfig bound = _bound.get(scope);
+            if (bound == null) {
+                bound = (BoundConfig)clone();
+                bound.init(_cfgmgr);
+                bound._base = this;
+                bound.bind(scope);
+                _bound.put(scope, bound);
+            }
+            return bound;
         }
-        return bound;
     }
 
     @Override
@@ -97,13 +100,15 @@ public class BoundConfig extends ParameterizedConfig
         super.wasUpdated();
 
         // update the bound instances
-        if (_bound != null) {
-            for (BoundConfig bound : _bound.values()) {
-                copy(bound);
-                bound.wasUpdated();
-            }
-            if (_bound.isEmpty()) {
-                _bound = null;
+        synchronized (this) {
+            if (_bound != null) {
+                for (BoundConfig bound : _bound.values()) {
+                    copy(bound);
+                    bound.wasUpdated();
+                }
+                if (_bound.isEmpty()) {
+                    _bound = null;
+                }
             }
         }
     }
@@ -343,24 +343,29 @@ public class ConfigManager
      */
     public ManagedConfig getResourceConfig (String name)
     {
-        ManagedConfig config = _resources.get(name);
-        if (config == null) {
-            try {
-                BinaryImporter in = new BinaryImporter(_rsrcmgr.getResource(name));
-                _resources.put(name, config = (ManagedConfig)in.readObject());
-                config.setName(name);
-                config.init(getRoot());
-                in.close();
-
-            } catch (FileNotFoundException fnfe) {
-                return null;
-
-            } catch (Exception e) { // IOException, ClassCastException
-                log.warning("Failed to load config from resource.", "name", name, e);
-                return null;
+        // scenes may be ticked on several threads at once, so the cache must be locked (and
+        // configs must be initialized before others can see them)
+        synchronized (_resources) {
+            ManagedConfig config = _resources.get(name);
+            if (config == null) {
+                try {
+                    BinaryImporter in = new BinaryImporter(_rsrcmgr.getResource(name));
+                    config = (ManagedConfig)in.readObject();
+                    config.setName(name);
+                    config.init(getRoot());
+                    in.close();
+                    _resources.put(name, config);
+
+                } catch (FileNotFoundException fnfe) {
+                    return null;
+
+                } catch (Exception e) { // IOException, ClassCastException
+                    log.warning("Failed to load config from resource.", "name", name, e);
+                    return null;
+                }
             }
+            return config;
         }
-        return config;
     }
 
     /**
@@ -493,14 +498,16 @@ public class ConfigManager
      */
     public ManagedConfig updateResourceConfig (String name, ManagedConfig config)
     {
-        ManagedConfig oconfig = _resources.get(name);
-        if (oconfig == null) {
-            _resources.put(name, config);
-            return config;
-        } else {
-            config.copy(oconfig);
-            oconfig.wasUpdated();
-            return oconfig;
+        synchronized (_resources) {
+            ManagedConfig oconfig = _resources.get(name);
+            if (oconfig == null) {
+                _resources.put(name, config);
+                return config;
+            } else {
+                config.copy(oconfig);
+                oconfig.wasUpdated();
+                return oconfig;
+            }
         }
     }
 
@@ -539,7 +546,11 @@ public class ConfigManager
         }
 
         // otherwise, refresh the resource configs
-        for (ManagedConfig oconfig : Lists.newArrayList(_resources.values())) {
+        ArrayList<ManagedConfig> oconfigs;
+        synchronized (_resources) {
+            oconfigs = Lists.newArrayList(_resources.values());
+        }
+        for (ManagedConfig oconfig : oconfigs) {
             if (!clazz.isInstance(oconfig)) {
                 continue;
             }
@@ -97,19 +97,24 @@ public class ParameterizedConfig extends ManagedConfig
                 break;
             }
         }
-        if (_derived == null) {
-            _derived = CacheUtil.softValues(1);
-        }
-        ParameterizedConfig instance = _derived.get(filteredArgs);
-        if (instance == null) {
-            if (derivedArgs == null) {
-                derivedArgs = filteredArgs.clone();
+        // the derived instances may be requested by scenes ticking on different threads
+        ParameterizedConfig instance;
+        synchronized (this) {
+            if (_derived == null) {
+                _derived = CacheUtil.softValues(1);
+            }
+            instance = _derived.get(filteredArgs);
+            if (instance == null) {
+                if (derivedArgs == null) {
+                    derivedArgs = filteredArgs.clone();
+                }
+                instance = (ParameterizedConfig)clone();
+                instance.init(_cfgmgr);
+                instance._base = this;
+                instance._args = derivedArgs;
+                applyArguments(instance, derivedArgs);
+                _derived.put(derivedArgs, instance);
             }
-            _derived.put(derivedArgs, instance = (ParameterizedConfig)clone());
-            instance.init(_cfgmgr);
-            instance._base = this;
-            instance._args = derivedArgs;
-            applyArguments(instance, derivedArgs);
         }
         return instance.getBound(scope);
     }
@@ -126,15 +131,17 @@ public class ParameterizedConfig extends ManagedConfig
         super.wasUpdated();
 
         // update derived instances
-        if (_derived != null) {
-            for (Map.Entry<ArgumentMap, ParameterizedConfig> entry : _derived.entrySet()) {
-                ParameterizedConfig instance = entry.getValue();
-                copy(instance);
-                applyArguments(instance, entry.getKey());
-                instance.wasUpdated();
-            }
-            if (_derived.isEmpty()) {
-                _derived = null;
+        synchronized (this) {
+            if (_derived != null) {
+                for (Map.Entry<ArgumentMap, ParameterizedConfig> entry : _derived.entrySet()) {
+                    ParameterizedConfig instance = entry.getValue();
+                    copy(instance);
+                    applyArguments(instance, entry.getKey());
+                    instance.wasUpdated();
+                }
+                if (_derived.isEmpty()) {
+                    _derived = null;
+                }
             }
         }
     }
@@ -0,0 +1,55 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.delta;
+
+/**
+ * A {@link Deltable} that compares and applies its own fields rather than having
+ * {@link ReflectiveDelta} access them through reflection.  Changed primitive values are stored
+ * unboxed, and the streamed form is identical to that of the reflective path.
+ *
+ * <p> Implementations must visit every field that {@link ReflectiveDelta} would include, in the
+ * same order: superclass fields first, then fields in declaration order.  <code>final</code> and
+ * {@link DeltaFinal} fields occupy no position in the mask and must not be passed to
+ * {@link DeltaValues#compare}, but must still be copied in {@link #applyDelta}.  Subclasses that
+ * declare additional fields of any kind must override both methods (calling the superclass
+ * versions first).  A class falls back to the reflective path if it declares fields but inherits
+ * the methods, if it declares only one of them, or if the number of fields visited does not match
+ * its mask length.
+ */
+public interface CodedDeltable extends Deltable
+{
+    /**
+     * Compares the fields of this (original) object with those of the revised object, recording
+     * the differences in the supplied values.
+     */
+    public void populateDelta (Object revised, DeltaValues values);
+
+    /**
+     * Populates the fields of the revised object (a new instance of this object's class) using
+     * the fields of this (original) object and the changes recorded in the supplied values.
+     */
+    public void applyDelta (Object revised, DeltaValues values);
+}
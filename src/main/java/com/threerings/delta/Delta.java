@@ -64,14 +64,17 @@ public abstract class Delta
         if (original instanceof Deltable) {
             // check for a custom creator method
             Class<?> clazz = original.getClass();
-            Method creator = _creators.get(clazz);
-            if (creator == null) {
-                try {
-                    creator = clazz.getMethod("createDelta", Object.class);
-                } catch (NoSuchMethodException e) {
-                    creator = _none;
+            Method creator;
+            synchronized (_creators) {
+                creator = _creators.get(clazz);
+                if (creator == null) {
+                    try {
+                        creator = clazz.getMethod("createDelta", Object.class);
+                    } catch (NoSuchMethodException e) {
+                        creator = _none;
+                    }
+                    _creators.put(clazz, creator);
                 }
-                _creators.put(clazz, creator);
             }
             if (creator == _none) {
                 return new ReflectiveDelta(original, revised);
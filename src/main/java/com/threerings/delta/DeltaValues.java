@@ -0,0 +1,523 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.delta;
+
+import java.io.IOException;
+
+import java.lang.reflect.Field;
+
+import java.util.Arrays;
+
+import com.threerings.io.ObjectInputStream;
+import com.threerings.io.ObjectOutputStream;
+
+/**
+ * Holds the changed field values of a {@link CodedDeltable} delta, indexed by position in the
+ * field mask.  Primitive values are stored unboxed.  Instances also act as cursors for
+ * {@link CodedDeltable#populateDelta} and {@link CodedDeltable#applyDelta}, which visit the fields
+ * in mask order.
+ */
+public class DeltaValues
+{
+    /** Value kind constants. */
+    public static final int BOOLEAN = 0, BYTE = 1, CHAR = 2, DOUBLE = 3, FLOAT = 4, INT = 5,
+        LONG = 6, SHORT = 7, OBJECT = 8;
+
+    /**
+     * Returns the value kind corresponding to the specified field type.
+     */
+    public static int getKind (Class<?> type)
+    {
+        if (type == Boolean.TYPE) {
+            return BOOLEAN;
+        } else if (type == Byte.TYPE) {
+            return BYTE;
+        } else if (type == Character.TYPE) {
+            return CHAR;
+        } else if (type == Double.TYPE) {
+            return DOUBLE;
+        } else if (type == Float.TYPE) {
+            return FLOAT;
+        } else if (type == Integer.TYPE) {
+            return INT;
+        } else if (type == Long.TYPE) {
+            return LONG;
+        } else if (type == Short.TYPE) {
+            return SHORT;
+        } else {
+            return OBJECT;
+        }
+    }
+
+    /**
+     * Creates a new set of values with the specified mask length.
+     */
+    public DeltaValues (int length)
+    {
+        _mask = new BareArrayMask(length);
+        _prims = new long[length];
+        _objs = new Object[length];
+    }
+
+    /**
+     * Creates a new cursor sharing the storage of the specified values.
+     */
+    public DeltaValues (DeltaValues other)
+    {
+        _mask = other._mask;
+        _prims = other._prims;
+        _objs = other._objs;
+        _count = other._count;
+    }
+
+    /**
+     * Returns a reference to the mask indicating which fields have changed.
+     */
+    public BareArrayMask getMask ()
+    {
+        return _mask;
+    }
+
+    /**
+     * Checks whether any of the fields have changed.
+     */
+    public boolean isEmpty ()
+    {
+        return (_count == 0);
+    }
+
+    /**
+     * Returns the current position of the cursor in the mask.
+     */
+    public int getIndex ()
+    {
+        return _idx;
+    }
+
+    /**
+     * Compares a boolean field.
+     */
+    public void compare (boolean ovalue, boolean nvalue)
+    {
+        int idx = _idx++;
+        if (ovalue != nvalue) {
+            setPrimitive(idx, nvalue ? 1L : 0L);
+        }
+    }
+
+    /**
+     * Compares a byte field.
+     */
+    public void compare (byte ovalue, byte nvalue)
+    {
+        int idx = _idx++;
+        if (ovalue != nvalue) {
+            setPrimitive(idx, nvalue);
+        }
+    }
+
+    /**
+     * Compares a char field.
+     */
+    public void compare (char ovalue, char nvalue)
+    {
+        int idx = _idx++;
+        if (ovalue != nvalue) {
+            setPrimitive(idx, nvalue);
+        }
+    }
+
+    /**
+     * Compares a double field.
+     */
+    public void compare (double ovalue, double nvalue)
+    {
+        int idx = _idx++;
+        if (ovalue != nvalue) {
+            setPrimitive(idx, Double.doubleToRawLongBits(nvalue));
+        }
+    }
+
+    /**
+     * Compares a float field.
+     */
+    public void compare (float ovalue, float nvalue)
+    {
+        int idx = _idx++;
+        if (ovalue != nvalue) {
+            setPrimitive(idx, Float.floatToRawIntBits(nvalue));
+        }
+    }
+
+    /**
+     * Compares an int field.
+     */
+    public void compare (int ovalue, int nvalue)
+    {
+        int idx = _idx++;
+        if (ovalue != nvalue) {
+            setPrimitive(idx, nvalue);
+        }
+    }
+
+    /**
+     * Compares a long field.
+     */
+    public void compare (long ovalue, long nvalue)
+    {
+        int idx = _idx++;
+        if (ovalue != nvalue) {
+            setPrimitive(idx, nvalue);
+        }
+    }
+
+    /**
+     * Compares a short field.
+     */
+    public void compare (short ovalue, short nvalue)
+    {
+        int idx = _idx++;
+        if (ovalue != nvalue) {
+            setPrimitive(idx, nvalue);
+        }
+    }
+
+    /**
+     * Compares an object field, storing a {@link Delta} rather than the new value where possible.
+     */
+    public void compare (Object ovalue, Object nvalue)
+    {
+        int idx = _idx++;
+        if (valuesEqual(ovalue, nvalue)) {
+            return;
+        }
+        if (Delta.checkDeltable(ovalue, nvalue)) {
+            nvalue = Delta.createDelta(ovalue, nvalue);
+        }
+        setObject(idx, nvalue);
+    }
+
+    /**
+     * Determines whether two field values are equal, comparing arrays by their (deep) contents.
+     * Equivalent to calling {@link Arrays#deepEquals} on single-element arrays containing the
+     * values, but without allocating the arrays.
+     */
+    public static boolean valuesEqual (Object ovalue, Object nvalue)
+    {
+        if (ovalue == nvalue) {
+            return true;
+        } else if (ovalue == null || nvalue == null) {
+            return false;
+        } else if (ovalue instanceof Object[] && nvalue instanceof Object[]) {
+            return Arrays.deepEquals((Object[])ovalue, (Object[])nvalue);
+        } else if (ovalue instanceof boolean[] && nvalue instanceof boolean[]) {
+            return Arrays.equals((boolean[])ovalue, (boolean[])nvalue);
+        } else if (ovalue instanceof byte[] && nvalue instanceof byte[]) {
+            return Arrays.equals((byte[])ovalue, (byte[])nvalue);
+        } else if (ovalue instanceof char[] && nvalue instanceof char[]) {
+            return Arrays.equals((char[])ovalue, (char[])nvalue);
+        } else if (ovalue instanceof double[] && nvalue instanceof double[]) {
+            return Arrays.equals((double[])ovalue, (double[])nvalue);
+        } else if (ovalue instanceof float[] && nvalue instanceof float[]) {
+            return Arrays.equals((float[])ovalue, (float[])nvalue);
+        } else if (ovalue instanceof int[] && nvalue instanceof int[]) {
+            return Arrays.equals((int[])ovalue, (int[])nvalue);
+        } else if (ovalue instanceof long[] && nvalue instanceof long[]) {
+            return Arrays.equals((long[])ovalue, (long[])nvalue);
+        } else if (ovalue instanceof short[] && nvalue instanceof short[]) {
+            return Arrays.equals((short[])ovalue, (short[])nvalue);
+        } else {
+            return ovalue.equals(nvalue);
+        }
+    }
+
+    /**
+     * Returns the new value of a boolean field, or the original value if unchanged.
+     */
+    public boolean apply (boolean ovalue)
+    {
+        int idx = _idx++;
+        return _mask.isSet(idx) ? (_prims[idx] != 0L) : ovalue;
+    }
+
+    /**
+     * Returns the new value of a byte field, or the original value if unchanged.
+     */
+    public byte apply (byte ovalue)
+    {
+        int idx = _idx++;
+        return _mask.isSet(idx) ? (byte)_prims[idx] : ovalue;
+    }
+
+    /**
+     * Returns the new value of a char field, or the original value if unchanged.
+     */
+    public char apply (char ovalue)
+    {
+        int idx = _idx++;
+        return _mask.isSet(idx) ? (char)_prims[idx] : ovalue;
+    }
+
+    /**
+     * Returns the new value of a double field, or the original value if unchanged.
+     */
+    public double apply (double ovalue)
+    {
+        int idx = _idx++;
+        return _mask.isSet(idx) ? Double.longBitsToDouble(_prims[idx]) : ovalue;
+    }
+
+    /**
+     * Returns the new value of a float field, or the original value if unchanged.
+     */
+    public float apply (float ovalue)
+    {
+        int idx = _idx++;
+        return _mask.isSet(idx) ? Float.intBitsToFloat((int)_prims[idx]) : ovalue;
+    }
+
+    /**
+     * Returns the new value of an int field, or the original value if unchanged.
+     */
+    public int apply (int ovalue)
+    {
+        int idx = _idx++;
+        return _mask.isSet(idx) ? (int)_prims[idx] : ovalue;
+    }
+
+    /**
+     * Returns the new value of a long field, or the original value if unchanged.
+     */
+    public long apply (long ovalue)
+    {
+        int idx = _idx++;
+        return _mask.isSet(idx) ? _prims[idx] : ovalue;
+    }
+
+    /**
+     * Returns the new value of a short field, or the original value if unchanged.
+     */
+    public short apply (short ovalue)
+    {
+        int idx = _idx++;
+        return _mask.isSet(idx) ? (short)_prims[idx] : ovalue;
+    }
+
+    /**
+     * Returns the new value of an object field, or the original value if unchanged.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T apply (T ovalue)
+    {
+        int idx = _idx++;
+        if (!_mask.isSet(idx)) {
+            return ovalue;
+        }
+        Object value = _objs[idx];
+        return (T)((value instanceof Delta) ? ((Delta)value).apply(ovalue) : value);
+    }
+
+    /**
+     * Returns the raw value at the specified position: the value itself for integral types, the
+     * raw bits for floating point types, and zero or one for booleans.
+     */
+    public long getPrimitive (int idx)
+    {
+        return _prims[idx];
+    }
+
+    /**
+     * Returns the object value (either a new value or a {@link Delta}) at the specified position.
+     */
+    public Object getObject (int idx)
+    {
+        return _objs[idx];
+    }
+
+    /**
+     * Records a changed primitive value (in the raw form described in {@link #getPrimitive}).
+     */
+    public void setPrimitive (int idx, long value)
+    {
+        _mask.set(idx);
+        _prims[idx] = value;
+        _count++;
+    }
+
+    /**
+     * Records a changed object value.
+     */
+    public void setObject (int idx, Object value)
+    {
+        _mask.set(idx);
+        _objs[idx] = value;
+        _count++;
+    }
+
+    /**
+     * Writes the changed values to the specified stream.
+     *
+     * @param kinds the value kinds for each position in the mask.
+     */
+    public void write (int[] kinds, ObjectOutputStream out)
+        throws IOException
+    {
+        for (int ii = 0; ii < kinds.length; ii++) {
+            if (_mask.isSet(ii)) {
+                writeValue(ii, kinds[ii], out);
+            }
+        }
+    }
+
+    /**
+     * Writes a single changed value to the specified stream.
+     */
+    public void writeValue (int idx, int kind, ObjectOutputStream out)
+        throws IOException
+    {
+        long value = _prims[idx];
+        switch (kind) {
+            case BOOLEAN: out.writeBoolean(value != 0L); break;
+            case BYTE: out.writeByte((byte)value); break;
+            case CHAR: out.writeChar((char)value); break;
+            case DOUBLE: out.writeDouble(Double.longBitsToDouble(value)); break;
+            case FLOAT: out.writeFloat(Float.intBitsToFloat((int)value)); break;
+            case INT: out.writeInt((int)value); break;
+            case LONG: out.writeLong(value); break;
+            case SHORT: out.writeShort((short)value); break;
+            default: out.writeObject(_objs[idx]); break;
+        }
+    }
+
+    /**
+     * Reads the changed values from the specified stream (the mask must already have been read).
+     *
+     * @param kinds the value kinds for each position in the mask.
+     */
+    public void read (int[] kinds, ObjectInputStream in)
+        throws IOException, ClassNotFoundException
+    {
+        for (int ii = 0; ii < kinds.length; ii++) {
+            if (_mask.isSet(ii)) {
+                readValue(ii, kinds[ii], in);
+            }
+        }
+    }
+
+    /**
+     * Reads a single changed value from the specified stream.
+     */
+    public void readValue (int idx, int kind, ObjectInputStream in)
+        throws IOException, ClassNotFoundException
+    {
+        switch (kind) {
+            case BOOLEAN: setPrimitive(idx, in.readBoolean() ? 1L : 0L); break;
+            case BYTE: setPrimitive(idx, in.readByte()); break;
+            case CHAR: setPrimitive(idx, in.readChar()); break;
+            case DOUBLE: setPrimitive(idx, Double.doubleToRawLongBits(in.readDouble())); break;
+            case FLOAT: setPrimitive(idx, Float.floatToRawIntBits(in.readFloat())); break;
+            case INT: setPrimitive(idx, in.readInt()); break;
+            case LONG: setPrimitive(idx, in.readLong()); break;
+            case SHORT: setPrimitive(idx, in.readShort()); break;
+            default: setObject(idx, in.readObject()); break;
+        }
+    }
+
+    /**
+     * Merges these values with another set, returning a new set containing the changes of both.
+     */
+    public DeltaValues merge (DeltaValues other)
+    {
+        int length = _prims.length;
+        DeltaValues merged = new DeltaValues(length);
+        for (int ii = 0; ii < length; ii++) {
+            boolean oset = _mask.isSet(ii), nset = other._mask.isSet(ii);
+            if (nset) {
+                merged._prims[ii] = other._prims[ii];
+                Object nvalue = other._objs[ii];
+                if (oset && nvalue instanceof Delta) {
+                    Object ovalue = _objs[ii];
+                    Delta ndelta = (Delta)nvalue;
+                    nvalue = (ovalue instanceof Delta) ?
+                        ((Delta)ovalue).merge(ndelta) : ndelta.apply(ovalue);
+                }
+                merged._objs[ii] = nvalue;
+            } else if (oset) {
+                merged._prims[ii] = _prims[ii];
+                merged._objs[ii] = _objs[ii];
+            } else {
+                continue;
+            }
+            merged._mask.set(ii);
+            merged._count++;
+        }
+        return merged;
+    }
+
+    /**
+     * Appends a description of the changed values to the specified buffer.
+     *
+     * @param fields the fields corresponding to each position in the mask.
+     * @param kinds the value kinds for each position in the mask.
+     */
+    public void toString (Field[] fields, int[] kinds, StringBuilder buf)
+    {
+        for (int ii = 0; ii < kinds.length; ii++) {
+            if (!_mask.isSet(ii)) {
+                continue;
+            }
+            long value = _prims[ii];
+            buf.append(", ").append(fields[ii].getName()).append("=");
+            switch (kinds[ii]) {
+                case BOOLEAN: buf.append(value != 0L); break;
+                case BYTE: buf.append((byte)value); break;
+                case CHAR: buf.append((char)value); break;
+                case DOUBLE: buf.append(Double.longBitsToDouble(value)); break;
+                case FLOAT: buf.append(Float.intBitsToFloat((int)value)); break;
+                case INT: buf.append((int)value); break;
+                case LONG: buf.append(value); break;
+                case SHORT: buf.append((short)value); break;
+                default: buf.append(_objs[ii]); break;
+            }
+        }
+    }
+
+    /** The mask indicating which fields have changed. */
+    protected BareArrayMask _mask;
+
+    /** The changed primitive values, indexed by mask position. */
+    protected long[] _prims;
+
+    /** The changed object values (either new values or {@link Delta} objects), indexed by mask
+     * position. */
+    protected Object[] _objs;
+
+    /** The number of changed values. */
+    protected int _count;
+
+    /** The position of the cursor in the mask. */
+    protected int _idx;
+}
@@ -41,6 +41,9 @@ package com.threerings.delta;
  * <p> This method should return a {@link Delta} instance that, when applied to an object identical
  * to the object whose <code>createDelta</code> method was called, will return an object identical
  * to <code>revised</code>.
+ *
+ * <p> Classes that wish to avoid the cost of reflection while keeping the default delta format
+ * may instead implement {@link CodedDeltable}.
  */
 public interface Deltable
 {
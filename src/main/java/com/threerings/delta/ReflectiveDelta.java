@@ -30,7 +30,6 @@ import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 
-import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -43,6 +42,8 @@ import com.threerings.io.ObjectInputStream;
 import com.threerings.io.ObjectOutputStream;
 import com.threerings.expr.MutableInteger;
 
+import static com.threerings.ClydeLog.*;
+
 /**
  * A delta object that uses reflection to compare and modify the objects' fields.  Note that
  * unchanged object fields will be preserved by reference.
@@ -57,6 +58,12 @@ public class ReflectiveDelta extends Delta
     {
         // compare the fields
         ClassMapping cmap = getClassMapping(_clazz = original.getClass());
+        if (cmap.isCoded()) {
+            _coded = new DeltaValues(cmap.getMaskLength());
+            _mask = _coded.getMask();
+            ((CodedDeltable)original).populateDelta(revised, _coded);
+            return;
+        }
         _mask = new BareArrayMask(cmap.getMaskLength());
         Field[] fields = cmap.getFields();
         FieldHandler[] handlers = cmap.getHandlers();
@@ -85,7 +92,7 @@ public class ReflectiveDelta extends Delta
      */
     public boolean isEmpty ()
     {
-        return (_values.length == 0);
+        return (_coded == null) ? (_values.length == 0) : _coded.isEmpty();
     }
 
     /**
@@ -101,10 +108,7 @@ public class ReflectiveDelta extends Delta
         _mask.writeTo(out);
 
         // write the changed fields
-        MutableInteger midx = new MutableInteger(), vidx = new MutableInteger();
-        for (FieldHandler handler : getClassMapping(_clazz).getHandlers()) {
-            handler.write(_mask, midx, _values, vidx, out);
-        }
+        writeValues(out);
     }
 
     /**
@@ -117,17 +121,11 @@ public class ReflectiveDelta extends Delta
         _clazz = (Class<?>)_classStreamer.createObject(in);
 
         // read the bitmask
-        ClassMapping cmap = getClassMapping(_clazz);
-        _mask = new BareArrayMask(cmap.getMaskLength());
+        initMask();
         _mask.readFrom(in);
 
         // read the changed fields
-        List<Object> values = Lists.newArrayList();
-        MutableInteger midx = new MutableInteger();
-        for (FieldHandler handler : cmap.getHandlers()) {
-            handler.read(_mask, midx, values, in);
-        }
-        _values = values.toArray();
+        readValues(in);
     }
 
     @Override
@@ -149,6 +147,10 @@ public class ReflectiveDelta extends Delta
         }
 
         // set the fields
+        if (_coded != null) {
+            ((CodedDeltable)original).applyDelta(revised, new DeltaValues(_coded));
+            return revised;
+        }
         ClassMapping cmap = getClassMapping(_clazz);
         Field[] fields = cmap.getFields();
         FieldHandler[] handlers = cmap.getHandlers();
@@ -181,6 +183,10 @@ public class ReflectiveDelta extends Delta
         StringBuilder buf = new StringBuilder();
         buf.append("[class=").append(_clazz.getName());
         ClassMapping cmap = getClassMapping(_clazz);
+        if (_coded != null) {
+            _coded.toString(cmap.getMaskFields(), cmap.getKinds(), buf);
+            return buf.append("]").toString();
+        }
         Field[] fields = cmap.getFields();
         FieldHandler[] handlers = cmap.getHandlers();
         MutableInteger midx = new MutableInteger(), vidx = new MutableInteger();
@@ -190,6 +196,57 @@ public class ReflectiveDelta extends Delta
         return buf.append("]").toString();
     }
 
+    /**
+     * Creates the (empty) mask and, for coded classes, the value storage for a delta of the
+     * current class.
+     */
+    protected void initMask ()
+    {
+        ClassMapping cmap = getClassMapping(_clazz);
+        if (cmap.isCoded()) {
+            _coded = new DeltaValues(cmap.getMaskLength());
+            _mask = _coded.getMask();
+        } else {
+            _mask = new BareArrayMask(cmap.getMaskLength());
+        }
+    }
+
+    /**
+     * Writes the values of the changed fields (those set in the mask) to the specified stream.
+     */
+    protected void writeValues (ObjectOutputStream out)
+        throws IOException
+    {
+        ClassMapping cmap = getClassMapping(_clazz);
+        if (_coded != null) {
+            _coded.write(cmap.getKinds(), out);
+            return;
+        }
+        MutableInteger midx = new MutableInteger(), vidx = new MutableInteger();
+        for (FieldHandler handler : cmap.getHandlers()) {
+            handler.write(_mask, midx, _values, vidx, out);
+        }
+    }
+
+    /**
+     * Reads the values of the changed fields (those set in the mask) from the specified stream.
+     */
+    protected void readValues (ObjectInputStream in)
+        throws IOException, ClassNotFoundException
+    {
+        ClassMapping cmap = getClassMapping(_clazz);
+        if (_coded != null) {
+            _coded.read(cmap.getKinds(), in);
+            return;
+        }
+        List<Object> values = Lists.newArrayList();
+        MutableInteger midx = new MutableInteger();
+        for (FieldHandler handler : cmap.getHandlers()) {
+            handler.read(_mask, midx, values, in);
+        }
+        _values = values.toArray();
+    }
+
     /**
      * Populates the merged delta.
      */
@@ -200,6 +257,11 @@ public class ReflectiveDelta extends Delta
                 other._clazz + ", expected " + _clazz);
         }
         merged._clazz = _clazz;
+        if (_coded != null) {
+            merged._coded = _coded.merge(other._coded);
+            merged._mask = merged._coded.getMask();
+            return;
+        }
         int mlength = getClassMapping(_clazz).getMaskLength();
         merged._mask = new BareArrayMask(mlength);
         List<Object> values = Lists.newArrayList();
@@ -237,11 +299,14 @@ public class ReflectiveDelta extends Delta
      */
     protected static ClassMapping getClassMapping (Class<?> clazz)
     {
-        ClassMapping cmap = _classes.get(clazz);
-        if (cmap == null) {
-            _classes.put(clazz, cmap = new ClassMapping(clazz));
+        // scenes may be ticked (and their deltas computed) on several threads at once
+        synchronized (_classes) {
+            ClassMapping cmap = _classes.get(clazz);
+            if (cmap == null) {
+                _classes.put(clazz, cmap = new ClassMapping(clazz));
+            }
+            return cmap;
         }
-        return cmap;
     }
 
     /**
@@ -282,6 +347,7 @@ public class ReflectiveDelta extends Delta
             _handlers = new FieldHandler[_fields.length];
 
             // get the handlers and count the non-final fields
+            List<Field> mfields = Lists.newArrayList();
             for (int ii = 0; ii < _fields.length; ii++) {
                 Field field = _fields[ii];
                 Class<?> type = field.getType();
@@ -293,8 +359,23 @@ public class ReflectiveDelta extends Delta
                     _maskLength++;
                     _handlers[ii] = type.isPrimitive() ?
                         PRIMITIVE_FIELD_HANDLERS.get(type) : OBJECT_FIELD_HANDLER;
+                    mfields.add(field);
                 }
             }
+            _maskFields = mfields.toArray(new Field[_maskLength]);
+            _kinds = new int[_maskLength];
+            for (int ii = 0; ii < _maskLength; ii++) {
+                _kinds[ii] = DeltaValues.getKind(_maskFields[ii].getType());
+            }
+            _coded = CodedDeltable.class.isAssignableFrom(clazz) && checkCoded(clazz);
+        }
+
+        /**
+         * Checks whether the class uses its coded methods rather than reflection.
+         */
+        public boolean isCoded ()
+        {
+            return _coded;
         }
 
         /**
@@ -322,9 +403,102 @@ public class ReflectiveDelta extends Delta
             return _maskLength;
         }
 
+        /**
+         * Returns a reference to the array of non-final fields (in mask order).
+         */
+        public Field[] getMaskFields ()
+        {
+            return _maskFields;
+        }
+
+        /**
+         * Returns a reference to the array of value kinds for each non-final field.
+         */
+        public int[] getKinds ()
+        {
+            return _kinds;
+        }
+
+        /**
+         * Makes sure that the coded methods of the specified class cover all of its fields.  The
+         * class that declares the methods (the class itself or the nearest superclass that does)
+         * must declare both of them and must have exactly the same fields as the class, so that
+         * subclasses adding fields of any kind (including <code>final</code> and
+         * {@link DeltaFinal} fields, which occupy no position in the mask) without overriding
+         * the methods fall back to reflection.  The methods must also visit exactly as many
+         * fields as there are positions in the mask.
+         */
+        protected boolean checkCoded (Class<?> clazz)
+        {
+            Class<?> declarer = getDeclarer(clazz, "populateDelta");
+            if (declarer == null || declarer != getDeclarer(clazz, "applyDelta")) {
+                log.warning("Coded delta methods not declared together; using reflection.",
+                    "class", clazz);
+                return false;
+            }
+            if (declarer != clazz) {
+                List<Field> dfields = Lists.newArrayList();
+                collectFields(declarer, dfields);
+                if (dfields.size() != _fields.length) {
+                    log.warning("Class adds fields without overriding coded delta methods; " +
+                        "using reflection.", "class", clazz, "declarer", declarer);
+                    return false;
+                }
+            }
+            try {
+                CodedDeltable prototype = (CodedDeltable)clazz.newInstance();
+                DeltaValues values = new DeltaValues(_maskLength);
+                prototype.populateDelta(prototype, values);
+                if (values.getIndex() != _maskLength) {
+                    log.warning("Coded delta methods do not match fields; using reflection.",
+                        "class", clazz, "visited", values.getIndex(), "fields", _maskLength);
+                    return false;
+                }
+                values = new DeltaValues(_maskLength);
+                prototype.applyDelta(clazz.newInstance(), values);
+                if (values.getIndex() != _maskLength) {
+                    log.warning("Coded delta methods do not match fields; using reflection.",
+                        "class", clazz, "visited", values.getIndex(), "fields", _maskLength);
+                    return false;
+                }
+                return true;
+
+            } catch (Exception e) {
+                log.warning("Failed to check coded delta methods; using reflection.",
+                    "class", clazz, e);
+                return false;
+            }
+        }
+
+        /**
+         * Finds the nearest class in the hierarchy of the specified class that declares the named
+         * coded method.
+         */
+        protected static Class<?> getDeclarer (Class<?> clazz, String name)
+        {
+            for (Class<?> cclazz = clazz; cclazz != null; cclazz = cclazz.getSuperclass()) {
+                try {
+                    cclazz.getDeclaredMethod(name, Object.class, DeltaValues.class);
+                    return cclazz;
+                } catch (NoSuchMethodException e) {
+                    // continue up the hierarchy
+                }
+            }
+            return null;
+        }
+
         /** The array of non-transient fields. */
         protected Field[] _fields;
 
+        /** The array of non-final fields, in mask order. */
+        protected Field[] _maskFields;
+
+        /** The value kinds of the non-final fields. */
+        protected int[] _kinds;
+
+        /** Whether or not the class uses its coded methods. */
+        protected boolean _coded;
+
         /** Handlers for each field. */
         protected FieldHandler[] _handlers;
 
@@ -442,6 +616,10 @@ public class ReflectiveDelta extends Delta
      * object). */
     protected Object[] _values;
 
+    /** The changed values for {@link CodedDeltable} classes (in which case {@link #_values} is
+     * unused). */
+    protected DeltaValues _coded;
+
     /** Cached mappings for deltable classes. */
     protected static Map<Class<?>, ClassMapping> _classes = Maps.newHashMap();
 
@@ -846,9 +1024,9 @@ public class ReflectiveDelta extends Delta
             ArrayMask mask, MutableInteger midx, List<Object> values)
                 throws IllegalAccessException {
             int idx = midx.value++;
-            Object ovalue = _oarray[0] = field.get(original);
-            Object nvalue = _narray[0] = field.get(revised);
-            if (!Arrays.deepEquals(_oarray, _narray)) {
+            Object ovalue = field.get(original);
+            Object nvalue = field.get(revised);
+            if (!DeltaValues.valuesEqual(ovalue, nvalue)) {
                 if (Delta.checkDeltable(ovalue, nvalue)) {
                     nvalue = Delta.createDelta(ovalue, nvalue);
                 }
@@ -886,7 +1064,6 @@ public class ReflectiveDelta extends Delta
             }
             field.set(revised, value);
         }
-        protected Object[] _oarray = new Object[1], _narray = new Object[1];
     };
 
     /** Handler for final object fields. */
@@ -0,0 +1,234 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.delta.tools;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+import com.threerings.io.ObjectOutputStream;
+
+import com.threerings.delta.CodedDeltable;
+import com.threerings.delta.DeltaValues;
+import com.threerings.delta.Deltable;
+import com.threerings.delta.ReflectiveDelta;
+
+/**
+ * Compares the time taken and garbage collection activity incurred by creating, streaming, and
+ * applying {@link ReflectiveDelta}s for a class that uses reflection and an otherwise identical
+ * class that implements {@link CodedDeltable}.
+ */
+public class DeltaBenchmark
+{
+    /**
+     * A deltable object whose deltas are computed through reflection.
+     */
+    public static class ReflectiveState
+        implements Deltable
+    {
+        /**
+         * Sets the fields of the state to values derived from the supplied seed.
+         */
+        public void init (int seed)
+        {
+            _id = 42;
+            _seed = seed;
+            _x = seed * 0.5f;
+            _y = seed * 0.25f;
+            _rotation = (seed % 7) * 0.1f;
+            _flags = seed & 0x0F;
+            _active = (seed % 3) == 0;
+            _time = seed * 100L;
+            _name = ((seed % 5) == 0) ? ("state" + seed) : "state";
+        }
+
+        /** The identifier and seed. */
+        protected int _id, _seed;
+
+        /** The position and rotation. */
+        protected float _x, _y, _rotation;
+
+        /** Some flags. */
+        protected int _flags;
+
+        /** Whether or not the state is active. */
+        protected boolean _active;
+
+        /** A timestamp. */
+        protected long _time;
+
+        /** A name. */
+        protected String _name;
+    }
+
+    /**
+     * The same state as {@link ReflectiveState}, but compared and applied by hand.
+     */
+    public static class CodedState extends ReflectiveState
+        implements CodedDeltable
+    {
+        // documentation inherited from interface CodedDeltable
+        public void populateDelta (Object revised, DeltaValues values)
+        {
+            CodedState rstate = (CodedState)revised;
+            values.compare(_id, rstate._id);
+            values.compare(_seed, rstate._seed);
+            values.compare(_x, rstate._x);
+            values.compare(_y, rstate._y);
+            values.compare(_rotation, rstate._rotation);
+            values.compare(_flags, rstate._flags);
+            values.compare(_active, rstate._active);
+            values.compare(_time, rstate._time);
+            values.compare(_name, rstate._name);
+        }
+
+        // documentation inherited from interface CodedDeltable
+        public void applyDelta (Object revised, DeltaValues values)
+        {
+            CodedState rstate = (CodedState)revised;
+            rstate._id = values.apply(_id);
+            rstate._seed = values.apply(_seed);
+            rstate._x = values.apply(_x);
+            rstate._y = values.apply(_y);
+            rstate._rotation = values.apply(_rotation);
+            rstate._flags = values.apply(_flags);
+            rstate._active = values.apply(_active);
+            rstate._time = values.apply(_time);
+            rstate._name = values.apply(_name);
+        }
+    }
+
+    /**
+     * Program entry point.
+     */
+    public static void main (String[] args)
+        throws Exception
+    {
+        run("reflective", new ReflectiveState[STATES]);
+        run("coded", new CodedState[STATES]);
+    }
+
+    /**
+     * Fills in the supplied array of states and measures a series of runs over them.
+     */
+    protected static void run (String label, ReflectiveState[] states)
+        throws Exception
+    {
+        Class<?> clazz = states.getClass().getComponentType();
+        for (int ii = 0; ii < states.length; ii++) {
+            (states[ii] = (ReflectiveState)clazz.newInstance()).init(ii);
+        }
+        for (int ii = 0; ii < WARMUP_RUNS; ii++) {
+            processDeltas(states);
+        }
+        System.gc();
+        long collections = getCollectionCount(), gctime = getCollectionTime();
+        long start = System.nanoTime(), bytes = 0L;
+        for (int ii = 0; ii < MEASURED_RUNS; ii++) {
+            bytes = processDeltas(states);
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.println(label + ": " + (states.length - 1) + " delta(s), " + bytes + " bytes");
+        System.out.println("  " + (elapsed / MEASURED_RUNS / 1000L) + " us per run, " +
+            (getCollectionCount() - collections) + " collection(s) taking " +
+            (getCollectionTime() - gctime) + " ms over " + MEASURED_RUNS + " runs");
+    }
+
+    /**
+     * Creates, streams, and applies deltas between each successive pair of states.
+     *
+     * @return the number of bytes streamed.
+     */
+    protected static long processDeltas (ReflectiveState[] states)
+        throws IOException
+    {
+        CountingOutputStream counter = new CountingOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(counter);
+        for (int ii = 1; ii < states.length; ii++) {
+            ReflectiveDelta delta = new ReflectiveDelta(states[ii - 1], states[ii]);
+            delta.writeObject(out);
+            delta.apply(states[ii - 1]);
+        }
+        out.flush();
+        return counter.count;
+    }
+
+    /**
+     * Returns the total number of collections performed by the garbage collectors.
+     */
+    protected static long getCollectionCount ()
+    {
+        long count = 0L;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(bean.getCollectionCount(), 0L);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the total time spent by the garbage collectors, in milliseconds.
+     */
+    protected static long getCollectionTime ()
+    {
+        long time = 0L;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(bean.getCollectionTime(), 0L);
+        }
+        return time;
+    }
+
+    /**
+     * Discards its input, counting the bytes written.
+     */
+    protected static class CountingOutputStream extends OutputStream
+    {
+        /** The number of bytes written. */
+        public long count;
+
+        @Override
+        public void write (int b)
+        {
+            count++;
+        }
+
+        @Override
+        public void write (byte[] b, int off, int len)
+        {
+            count += len;
+        }
+    }
+
+    /** The number of states between which to compute deltas in each run. */
+    protected static final int STATES = 10000;
+
+    /** The number of untimed runs with which to warm up the JVM. */
+    protected static final int WARMUP_RUNS = 5;
+
+    /** The number of timed runs over which to average. */
+    protected static final int MEASURED_RUNS = 20;
+}
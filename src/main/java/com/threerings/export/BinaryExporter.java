@@ -32,6 +32,8 @@ import java.io.OutputStream;
 import java.lang.reflect.Array;
 import java.lang.reflect.Modifier;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
@@ -124,63 +126,63 @@ public class BinaryExporter extends Exporter
     public void write (String name, boolean value)
         throws IOException
     {
-        _fields.put(name, new Tuple<Object, Class<?>>(value, Boolean.TYPE));
+        _fields.putLong(name, Boolean.TYPE, value ? 1L : 0L);
     }
 
     @Override
     public void write (String name, byte value)
         throws IOException
     {
-        _fields.put(name, new Tuple<Object, Class<?>>(value, Byte.TYPE));
+        _fields.putLong(name, Byte.TYPE, value);
     }
 
     @Override
     public void write (String name, char value)
         throws IOException
     {
-        _fields.put(name, new Tuple<Object, Class<?>>(value, Character.TYPE));
+        _fields.putLong(name, Character.TYPE, value);
     }
 
     @Override
     public void write (String name, double value)
         throws IOException
     {
-        _fields.put(name, new Tuple<Object, Class<?>>(value, Double.TYPE));
+        _fields.putDouble(name, Double.TYPE, value);
     }
 
     @Override
     public void write (String name, float value)
         throws IOException
     {
-        _fields.put(name, new Tuple<Object, Class<?>>(value, Float.TYPE));
+        _fields.putDouble(name, Float.TYPE, value);
     }
 
     @Override
     public void write (String name, int value)
         throws IOException
     {
-        _fields.put(name, new Tuple<Object, Class<?>>(value, Integer.TYPE));
+        _fields.putLong(name, Integer.TYPE, value);
     }
 
     @Override
     public void write (String name, long value)
         throws IOException
     {
-        _fields.put(name, new Tuple<Object, Class<?>>(value, Long.TYPE));
+        _fields.putLong(name, Long.TYPE, value);
     }
 
     @Override
     public void write (String name, short value)
         throws IOException
     {
-        _fields.put(name, new Tuple<Object, Class<?>>(value, Short.TYPE));
+        _fields.putLong(name, Short.TYPE, value);
     }
 
     @Override
     public <T> void write (String name, T value, Class<T> clazz)
         throws IOException
     {
-        _fields.put(name, new Tuple<Object, Class<?>>(value, clazz));
+        _fields.putObject(name, clazz, value);
     }
 
     @Override
@@ -298,20 +300,56 @@ public class BinaryExporter extends Exporter
     protected void writeFields (Exportable object)
         throws IOException
     {
-        // populate the field map
-        HashMap<String, Tuple<Object, Class<?>>> fields =
-            new HashMap<String, Tuple<Object, Class<?>>>();
-        _fields = fields;
-        super.writeFields(object);
-        _fields = null;
-
-        // write out the values
         Class<?> clazz = object.getClass();
         ClassData cdata = _classData.get(clazz);
         if (cdata == null) {
             _classData.put(clazz, cdata = new ClassData());
         }
-        cdata.writeFields(fields);
+
+        // populate the buffer for this level of nesting
+        if (_depth == _buffers.size()) {
+            _buffers.add(new FieldBuffer());
+        }
+        FieldBuffer fields = _buffers.get(_depth++);
+        try {
+            fields.init(cdata);
+            _fields = fields;
+            super.writeFields(object);
+            _fields = null;
+
+            // write out the values
+            fields.write();
+
+        } finally {
+            _fields = null;
+            fields.clear();
+            _depth--;
+        }
+    }
+
+    /**
+     * Writes out a primitive value stored in a field buffer.
+     */
+    protected void writePrimitive (Class<?> clazz, long lvalue, double dvalue)
+        throws IOException
+    {
+        if (clazz == Boolean.TYPE) {
+            _out.writeBoolean(lvalue != 0L);
+        } else if (clazz == Byte.TYPE) {
+            _out.writeByte((byte)lvalue);
+        } else if (clazz == Character.TYPE) {
+            _out.writeChar((char)lvalue);
+        } else if (clazz == Double.TYPE) {
+            _out.writeDouble(dvalue);
+        } else if (clazz == Float.TYPE) {
+            _out.writeFloat((float)dvalue);
+        } else if (clazz == Integer.TYPE) {
+            _out.writeInt((int)lvalue);
+        } else if (clazz == Long.TYPE) {
+            _out.writeLong(lvalue);
+        } else {
+            _out.writeShort((short)lvalue);
+        }
     }
 
     /**
@@ -390,37 +428,45 @@ public class BinaryExporter extends Exporter
     protected class ClassData
     {
         /**
-         * Writes out the field values in the supplied map.
+         * Returns the information for the named field, assigning it the next index within the
+         * class if we haven't seen it before.
          */
-        public void writeFields (HashMap<String, Tuple<Object, Class<?>>> fields)
-            throws IOException
+        public FieldInfo getFieldInfo (String name)
         {
-            _out.writeInt(fields.size());
-            for (Map.Entry<String, Tuple<Object, Class<?>>> entry : fields.entrySet()) {
-                Tuple<Object, Class<?>> value = entry.getValue();
-                writeField(entry.getKey(), value.left, value.right);
+            FieldInfo info = _fieldInfo.get(name);
+            if (info == null) {
+                _fieldInfo.put(name, info = new FieldInfo(name, _fieldInfo.size()));
             }
+            return info;
         }
 
         /**
-         * Writes out a single field value.
+         * Writes out the id of a field (along with its name and class, the first time the
+         * name/class pair is written).
          */
-        protected void writeField (String name, Object value, Class<?> clazz)
+        public void writeFieldId (FieldInfo info, String name, Class<?> clazz)
             throws IOException
         {
-            Tuple<String, Class<?>> field = new Tuple<String, Class<?>>(name, clazz);
-            Integer fieldId = _fieldIds.get(field);
-            if (fieldId == null) {
-                _fieldIdWriter.write(++_lastFieldId);
-                _fieldIds.put(field, _lastFieldId);
-                write(name, String.class);
-                writeClass(clazz);
-            } else {
-                _fieldIdWriter.write(fieldId.intValue());
+            // the last class written for each field is almost always the one being written now
+            if (info.clazz != clazz) {
+                Tuple<String, Class<?>> field = new Tuple<String, Class<?>>(name, clazz);
+                Integer fieldId = _fieldIds.get(field);
+                info.clazz = clazz;
+                if (fieldId == null) {
+                    _fieldIdWriter.write(info.fieldId = ++_lastFieldId);
+                    _fieldIds.put(field, _lastFieldId);
+                    write(name, String.class);
+                    writeClass(clazz);
+                    return;
+                }
+                info.fieldId = fieldId;
             }
-            write(value, clazz);
+            _fieldIdWriter.write(info.fieldId);
         }
 
+        /** Maps field names to field information. */
+        protected HashMap<String, FieldInfo> _fieldInfo = new HashMap<String, FieldInfo>();
+
         /** Maps field name/class pairs to field ids. */
         protected HashMap<Tuple<String, Class<?>>, Integer> _fieldIds =
             new HashMap<Tuple<String, Class<?>>, Integer>();
@@ -432,6 +478,295 @@ public class BinaryExporter extends Exporter
         protected int _lastFieldId;
     }
 
+    /**
+     * Information on a single named field of an exportable class.
+     */
+    protected static class FieldInfo
+    {
+        /** The name of the field. */
+        public final String name;
+
+        /** The index of the field within its class. */
+        public final int index;
+
+        /** The spread hash code of the field name, as used by {@link HashMap} (from Java 8). */
+        public final int hash;
+
+        /** The class with which the field was last written. */
+        public Class<?> clazz;
+
+        /** The id of the field name/class pair last written. */
+        public int fieldId;
+
+        /**
+         * Creates a new field info object.
+         */
+        public FieldInfo (String name, int index)
+        {
+            this.name = name;
+            this.index = index;
+            int hash = name.hashCode();
+            this.hash = hash ^ (hash >>> 16);
+        }
+    }
+
+    /**
+     * Collects the field values associated with an object.  Buffers are reused from object to
+     * object (one for each level of nesting), slots are located by the per-class field indices,
+     * and primitive values are stored without boxing.
+     */
+    protected class FieldBuffer
+    {
+        /**
+         * Prepares the buffer to collect the fields of an instance of the described class.
+         */
+        public void init (ClassData cdata)
+        {
+            _cdata = cdata;
+            _size = 0;
+            if (++_stamp == 0) {
+                Arrays.fill(_stamps, 0);
+                _stamp = 1;
+            }
+        }
+
+        /**
+         * Stores an integral (or boolean) field value.
+         */
+        public void putLong (String name, Class<?> clazz, long value)
+        {
+            int slot = getSlot(name, clazz, LONG_KIND);
+            _longs[slot] = value;
+        }
+
+        /**
+         * Stores a floating point field value.
+         */
+        public void putDouble (String name, Class<?> clazz, double value)
+        {
+            int slot = getSlot(name, clazz, DOUBLE_KIND);
+            _doubles[slot] = value;
+        }
+
+        /**
+         * Stores an object field value.
+         */
+        public void putObject (String name, Class<?> clazz, Object value)
+        {
+            int slot = getSlot(name, clazz, OBJECT_KIND);
+            _objects[slot] = value;
+        }
+
+        /**
+         * Writes out the collected field values.
+         */
+        public void write ()
+            throws IOException
+        {
+            sortSlots();
+            _out.writeInt(_size);
+            for (int ii = 0; ii < _size; ii++) {
+                int slot = _order[ii];
+                Class<?> clazz = _classes[slot];
+                _cdata.writeFieldId(_infos[slot], _names[slot], clazz);
+                switch (_kinds[slot]) {
+                    case LONG_KIND:
+                        writePrimitive(clazz, _longs[slot], 0.0);
+                        break;
+                    case DOUBLE_KIND:
+                        writePrimitive(clazz, 0L, _doubles[slot]);
+                        break;
+                    default:
+                        BinaryExporter.this.write(_objects[slot], clazz);
+                        break;
+                }
+            }
+        }
+
+        /**
+         * Releases the references held by the buffer.
+         */
+        public void clear ()
+        {
+            Arrays.fill(_objects, 0, _size, null);
+            Arrays.fill(_names, 0, _size, null);
+            _cdata = null;
+        }
+
+        /**
+         * Returns the slot for the named field, creating it if necessary, and records the class
+         * and kind of the value being stored.
+         */
+        protected int getSlot (String name, Class<?> clazz, byte kind)
+        {
+            FieldInfo info = _cdata.getFieldInfo(name);
+            int index = info.index;
+            if (index >= _stamps.length) {
+                int length = Math.max(index + 1, _stamps.length * 2);
+                _stamps = (int[])grow(_stamps, length);
+                _slots = (int[])grow(_slots, length);
+            }
+            int slot;
+            if (_stamps[index] == _stamp) {
+                slot = _slots[index];
+            } else {
+                _stamps[index] = _stamp;
+                slot = _slots[index] = _size++;
+                if (slot >= _infos.length) {
+                    int length = _infos.length * 2;
+                    _infos = (FieldInfo[])grow(_infos, length);
+                    _names = (String[])grow(_names, length);
+                    _classes = (Class<?>[])grow(_classes, length);
+                    _kinds = (byte[])grow(_kinds, length);
+                    _longs = (long[])grow(_longs, length);
+                    _doubles = (double[])grow(_doubles, length);
+                    _objects = (Object[])grow(_objects, length);
+                    _order = new int[length];
+                }
+                _infos[slot] = info;
+                _names[slot] = name;
+            }
+            _classes[slot] = clazz;
+            _kinds[slot] = kind;
+            _objects[slot] = null;
+            return slot;
+        }
+
+        /**
+         * Returns a copy of the supplied array with the given length.
+         */
+        protected Object grow (Object array, int length)
+        {
+            Object narray = Array.newInstance(array.getClass().getComponentType(), length);
+            System.arraycopy(array, 0, narray, 0, Array.getLength(array));
+            return narray;
+        }
+
+        /**
+         * Puts the slots in the order in which a {@link HashMap} containing the field names
+         * would iterate over them, so that the output is identical to that of the map-based
+         * implementation that this replaces (whose output likewise depended on the JRE's map).
+         * This emulates the map of Java 8 and later: hash codes are spread as
+         * <code>h ^ (h &gt;&gt;&gt; 16)</code>, entries are appended to their buckets, and
+         * resizing splits each bucket without reordering it, so that the map iterates by bucket,
+         * then by insertion.  In the rare case that the map would convert a bucket to a tree, we
+         * fall back to building an actual map.
+         */
+        protected void sortSlots ()
+        {
+            int capacity = getTableCapacity();
+            if (capacity == -1) {
+                HashMap<String, Integer> map = new HashMap<String, Integer>();
+                for (int ii = 0; ii < _size; ii++) {
+                    map.put(_infos[ii].name, ii);
+                }
+                int idx = 0;
+                for (Integer slot : map.values()) {
+                    _order[idx++] = slot;
+                }
+                return;
+            }
+            int mask = capacity - 1;
+            for (int ii = 0; ii < _size; ii++) {
+                int bucket = _infos[ii].hash & mask, jj = ii;
+                for (; jj > 0 && (_infos[_order[jj - 1]].hash & mask) > bucket; jj--) {
+                    _order[jj] = _order[jj - 1];
+                }
+                _order[jj] = ii;
+            }
+        }
+
+        /**
+         * Finds the capacity of the table of a {@link HashMap} after the field names were added
+         * in order.  Besides doubling its capacity when the number of entries exceeds three
+         * quarters of it, the map doubles its capacity (if under {@link #MIN_TREEIFY_CAPACITY})
+         * when a ninth entry is added to a bucket, rather than converting the bucket to a tree.
+         *
+         * @return the capacity, or -1 if the map would convert a bucket to a tree.
+         */
+        protected int getTableCapacity ()
+        {
+            int capacity = countBuckets(INITIAL_TABLE_CAPACITY, 0);
+            for (int ii = 0; ii < _size; ii++) {
+                int bucket = _infos[ii].hash & (capacity - 1);
+                if (_counts[bucket] >= TREEIFY_THRESHOLD) {
+                    if (capacity >= MIN_TREEIFY_CAPACITY) {
+                        return -1;
+                    }
+                    capacity = countBuckets(capacity << 1, ii);
+                    bucket = _infos[ii].hash & (capacity - 1);
+                }
+                _counts[bucket]++;
+                if (ii + 1 > capacity * 3 / 4) {
+                    capacity = countBuckets(capacity << 1, ii + 1);
+                }
+            }
+            return capacity;
+        }
+
+        /**
+         * Counts the entries in each bucket of a table of the given capacity.
+         *
+         * @param count the number of slots (from the first) to count.
+         * @return the capacity, for convenience.
+         */
+        protected int countBuckets (int capacity, int count)
+        {
+            if (_counts.length < capacity) {
+                _counts = new int[capacity];
+            } else {
+                Arrays.fill(_counts, 0, capacity, 0);
+            }
+            int mask = capacity - 1;
+            for (int ii = 0; ii < count; ii++) {
+                _counts[_infos[ii].hash & mask]++;
+            }
+            return capacity;
+        }
+
+        /** The class of the object whose fields are being collected. */
+        protected ClassData _cdata;
+
+        /** The number of slots in use. */
+        protected int _size;
+
+        /** The current stamp, which identifies valid entries in the slot map. */
+        protected int _stamp;
+
+        /** For each field index, the stamp at which the slot was assigned. */
+        protected int[] _stamps = new int[INITIAL_CAPACITY];
+
+        /** For each field index, the slot assigned (if the stamp is current). */
+        protected int[] _slots = new int[INITIAL_CAPACITY];
+
+        /** The field information for each slot. */
+        protected FieldInfo[] _infos = new FieldInfo[INITIAL_CAPACITY];
+
+        /** The field name passed for each slot. */
+        protected String[] _names = new String[INITIAL_CAPACITY];
+
+        /** The class of the value in each slot. */
+        protected Class<?>[] _classes = new Class<?>[INITIAL_CAPACITY];
+
+        /** The kind of value in each slot. */
+        protected byte[] _kinds = new byte[INITIAL_CAPACITY];
+
+        /** The integral values. */
+        protected long[] _longs = new long[INITIAL_CAPACITY];
+
+        /** The floating point values. */
+        protected double[] _doubles = new double[INITIAL_CAPACITY];
+
+        /** The object values. */
+        protected Object[] _objects = new Object[INITIAL_CAPACITY];
+
+        /** The slots in the order in which they are to be written. */
+        protected int[] _order = new int[INITIAL_CAPACITY];
+
+        /** The number of entries in each bucket of the emulated map table. */
+        protected int[] _counts = new int[INITIAL_TABLE_CAPACITY];
+    }
+
     /**
      * Writes out integer identifiers using a width that depends on the highest value written so
      * far.  Thus, IDs will take one byte until the value 255 is written, after which they'll
@@ -493,8 +828,36 @@ public class BinaryExporter extends Exporter
     protected int _lastClassId;
 
     /** Field values associated with the current object. */
-    protected HashMap<String, Tuple<Object, Class<?>>> _fields;
+    protected FieldBuffer _fields;
+
+    /** Field buffers for each level of nesting. */
+    protected ArrayList<FieldBuffer> _buffers = new ArrayList<FieldBuffer>();
+
+    /** The current level of nesting. */
+    protected int _depth;
 
     /** Class<?> data. */
     protected HashMap<Class<?>, ClassData> _classData = new HashMap<Class<?>, ClassData>();
+
+    /** The initial capacity of field buffers. */
+    protected static final int INITIAL_CAPACITY = 16;
+
+    /** The initial capacity of a {@link HashMap} table. */
+    protected static final int INITIAL_TABLE_CAPACITY = 16;
+
+    /** The number of entries in a {@link HashMap} bucket at which adding another converts the
+     * bucket to a tree (or resizes the table, if its capacity is too small). */
+    protected static final int TREEIFY_THRESHOLD = 8;
+
+    /** The smallest {@link HashMap} table capacity at which buckets are converted to trees. */
+    protected static final int MIN_TREEIFY_CAPACITY = 64;
+
+    /** Identifies integral (and boolean) values in field buffers. */
+    protected static final byte LONG_KIND = 0;
+
+    /** Identifies floating point values in field buffers. */
+    protected static final byte DOUBLE_KIND = 1;
+
+    /** Identifies object values in field buffers. */
+    protected static final byte OBJECT_KIND = 2;
 }
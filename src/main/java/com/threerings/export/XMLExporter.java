@@ -80,7 +80,8 @@ public class XMLExporter extends Exporter
             _element.setAttribute("class", XMLImporter.class.getName());
             appendln();
         }
-        write("object", object, Object.class);
+        // append rather than write, which would replace the previous object
+        append("object", object, Object.class);
     }
 
     @Override
@@ -31,18 +31,15 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.Text;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -55,7 +52,11 @@ import com.threerings.util.ReflectionUtil;
 import static com.threerings.export.Log.*;
 
 /**
- * Imports from the XML format generated by {@link XMLExporter}.
+ * Imports from the XML format generated by {@link XMLExporter}.  Rather than parsing the entire
+ * document up front, the importer streams through it, holding in memory only the (compactly
+ * represented) element tree of the top-level object currently being read.  Streaming uses the
+ * StAX API, which Java 5 lacks: on Java 5, the stax-api jar and an implementation (such as
+ * Woodstox) must be on the classpath.
  */
 public class XMLImporter extends Importer
 {
@@ -71,36 +72,35 @@ public class XMLImporter extends Importer
     public Object readObject ()
         throws IOException
     {
-        Node first;
-        if (_document == null) {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            try {
-                DocumentBuilder builder = factory.newDocumentBuilder();
-                _document = builder.parse(_in);
-            } catch (Exception e) {
-                throw new IOException("Failed to parse input [error=" + e + "].");
-            }
-            Element top = _document.getDocumentElement();
-            if (!top.getTagName().equals("java")) {
-                throw new IOException("Invalid top-level element [name=" +
-                    top.getTagName() + "].");
-            }
-            String vstr = top.getAttribute("version");
-            if (!vstr.equals(XMLExporter.VERSION)) {
-                throw new IOException("Invalid version [version=" + vstr + ", expected=" +
-                    XMLExporter.VERSION + "].");
+        try {
+            if (_reader == null) {
+                XMLInputFactory factory = XMLInputFactory.newInstance();
+                factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+                factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+                _reader = factory.createXMLStreamReader(_in);
+                _reader.nextTag();
+                String name = _reader.getLocalName();
+                if (!name.equals("java")) {
+                    throw new IOException("Invalid top-level element [name=" + name + "].");
+                }
+                String vstr = getAttribute(_reader, "version");
+                if (!vstr.equals(XMLExporter.VERSION)) {
+                    throw new IOException("Invalid version [version=" + vstr + ", expected=" +
+                        XMLExporter.VERSION + "].");
+                }
+                String cstr = getAttribute(_reader, "class");
+                if (!cstr.equals(getClass().getName())) {
+                    throw new IOException("Invalid importer class [class=" + cstr +
+                        ", expected=" + getClass().getName() + "].");
+                }
             }
-            String cstr = top.getAttribute("class");
-            if (!cstr.equals(getClass().getName())) {
-                throw new IOException("Invalid importer class [class=" + cstr + ", expected=" +
-                    getClass().getName() + "].");
+            // release the previous object's tree before reading the next
+            _element = null;
+            if ((_element = readElement("object")) == null) {
+                throw new EOFException();
             }
-            first = top.getFirstChild();
-        } else {
-            first = (_element == null) ? null : _element.getNextSibling();
-        }
-        if ((_element = findElement(first, "object")) == null) {
-            throw new EOFException();
+        } catch (XMLStreamException e) {
+            throw new IOException("Failed to parse input [error=" + e + "].");
         }
         return read(_element, Object.class);
     }
@@ -203,7 +203,7 @@ public class XMLImporter extends Importer
     public <T> T read (String name, T defvalue, Class<T> clazz)
         throws IOException
     {
-        Element child = findElement(_element.getFirstChild(), name);
+        Element child = _element.getChild(name);
         if (child == null) {
             return defvalue;
         }
@@ -214,6 +214,13 @@ public class XMLImporter extends Importer
     public void close ()
         throws IOException
     {
+        if (_reader != null) {
+            try {
+                _reader.close();
+            } catch (XMLStreamException e) {
+                log.warning("Error closing reader.", e);
+            }
+        }
         _in.close();
     }
 
@@ -229,7 +236,7 @@ public class XMLImporter extends Importer
             return _depths.get(rdepth);
         } else if (ref.length() > 0) {
             return _objects.get(ref);
-        } else if (element.getFirstChild() == null) {
+        } else if (!element.hasContent()) {
             return null;
         } else {
             return readValue(element, clazz);
@@ -361,8 +368,8 @@ public class XMLImporter extends Importer
     protected int countEntries ()
     {
         int count = 0;
-        for (Node node = _element.getFirstChild(); node != null; node = node.getNextSibling()) {
-            if (node instanceof Element && node.getNodeName().equals("entry")) {
+        for (Element child : _element.getChildren()) {
+            if (child.getName().equals("entry")) {
                 count++;
             }
         }
@@ -376,9 +383,9 @@ public class XMLImporter extends Importer
         throws IOException
     {
         int idx = 0;
-        for (Node node = _element.getFirstChild(); node != null; node = node.getNextSibling()) {
-            if (node instanceof Element && node.getNodeName().equals("entry")) {
-                array[idx++] = read((Element)node, cclazz);
+        for (Element child : _element.getChildren()) {
+            if (child.getName().equals("entry")) {
+                array[idx++] = read(child, cclazz);
             }
         }
     }
@@ -391,9 +398,9 @@ public class XMLImporter extends Importer
     protected Collection<Object> readEntries (Collection<Object> collection)
         throws IOException
     {
-        for (Node node = _element.getFirstChild(); node != null; node = node.getNextSibling()) {
-            if (node instanceof Element && node.getNodeName().equals("entry")) {
-                collection.add(read((Element)node, Object.class));
+        for (Element child : _element.getChildren()) {
+            if (child.getName().equals("entry")) {
+                collection.add(read(child, Object.class));
             }
         }
         return collection;
@@ -407,12 +414,13 @@ public class XMLImporter extends Importer
     protected Map<Object, Object> readEntries (Map<Object, Object> map)
         throws IOException
     {
-        for (Node node = _element.getFirstChild(); node != null; node = node.getNextSibling()) {
-            if (node instanceof Element && node.getNodeName().equals("key")) {
-                Object key = read((Element)node, Object.class);
-                for (node = node.getNextSibling(); node != null; node = node.getNextSibling()) {
-                    if (node instanceof Element && node.getNodeName().equals("value")) {
-                        map.put(key, read((Element)node, Object.class));
+        Element[] children = _element.getChildren();
+        for (int ii = 0; ii < children.length; ii++) {
+            if (children[ii].getName().equals("key")) {
+                Object key = read(children[ii], Object.class);
+                for (ii++; ii < children.length; ii++) {
+                    if (children[ii].getName().equals("value")) {
+                        map.put(key, read(children[ii], Object.class));
                         break;
                     }
                 }
@@ -426,41 +434,316 @@ public class XMLImporter extends Importer
      */
     protected String getValue (String name)
     {
-        Element child = findElement(_element.getFirstChild(), name);
-        if (child == null) {
-            return null;
-        }
-        for (Node node = child.getFirstChild(); node != null; node = node.getNextSibling()) {
-            if (node instanceof Text) {
-                return node.getNodeValue();
+        Element child = _element.getChild(name);
+        return (child == null) ? null : child.getText();
+    }
+
+    /**
+     * Advances the reader to the next child of the top-level element with the given name
+     * (skipping any others) and reads its entire subtree.
+     *
+     * @return the element read, or <code>null</code> if there are no more such children.
+     */
+    protected Element readElement (String name)
+        throws XMLStreamException
+    {
+        while (_reader.hasNext()) {
+            int event = _reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT ||
+                    event == XMLStreamConstants.END_DOCUMENT) {
+                return null; // end of the top-level element
+            }
+            if (event != XMLStreamConstants.START_ELEMENT) {
+                continue;
             }
+            if (_reader.getLocalName().equals(name)) {
+                return readSubtree();
+            }
+            skipSubtree();
         }
         return null;
     }
 
     /**
-     * Finds the first element in the sibling chain with the given name.
+     * Reads the subtree rooted at the element at which the reader is positioned, leaving the
+     * reader positioned at its end.
      */
-    protected static Element findElement (Node first, String name)
+    protected Element readSubtree ()
+        throws XMLStreamException
     {
-        for (Node node = first; node != null; node = node.getNextSibling()) {
-            if (node instanceof Element && node.getNodeName().equals(name)) {
-                return (Element)node;
+        Element element = new Element(intern(_reader.getLocalName()), readAttributes());
+        ArrayList<Element> children = null;
+        StringBuilder text = null;
+        boolean content = false;
+        while (true) {
+            switch (_reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    if (children == null) {
+                        children = Lists.newArrayList();
+                    }
+                    children.add(readSubtree());
+                    content = true;
+                    break;
+
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    if (text == null) {
+                        text = new StringBuilder();
+                    }
+                    text.append(_reader.getTextCharacters(),
+                        _reader.getTextStart(), _reader.getTextLength());
+                    content = true;
+                    break;
+
+                case XMLStreamConstants.COMMENT:
+                    content = true;
+                    break;
+
+                case XMLStreamConstants.END_ELEMENT:
+                    // keep text only for leaves (and the rare element with non-whitespace
+                    // mixed content); the indentation between children is of no interest
+                    if (text != null && (children == null || !isWhitespace(text))) {
+                        element.setText(text.toString());
+                    }
+                    if (children != null) {
+                        element.setChildren(children.toArray(new Element[children.size()]));
+                    }
+                    element.setHasContent(content);
+                    return element;
             }
         }
-        return null;
+    }
+
+    /**
+     * Skips the subtree rooted at the element at which the reader is positioned.
+     */
+    protected void skipSubtree ()
+        throws XMLStreamException
+    {
+        for (int depth = 1; depth > 0; ) {
+            int event = _reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Reads the attributes of the current element as an array of alternating names and values.
+     */
+    protected String[] readAttributes ()
+    {
+        int count = _reader.getAttributeCount();
+        if (count == 0) {
+            return NO_ATTRIBUTES;
+        }
+        String[] attributes = new String[count * 2];
+        for (int ii = 0; ii < count; ii++) {
+            String name = intern(_reader.getAttributeLocalName(ii));
+            String value = _reader.getAttributeValue(ii);
+            attributes[ii * 2] = name;
+            attributes[ii * 2 + 1] = name.equals("class") ? intern(value) : value;
+        }
+        return attributes;
+    }
+
+    /**
+     * Returns the canonical instance of the given string, so that the many elements sharing
+     * (say) a field name also share a single copy of it.
+     */
+    protected String intern (String string)
+    {
+        String canonical = _strings.get(string);
+        if (canonical == null) {
+            _strings.put(string, canonical = string);
+        }
+        return canonical;
+    }
+
+    /**
+     * Returns the value of the named attribute of the reader's current element, or the empty
+     * string if it has no such attribute.
+     */
+    protected static String getAttribute (XMLStreamReader reader, String name)
+    {
+        String value = reader.getAttributeValue(null, name);
+        return (value == null) ? "" : value;
+    }
+
+    /**
+     * Checks whether the supplied text consists entirely of whitespace.
+     */
+    protected static boolean isWhitespace (CharSequence text)
+    {
+        for (int ii = 0, nn = text.length(); ii < nn; ii++) {
+            if (!Character.isWhitespace(text.charAt(ii))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A compact, read-only representation of a parsed element.
+     */
+    protected static class Element
+    {
+        /**
+         * Creates a new element.
+         */
+        public Element (String name, String[] attributes)
+        {
+            _name = name;
+            _attributes = attributes;
+        }
+
+        /**
+         * Returns the name of the element.
+         */
+        public String getName ()
+        {
+            return _name;
+        }
+
+        /**
+         * Returns the value of the named attribute, or the empty string if the element has no
+         * such attribute.
+         */
+        public String getAttribute (String name)
+        {
+            for (int ii = 0; ii < _attributes.length; ii += 2) {
+                if (_attributes[ii].equals(name)) {
+                    return _attributes[ii + 1];
+                }
+            }
+            return "";
+        }
+
+        /**
+         * Returns the child elements of this element.
+         */
+        public Element[] getChildren ()
+        {
+            return _children;
+        }
+
+        /**
+         * Finds the first child element with the given name.
+         */
+        public Element getChild (String name)
+        {
+            for (Element child : _children) {
+                if (child.getName().equals(name)) {
+                    return child;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Returns the text immediately contained in the element, or <code>null</code> for none.
+         */
+        public String getText ()
+        {
+            return _text;
+        }
+
+        /**
+         * Returns the text contained in the element and all of its descendants.
+         */
+        public String getTextContent ()
+        {
+            if (_children.length == 0) {
+                return (_text == null) ? "" : _text;
+            }
+            StringBuilder buf = new StringBuilder();
+            appendTextContent(buf);
+            return buf.toString();
+        }
+
+        /**
+         * Checks whether the element has any content (text, comments, or children).
+         */
+        public boolean hasContent ()
+        {
+            return _hasContent;
+        }
+
+        /**
+         * Sets the text immediately contained in the element.
+         */
+        public void setText (String text)
+        {
+            _text = text;
+        }
+
+        /**
+         * Sets the children of the element.
+         */
+        public void setChildren (Element[] children)
+        {
+            _children = children;
+        }
+
+        /**
+         * Sets whether or not the element has any content.
+         */
+        public void setHasContent (boolean hasContent)
+        {
+            _hasContent = hasContent;
+        }
+
+        /**
+         * Appends the text contained in this element and its descendants to the supplied buffer.
+         */
+        protected void appendTextContent (StringBuilder buf)
+        {
+            if (_text != null) {
+                buf.append(_text);
+            }
+            for (Element child : _children) {
+                child.appendTextContent(buf);
+            }
+        }
+
+        /** The name of the element. */
+        protected String _name;
+
+        /** The attributes of the element, as alternating names and values. */
+        protected String[] _attributes;
+
+        /** The child elements. */
+        protected Element[] _children = NO_CHILDREN;
+
+        /** The immediately contained text, if any. */
+        protected String _text;
+
+        /** Whether or not the element has any content. */
+        protected boolean _hasContent;
     }
 
     /** The source stream. */
     protected InputStream _in;
 
-    /** The parsed XML document. */
-    protected Document _document;
+    /** The reader streaming through the document. */
+    protected XMLStreamReader _reader;
 
     /** The element associated with the current object. */
     protected Element _element;
 
+    /** Canonical instances of element and attribute names and class names. */
+    protected HashMap<String, String> _strings = new HashMap<String, String>();
+
     /** Mappings from ids to referenced objects. */
     protected HashMap<String, Object> _objects = new HashMap<String, Object>();
     protected HashMap<String, Object> _depths = new HashMap<String, Object>();
+
+    /** Shared by elements without attributes. */
+    protected static final String[] NO_ATTRIBUTES = new String[0];
+
+    /** Shared by elements without children. */
+    protected static final Element[] NO_CHILDREN = new Element[0];
 }
@@ -0,0 +1,168 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.export.tools;
+
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+import com.threerings.export.BinaryExporter;
+import com.threerings.export.BinaryImporter;
+import com.threerings.export.Importer;
+import com.threerings.export.XMLImporter;
+
+/**
+ * Measures the time taken and garbage collection activity incurred by repeatedly exporting the
+ * contents of export files with {@link BinaryExporter}.
+ */
+public class BinaryExportBenchmark
+{
+    /**
+     * Program entry point.
+     */
+    public static void main (String[] args)
+        throws Exception
+    {
+        if (args.length == 0) {
+            System.err.println("Usage: BinaryExportBenchmark <export file> [<export file> ...]");
+            System.exit(1);
+        }
+        for (String file : args) {
+            List<Object> objects = readObjects(file);
+            for (int ii = 0; ii < WARMUP_RUNS; ii++) {
+                exportObjects(objects);
+            }
+            System.gc();
+            long collections = getCollectionCount(), gctime = getCollectionTime();
+            long start = System.nanoTime(), bytes = 0L;
+            for (int ii = 0; ii < MEASURED_RUNS; ii++) {
+                bytes = exportObjects(objects);
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.println(file + ": " + objects.size() + " object(s), " + bytes + " bytes");
+            System.out.println("  " + (elapsed / MEASURED_RUNS / 1000000L) + " ms per export, " +
+                (getCollectionCount() - collections) + " collection(s) taking " +
+                (getCollectionTime() - gctime) + " ms over " + MEASURED_RUNS + " exports");
+        }
+    }
+
+    /**
+     * Reads all of the objects in the specified (XML or binary) export file.
+     */
+    protected static List<Object> readObjects (String file)
+        throws IOException
+    {
+        FileInputStream fin = new FileInputStream(file);
+        Importer in = file.endsWith(".xml") ? new XMLImporter(fin) : new BinaryImporter(fin);
+        List<Object> objects = Lists.newArrayList();
+        try {
+            while (true) {
+                objects.add(in.readObject());
+            }
+        } catch (EOFException e) {
+            // no problem
+        } finally {
+            in.close();
+        }
+        return objects;
+    }
+
+    /**
+     * Exports the supplied objects (uncompressed) to a stream that discards its input.
+     *
+     * @return the number of bytes written.
+     */
+    protected static long exportObjects (List<Object> objects)
+        throws IOException
+    {
+        CountingOutputStream out = new CountingOutputStream();
+        BinaryExporter exporter = new BinaryExporter(out, false);
+        for (Object object : objects) {
+            exporter.writeObject(object);
+        }
+        exporter.close();
+        return out.count;
+    }
+
+    /**
+     * Returns the total number of collections performed by the garbage collectors.
+     */
+    protected static long getCollectionCount ()
+    {
+        long count = 0L;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(bean.getCollectionCount(), 0L);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the total time spent by the garbage collectors, in milliseconds.
+     */
+    protected static long getCollectionTime ()
+    {
+        long time = 0L;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(bean.getCollectionTime(), 0L);
+        }
+        return time;
+    }
+
+    /**
+     * Discards its input, counting the bytes written.
+     */
+    protected static class CountingOutputStream extends OutputStream
+    {
+        /** The number of bytes written. */
+        public long count;
+
+        @Override
+        public void write (int b)
+        {
+            count++;
+        }
+
+        @Override
+        public void write (byte[] b, int off, int len)
+        {
+            count += len;
+        }
+    }
+
+    /** The number of untimed runs with which to warm up the JVM. */
+    protected static final int WARMUP_RUNS = 3;
+
+    /** The number of timed runs over which to average. */
+    protected static final int MEASURED_RUNS = 10;
+}
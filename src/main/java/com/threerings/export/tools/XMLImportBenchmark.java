@@ -0,0 +1,147 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.export.tools;
+
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+import com.threerings.export.Importer;
+import com.threerings.export.XMLImporter;
+
+/**
+ * Compares the time and peak heap usage of importing XML export files with the streaming
+ * {@link XMLImporter} against those of importing them with the {@link DOMXMLImporter}, which
+ * parses each file into a DOM document first.
+ */
+public class XMLImportBenchmark
+{
+    /**
+     * Program entry point.
+     */
+    public static void main (String[] args)
+        throws Exception
+    {
+        if (args.length == 0) {
+            System.err.println("Usage: XMLImportBenchmark <xml file> [<xml file> ...]");
+            System.exit(1);
+        }
+        for (String file : args) {
+            // warm up, then measure
+            for (int ii = 0; ii < WARMUP_RUNS; ii++) {
+                importObjects(file, true);
+                importObjects(file, false);
+            }
+            long dtime = 0L, dpeak = 0L, itime = 0L, ipeak = 0L;
+            for (int ii = 0; ii < MEASURED_RUNS; ii++) {
+                resetPeaks();
+                long start = System.nanoTime();
+                int dcount = importObjects(file, true);
+                dtime += System.nanoTime() - start;
+                dpeak = Math.max(dpeak, getPeakHeap());
+
+                resetPeaks();
+                start = System.nanoTime();
+                int count = importObjects(file, false);
+                itime += System.nanoTime() - start;
+                ipeak = Math.max(ipeak, getPeakHeap());
+                if (ii == 0) {
+                    System.out.println(file + ": " + count + " object(s)");
+                    if (dcount != count) {
+                        System.out.println("  DOM import read " + dcount + " object(s)!");
+                    }
+                }
+            }
+            System.out.println("  DOM import:       " + (dtime / MEASURED_RUNS / 1000000L) +
+                " ms, " + (dpeak / 1024L / 1024L) + " MB peak heap");
+            System.out.println("  Streaming import: " + (itime / MEASURED_RUNS / 1000000L) +
+                " ms, " + (ipeak / 1024L / 1024L) + " MB peak heap");
+        }
+    }
+
+    /**
+     * Imports all of the objects in the specified file.
+     *
+     * @param dom if true, use the DOM importer; otherwise, the streaming one.
+     * @return the number of objects imported.
+     */
+    protected static int importObjects (String file, boolean dom)
+        throws IOException
+    {
+        InputStream fin = new FileInputStream(file);
+        Importer in = dom ? new DOMXMLImporter(fin) : new XMLImporter(fin);
+        int count = 0;
+        try {
+            while (true) {
+                in.readObject();
+                count++;
+            }
+        } catch (EOFException e) {
+            // no problem
+        } finally {
+            in.close();
+        }
+        return count;
+    }
+
+    /**
+     * Collects garbage and resets the peak usage of the heap memory pools.
+     */
+    protected static void resetPeaks ()
+    {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * Returns the sum of the peak usages of the heap memory pools since they were last reset.
+     */
+    protected static long getPeakHeap ()
+    {
+        long peak = 0L;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    /** The number of untimed runs with which to warm up the JVM. */
+    protected static final int WARMUP_RUNS = 2;
+
+    /** The number of timed runs over which to average. */
+    protected static final int MEASURED_RUNS = 5;
+}
@@ -110,7 +110,9 @@ import com.threerings.tudey.shape.ShapeElement;
 import com.threerings.tudey.space.HashSpace;
 import com.threerings.tudey.space.SpaceElement;
 import com.threerings.tudey.util.ActorAdvancer;
+import com.threerings.tudey.util.ActorHistory;
 import com.threerings.tudey.util.Coord;
+import com.threerings.tudey.util.PersistentIntMap;
 import com.threerings.tudey.util.TruncatedAverage;
 import com.threerings.tudey.util.TudeyContext;
 import com.threerings.tudey.util.TudeySceneMetrics;
@@ -230,7 +232,7 @@ public class TudeySceneView extends DynamicScope
 
         // insert the baseline (empty) update record
         _records.add(new UpdateRecord(
-            0, RunAnywhere.currentTimeMillis(), new HashIntMap<Actor>()));
+            0, RunAnywhere.currentTimeMillis(), PersistentIntMap.<Actor>empty()));
     }
 
     /**
@@ -368,6 +370,37 @@ public class TudeySceneView extends DynamicScope
         return _tickerCount;
     }
 
+    /**
+     * Returns the total number of entries in the histories of the actor sprites.
+     */
+    public int getHistoryEntryCount ()
+    {
+        int count = 0;
+        for (ActorSprite sprite : _actorSprites.values()) {
+            ActorHistory history = sprite.getHistory();
+            if (history != null) {
+                count += history.getEntryCount();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the total capacity (the number of allocated entries) of the histories of the
+     * actor sprites.
+     */
+    public int getHistoryCapacity ()
+    {
+        int capacity = 0;
+        for (ActorSprite sprite : _actorSprites.values()) {
+            ActorHistory history = sprite.getHistory();
+            if (history != null) {
+                capacity += history.getCapacity();
+            }
+        }
+        return capacity;
+    }
+
     public void dumpTickers ()
     {
         _dumpTickers = true;
@@ -757,19 +790,18 @@ public class TudeySceneView extends DynamicScope
         if (!pruneRecords(event.getReference())) {
             return false;
         }
-        HashIntMap<Actor> oactors = _records.get(0).getActors();
-        HashIntMap<Actor> actors = new HashIntMap<Actor>();
+        // start with all the old actors; the new version shares all unchanged entries with the
+        // reference version, so deriving it costs time proportional to the number of changes
+        PersistentIntMap<Actor> actors = _records.get(0).getActors();
         Set<Integer> uids = Sets.newHashSet();
 
-        // start with all the old actors
-        actors.putAll(oactors);
-
         // add any new actors
         Actor[] added = event.getAddedActors();
         if (added != null) {
             for (Actor actor : added) {
                 actor.init(_ctx.getConfigManager());
-                Actor oactor = actors.put(actor.getId(), actor);
+                Actor oactor = actors.get(actor.getId());
+                actors = actors.put(actor.getId(), actor);
                 uids.add(actor.getId());
                 if (oactor != null) {
                     log.warning("Replacing existing actor.", "oactor", oactor, "nactor", actor);
@@ -786,7 +818,7 @@ public class TudeySceneView extends DynamicScope
                 if (oactor != null) {
                     Actor nactor = (Actor)delta.apply(oactor);
                     nactor.init(_ctx.getConfigManager());
-                    actors.put(id, nactor);
+                    actors = actors.put(id, nactor);
                     uids.add(id);
                 } else {
                     log.warning("Missing actor for delta.", "delta", delta);
@@ -798,7 +830,7 @@ public class TudeySceneView extends DynamicScope
         int[] removed = event.getRemovedActorIds();
         if (removed != null) {
             for (int id : removed) {
-                actors.remove(id);
+                actors = actors.remove(id);
             }
         }
 
@@ -1475,7 +1507,7 @@ public class TudeySceneView extends DynamicScope
         if (_loadingActors != null && _loadingActors.isEmpty()) {
             return 1f;
         }
-        HashIntMap<Actor> actors = _records.get(_records.size() - 1).getActors();
+        PersistentIntMap<Actor> actors = _records.get(_records.size() - 1).getActors();
         if (_loadingActors == null) {
             _loadingActors = Lists.newArrayList(actors.values());
         }
@@ -1678,7 +1710,7 @@ public class TudeySceneView extends DynamicScope
         /**
          * Creates a new update record.
          */
-        public UpdateRecord (int timestamp, long received, HashIntMap<Actor> actors)
+        public UpdateRecord (int timestamp, long received, PersistentIntMap<Actor> actors)
         {
             _timestamp = timestamp;
             _received = received;
@@ -1704,7 +1736,7 @@ public class TudeySceneView extends DynamicScope
         /**
          * Returns the map of actors.
          */
-        public HashIntMap<Actor> getActors ()
+        public PersistentIntMap<Actor> getActors ()
         {
             return _actors;
         }
@@ -1716,7 +1748,7 @@ public class TudeySceneView extends DynamicScope
         protected long _received;
 
         /** The states of the actors. */
-        protected HashIntMap<Actor> _actors;
+        protected PersistentIntMap<Actor> _actors;
     }
 
     /**
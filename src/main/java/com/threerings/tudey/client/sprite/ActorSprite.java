@@ -975,7 +975,7 @@ public class ActorSprite extends Sprite
         // create the advancer if the actor is client-controlled; otherwise, the history
         _actor = (Actor)actor.clone();
         if ((_advancer = _actor.maybeCreateAdvancer(ctx, view, timestamp)) == null) {
-            _history = new ActorHistory(timestamp, actor, view.getBufferDelay() * 4);
+            _history = createHistory(timestamp, actor);
         }
 
         // create the model and the shape
@@ -1019,7 +1019,7 @@ public class ActorSprite extends Sprite
             }
         } else {
             if (_history == null) {
-                _history = new ActorHistory(timestamp, actor, _view.getBufferDelay() * 4);
+                _history = createHistory(timestamp, actor);
                 _advancer = null;
             } else {
                 _history.init(timestamp, actor);
@@ -1028,6 +1028,15 @@ public class ActorSprite extends Sprite
         updateActor();
     }
 
+    /**
+     * Returns a reference to the history used to interpolate the state, if this actor is not
+     * controlled by the client.
+     */
+    public ActorHistory getHistory ()
+    {
+        return _history;
+    }
+
     /**
      * Returns a reference to the advancer used to advance the state, if this is actor is
      * controlled by the client.
@@ -1390,6 +1399,17 @@ public class ActorSprite extends Sprite
         _disposed = true;
     }
 
+    /**
+     * Creates the history used to interpolate the actor's state, sizing its buffer to hold the
+     * updates expected over its duration.
+     */
+    protected ActorHistory createHistory (int timestamp, Actor actor)
+    {
+        int duration = _view.getBufferDelay() * 4;
+        int capacity = duration / Math.max(_view.getElapsed(), 1) + 2;
+        return new ActorHistory(timestamp, actor, duration, capacity);
+    }
+
     /**
      * Brings the state of the actor up-to-date with the current time.
      */
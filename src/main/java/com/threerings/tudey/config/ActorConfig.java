@@ -125,6 +125,11 @@ public class ActorConfig extends ParameterizedConfig
         @Editable(hgroup="s")
         public boolean isStatic = true;
 
+        /** Whether or not the actor stays active even when outside of all clients' areas of
+         * interest (if the scene puts such actors to sleep). */
+        @Editable(hgroup="s")
+        public boolean alwaysActive;
+
         /** Whether or not the actor should be used as a default entrance. */
         @Editable(hgroup="d")
         @Strippable
@@ -296,6 +301,12 @@ public class ActorConfig extends ParameterizedConfig
         @Editable(min=0.0, scale=Math.PI/180.0)
         public float turnRate = FloatMath.PI;
 
+        /** The agent's tick rate: 1 to tick on every tick, <code>n</code> to tick on every
+         * <code>n</code>th, or 0 to tick at a rate that depends on the distance to the nearest
+         * client.  Rates other than 1 apply only if enabled in the scene manager. */
+        @Editable(min=0, max=32)
+        public int tickRate = 1;
+
         /** The agent's behavior. */
         @Editable(nullable=true)
         @Strippable
@@ -237,6 +237,11 @@ public class BehaviorConfig extends ParameterizedConfig
         @Editable(min=0.0, step=0.1, hgroup="d")
         public float maximumDistance = 5f;
 
+        /** Whether to follow a flow field shared with the other followers of the target
+         * (disregarding the other actors) rather than computing an individual path. */
+        @Editable
+        public boolean flowField;
+
         @Override
         public String getLogicClassName ()
         {
@@ -139,6 +139,11 @@ public abstract class TargetConfig extends DeepObject
         @Editable(hgroup="a")
         public boolean entries;
 
+        /** Whether or not to test actors where they were when the activating client saw them
+         * (if the activator is a pawn), compensating for the client's latency. */
+        @Editable(hgroup="a")
+        public boolean rewind;
+
         /** The region of interest. */
         @Editable
         public RegionConfig region = new RegionConfig.Default();
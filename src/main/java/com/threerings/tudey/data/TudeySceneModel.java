@@ -109,6 +109,8 @@ import com.threerings.tudey.config.PlaceableConfig;
 import com.threerings.tudey.config.SceneGlobalConfig;
 import com.threerings.tudey.config.TileConfig;
 import com.threerings.tudey.data.actor.Actor;
+import com.threerings.tudey.shape.Capsule;
+import com.threerings.tudey.shape.Circle;
 import com.threerings.tudey.shape.Compound;
 import com.threerings.tudey.shape.Point;
 import com.threerings.tudey.shape.Polygon;
@@ -2113,33 +2115,19 @@ public class TudeySceneModel extends SceneModel
                 if (!actor.canCollide(_collisionFlags.get(xx, yy))) {
                     continue;
                 }
-                float lx = xx, ly = yy, ux = lx + 1f, uy = ly + 1f;
-                _quad.getVertex(0).set(lx, ly);
-                _quad.getVertex(1).set(ux, ly);
-                _quad.getVertex(2).set(ux, uy);
-                _quad.getVertex(3).set(lx, uy);
-                _quad.getBounds().getMinimumExtent().set(lx, ly);
-                _quad.getBounds().getMaximumExtent().set(ux, uy);
-                if (_quad.intersects(shape)) {
+                if (intersectsCell(shape, xx, yy)) {
                     return true;
                 }
             }
         }
 
-        // find intersecting elements
-        _space.getIntersecting(shape, _intersecting);
+        // find intersecting elements whose flags match (checking the flags before the shapes)
+        _space.getIntersecting(shape, _collisionFilter.init(actor, 0), _intersecting);
         try {
-            for (int ii = 0, nn = _intersecting.size(); ii < nn; ii++) {
-                SpaceElement element = _intersecting.get(ii);
-                Entry entry = (Entry)element.getUserObject();
-                if (actor.canCollide(entry.getCollisionFlags(_cfgmgr))) {
-                    return true;
-                }
-            }
+            return !_intersecting.isEmpty();
         } finally {
             _intersecting.clear();
         }
-        return false;
     }
 
     /**
@@ -2164,33 +2152,19 @@ public class TudeySceneModel extends SceneModel
                 if ((_collisionFlags.get(xx, yy) & mask) == 0) {
                     continue;
                 }
-                float lx = xx, ly = yy, ux = lx + 1f, uy = ly + 1f;
-                _quad.getVertex(0).set(lx, ly);
-                _quad.getVertex(1).set(ux, ly);
-                _quad.getVertex(2).set(ux, uy);
-                _quad.getVertex(3).set(lx, uy);
-                _quad.getBounds().getMinimumExtent().set(lx, ly);
-                _quad.getBounds().getMaximumExtent().set(ux, uy);
-                if (_quad.intersects(shape)) {
+                if (intersectsCell(shape, xx, yy)) {
                     return true;
                 }
             }
         }
 
-        // find intersecting elements
-        _space.getIntersecting(shape, _intersecting);
+        // find intersecting elements whose flags match (checking the flags before the shapes)
+        _space.getIntersecting(shape, _collisionFilter.init(null, mask), _intersecting);
         try {
-            for (int ii = 0, nn = _intersecting.size(); ii < nn; ii++) {
-                SpaceElement element = _intersecting.get(ii);
-                Entry entry = (Entry)element.getUserObject();
-                if ((entry.getCollisionFlags(_cfgmgr) & mask) != 0) {
-                    return true;
-                }
-            }
+            return !_intersecting.isEmpty();
         } finally {
             _intersecting.clear();
         }
-        return false;
     }
 
     /**
@@ -2216,14 +2190,8 @@ public class TudeySceneModel extends SceneModel
                 if ((_collisionFlags.get(xx, yy) & mask) == 0) {
                     continue;
                 }
-                float lx = xx, ly = yy, ux = lx + 1f, uy = ly + 1f;
-                _quad.getVertex(0).set(lx, ly);
-                _quad.getVertex(1).set(ux, ly);
-                _quad.getVertex(2).set(ux, uy);
-                _quad.getVertex(3).set(lx, uy);
-                _quad.getBounds().getMinimumExtent().set(lx, ly);
-                _quad.getBounds().getMaximumExtent().set(ux, uy);
-                if (_quad.intersects(shape)) {
+                if (intersectsCell(shape, xx, yy)) {
+                    updateQuad(xx, yy);
                     _quad.getNearestPoint(origin, result);
                     float dist = result.distanceSquared(origin);
                     if (resultDist > dist) {
@@ -2318,6 +2286,138 @@ public class TudeySceneModel extends SceneModel
         return resultDist < length * length;
     }
 
+    /**
+     * Checks whether the specified shape intersects the tile at the given coordinates, using
+     * specialized tests for circles and capsules (the shapes of most actors and their sweeps)
+     * rather than intersecting the shape with a tile polygon.
+     */
+    protected boolean intersectsCell (Shape shape, int x, int y)
+    {
+        float lx = x, ly = y, ux = lx + 1f, uy = ly + 1f;
+        if (shape instanceof Circle) {
+            Circle circle = (Circle)shape;
+            Vector2f center = circle.getCenter();
+            return getDistanceSquared(center.x, center.y, lx, ly, ux, uy) <=
+                circle.radius*circle.radius;
+
+        } else if (shape instanceof Capsule) {
+            // if the segment doesn't cross the tile, the closest points are either the segment's
+            // endpoints or the tile's corners
+            Capsule capsule = (Capsule)shape;
+            Vector2f start = capsule.getStart(), end = capsule.getEnd();
+            float r2 = capsule.radius*capsule.radius;
+            return segmentIntersects(start, end, lx, ly, ux, uy) ||
+                getDistanceSquared(start.x, start.y, lx, ly, ux, uy) <= r2 ||
+                getDistanceSquared(end.x, end.y, lx, ly, ux, uy) <= r2 ||
+                getDistanceSquared(lx, ly, start, end) <= r2 ||
+                getDistanceSquared(ux, ly, start, end) <= r2 ||
+                getDistanceSquared(ux, uy, start, end) <= r2 ||
+                getDistanceSquared(lx, uy, start, end) <= r2;
+        }
+        updateQuad(x, y);
+        return _quad.intersects(shape);
+    }
+
+    /**
+     * Sets the tile polygon to the bounds of the tile at the specified coordinates.
+     */
+    protected void updateQuad (int x, int y)
+    {
+        float lx = x, ly = y, ux = lx + 1f, uy = ly + 1f;
+        _quad.getVertex(0).set(lx, ly);
+        _quad.getVertex(1).set(ux, ly);
+        _quad.getVertex(2).set(ux, uy);
+        _quad.getVertex(3).set(lx, uy);
+        _quad.getBounds().getMinimumExtent().set(lx, ly);
+        _quad.getBounds().getMaximumExtent().set(ux, uy);
+    }
+
+    /**
+     * Returns the squared distance between a point and a box.
+     */
+    protected static float getDistanceSquared (
+        float px, float py, float lx, float ly, float ux, float uy)
+    {
+        float dx = px - FloatMath.clamp(px, lx, ux), dy = py - FloatMath.clamp(py, ly, uy);
+        return dx*dx + dy*dy;
+    }
+
+    /**
+     * Returns the squared distance between a point and a segment.
+     */
+    protected static float getDistanceSquared (float px, float py, Vector2f start, Vector2f end)
+    {
+        float ax = end.x - start.x, ay = end.y - start.y;
+        float bx = px - start.x, by = py - start.y;
+        float length2 = ax*ax + ay*ay;
+        float t = (length2 == 0f) ? 0f : FloatMath.clamp((ax*bx + ay*by) / length2, 0f, 1f);
+        float dx = bx - ax*t, dy = by - ay*t;
+        return dx*dx + dy*dy;
+    }
+
+    /**
+     * Determines whether a segment intersects a box.
+     */
+    protected static boolean segmentIntersects (
+        Vector2f start, Vector2f end, float lx, float ly, float ux, float uy)
+    {
+        // clip the segment against the slabs
+        float dx = end.x - start.x, dy = end.y - start.y;
+        float tmin = 0f, tmax = 1f;
+        if (dx == 0f) {
+            if (start.x < lx || start.x > ux) {
+                return false;
+            }
+        } else {
+            float t1 = (lx - start.x) / dx, t2 = (ux - start.x) / dx;
+            tmin = Math.max(tmin, Math.min(t1, t2));
+            tmax = Math.min(tmax, Math.max(t1, t2));
+        }
+        if (dy == 0f) {
+            if (start.y < ly || start.y > uy) {
+                return false;
+            }
+        } else {
+            float t1 = (ly - start.y) / dy, t2 = (uy - start.y) / dy;
+            tmin = Math.max(tmin, Math.min(t1, t2));
+            tmax = Math.min(tmax, Math.max(t1, t2));
+        }
+        return tmin <= tmax;
+    }
+
+    /**
+     * Filters scene entries by their collision flags.
+     */
+    protected class CollisionFilter
+        implements Predicate<SpaceElement>
+    {
+        /**
+         * (Re)initializes the filter.
+         *
+         * @param actor the actor whose collision mask to use, or null to use the mask provided.
+         * @return a reference to the filter, for chaining.
+         */
+        public CollisionFilter init (Actor actor, int mask)
+        {
+            _actor = actor;
+            _mask = mask;
+            return this;
+        }
+
+        // documentation inherited from interface Predicate
+        public boolean apply (SpaceElement element)
+        {
+            int flags = ((Entry)element.getUserObject()).getCollisionFlags(_cfgmgr);
+            return (_actor == null) ? (flags & _mask) != 0 : _actor.canCollide(flags);
+        }
+
+        /** The actor whose mask to use, if any. */
+        protected Actor _actor;
+
+        /** The mask to use if there's no actor. */
+        protected int _mask;
+    }
+
     // documentation inherited from interface ActorAdvancer.Environment
     public TudeySceneModel getSceneModel ()
     {
@@ -2342,14 +2442,8 @@ public class TudeySceneModel extends SceneModel
                 if (!actor.canCollide(_collisionFlags.get(xx, yy))) {
                     continue;
                 }
-                float lx = xx, ly = yy, ux = lx + 1f, uy = ly + 1f;
-                _quad.getVertex(0).set(lx, ly);
-                _quad.getVertex(1).set(ux, ly);
-                _quad.getVertex(2).set(ux, uy);
-                _quad.getVertex(3).set(lx, uy);
-                _quad.getBounds().getMinimumExtent().set(lx, ly);
-                _quad.getBounds().getMaximumExtent().set(ux, uy);
-                if (_quad.intersects(shape)) {
+                if (intersectsCell(shape, xx, yy)) {
+                    updateQuad(xx, yy);
                     _quad.getPenetration(shape, _penetration);
                     if (_penetration.lengthSquared() > result.lengthSquared()) {
                         result.set(_penetration);
@@ -2358,16 +2452,13 @@ public class TudeySceneModel extends SceneModel
             }
         }
 
-        // find intersecting elements
-        _space.getIntersecting(shape, _intersecting);
+        // find intersecting elements whose flags match
+        _space.getIntersecting(shape, _collisionFilter.init(actor, 0), _intersecting);
         for (int ii = 0, nn = _intersecting.size(); ii < nn; ii++) {
             SpaceElement element = _intersecting.get(ii);
-            Entry entry = (Entry)element.getUserObject();
-            if (actor.canCollide(entry.getCollisionFlags(_cfgmgr))) {
-                ((ShapeElement)element).getWorldShape().getPenetration(shape, _penetration);
-                if (_penetration.lengthSquared() > result.lengthSquared()) {
-                    result.set(_penetration);
-                }
+            ((ShapeElement)element).getWorldShape().getPenetration(shape, _penetration);
+            if (_penetration.lengthSquared() > result.lengthSquared()) {
+                result.set(_penetration);
             }
         }
         _intersecting.clear();
@@ -3027,6 +3118,10 @@ public class TudeySceneModel extends SceneModel
     @DeepOmit
     protected transient ArrayList<SpaceElement> _intersecting = Lists.newArrayList();
 
+    /** Filters elements by their collision flags. */
+    @DeepOmit
+    protected transient CollisionFilter _collisionFilter = new CollisionFilter();
+
     /** Stores penetration vector during queries. */
     @DeepOmit
     protected transient Vector2f _penetration = new Vector2f();
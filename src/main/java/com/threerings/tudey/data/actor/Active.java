@@ -26,10 +26,13 @@
 package com.threerings.tudey.data.actor;
 
 import com.threerings.config.ConfigReference;
+import com.threerings.delta.DeltaValues;
 import com.threerings.math.Vector2f;
 import com.threerings.util.DeepOmit;
 
 import com.threerings.tudey.config.ActorConfig;
+import com.threerings.tudey.dobj.Compact;
+import com.threerings.tudey.dobj.CompactEncoding.FieldType;
 import com.threerings.tudey.util.ActiveAdvancer;
 import com.threerings.tudey.util.ActorAdvancer;
 
@@ -123,6 +126,24 @@ public class Active extends Mobile
         return new ActiveAdvancer(environment, this, timestamp);
     }
 
+    @Override
+    public void populateDelta (Object revised, DeltaValues values)
+    {
+        super.populateDelta(revised, values);
+        Active ractive = (Active)revised;
+        values.compare(_activity, ractive._activity);
+        values.compare(_activityStarted, ractive._activityStarted);
+    }
+
+    @Override
+    public void applyDelta (Object revised, DeltaValues values)
+    {
+        super.applyDelta(revised, values);
+        Active ractive = (Active)revised;
+        ractive._activity = values.apply(_activity);
+        ractive._activityStarted = values.apply(_activityStarted);
+    }
+
     @Override
     public Object copy (Object dest)
     {
@@ -158,5 +179,6 @@ public class Active extends Mobile
 
     /** The time at which the current activity started. */
     @DeepOmit
+    @Compact(FieldType.TIMESTAMP)
     protected int _activityStarted;
 }
@@ -29,8 +29,9 @@ import com.threerings.io.Streamable;
 
 import com.threerings.config.ConfigManager;
 import com.threerings.config.ConfigReference;
+import com.threerings.delta.CodedDeltable;
 import com.threerings.delta.DeltaFinal;
-import com.threerings.delta.Deltable;
+import com.threerings.delta.DeltaValues;
 import com.threerings.math.FloatMath;
 import com.threerings.math.Vector2f;
 import com.threerings.util.DeepObject;
@@ -41,6 +42,8 @@ import com.threerings.opengl.util.PreloadableSet;
 
 import com.threerings.tudey.client.TudeySceneView;
 import com.threerings.tudey.config.ActorConfig;
+import com.threerings.tudey.dobj.Compact;
+import com.threerings.tudey.dobj.CompactEncoding.FieldType;
 import com.threerings.tudey.util.ActorAdvancer;
 import com.threerings.tudey.util.TudeyContext;
 
@@ -48,7 +51,7 @@ import com.threerings.tudey.util.TudeyContext;
  * Represents an active, stateful element of the scene.
  */
 public class Actor extends DeepObject
-    implements Streamable, Deltable
+    implements Streamable, CodedDeltable
 {
     /** A flag indicating that the actor has changed its position in a discontinuous fashion. */
     public static final int WARP = (1 << 0);
@@ -360,6 +363,31 @@ public class Actor extends DeepObject
         return _dirty;
     }
 
+    // documentation inherited from interface CodedDeltable
+    public void populateDelta (Object revised, DeltaValues values)
+    {
+        // as with copy, we handle the fields manually to avoid the cost of reflection
+        Actor ractor = (Actor)revised;
+        values.compare(_config, ractor._config);
+        values.compare(_destroyed, ractor._destroyed);
+        values.compare(_translation, ractor._translation);
+        values.compare(_rotation, ractor._rotation);
+        values.compare(_flags, ractor._flags);
+    }
+
+    // documentation inherited from interface CodedDeltable
+    public void applyDelta (Object revised, DeltaValues values)
+    {
+        Actor ractor = (Actor)revised;
+        ractor._config = values.apply(_config);
+        ractor._id = _id;
+        ractor._created = _created;
+        ractor._destroyed = values.apply(_destroyed);
+        ractor._translation = values.apply(_translation);
+        ractor._rotation = values.apply(_rotation);
+        ractor._flags = values.apply(_flags);
+    }
+
     @Override
     public Object copy (Object dest)
     {
@@ -432,18 +460,22 @@ public class Actor extends DeepObject
 
     /** The timestamp at which the actor was destroyed. */
     @DeepOmit
+    @Compact(FieldType.TIMESTAMP)
     protected int _destroyed = Integer.MAX_VALUE;
 
     /** The actor's translation. */
     @DeepOmit
+    @Compact(FieldType.TRANSLATION)
     protected Vector2f _translation = new Vector2f();
 
     /** The actor's rotation angle. */
     @DeepOmit
+    @Compact(FieldType.ROTATION)
     protected float _rotation;
 
     /** Various flags. */
     @DeepOmit
+    @Compact(FieldType.FLAGS)
     protected int _flags;
 
     /** The cached config implementation. */
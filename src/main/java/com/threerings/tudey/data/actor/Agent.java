@@ -26,6 +26,7 @@
 package com.threerings.tudey.data.actor;
 
 import com.threerings.config.ConfigReference;
+import com.threerings.delta.DeltaValues;
 import com.threerings.math.Vector2f;
 
 import com.threerings.tudey.config.ActorConfig;
@@ -96,6 +97,20 @@ public class Agent extends Active
         return ((ActorConfig.Agent)_original).turnRate;
     }
 
+    @Override
+    public void populateDelta (Object revised, DeltaValues values)
+    {
+        super.populateDelta(revised, values);
+        values.compare(_speed, ((Agent)revised)._speed);
+    }
+
+    @Override
+    public void applyDelta (Object revised, DeltaValues values)
+    {
+        super.applyDelta(revised, values);
+        ((Agent)revised)._speed = values.apply(_speed);
+    }
+
     /** The agent speed. */
     protected float _speed;
 }
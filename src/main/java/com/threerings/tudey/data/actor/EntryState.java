@@ -26,9 +26,12 @@
 package com.threerings.tudey.data.actor;
 
 import com.threerings.config.ConfigReference;
+import com.threerings.delta.DeltaValues;
 import com.threerings.math.Vector2f;
 
 import com.threerings.tudey.config.ActorConfig;
+import com.threerings.tudey.dobj.Compact;
+import com.threerings.tudey.dobj.CompactEncoding.FieldType;
 
 /**
  * An actor that represents the state of an entry.  Entries themselves cannot have dynamic state
@@ -98,6 +101,26 @@ public class EntryState extends Actor
         return _stateEntered;
     }
 
+    @Override
+    public void populateDelta (Object revised, DeltaValues values)
+    {
+        super.populateDelta(revised, values);
+        EntryState rstate = (EntryState)revised;
+        values.compare(_key, rstate._key);
+        values.compare(_state, rstate._state);
+        values.compare(_stateEntered, rstate._stateEntered);
+    }
+
+    @Override
+    public void applyDelta (Object revised, DeltaValues values)
+    {
+        super.applyDelta(revised, values);
+        EntryState rstate = (EntryState)revised;
+        rstate._key = values.apply(_key);
+        rstate._state = values.apply(_state);
+        rstate._stateEntered = values.apply(_stateEntered);
+    }
+
     /** The key identifying the entry to which this actor corresponds. */
     protected Object _key;
 
@@ -105,5 +128,6 @@ public class EntryState extends Actor
     protected int _state;
 
     /** The time at which the entry entered its current state. */
+    @Compact(FieldType.TIMESTAMP)
     protected int _stateEntered;
 }
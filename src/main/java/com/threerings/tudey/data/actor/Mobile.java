@@ -28,11 +28,14 @@ package com.threerings.tudey.data.actor;
 import com.samskivert.util.ArrayUtil;
 
 import com.threerings.config.ConfigReference;
+import com.threerings.delta.DeltaValues;
 import com.threerings.math.FloatMath;
 import com.threerings.math.Vector2f;
 import com.threerings.util.DeepOmit;
 
 import com.threerings.tudey.config.ActorConfig;
+import com.threerings.tudey.dobj.Compact;
+import com.threerings.tudey.dobj.CompactEncoding.FieldType;
 import com.threerings.tudey.util.ActorAdvancer;
 import com.threerings.tudey.util.DirectionUtil;
 import com.threerings.tudey.util.MobileAdvancer;
@@ -170,6 +173,24 @@ public class Mobile extends Actor
         return new MobileAdvancer(environment, this, timestamp);
     }
 
+    @Override
+    public void populateDelta (Object revised, DeltaValues values)
+    {
+        super.populateDelta(revised, values);
+        Mobile rmobile = (Mobile)revised;
+        values.compare(_maxStep, rmobile._maxStep);
+        values.compare(_direction, rmobile._direction);
+    }
+
+    @Override
+    public void applyDelta (Object revised, DeltaValues values)
+    {
+        super.applyDelta(revised, values);
+        Mobile rmobile = (Mobile)revised;
+        rmobile._maxStep = values.apply(_maxStep);
+        rmobile._direction = values.apply(_direction);
+    }
+
     @Override
     public Object copy (Object dest)
     {
@@ -201,5 +222,6 @@ public class Mobile extends Actor
 
     /** The direction of motion. */
     @DeepOmit
+    @Compact(FieldType.ROTATION)
     protected float _direction;
 }
@@ -32,8 +32,10 @@ import com.threerings.io.ObjectOutputStream;
 
 import com.threerings.delta.Delta;
 import com.threerings.delta.ReflectiveDelta;
+import com.threerings.math.Vector2f;
 
 import com.threerings.tudey.data.actor.Actor;
+import com.threerings.tudey.dobj.CompactEncoding.FieldType;
 
 /**
  * Extends {@link ReflectiveDelta} to include the id of the affected actor.  Declared final for
@@ -78,12 +80,44 @@ public final class ActorDelta extends ReflectiveDelta
         return merged;
     }
 
+    /**
+     * Encodes the body of the delta (everything but the id and class reference) in the form in
+     * which it will be streamed, so that it may be written to any number of client streams
+     * without being encoded again.
+     *
+     * @param encoding the compact encoding with which the delta will be streamed, or
+     * <code>null</code> to stream it normally.
+     * @param timestamp the timestamp of the containing event.
+     * @return the length in bytes of the raw portion of the encoded body.
+     */
+    public int encode (CompactEncoding encoding, int timestamp)
+        throws IOException
+    {
+        EncodedDelta.Recorder recorder = EncodedDelta.createRecorder();
+        writeBody(encoding, timestamp, recorder);
+        EncodedDelta encoded = recorder.finish(encoding, timestamp);
+        _encoded = encoded;
+        return encoded.getLength();
+    }
+
+    /**
+     * Returns the length in bytes of the raw portion of the body as encoded for the specified
+     * encoding and timestamp, or -1 if it hasn't been so encoded.
+     */
+    public int getEncodedLength (CompactEncoding encoding, int timestamp)
+    {
+        EncodedDelta encoded = _encoded;
+        return (encoded != null && encoded.matches(encoding, timestamp)) ?
+            encoded.getLength() : -1;
+    }
+
     @Override
     public void writeObject (ObjectOutputStream out)
         throws IOException
     {
         out.writeInt(_id);
-        super.writeObject(out);
+        _classStreamer.writeObject(_clazz, out, true);
+        writeBody(null, 0, out);
     }
 
     @Override
@@ -94,6 +128,109 @@ public final class ActorDelta extends ReflectiveDelta
         super.readObject(in);
     }
 
+    /**
+     * Writes the delta using the specified compact encoding.
+     *
+     * @param timestamp the timestamp of the containing event, relative to which timestamp fields
+     * are written.
+     */
+    public void writeCompact (CompactEncoding encoding, int timestamp, ObjectOutputStream out)
+        throws IOException
+    {
+        CompactEncoding.writeVarInt(_id, out);
+        _classStreamer.writeObject(_clazz, out, true);
+        writeBody(encoding, timestamp, out);
+    }
+
+    /**
+     * Reads a delta written by {@link #writeCompact}.
+     */
+    public void readCompact (CompactEncoding encoding, int timestamp, ObjectInputStream in)
+        throws IOException, ClassNotFoundException
+    {
+        _id = CompactEncoding.readVarInt(in);
+        _clazz = (Class<?>)_classStreamer.createObject(in);
+        initMask();
+        _mask.readFrom(in);
+        if (_coded == null) {
+            readValues(in);
+            return;
+        }
+        ClassMapping cmap = getClassMapping(_clazz);
+        int[] kinds = cmap.getKinds();
+        FieldType[] types = CompactEncoding.getFieldTypes(_clazz, cmap.getMaskFields());
+        for (int ii = 0; ii < kinds.length; ii++) {
+            if (!_mask.isSet(ii)) {
+                continue;
+            }
+            switch (types[ii]) {
+                case TRANSLATION:
+                    _coded.setObject(ii, encoding.readTranslation(in));
+                    break;
+                case ROTATION:
+                    _coded.setPrimitive(ii, Float.floatToRawIntBits(encoding.readRotation(in)));
+                    break;
+                case TIMESTAMP:
+                    _coded.setPrimitive(ii, CompactEncoding.readVarInt(in) + timestamp);
+                    break;
+                case FLAGS:
+                    _coded.setPrimitive(ii, CompactEncoding.readUnsignedVarInt(in));
+                    break;
+                default:
+                    _coded.readValue(ii, kinds[ii], in);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Writes the body of the delta (the mask and the changed values), using the pre-encoded
+     * form if it was encoded for the specified encoding and timestamp.
+     */
+    protected void writeBody (CompactEncoding encoding, int timestamp, ObjectOutputStream out)
+        throws IOException
+    {
+        EncodedDelta encoded = _encoded;
+        if (encoded != null && encoded.matches(encoding, timestamp)) {
+            encoded.writeTo(out);
+            return;
+        }
+        _mask.writeTo(out);
+        if (encoding == null || _coded == null) {
+            writeValues(out);
+            return;
+        }
+        ClassMapping cmap = getClassMapping(_clazz);
+        int[] kinds = cmap.getKinds();
+        FieldType[] types = CompactEncoding.getFieldTypes(_clazz, cmap.getMaskFields());
+        for (int ii = 0; ii < kinds.length; ii++) {
+            if (!_mask.isSet(ii)) {
+                continue;
+            }
+            switch (types[ii]) {
+                case TRANSLATION:
+                    encoding.writeTranslation((Vector2f)_coded.getObject(ii), out);
+                    break;
+                case ROTATION:
+                    encoding.writeRotation(
+                        Float.intBitsToFloat((int)_coded.getPrimitive(ii)), out);
+                    break;
+                case TIMESTAMP:
+                    CompactEncoding.writeVarInt((int)_coded.getPrimitive(ii) - timestamp, out);
+                    break;
+                case FLAGS:
+                    CompactEncoding.writeUnsignedVarInt((int)_coded.getPrimitive(ii), out);
+                    break;
+                default:
+                    _coded.writeValue(ii, kinds[ii], out);
+                    break;
+            }
+        }
+    }
+
     /** The id of the affected actor. */
     protected int _id;
+
+    /** The pre-encoded body of the delta, if any. */
+    protected transient volatile EncodedDelta _encoded;
 }
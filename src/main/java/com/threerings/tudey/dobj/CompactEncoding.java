@@ -0,0 +1,297 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.dobj;
+
+import java.io.IOException;
+
+import java.lang.reflect.Field;
+
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+
+import com.threerings.io.ObjectInputStream;
+import com.threerings.io.ObjectOutputStream;
+
+import com.threerings.math.FloatMath;
+import com.threerings.math.Vector2f;
+
+/**
+ * A lossy, compact encoding for {@link ActorDelta}s in {@link CompactSceneDeltaEvent}s.
+ * Translations are written in fixed point with a configurable number of fractional bits,
+ * rotations are quantized to a configurable number of bits, timestamps are written as
+ * variable-length offsets from the event timestamp, and flag words as variable-length unsigned
+ * integers.  The parameters are written with each event, so only the server need be configured.
+ */
+public class CompactEncoding
+{
+    /** The ways in which fields may be encoded. */
+    public enum FieldType
+    {
+        /** A {@link Vector2f} translation, written in fixed point. */
+        TRANSLATION,
+
+        /** A float angle, written quantized. */
+        ROTATION,
+
+        /** An int timestamp, written as an offset from the event timestamp. */
+        TIMESTAMP,
+
+        /** An int flag word, written as a variable-length unsigned integer. */
+        FLAGS,
+
+        /** Written as usual. */
+        DEFAULT
+    }
+
+    /**
+     * Creates a new encoding.
+     *
+     * @param precision the number of fractional bits with which to write translations (0-16).
+     * @param rotationBits the number of bits with which to write rotations (1-16).
+     */
+    public CompactEncoding (int precision, int rotationBits)
+    {
+        if (precision < 0 || precision > 16) {
+            throw new IllegalArgumentException("Invalid precision: " + precision);
+        }
+        if (rotationBits < 1 || rotationBits > 16) {
+            throw new IllegalArgumentException("Invalid rotation bits: " + rotationBits);
+        }
+        _precision = precision;
+        _rotationBits = rotationBits;
+        _scale = 1 << precision;
+        _steps = 1 << rotationBits;
+    }
+
+    /**
+     * Returns the number of fractional bits with which translations are written.
+     */
+    public int getPrecision ()
+    {
+        return _precision;
+    }
+
+    /**
+     * Returns the number of bits with which rotations are written.
+     */
+    public int getRotationBits ()
+    {
+        return _rotationBits;
+    }
+
+    /**
+     * Writes the encoding parameters to the specified stream.
+     */
+    public void writeTo (ObjectOutputStream out)
+        throws IOException
+    {
+        out.writeByte(_precision);
+        out.writeByte(_rotationBits);
+    }
+
+    /**
+     * Reads an encoding written by {@link #writeTo}.
+     */
+    public static CompactEncoding readFrom (ObjectInputStream in)
+        throws IOException
+    {
+        int precision = in.readByte();
+        return new CompactEncoding(precision, in.readByte());
+    }
+
+    /**
+     * Writes a translation in fixed point.  Translations whose components are out of the fixed
+     * point range (or not finite) are written as an escape value followed by the raw floats.
+     */
+    public void writeTranslation (Vector2f translation, ObjectOutputStream out)
+        throws IOException
+    {
+        float x = translation.x * _scale, y = translation.y * _scale;
+        if (Math.abs(x) < MAX_FIXED && Math.abs(y) < MAX_FIXED) {
+            writeVarInt(Math.round(x), out);
+            writeVarInt(Math.round(y), out);
+        } else {
+            writeVarInt(FLOAT_ESCAPE, out);
+            out.writeFloat(translation.x);
+            out.writeFloat(translation.y);
+        }
+    }
+
+    /**
+     * Reads a translation written by {@link #writeTranslation}.
+     */
+    public Vector2f readTranslation (ObjectInputStream in)
+        throws IOException
+    {
+        int x = readVarInt(in);
+        if (x == FLOAT_ESCAPE) {
+            float fx = in.readFloat();
+            return new Vector2f(fx, in.readFloat());
+        }
+        return new Vector2f((float)x / _scale, (float)readVarInt(in) / _scale);
+    }
+
+    /**
+     * Writes a quantized rotation.
+     */
+    public void writeRotation (float rotation, ObjectOutputStream out)
+        throws IOException
+    {
+        int value = Math.round(FloatMath.normalizeAnglePositive(rotation) * _steps /
+            FloatMath.TWO_PI) & (_steps - 1);
+        if (_rotationBits > 8) {
+            out.writeShort(value);
+        } else {
+            out.writeByte(value);
+        }
+    }
+
+    /**
+     * Reads a rotation written by {@link #writeRotation}.
+     */
+    public float readRotation (ObjectInputStream in)
+        throws IOException
+    {
+        int value = (_rotationBits > 8) ? (in.readShort() & 0xFFFF) : (in.readByte() & 0xFF);
+        return FloatMath.normalizeAngle(value * FloatMath.TWO_PI / _steps);
+    }
+
+    /**
+     * Writes a signed integer using a zig-zag variable-length encoding (one byte for values
+     * between -64 and 63).
+     */
+    public static void writeVarInt (int value, ObjectOutputStream out)
+        throws IOException
+    {
+        writeUnsignedVarInt((value << 1) ^ (value >> 31), out);
+    }
+
+    /**
+     * Reads a signed integer written by {@link #writeVarInt}.
+     */
+    public static int readVarInt (ObjectInputStream in)
+        throws IOException
+    {
+        int value = readUnsignedVarInt(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Writes an unsigned integer using a variable-length encoding (seven bits per byte).
+     */
+    public static void writeUnsignedVarInt (int value, ObjectOutputStream out)
+        throws IOException
+    {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Reads an unsigned integer written by {@link #writeUnsignedVarInt}.
+     */
+    public static int readUnsignedVarInt (ObjectInputStream in)
+        throws IOException
+    {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable-length integer");
+    }
+
+    /**
+     * Returns the encodings of the specified fields of the given class (as identified by their
+     * {@link Compact} annotations).
+     */
+    public static FieldType[] getFieldTypes (Class<?> clazz, Field[] fields)
+    {
+        synchronized (_fieldTypes) {
+            FieldType[] types = _fieldTypes.get(clazz);
+            if (types == null) {
+                types = new FieldType[fields.length];
+                for (int ii = 0; ii < fields.length; ii++) {
+                    types[ii] = getFieldType(fields[ii]);
+                }
+                _fieldTypes.put(clazz, types);
+            }
+            return types;
+        }
+    }
+
+    /**
+     * Returns the encoding of the specified field.
+     */
+    protected static FieldType getFieldType (Field field)
+    {
+        Compact compact = field.getAnnotation(Compact.class);
+        if (compact == null) {
+            return FieldType.DEFAULT;
+        }
+        FieldType type = compact.value();
+        Class<?> ftype = field.getType();
+        switch (type) {
+            case TRANSLATION:
+                return (ftype == Vector2f.class) ? type : FieldType.DEFAULT;
+            case ROTATION:
+                return (ftype == Float.TYPE) ? type : FieldType.DEFAULT;
+            case TIMESTAMP: case FLAGS:
+                return (ftype == Integer.TYPE) ? type : FieldType.DEFAULT;
+            default:
+                return FieldType.DEFAULT;
+        }
+    }
+
+    /** The number of fractional bits with which translations are written. */
+    protected int _precision;
+
+    /** The number of bits with which rotations are written. */
+    protected int _rotationBits;
+
+    /** The fixed point scale for translations. */
+    protected float _scale;
+
+    /** The number of rotation steps. */
+    protected int _steps;
+
+    /** The (exclusive) limit on the magnitude of scaled translation components written in fixed
+     * point.  Rounded values within the limit never reach {@link #FLOAT_ESCAPE}. */
+    protected static final float MAX_FIXED = 1 << 30;
+
+    /** The value written in place of a fixed point component to indicate that the translation
+     * follows as raw floats. */
+    protected static final int FLOAT_ESCAPE = Integer.MIN_VALUE;
+
+    /** Cached field encodings, mapped by class. */
+    protected static Map<Class<?>, FieldType[]> _fieldTypes = Maps.newHashMap();
+}
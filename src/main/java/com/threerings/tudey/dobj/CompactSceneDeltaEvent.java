@@ -0,0 +1,114 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.dobj;
+
+import java.io.IOException;
+
+import com.threerings.io.ObjectInputStream;
+import com.threerings.io.ObjectOutputStream;
+
+import com.threerings.tudey.data.actor.Actor;
+import com.threerings.tudey.data.effect.Effect;
+
+/**
+ * A {@link SceneDeltaEvent} whose actor deltas are streamed with a {@link CompactEncoding}.  The
+ * encoded deltas are kept out of the superclass (which always streams its deltas in the normal
+ * format), and the encoding parameters are written with each event.
+ */
+public class CompactSceneDeltaEvent extends SceneDeltaEvent
+{
+    /**
+     * Creates a new compact delta event.
+     *
+     * @param encoding the compact encoding with which to stream the actor deltas.
+     */
+    public CompactSceneDeltaEvent (
+        int targetOid, int sceneOid, int acknowledge, short ping, int reference,
+        int timestamp, short elapsed, Actor[] addedActors, ActorDelta[] updatedActorDeltas,
+        int[] removedActorIds, Effect[] effectsFired, CompactEncoding encoding)
+    {
+        super(targetOid, sceneOid, acknowledge, ping, reference, timestamp, elapsed,
+            addedActors, null, removedActorIds, effectsFired);
+        _compactDeltas = updatedActorDeltas;
+        _encoding = encoding;
+    }
+
+    /**
+     * Returns the compact encoding with which the actor deltas were streamed.
+     */
+    public CompactEncoding getEncoding ()
+    {
+        return _encoding;
+    }
+
+    @Override
+    public ActorDelta[] getUpdatedActorDeltas ()
+    {
+        return _compactDeltas;
+    }
+
+    /**
+     * Custom serialization method.
+     */
+    public void writeObject (ObjectOutputStream out)
+        throws IOException
+    {
+        out.defaultWriteObject();
+        _encoding.writeTo(out);
+        if (_compactDeltas == null) {
+            CompactEncoding.writeUnsignedVarInt(0, out);
+            return;
+        }
+        CompactEncoding.writeUnsignedVarInt(_compactDeltas.length + 1, out);
+        for (ActorDelta delta : _compactDeltas) {
+            delta.writeCompact(_encoding, _timestamp, out);
+        }
+    }
+
+    /**
+     * Custom deserialization method.
+     */
+    public void readObject (ObjectInputStream in)
+        throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+        _encoding = CompactEncoding.readFrom(in);
+        int length = CompactEncoding.readUnsignedVarInt(in) - 1;
+        if (length < 0) {
+            return;
+        }
+        _compactDeltas = new ActorDelta[length];
+        for (int ii = 0; ii < length; ii++) {
+            (_compactDeltas[ii] = new ActorDelta()).readCompact(_encoding, _timestamp, in);
+        }
+    }
+
+    /** The deltas of the actors updated since the referenced update (or <code>null</code>). */
+    protected transient ActorDelta[] _compactDeltas;
+
+    /** The compact encoding with which the actor deltas are streamed. */
+    protected transient CompactEncoding _encoding;
+}
@@ -0,0 +1,157 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.dobj;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Ints;
+
+import com.threerings.io.ObjectOutputStream;
+
+/**
+ * The pre-encoded body of a delta, which may be written to any number of client streams without
+ * being encoded again.  Everything but the objects passed to
+ * {@link ObjectOutputStream#writeObject} (whose class codes are specific to each stream) is held
+ * as raw bytes; those objects are written to each stream at their recorded offsets.
+ */
+public class EncodedDelta
+{
+    /**
+     * Creates a recording stream with which to encode a delta body.
+     */
+    public static Recorder createRecorder ()
+    {
+        return new Recorder(new ByteArrayOutputStream());
+    }
+
+    /**
+     * Checks whether this body was encoded with the specified encoding and timestamp.
+     */
+    public boolean matches (CompactEncoding encoding, int timestamp)
+    {
+        return _encoding == encoding && (encoding == null || _timestamp == timestamp);
+    }
+
+    /**
+     * Returns the length of the raw portion of the body in bytes.
+     */
+    public int getLength ()
+    {
+        return _data.length;
+    }
+
+    /**
+     * Writes the body to the supplied stream.
+     */
+    public void writeTo (ObjectOutputStream out)
+        throws IOException
+    {
+        int start = 0;
+        for (int ii = 0; ii < _objects.length; ii++) {
+            out.write(_data, start, _offsets[ii] - start);
+            out.writeObject(_objects[ii]);
+            start = _offsets[ii];
+        }
+        out.write(_data, start, _data.length - start);
+    }
+
+    /**
+     * An object output stream that records the bytes written to it, deferring the writing of
+     * objects.
+     */
+    public static class Recorder extends ObjectOutputStream
+    {
+        @Override
+        public void writeObject (Object object)
+            throws IOException
+        {
+            flush();
+            _offsets.add(_bout.size());
+            _objects.add(object);
+        }
+
+        /**
+         * Creates the encoded body from the data recorded.
+         */
+        public EncodedDelta finish (CompactEncoding encoding, int timestamp)
+            throws IOException
+        {
+            flush();
+            return new EncodedDelta(encoding, timestamp, _bout.toByteArray(),
+                _objects.toArray(), Ints.toArray(_offsets));
+        }
+
+        /**
+         * Creates a new recorder.
+         */
+        protected Recorder (ByteArrayOutputStream bout)
+        {
+            super(bout);
+            _bout = bout;
+        }
+
+        /** The stream receiving the raw data. */
+        protected ByteArrayOutputStream _bout;
+
+        /** The offsets at which objects were written. */
+        protected List<Integer> _offsets = Lists.newArrayList();
+
+        /** The objects written. */
+        protected List<Object> _objects = Lists.newArrayList();
+    }
+
+    /**
+     * Creates a new encoded body.
+     */
+    protected EncodedDelta (
+        CompactEncoding encoding, int timestamp, byte[] data, Object[] objects, int[] offsets)
+    {
+        _encoding = encoding;
+        _timestamp = timestamp;
+        _data = data;
+        _objects = objects;
+        _offsets = offsets;
+    }
+
+    /** The compact encoding with which the body was encoded, or <code>null</code> for none. */
+    protected CompactEncoding _encoding;
+
+    /** The timestamp relative to which the body was encoded (if compact). */
+    protected int _timestamp;
+
+    /** The raw data. */
+    protected byte[] _data;
+
+    /** The objects to write between runs of raw data. */
+    protected Object[] _objects;
+
+    /** The offsets within the raw data at which to write the objects. */
+    protected int[] _offsets;
+}
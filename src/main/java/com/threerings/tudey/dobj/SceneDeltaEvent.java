@@ -175,7 +175,7 @@ public class SceneDeltaEvent extends DEvent
         buf.append(", timestamp=").append(_timestamp);
         buf.append(", elapsed=").append(_elapsed);
         buf.append(", addedActors=").append(StringUtil.toString(_addedActors));
-        buf.append(", updatedActorDeltas=").append(StringUtil.toString(_updatedActorDeltas));
+        buf.append(", updatedActorDeltas=").append(StringUtil.toString(getUpdatedActorDeltas()));
         buf.append(", removedActorIds=").append(StringUtil.toString(_removedActorIds));
         buf.append(", effectsFired=").append(StringUtil.toString(_effectsFired));
     }
@@ -25,15 +25,13 @@
 
 package com.threerings.tudey.server;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 
-import com.samskivert.util.IntMap;
-import com.samskivert.util.IntMaps;
-
 import com.threerings.presents.net.Transport;
 
 import com.threerings.crowd.data.BodyObject;
@@ -50,9 +48,13 @@ import com.threerings.tudey.data.TudeySceneObject;
 import com.threerings.tudey.data.actor.Actor;
 import com.threerings.tudey.data.effect.Effect;
 import com.threerings.tudey.dobj.ActorDelta;
+import com.threerings.tudey.dobj.CompactEncoding;
+import com.threerings.tudey.dobj.CompactSceneDeltaEvent;
 import com.threerings.tudey.dobj.SceneDeltaEvent;
 import com.threerings.tudey.server.logic.ActorLogic;
 import com.threerings.tudey.server.logic.PawnLogic;
+import com.threerings.tudey.server.util.InterestGrid;
+import com.threerings.tudey.server.util.SnapshotCache;
 import com.threerings.tudey.util.TruncatedAverage;
 import com.threerings.tudey.util.TudeySceneMetrics;
 
@@ -86,6 +88,12 @@ public class ClientLiaison
         }
         _localInterest = _scenemgr.getDefaultLocalInterest();
 
+        // subscribe to the interest grid, if the scene has one
+        InterestGrid grid = _scenemgr.getInterestGrid();
+        if (grid != null) {
+            _interest = grid.subscribe();
+        }
+
         // insert the baseline (empty) tick record
         _records.add(new TickRecord());
     }
@@ -97,14 +105,26 @@ public class ClientLiaison
     {
         if (info.status == OccupantInfo.DISCONNECTED) {
             // if they reconnect, they'll have to start again from the zero reference time
-            _records.clear();
-            _records.add(new TickRecord());
+            resetRecords();
             _previousVisibleActors.clear();
             _visibleActors.clear();
+            if (_interest != null) {
+                _interest.reset();
+            }
             _receiving = false;
         }
     }
 
+    /**
+     * Notes that the client's body has left the scene.
+     */
+    public void bodyLeft ()
+    {
+        if (_interest != null) {
+            _interest.cancel();
+        }
+    }
+
     /**
      * Sets the client's target actor.
      */
@@ -121,6 +141,14 @@ public class ClientLiaison
         return _target;
     }
 
+    /**
+     * Returns a reference to the client's area of interest in world space.
+     */
+    public Rect getWorldInterest ()
+    {
+        return _worldInterest;
+    }
+
     /**
      * Sets the client's camera parameters.
      */
@@ -170,15 +198,17 @@ public class ClientLiaison
         }
 
         // remove all tick records up to (but not including) the acknowledgement
-        while (acknowledge > _records.get(0).getTimestamp()) {
-            if (_records.size() > 1) {
-                _records.remove(0);
+        int count = 0;
+        for (int nn = _records.size(); acknowledge > _records.get(count).getTimestamp(); ) {
+            if (count < nn - 1) {
+                count++;
             } else {
                 log.warning("Received invalid acknowledgement.", "who", _bodyobj.who(),
-                    "acknowledge", acknowledge, "last", _records.get(0).getTimestamp());
+                    "acknowledge", acknowledge, "last", _records.get(count).getTimestamp());
                 break;
             }
         }
+        dropRecords(count);
 
         // remember ping
         _pingAverage.record(_ping = ping);
@@ -226,7 +256,7 @@ public class ClientLiaison
         // if any deltas were sent with reliable transport, we can consider them received
         for (int ii = _records.size() - 1; ii > 0; ii--) {
             if (_records.get(ii).event.getActualTransport() == Transport.RELIABLE_ORDERED) {
-                _records.subList(0, ii).clear();
+                dropRecords(ii);
                 break;
             }
         }
@@ -238,26 +268,30 @@ public class ClientLiaison
         _localInterest.getMaximumExtent().add(translation, _worldInterest.getMaximumExtent());
 
         // find all currently visible actors and compare to previous set
-        populateVisibleActors();
-        for (ActorLogic actor : _visibleActors) {
-            if (_previousVisibleActors.remove(actor)) {
-                ActorDelta delta = actor.getSnapshotDelta();
-                if (delta != null) {
-                    _actorsUpdated.add(delta);
+        if (_interest != null) {
+            updateInterest();
+        } else {
+            populateVisibleActors();
+            for (ActorLogic actor : _visibleActors) {
+                if (_previousVisibleActors.remove(actor)) {
+                    ActorDelta delta = actor.getSnapshotDelta();
+                    if (delta != null) {
+                        _actorsUpdated.add(delta);
+                    }
+                } else {
+                    _actorsAdded.add(actor.getSnapshot());
                 }
-            } else {
-                _actorsAdded.add(actor.getSnapshot());
             }
-        }
-        for (ActorLogic actor : _previousVisibleActors) {
-            _actorsRemoved.add(actor.getPreviousSnapshot());
-        }
-        _previousVisibleActors.clear();
+            for (ActorLogic actor : _previousVisibleActors) {
+                _actorsRemoved.add(actor.getPreviousSnapshot());
+            }
+            _previousVisibleActors.clear();
 
-        // swap the previous and current visible sets
-        Set<ActorLogic> visibleActors = _visibleActors;
-        _visibleActors = _previousVisibleActors;
-        _previousVisibleActors = visibleActors;
+            // swap the previous and current visible sets
+            Set<ActorLogic> visibleActors = _visibleActors;
+            _visibleActors = _previousVisibleActors;
+            _previousVisibleActors = visibleActors;
+        }
 
         // if this is the first recorded tick, we need to add the complete set of static
         // actors; afterwards, just the delta
@@ -296,45 +330,17 @@ public class ClientLiaison
         // the last acknowledged tick is the reference
         TickRecord reference = _records.get(0);
 
-        // merge actor updates and get all effects fired (not expired)
-        for (int ii = 1, nn = _records.size(); ii < nn; ii++) {
-            TickRecord orecord = _records.get(ii);
-            for (Actor actor : orecord.getActorsAdded()) {
-                int id = actor.getId();
-                Actor removed = _removed.remove(id);
-                if (removed == null) {
-                    _added.put(id, actor);
-                } else {
-                    ActorDelta delta = new ActorDelta(removed, actor);
-                    if (!delta.isEmpty()) {
-                        _updated.put(id, delta);
-                    }
-                }
-            }
-            for (ActorDelta delta : orecord.getActorsUpdated()) {
-                int id = delta.getId();
-                Actor added = _added.get(id);
-                if (added != null) {
-                    _added.put(id, (Actor)delta.apply(added));
-                } else {
-                    ActorDelta odelta = _updated.put(id, delta);
-                    if (odelta != null) {
-                        _updated.put(id, (ActorDelta)odelta.merge(delta));
-                    }
-                }
-            }
-            for (Actor actor : orecord.getActorsRemoved()) {
-                int id = actor.getId();
-                if (_added.remove(id) == null) {
-                    _updated.remove(id);
-                    _removed.put(id, actor);
-                }
-            }
-            for (Effect effect : orecord.getEffectsFired()) {
-                if (timestamp < effect.getExpiry()) {
-                    _fired.add(effect);
-                }
-            }
+        // fold the new record into the running changes and combine them with those of the
+        // earlier unacknowledged records to get everything since the reference
+        SnapshotCache cache = _scenemgr.getSnapshotCache();
+        _back.add(record, cache);
+        _backCount++;
+        CumulativeDelta changes = _changes;
+        if (_front.isEmpty()) {
+            changes.set(_back);
+        } else {
+            changes.set(_front.get(_front.size() - 1));
+            changes.add(_back, cache);
         }
 
         // if we know that we can't transmit datagrams, we may as well send the delta as reliable
@@ -342,39 +348,153 @@ public class ClientLiaison
         Transport transport = Transport.UNRELIABLE_UNORDERED;
         if (_session == null || !_session.getTransmitDatagrams()) {
             transport = Transport.RELIABLE_ORDERED;
-            _records.subList(0, _records.size() - 1).clear();
+            dropRecords(_records.size() - 1);
         }
 
+        // encode the updated deltas (if not already encoded for another client) so that the
+        // event's stream only has to copy their bytes
+        CompactEncoding encoding = _scenemgr.getDeltaEncoding();
+        ActorDelta[] updated = changes.getUpdated();
+        cache.encode(updated, encoding, timestamp);
+
         // create and post the event
-        int nadded = _added.size();
-        int nupdated = _updated.size();
-        int nfired = _fired.size();
-        record.event = new SceneDeltaEvent(
-            _bodyobj.getOid(), _tsobj.getOid(), _lastInput,
-            (short)_ping, reference.getTimestamp(), timestamp,
-            (short)(timestamp - _scenemgr.getPreviousTimestamp()),
-            (nadded == 0) ? null : _added.values().toArray(new Actor[nadded]),
-            (nupdated == 0) ? null : _updated.values().toArray(new ActorDelta[nupdated]),
-            _removed.isEmpty() ? null : _removed.intKeySet().toIntArray(),
-            (nfired == 0) ? null : _fired.toArray(new Effect[nfired]));
+        int targetOid = _bodyobj.getOid(), sceneOid = _tsobj.getOid();
+        short elapsed = (short)(timestamp - _scenemgr.getPreviousTimestamp());
+        record.event = (encoding == null) ?
+            new SceneDeltaEvent(
+                targetOid, sceneOid, _lastInput, (short)_ping, reference.getTimestamp(),
+                timestamp, elapsed, changes.getAdded(), updated, changes.getRemoved(),
+                changes.getEffects(timestamp)) :
+            new CompactSceneDeltaEvent(
+                targetOid, sceneOid, _lastInput, (short)_ping, reference.getTimestamp(),
+                timestamp, elapsed, changes.getAdded(), updated, changes.getRemoved(),
+                changes.getEffects(timestamp), encoding);
         record.event.setTransport(transport);
         _bodyobj.postEvent(record.event);
+        changes.clear();
+    }
 
-        // clear the arrays
-        _added.clear();
-        _updated.clear();
-        _removed.clear();
-        _fired.clear();
+    /**
+     * Removes the specified number of records from the start of the list (the reference record
+     * and the unacknowledged records following it), dropping the oldest unacknowledged records
+     * from the running changes.
+     */
+    protected void dropRecords (int count)
+    {
+        for (int ii = 0; ii < count; ii++) {
+            // the record after the reference becomes the new reference and so leaves the window
+            if (_front.isEmpty()) {
+                flipChanges();
+            }
+            if (!_front.isEmpty()) {
+                recycle(_front.remove(_front.size() - 1));
+            }
+        }
+        _records.subList(0, count).clear();
+    }
+
+    /**
+     * Moves the records folded into the back changes to the front stack, computing for each the
+     * changes from it to the most recent record.  Each record is moved at most once, so the cost
+     * is amortized over the ticks on which it was received.
+     */
+    protected void flipChanges ()
+    {
+        if (_backCount == 0) {
+            return;
+        }
+        SnapshotCache cache = _scenemgr.getSnapshotCache();
+        CumulativeDelta suffix = null;
+        for (int ii = _records.size() - 1, nn = ii - _backCount; ii > nn; ii--) {
+            CumulativeDelta changes = obtain();
+            changes.add(_records.get(ii), cache);
+            if (suffix != null) {
+                changes.add(suffix, cache);
+            }
+            _front.add(suffix = changes);
+        }
+        _back.clear();
+        _backCount = 0;
     }
 
     /**
-     * Populates the set of visible actors.
+     * Clears out all records and running changes, leaving only the baseline record.
+     */
+    protected void resetRecords ()
+    {
+        _records.clear();
+        _records.add(new TickRecord());
+        for (int ii = 0, nn = _front.size(); ii < nn; ii++) {
+            recycle(_front.get(ii));
+        }
+        _front.clear();
+        _back.clear();
+        _backCount = 0;
+    }
+
+    /**
+     * Retrieves a set of changes from the pool or creates a new one.
+     */
+    protected CumulativeDelta obtain ()
+    {
+        int size = _pool.size();
+        return (size == 0) ? new CumulativeDelta() : _pool.remove(size - 1);
+    }
+
+    /**
+     * Returns a set of changes to the pool.
+     */
+    protected void recycle (CumulativeDelta changes)
+    {
+        changes.clear();
+        _pool.add(changes);
+    }
+
+    /**
+     * Populates the set of visible actors.  Only used when the scene has no interest grid (see
+     * {@link TudeySceneManager#createInterestGrid}).
      */
     protected void populateVisibleActors ()
     {
         _scenemgr.getVisibleActors(_target, _worldInterest, _visibleActors);
     }
 
+    /**
+     * Updates the interest subscription and determines which actors have entered, left, or
+     * remained within the area of interest.
+     */
+    protected void updateInterest ()
+    {
+        _interest.update(_worldInterest);
+        List<InterestGrid.Member> members = _interest.getMembers();
+        for (int ii = 0, nn = members.size(); ii < nn; ii++) {
+            InterestGrid.Member member = members.get(ii);
+            // the grid's cells extend past the area of interest, so clip to the actual bounds
+            // (as the actor space query does)
+            ActorLogic actor = member.getActor();
+            boolean visible = actor.getShape().getBounds().intersects(_worldInterest) &&
+                (_target == null || actor.isVisible(_target));
+            if (visible) {
+                if (member.isVisible()) {
+                    ActorDelta delta = actor.getSnapshotDelta();
+                    if (delta != null) {
+                        _actorsUpdated.add(delta);
+                    }
+                } else {
+                    _actorsAdded.add(actor.getSnapshot());
+                }
+            } else if (member.isVisible()) {
+                _actorsRemoved.add(actor.getPreviousSnapshot());
+            }
+            member.setVisible(visible);
+        }
+        List<InterestGrid.Member> leaving = _interest.getLeaving();
+        for (int ii = 0, nn = leaving.size(); ii < nn; ii++) {
+            _actorsRemoved.add(leaving.get(ii).getActor().getPreviousSnapshot());
+        }
+        _interest.clearLeaving();
+    }
+
     /**
      * Contains the state at a single tick.
      */
@@ -461,6 +581,361 @@ public class ClientLiaison
         protected Effect[] _effectsFired;
     }
 
+    /**
+     * The combined changes of a sequence of tick records, keyed by actor id in an open-addressing
+     * table so that the sets can be cleared and refilled without allocation.
+     */
+    protected static class CumulativeDelta
+    {
+        /**
+         * Clears the changes, retaining the allocated storage.
+         */
+        public void clear ()
+        {
+            if (_size > 0) {
+                Arrays.fill(_kinds, EMPTY);
+                Arrays.fill(_values, null);
+                _size = _nadded = _nupdated = _nremoved = 0;
+            }
+            _effects.clear();
+        }
+
+        /**
+         * Sets these changes to a copy of the supplied changes.
+         */
+        public void set (CumulativeDelta other)
+        {
+            int capacity = other._keys.length;
+            if (_keys.length != capacity) {
+                _keys = new int[capacity];
+                _kinds = new byte[capacity];
+                _values = new Object[capacity];
+            }
+            System.arraycopy(other._keys, 0, _keys, 0, capacity);
+            System.arraycopy(other._kinds, 0, _kinds, 0, capacity);
+            System.arraycopy(other._values, 0, _values, 0, capacity);
+            _size = other._size;
+            _nadded = other._nadded;
+            _nupdated = other._nupdated;
+            _nremoved = other._nremoved;
+            _effects.clear();
+            _effects.addAll(other._effects);
+        }
+
+        /**
+         * Folds the contents of the specified record into these changes.
+         */
+        public void add (TickRecord record, SnapshotCache cache)
+        {
+            for (Actor actor : record.getActorsAdded()) {
+                addActor(actor.getId(), actor, cache);
+            }
+            for (ActorDelta delta : record.getActorsUpdated()) {
+                updateActor(delta.getId(), delta, cache);
+            }
+            for (Actor actor : record.getActorsRemoved()) {
+                removeActor(actor.getId(), actor);
+            }
+            for (Effect effect : record.getEffectsFired()) {
+                _effects.add(effect);
+            }
+        }
+
+        /**
+         * Folds the supplied (subsequent) changes into these changes.
+         */
+        public void add (CumulativeDelta other, SnapshotCache cache)
+        {
+            for (int ii = 0, nn = other._keys.length; ii < nn; ii++) {
+                switch (other._kinds[ii]) {
+                    case ADDED:
+                        addActor(other._keys[ii], (Actor)other._values[ii], cache);
+                        break;
+                    case UPDATED:
+                        updateActor(other._keys[ii], (ActorDelta)other._values[ii], cache);
+                        break;
+                    case REMOVED:
+                        removeActor(other._keys[ii], (Actor)other._values[ii]);
+                        break;
+                }
+            }
+            _effects.addAll(other._effects);
+        }
+
+        /**
+         * Returns a new array containing the added actors, or <code>null</code> if none.
+         */
+        public Actor[] getAdded ()
+        {
+            if (_nadded == 0) {
+                return null;
+            }
+            Actor[] added = new Actor[_nadded];
+            for (int ii = 0, idx = 0; idx < added.length; ii++) {
+                if (_kinds[ii] == ADDED) {
+                    added[idx++] = (Actor)_values[ii];
+                }
+            }
+            return added;
+        }
+
+        /**
+         * Returns a new array containing the actor deltas, or <code>null</code> if none.
+         */
+        public ActorDelta[] getUpdated ()
+        {
+            if (_nupdated == 0) {
+                return null;
+            }
+            ActorDelta[] updated = new ActorDelta[_nupdated];
+            for (int ii = 0, idx = 0; idx < updated.length; ii++) {
+                if (_kinds[ii] == UPDATED) {
+                    updated[idx++] = (ActorDelta)_values[ii];
+                }
+            }
+            return updated;
+        }
+
+        /**
+         * Returns a new array containing the ids of the removed actors, or <code>null</code> if
+         * none.
+         */
+        public int[] getRemoved ()
+        {
+            if (_nremoved == 0) {
+                return null;
+            }
+            int[] removed = new int[_nremoved];
+            for (int ii = 0, idx = 0; idx < removed.length; ii++) {
+                if (_kinds[ii] == REMOVED) {
+                    removed[idx++] = _keys[ii];
+                }
+            }
+            return removed;
+        }
+
+        /**
+         * Returns a new array containing the effects that have not yet expired at the specified
+         * time, or <code>null</code> if none.
+         */
+        public Effect[] getEffects (int timestamp)
+        {
+            int count = 0;
+            for (int ii = 0, nn = _effects.size(); ii < nn; ii++) {
+                if (timestamp < _effects.get(ii).getExpiry()) {
+                    count++;
+                }
+            }
+            if (count == 0) {
+                return null;
+            }
+            Effect[] effects = new Effect[count];
+            for (int ii = 0, idx = 0; idx < count; ii++) {
+                Effect effect = _effects.get(ii);
+                if (timestamp < effect.getExpiry()) {
+                    effects[idx++] = effect;
+                }
+            }
+            return effects;
+        }
+
+        /**
+         * Notes that an actor was added.
+         */
+        protected void addActor (int id, Actor actor, SnapshotCache cache)
+        {
+            int slot = find(id);
+            if (slot != -1 && _kinds[slot] == REMOVED) {
+                // removed and re-added: send the difference
+                ActorDelta delta = cache.getDelta((Actor)_values[slot], actor);
+                if (delta == null) {
+                    removeSlot(slot);
+                } else {
+                    setSlot(slot, UPDATED, delta);
+                }
+            } else {
+                put(id, ADDED, actor);
+            }
+        }
+
+        /**
+         * Notes that an actor was updated.
+         */
+        protected void updateActor (int id, ActorDelta delta, SnapshotCache cache)
+        {
+            int slot = find(id);
+            if (slot == -1) {
+                put(id, UPDATED, delta);
+            } else if (_kinds[slot] == ADDED) {
+                _values[slot] = cache.apply((Actor)_values[slot], delta);
+            } else if (_kinds[slot] == UPDATED) {
+                _values[slot] = cache.merge((ActorDelta)_values[slot], delta);
+            } else {
+                setSlot(slot, UPDATED, delta);
+            }
+        }
+
+        /**
+         * Notes that an actor was removed.
+         */
+        protected void removeActor (int id, Actor actor)
+        {
+            int slot = find(id);
+            if (slot != -1 && _kinds[slot] == ADDED) {
+                removeSlot(slot); // added and removed: nothing to send
+            } else {
+                put(id, REMOVED, actor);
+            }
+        }
+
+        /**
+         * Returns the slot containing the specified id, or -1 if not present.
+         */
+        protected int find (int id)
+        {
+            int mask = _keys.length - 1;
+            for (int slot = hash(id) & mask; _kinds[slot] != EMPTY; slot = (slot + 1) & mask) {
+                if (_keys[slot] == id) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Maps the specified id to the given change, replacing any existing mapping.
+         */
+        protected void put (int id, byte kind, Object value)
+        {
+            if ((_size + 1) * 2 > _keys.length) {
+                rehash(_keys.length * 2);
+            }
+            int mask = _keys.length - 1;
+            int slot = hash(id) & mask;
+            for (; _kinds[slot] != EMPTY; slot = (slot + 1) & mask) {
+                if (_keys[slot] == id) {
+                    setSlot(slot, kind, value);
+                    return;
+                }
+            }
+            _keys[slot] = id;
+            _size++;
+            setSlot(slot, kind, value);
+        }
+
+        /**
+         * Sets the kind and value of the change in the specified slot.
+         */
+        protected void setSlot (int slot, byte kind, Object value)
+        {
+            count(_kinds[slot], -1);
+            count(_kinds[slot] = kind, +1);
+            _values[slot] = value;
+        }
+
+        /**
+         * Removes the mapping in the specified slot, shifting back any subsequent entries that
+         * probed past it.
+         */
+        protected void removeSlot (int slot)
+        {
+            count(_kinds[slot], -1);
+            _size--;
+            int mask = _keys.length - 1;
+            int hole = slot;
+            for (int next = (hole + 1) & mask; _kinds[next] != EMPTY; next = (next + 1) & mask) {
+                int ideal = hash(_keys[next]) & mask;
+                if (((next - ideal) & mask) >= ((next - hole) & mask)) {
+                    _keys[hole] = _keys[next];
+                    _kinds[hole] = _kinds[next];
+                    _values[hole] = _values[next];
+                    hole = next;
+                }
+            }
+            _kinds[hole] = EMPTY;
+            _values[hole] = null;
+        }
+
+        /**
+         * Adjusts the count for the specified kind of change.
+         */
+        protected void count (byte kind, int delta)
+        {
+            switch (kind) {
+                case ADDED: _nadded += delta; break;
+                case UPDATED: _nupdated += delta; break;
+                case REMOVED: _nremoved += delta; break;
+            }
+        }
+
+        /**
+         * Resizes the table to the specified (power-of-two) capacity.
+         */
+        protected void rehash (int capacity)
+        {
+            int[] okeys = _keys;
+            byte[] okinds = _kinds;
+            Object[] ovalues = _values;
+            _keys = new int[capacity];
+            _kinds = new byte[capacity];
+            _values = new Object[capacity];
+            int mask = capacity - 1;
+            for (int ii = 0; ii < okeys.length; ii++) {
+                if (okinds[ii] != EMPTY) {
+                    int slot = hash(okeys[ii]) & mask;
+                    while (_kinds[slot] != EMPTY) {
+                        slot = (slot + 1) & mask;
+                    }
+                    _keys[slot] = okeys[ii];
+                    _kinds[slot] = okinds[ii];
+                    _values[slot] = ovalues[ii];
+                }
+            }
+        }
+
+        /**
+         * Scrambles an actor id for use as a table index.
+         */
+        protected static int hash (int id)
+        {
+            int hash = id * 0x9E3779B9;
+            return hash ^ (hash >>> 16);
+        }
+
+        /** The actor ids. */
+        protected int[] _keys = new int[INITIAL_CAPACITY];
+
+        /** The kind of change recorded for each id. */
+        protected byte[] _kinds = new byte[INITIAL_CAPACITY];
+
+        /** The actors (added or removed) or deltas (updated). */
+        protected Object[] _values = new Object[INITIAL_CAPACITY];
+
+        /** The number of occupied slots. */
+        protected int _size;
+
+        /** The number of each kind of change. */
+        protected int _nadded, _nupdated, _nremoved;
+
+        /** The effects fired, in order. */
+        protected List<Effect> _effects = Lists.newArrayList();
+
+        /** Indicates an empty slot. */
+        protected static final byte EMPTY = 0;
+
+        /** Indicates an added actor. */
+        protected static final byte ADDED = 1;
+
+        /** Indicates an updated actor. */
+        protected static final byte UPDATED = 2;
+
+        /** Indicates a removed actor. */
+        protected static final byte REMOVED = 3;
+
+        /** The initial table capacity (must be a power of two). */
+        protected static final int INITIAL_CAPACITY = 32;
+    }
+
     /** The scene manager that created the liaison. */
     protected TudeySceneManager _scenemgr;
 
@@ -500,6 +975,9 @@ public class ClientLiaison
     /** The timestamp of the last input frame received from the client. */
     protected int _lastInput;
 
+    /** Our subscription to the scene's interest grid, if any. */
+    protected InterestGrid.Subscription _interest;
+
     /** The actors in the area of interest at the last update. */
     protected Set<ActorLogic> _previousVisibleActors = Sets.newHashSet();
 
@@ -515,15 +993,19 @@ public class ClientLiaison
     /** Holds actors removed on the current tick. */
     protected List<Actor> _actorsRemoved = Lists.newArrayList();
 
-    /** Stores added actors. */
-    protected IntMap<Actor> _added = IntMaps.newHashIntMap();
+    /** The changes from the oldest unacknowledged record still in the front stack to the most
+     * recent record, with the oldest at the end of the list. */
+    protected List<CumulativeDelta> _front = Lists.newArrayList();
+
+    /** The combined changes of the records received since the last flip. */
+    protected CumulativeDelta _back = new CumulativeDelta();
 
-    /** Stores updated actor deltas. */
-    protected IntMap<ActorDelta> _updated = IntMaps.newHashIntMap();
+    /** The number of records folded into the back changes. */
+    protected int _backCount;
 
-    /** Stores removed actor. */
-    protected IntMap<Actor> _removed = IntMaps.newHashIntMap();
+    /** Holds the changes since the reference during processing. */
+    protected CumulativeDelta _changes = new CumulativeDelta();
 
-    /** Stores effects fired. */
-    protected List<Effect> _fired = Lists.newArrayList();
+    /** Pooled change sets. */
+    protected List<CumulativeDelta> _pool = Lists.newArrayList();
 }
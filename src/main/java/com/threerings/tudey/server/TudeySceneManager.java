@@ -25,13 +25,21 @@
 
 package com.threerings.tudey.server;
 
+import java.io.File;
+import java.io.IOException;
+
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -41,14 +49,12 @@ import com.google.inject.Inject;
 import com.google.inject.Injector;
 
 import com.samskivert.util.HashIntMap;
-import com.samskivert.util.Histogram;
 import com.samskivert.util.IntMaps;
-import com.samskivert.util.Interval;
 import com.samskivert.util.ObserverList;
+import com.samskivert.util.QuickSort;
 import com.samskivert.util.Randoms;
 import com.samskivert.util.RunAnywhere;
 import com.samskivert.util.RunQueue;
-import com.samskivert.util.StringUtil;
 
 import com.threerings.presents.data.ClientObject;
 import com.threerings.presents.server.ClientManager;
@@ -63,6 +69,7 @@ import com.threerings.whirled.server.SceneManager;
 
 import com.threerings.config.ConfigManager;
 import com.threerings.config.ConfigReference;
+import com.threerings.math.FloatMath;
 import com.threerings.math.Ray2D;
 import com.threerings.math.Rect;
 import com.threerings.math.Transform2D;
@@ -82,17 +89,27 @@ import com.threerings.tudey.data.TudeySceneModel.Entry;
 import com.threerings.tudey.data.TudeySceneObject;
 import com.threerings.tudey.data.actor.Actor;
 import com.threerings.tudey.data.effect.Effect;
+import com.threerings.tudey.dobj.CompactEncoding;
 import com.threerings.tudey.server.logic.ActorLogic;
 import com.threerings.tudey.server.logic.EffectLogic;
 import com.threerings.tudey.server.logic.EntryLogic;
 import com.threerings.tudey.server.logic.Logic;
 import com.threerings.tudey.server.logic.PawnLogic;
+import com.threerings.tudey.server.util.DormancyTracker;
+import com.threerings.tudey.server.util.EvaluationScheduler;
+import com.threerings.tudey.server.util.InterestGrid;
 import com.threerings.tudey.server.util.Pathfinder;
+import com.threerings.tudey.server.util.PositionHistory;
 import com.threerings.tudey.server.util.SceneTicker;
+import com.threerings.tudey.server.util.ScratchPool;
+import com.threerings.tudey.server.util.SnapshotCache;
+import com.threerings.tudey.server.util.TickProfiler;
+import com.threerings.tudey.server.util.TimerWheel;
 import com.threerings.tudey.shape.Segment;
 import com.threerings.tudey.shape.Shape;
 import com.threerings.tudey.shape.ShapeElement;
 import com.threerings.tudey.space.HashSpace;
+import com.threerings.tudey.space.SimpleSpaceElement;
 import com.threerings.tudey.space.SpaceElement;
 import com.threerings.tudey.util.ActorAdvancer;
 import com.threerings.tudey.util.TudeySceneMetrics;
@@ -121,6 +138,47 @@ public class TudeySceneManager extends SceneManager
         public boolean tick (int timestamp);
     }
 
+    /**
+     * An interface for tick participants that need not tick at the full rate.  Rated participants
+     * keep their place in the order of the participants, skipping the ticks on which they are not
+     * due (their first ticks are staggered so that participants added together aren't all due on
+     * the same ticks).  Skipped ticks are not replayed: the participant is told how much time has
+     * elapsed since its last tick and must account for it itself.  Reduced rates apply only when
+     * {@link #setTickRatesEnabled enabled}.
+     */
+    public interface RatedTickParticipant extends TickParticipant
+    {
+        /**
+         * Returns the participant's tick rate: a positive number <code>n</code> to tick on every
+         * <code>n</code>th tick (up to {@link #MAX_TICK_DIVISOR}), or {@link #DISTANCE_TICK_RATE}
+         * to tick at a rate determined by the distance from the {@link #getTickPosition position}
+         * to the nearest client's area of interest.  Consulted after each tick to schedule the
+         * next.
+         */
+        public int getTickRate ();
+
+        /**
+         * Returns the position used to determine distance-based tick rates.
+         */
+        public Vector2f getTickPosition ();
+
+        /**
+         * Ticks the participant.
+         *
+         * @param timestamp the timestamp of the current tick.
+         * @param elapsed the time elapsed since the participant's last tick (or since it was
+         * added), which may span several skipped ticks.
+         * @return true to continue ticking the participant, false to remove it.
+         */
+        public boolean tick (int timestamp, int elapsed);
+    }
+
+    /** The tick rate that indicates the rate should depend on the distance to the clients. */
+    public static final int DISTANCE_TICK_RATE = 0;
+
+    /** The maximum number of ticks between the ticks of a rated participant. */
+    public static final int MAX_TICK_DIVISOR = 32;
+
     /**
      * An interface for objects to notify when actors are added or removed.
      */
@@ -208,23 +266,28 @@ public class TudeySceneManager extends SceneManager
     }
 
     /**
-     * Dumps the current set of tick profiles to the log.
+     * Dumps the current set of global tick profiles to the log.
      */
     public static void dumpTickProfiles ()
     {
-        StringBuilder buf = new StringBuilder();
-        for (Map.Entry<String, TickProfile> entry : _profiles.entrySet()) {
-            buf.append(entry.getKey()).append(" => ").append(entry.getValue()).append('\n');
-        }
-        log.info(buf.toString());
+        TickProfiler.getGlobal().dump();
     }
 
     /**
-     * Clears the current set of tick profiles.
+     * Exports the current set of global tick profiles to the specified file in CSV format.
+     */
+    public static void exportTickProfiles (File file)
+        throws IOException
+    {
+        TickProfiler.getGlobal().export(file);
+    }
+
+    /**
+     * Clears the current set of global tick profiles.
      */
     public static void clearTickProfiles ()
     {
-        _profiles.clear();
+        TickProfiler.getGlobal().clear();
     }
 
     /**
@@ -282,17 +345,22 @@ public class TudeySceneManager extends SceneManager
      * @param withinTick if true and we are not currently in the process of ticking, adds the
      * participant in the next tick.
      */
-    public void addTickParticipant (final TickParticipant participant, boolean withinTick)
+    public void addTickParticipant (TickParticipant participant, boolean withinTick)
     {
+        final TickParticipant ticker = (participant instanceof RatedTickParticipant) ?
+            createRatedTicker((RatedTickParticipant)participant, withinTick) : participant;
+        if (ticker == null) {
+            return; // already added
+        }
         if (withinTick && !_ticking) {
             _tickParticipants.add(new TickParticipant() {
                 public boolean tick (int timestamp) {
-                    _tickParticipants.add(participant);
+                    _tickParticipants.add(ticker);
                     return false;
                 }
             });
         } else {
-            _tickParticipants.add(participant);
+            _tickParticipants.add(ticker);
         }
     }
 
@@ -301,7 +369,48 @@ public class TudeySceneManager extends SceneManager
      */
     public void removeTickParticipant (TickParticipant participant)
     {
-        _tickParticipants.remove(participant);
+        RatedTicker ticker = _ratedTickers.remove(participant);
+        _tickParticipants.remove(ticker == null ? participant : ticker);
+    }
+
+    /**
+     * Sets whether rated tick participants may tick at less than the full rate.  If disabled (the
+     * default), all participants tick on every tick.
+     */
+    public void setTickRatesEnabled (boolean enabled)
+    {
+        _tickRatesEnabled = enabled;
+    }
+
+    /**
+     * Checks whether rated tick participants may tick at less than the full rate.
+     */
+    public boolean getTickRatesEnabled ()
+    {
+        return _tickRatesEnabled;
+    }
+
+    /**
+     * Configures the distance-based tick rates.
+     *
+     * @param fullRateDistance the distance from the nearest area of interest within which
+     * participants tick at the full rate.
+     * @param minRateDistance the distance beyond which participants tick at the minimum rate.
+     * @param minRate the minimum rate, in ticks per second.
+     */
+    public void setDistanceTickRates (float fullRateDistance, float minRateDistance, float minRate)
+    {
+        _fullRateDistance = fullRateDistance;
+        _minRateDistance = Math.max(minRateDistance, fullRateDistance);
+        _minTickRate = minRate;
+    }
+
+    /**
+     * Returns the number of rated tick participants.
+     */
+    public int getRatedTickParticipantCount ()
+    {
+        return _ratedTickers.size();
     }
 
     /**
@@ -411,6 +520,170 @@ public class TudeySceneManager extends SceneManager
         return _pathfinder;
     }
 
+    /**
+     * Returns a reference to the grid used to track clients' areas of interest, or
+     * <code>null</code> if the scene uses direct queries of the actor space.
+     */
+    public InterestGrid getInterestGrid ()
+    {
+        return _interestGrid;
+    }
+
+    /**
+     * Returns a reference to the tracker that puts actors outside of clients' areas of interest
+     * to sleep, or <code>null</code> if the scene doesn't support dormancy.
+     */
+    public DormancyTracker getDormancyTracker ()
+    {
+        return _dormancyTracker;
+    }
+
+    /**
+     * Returns a reference to the history of actor positions used for rewound queries, or
+     * <code>null</code> if the scene doesn't retain one.
+     */
+    public PositionHistory getPositionHistory ()
+    {
+        return _positionHistory;
+    }
+
+    /**
+     * Returns the time at which the client controlling the specified activator (if it's a pawn)
+     * saw the other actors: the current timestamp minus the client's control delta, limited to
+     * the time for which positions are retained.  For other activators, returns the current
+     * timestamp.
+     */
+    public int getViewTimestamp (Logic activator)
+    {
+        if (!(activator instanceof PawnLogic) || _positionHistory == null) {
+            return _timestamp;
+        }
+        return Math.max(_timestamp - ((PawnLogic)activator).getControlDelta(),
+            _positionHistory.getOldestTimestamp());
+    }
+
+    /**
+     * Finds the actor elements whose shapes intersected the specified shape at the given time.
+     * If the time is before the current one, the actors are tested at the positions recorded in
+     * the position history.
+     */
+    public void getIntersectingActors (
+        Shape shape, int timestamp, Collection<SpaceElement> results)
+    {
+        if (_positionHistory == null || timestamp >= _timestamp) {
+            _actorSpace.getIntersecting(shape, results);
+        } else {
+            _actorSpace.getIntersecting(shape, _positionHistory.rewind(timestamp),
+                Predicates.alwaysTrue(), results);
+        }
+    }
+
+    /**
+     * Returns the number of (non-static) actors that are awake.
+     */
+    public int getActiveActorCount ()
+    {
+        return (_dormancyTracker == null) ? _actors.size() - _staticActors.size() :
+            _dormancyTracker.getActorCount() - _dormancyTracker.getDormantCount();
+    }
+
+    /**
+     * Returns the number of dormant actors.
+     */
+    public int getDormantActorCount ()
+    {
+        return (_dormancyTracker == null) ? 0 : _dormancyTracker.getDormantCount();
+    }
+
+    /**
+     * Returns a reference to the wheel on which timers driven by the scene clock are scheduled.
+     * Timers fire during the tick, after the tick participants.
+     */
+    public TimerWheel getTimerWheel ()
+    {
+        return _timerWheel;
+    }
+
+    /**
+     * Returns the number of timers fired on the last tick.
+     */
+    public int getTimersFired ()
+    {
+        return _timerWheel.getFired();
+    }
+
+    /**
+     * Returns a reference to the profiler that records this scene's tick samples when profiling
+     * is enabled.  The samples are also accumulated in the global profiler.
+     */
+    public TickProfiler getTickProfiler ()
+    {
+        return _tickProfiler;
+    }
+
+    /**
+     * Returns a reference to the scheduler that releases agent behavior evaluations.  Evaluations
+     * are released at the start of the tick, before the tick participants.
+     */
+    public EvaluationScheduler getEvaluationScheduler ()
+    {
+        return _evaluationScheduler;
+    }
+
+    /**
+     * Returns the interned id of the named signal, assigning a new id if necessary.
+     */
+    public int getSignalId (String name)
+    {
+        Integer id = _signalIds.get(name);
+        if (id == null) {
+            _signalIds.put(name, id = _signalIds.size());
+        }
+        return id;
+    }
+
+    /**
+     * Returns the interned id of the named signal, or -1 if no id has been assigned (in which
+     * case nothing in the scene responds to the signal).
+     */
+    public int findSignalId (String name)
+    {
+        Integer id = _signalIds.get(name);
+        return (id == null) ? -1 : id;
+    }
+
+    /**
+     * Notes that a handler for the identified signal has been created.
+     *
+     * @param id the id of the signal, or a negative value for a handler that receives all
+     * signals.
+     */
+    public void addSignalSubscriber (int id)
+    {
+        if (id < 0) {
+            _allSignalsSubscribed = true;
+        } else {
+            _signalSubscribers.set(id);
+        }
+    }
+
+    /**
+     * Checks whether a handler for the identified signal (or for all signals) has ever been
+     * created in the scene.
+     */
+    public boolean hasSignalSubscribers (int id)
+    {
+        return _allSignalsSubscribed || (id >= 0 && _signalSubscribers.get(id));
+    }
+
+    /**
+     * Returns a reference to the cache used to share delta computations between clients.
+     */
+    public SnapshotCache getSnapshotCache ()
+    {
+        return _snapshotCache;
+    }
+
     /**
      * Sets the default untransformed area of interest region for clients.
      */
@@ -427,6 +700,15 @@ public class TudeySceneManager extends SceneManager
         return _defaultLocalInterest;
     }
 
+    /**
+     * Returns the compact encoding with which to stream actor deltas to clients, or
+     * <code>null</code> to stream them at full precision.
+     */
+    public CompactEncoding getDeltaEncoding ()
+    {
+        return null;
+    }
+
     /**
      * Checks whether we should show region debug effects.
      */
@@ -704,6 +986,7 @@ public class TudeySceneManager extends SceneManager
         }
         // remove mappings
         removeMappings(logic);
+        _sensorContacts.remove(logic);
 
         // special handling for static actors
         if (logic.isStatic()) {
@@ -724,10 +1007,61 @@ public class TudeySceneManager extends SceneManager
     }
 
     /**
-     * Triggers any intersection sensors intersecting the specified shape.
+     * Sets whether or not to batch the intersection sensor triggers requested while the tick
+     * participants are ticking into a single pass at the end of the participant phase.  Batching
+     * is off by default: batched actors trigger the sensors they intersect at the end of the
+     * phase rather than where they were when they requested the trigger, which changes the
+     * behavior of scenes that rely on the ordering of sensor triggers within the phase.
+     */
+    public void setSensorBatching (boolean batch)
+    {
+        _sensorBatching = batch;
+    }
+
+    /**
+     * Checks whether intersection sensor triggers are batched.
+     */
+    public boolean isSensorBatching ()
+    {
+        return _sensorBatching;
+    }
+
+    /**
+     * Sets whether, when batching, to skip the sensor query for actors whose bounds haven't
+     * changed since their last query (provided that the sensor space hasn't changed either) and
+     * instead trigger the sensors found by that query.  Sensors whose shapes change without
+     * altering their bounds won't be noticed until something else in the sensor space changes.
+     */
+    public void setReuseSensorContacts (boolean reuse)
+    {
+        _reuseSensorContacts = reuse;
+        if (!reuse) {
+            _sensorContacts.clear();
+        }
+    }
+
+    /**
+     * Checks whether sensor contacts are reused for actors whose bounds haven't changed.
+     */
+    public boolean getReuseSensorContacts ()
+    {
+        return _reuseSensorContacts;
+    }
+
+    /**
+     * Triggers any intersection sensors intersecting the specified shape.  If called while the
+     * tick participants are ticking and batching is enabled, the actor is queued for the sensor
+     * pass at the end of the participant phase (once, however many times it asks) and this
+     * method returns zero.
      */
     public int triggerIntersectionSensors (int timestamp, ActorLogic actor)
     {
+        if (_queueSensors) {
+            if (_sensorQueued.add(actor)) {
+                _sensorActors.add(actor);
+            }
+            return 0;
+        }
         return triggerSensors(
             IntersectionSensor.class, timestamp, actor.getShape(),
             actor.getActor().getCollisionFlags(), actor);
@@ -739,7 +1073,17 @@ public class TudeySceneManager extends SceneManager
     public int triggerSensors (
         Class<? extends Sensor> type, int timestamp, Shape shape, int flags, ActorLogic actor)
     {
-        return triggerSensors(type, timestamp, ImmutableList.of(shape), flags, actor);
+        if (flags == 0) {
+            return 0;
+        }
+        // a single query returns each element only once, so we can use a list
+        ArrayList<SpaceElement> elements = _elementListPool.acquire();
+        try {
+            _sensorSpace.getIntersecting(shape, elements);
+            return triggerSensorElements(type, timestamp, elements, flags, actor);
+        } finally {
+            _elementListPool.release(elements);
+        }
     }
 
     /**
@@ -751,19 +1095,32 @@ public class TudeySceneManager extends SceneManager
         if (flags == 0) {
             return 0;
         }
-        Set<SpaceElement> elements = Sets.newHashSet();
-        for (Shape shape : shapes) {
-            _sensorSpace.getIntersecting(shape, elements);
-        }
-        int count = 0;
-        for (SpaceElement element : elements) {
-            Sensor sensor = (Sensor)element.getUserObject();
-            if (type.isInstance(sensor) && (flags & sensor.getMask()) != 0) {
-                sensor.trigger(timestamp, actor);
-                count++;
+        Set<SpaceElement> elements = _elementSetPool.acquire();
+        try {
+            for (Shape shape : shapes) {
+                _sensorSpace.getIntersecting(shape, elements);
             }
+            return triggerSensorElements(type, timestamp, elements, flags, actor);
+        } finally {
+            _elementSetPool.release(elements);
         }
-        return count;
+    }
+
+    /**
+     * Acquires a scratch identity set for logic resolution.  The set must be returned with
+     * {@link #releaseLogicSet} when no longer needed.
+     */
+    public Set<Logic> acquireLogicSet ()
+    {
+        return _logicSetPool.acquire();
+    }
+
+    /**
+     * Clears and releases a set acquired with {@link #acquireLogicSet}.
+     */
+    public void releaseLogicSet (Set<Logic> set)
+    {
+        _logicSetPool.release(set);
     }
 
     /**
@@ -800,20 +1157,13 @@ public class TudeySceneManager extends SceneManager
             return true;
         }
 
-        // look for intersecting elements
-        _actorSpace.getIntersecting(shape, _elements);
+        // look for intersecting elements (checking the flags before the shapes)
+        _actorSpace.getIntersecting(shape, _collisionFilter.init(actor, 0, timestamp), _elements);
         try {
-            for (int ii = 0, nn = _elements.size(); ii < nn; ii++) {
-                SpaceElement element = _elements.get(ii);
-                Actor oactor = ((ActorLogic)element.getUserObject()).getActor();
-                if (timestamp < oactor.getDestroyed() && actor.canCollide(oactor)) {
-                    return true;
-                }
-            }
+            return !_elements.isEmpty();
         } finally {
             _elements.clear();
         }
-        return false;
     }
 
     /**
@@ -839,20 +1189,13 @@ public class TudeySceneManager extends SceneManager
             return true;
         }
 
-        // look for intersecting elements
-        _actorSpace.getIntersecting(shape, _elements);
+        // look for intersecting elements (checking the flags before the shapes)
+        _actorSpace.getIntersecting(shape, _collisionFilter.init(null, mask, timestamp), _elements);
         try {
-            for (int ii = 0, nn = _elements.size(); ii < nn; ii++) {
-                SpaceElement element = _elements.get(ii);
-                Actor actor = ((ActorLogic)element.getUserObject()).getActor();
-                if (timestamp < actor.getDestroyed() && (actor.getCollisionFlags() & mask) != 0) {
-                    return true;
-                }
-            }
+            return !_elements.isEmpty();
         } finally {
             _elements.clear();
         }
-        return false;
     }
 
     /**
@@ -1175,16 +1518,14 @@ public class TudeySceneManager extends SceneManager
         // check the scene model
         ((TudeySceneModel)_scene.getSceneModel()).getPenetration(actor, shape, result);
 
-        // get the intersecting elements
-        _actorSpace.getIntersecting(shape, _elements);
+        // get the intersecting elements with which we can collide
+        _actorSpace.getIntersecting(
+            shape, _collisionFilter.init(actor, 0, Integer.MIN_VALUE), _elements);
         for (int ii = 0, nn = _elements.size(); ii < nn; ii++) {
             SpaceElement element = _elements.get(ii);
-            Actor oactor = ((ActorLogic)element.getUserObject()).getActor();
-            if (actor.canCollide(oactor)) {
-                ((ShapeElement)element).getWorldShape().getPenetration(shape, _penetration);
-                if (_penetration.lengthSquared() > result.lengthSquared()) {
-                    result.set(_penetration);
-                }
+            ((ShapeElement)element).getWorldShape().getPenetration(shape, _penetration);
+            if (_penetration.lengthSquared() > result.lengthSquared()) {
+                result.set(_penetration);
             }
         }
         _elements.clear();
@@ -1243,9 +1584,16 @@ public class TudeySceneManager extends SceneManager
         // create the pathfinder
         _pathfinder = new Pathfinder(this);
 
+        // create the interest grid before any actors are added
+        _interestGrid = createInterestGrid();
+        _dormancyTracker = createDormancyTracker();
+
         // get a reference to the ticker
         _ticker = getTicker();
 
+        // create the position history (sized according to the tick interval)
+        _positionHistory = createPositionHistory();
+
         // create logic objects for scene entries and listen for changes
         createEntryLogics(sceneModel);
         sceneModel.addObserver(this);
@@ -1328,7 +1676,10 @@ public class TudeySceneManager extends SceneManager
         super.bodyLeft(bodyOid);
 
         // remove the client liaison
-        _clients.remove(bodyOid);
+        ClientLiaison client = _clients.remove(bodyOid);
+        if (client != null) {
+            client.bodyLeft();
+        }
     }
 
     @Override
@@ -1357,6 +1708,37 @@ public class TudeySceneManager extends SceneManager
         return new ClientLiaison(this, bodyobj, session);
     }
 
+    /**
+     * Creates the grid used to track clients' areas of interest, or returns <code>null</code> (the
+     * default) to have clients query the actor space on each tick through
+     * {@link ClientLiaison#populateVisibleActors} and {@link #getVisibleActors}.  Scenes that
+     * enable the grid (by returning <code>new InterestGrid(this, INTEREST_GRANULARITY)</code>)
+     * bypass those hooks, and are required for dormancy.
+     */
+    protected InterestGrid createInterestGrid ()
+    {
+        return null;
+    }
+
+    /**
+     * Creates the history of actor positions used for rewound queries.  The default
+     * implementation returns <code>null</code>, so that queries are never rewound and no
+     * positions are recorded; override to return a {@link PositionHistory} to enable rewinding.
+     */
+    protected PositionHistory createPositionHistory ()
+    {
+        return null;
+    }
+
+    /**
+     * Creates the tracker used to put actors to sleep, which requires the interest grid.  Dormancy
+     * is disabled until enabled through {@link DormancyTracker#setEnabled}.
+     */
+    protected DormancyTracker createDormancyTracker ()
+    {
+        return (_interestGrid == null) ? null : new DormancyTracker(this, _interestGrid);
+    }
+
     /**
      * Selects a default entrance for an entering player.
      *
@@ -1483,6 +1865,12 @@ public class TudeySceneManager extends SceneManager
         _previousTimestamp = _timestamp;
         _timestamp += (int)(now - _lastTick);
         _lastTick = now;
+        _tickCount++;
+        _clientInterests = null;
+        _timerWheel.setTime(_timestamp);
+
+        // release the behavior evaluations that have come due
+        _evaluationScheduler.tick(_timestamp);
 
         // copy the runnables into another list and clear
         synchronized (_runnables) {
@@ -1493,16 +1881,26 @@ public class TudeySceneManager extends SceneManager
         if (_tickProfEnabled) {
             // tick the participants
             _profileTickOp.init(_timestamp);
+            _queueSensors = _sensorBatching;
             _tickParticipants.apply(_profileTickOp);
+            _queueSensors = false;
+
+            // trigger the sensors for the actors queued during the participant phase
+            triggerQueuedSensors(_timestamp);
+
+            // fire the expired timers
+            long wheelStarted = _tickProfiler.start();
+            _timerWheel.advance();
+            _tickProfiler.record(_timerWheel, wheelStarted);
 
             // process the runnables in the list
             for (int ii = 0, nn = _runlist.size(); ii < nn; ii++) {
                 Runnable runnable = _runlist.get(ii);
                 try {
-                    if (_tickParticipantCount++ % _tickProfInterval == 0) {
-                        long started = System.nanoTime();
+                    if (_tickProfiler.sampleNext(_tickProfInterval)) {
+                        long started = _tickProfiler.start();
                         runnable.run();
-                        updateTickProfile(runnable, started);
+                        _tickProfiler.record(runnable, started);
                     } else {
                         runnable.run();
                     }
@@ -1513,13 +1911,18 @@ public class TudeySceneManager extends SceneManager
             }
             _runlist.clear();
 
+            // record the positions of the actors that moved
+            if (_positionHistory != null) {
+                _positionHistory.record(_timestamp);
+            }
+
             // post deltas for all clients
             for (ClientLiaison client : _clients.values()) {
                 try {
-                    if (_tickParticipantCount++ % _tickProfInterval == 0) {
-                        long started = System.nanoTime();
+                    if (_tickProfiler.sampleNext(_tickProfInterval)) {
+                        long started = _tickProfiler.start();
                         client.postDelta();
-                        updateTickProfile(client, started);
+                        _tickProfiler.record(client, started);
                     } else {
                         client.postDelta();
                     }
@@ -1531,7 +1934,15 @@ public class TudeySceneManager extends SceneManager
         } else {
             // tick the participants
             _tickOp.init(_timestamp);
+            _queueSensors = _sensorBatching;
             _tickParticipants.apply(_tickOp);
+            _queueSensors = false;
+
+            // trigger the sensors for the actors queued during the participant phase
+            triggerQueuedSensors(_timestamp);
+
+            // fire the expired timers
+            _timerWheel.advance();
 
             // process the runnables in the list
             for (int ii = 0, nn = _runlist.size(); ii < nn; ii++) {
@@ -1545,6 +1956,11 @@ public class TudeySceneManager extends SceneManager
             }
             _runlist.clear();
 
+            // record the positions of the actors that moved
+            if (_positionHistory != null) {
+                _positionHistory.record(_timestamp);
+            }
+
             // post deltas for all clients
             for (ClientLiaison client : _clients.values()) {
                 try {
@@ -1562,6 +1978,7 @@ public class TudeySceneManager extends SceneManager
         _staticActorsUpdated.clear();
         _staticActorsRemoved.clear();
         _effectsFired.clear();
+        _snapshotCache.advance();
 
         // note how long the tick took
         _tickDuration = (RunAnywhere.currentTimeMillis() - _lastTick);
@@ -1594,37 +2011,250 @@ public class TudeySceneManager extends SceneManager
     }
 
     /**
-     * Updates the tick profile for the specified participant.
+     * Creates the ticker for a rated participant, staggering its first tick according to its rate.
+     *
+     * @return the ticker, or <code>null</code> if the participant has already been added.
      */
-    protected static void updateTickProfile (Object participant, long started)
+    protected RatedTicker createRatedTicker (RatedTickParticipant participant, boolean withinTick)
     {
-        long elapsed = (System.nanoTime() - started) / 1000L;
-        String cname;
-        if (participant instanceof Interval.RunBuddy) {
-            cname = StringUtil.shortClassName(
-                ((Interval.RunBuddy)participant).getIntervalClassName());
-        } else {
-            cname = StringUtil.shortClassName(participant);
+        if (_ratedTickers.containsKey(participant)) {
+            return null;
+        }
+        int divisor = getTickDivisor(participant);
+        int delay = 1 + (_ratedStagger++ % divisor) + (withinTick && !_ticking ? 1 : 0);
+        RatedTicker ticker = new RatedTicker(participant, _tickCount + delay);
+        _ratedTickers.put(participant, ticker);
+        return ticker;
+    }
+
+    /**
+     * Returns the number of ticks after which to tick the specified participant next.
+     */
+    protected int getTickDivisor (RatedTickParticipant participant)
+    {
+        if (!_tickRatesEnabled) {
+            return 1;
         }
-        if (participant instanceof Logic) {
-            Logic logic = (Logic)participant;
-            participant = logic.getSceneManager().getLogic(logic.getEntityKey());
+        int rate = participant.getTickRate();
+        if (rate != DISTANCE_TICK_RATE) {
+            return Math.max(1, Math.min(rate, MAX_TICK_DIVISOR));
         }
-        ConfigReference ref = null;
-        if (participant instanceof ActorLogic) {
-            ref = ((ActorLogic)participant).getActor().getConfig();
-        } else if (participant instanceof EntryLogic) {
-            ref = ((EntryLogic)participant).getEntry().getReference();
+        float distance = getInterestDistance(participant.getTickPosition());
+        if (distance <= _fullRateDistance) {
+            return 1;
         }
-        if (ref != null) {
-            String rname = ref.getName();
-            cname += ":" + rname.substring(rname.lastIndexOf('/') + 1);
+        int min = Math.max(1, Math.min(
+            Math.round(1000f / (_minTickRate * getTickInterval())), MAX_TICK_DIVISOR));
+        if (distance >= _minRateDistance) {
+            return min;
+        }
+        return 1 + (int)((min - 1) *
+            (distance - _fullRateDistance) / (_minRateDistance - _fullRateDistance));
+    }
+
+    /**
+     * Returns the distance from the specified position to the nearest client's area of interest
+     * (zero if within one, {@link Float#MAX_VALUE} if there are no clients).
+     */
+    protected float getInterestDistance (Vector2f position)
+    {
+        if (_clientInterests == null) {
+            _clientInterests = _clientInterestList;
+            _clientInterests.clear();
+            for (ClientLiaison client : _clients.values()) {
+                _clientInterests.add(client.getWorldInterest());
+            }
+        }
+        float dist2 = Float.MAX_VALUE;
+        for (int ii = 0, nn = _clientInterests.size(); ii < nn; ii++) {
+            Rect interest = _clientInterests.get(ii);
+            Vector2f min = interest.getMinimumExtent(), max = interest.getMaximumExtent();
+            float dx = Math.max(Math.max(min.x - position.x, position.x - max.x), 0f);
+            float dy = Math.max(Math.max(min.y - position.y, position.y - max.y), 0f);
+            dist2 = Math.min(dist2, dx*dx + dy*dy);
+        }
+        return (dist2 == Float.MAX_VALUE) ? dist2 : FloatMath.sqrt(dist2);
+    }
+
+    /**
+     * Triggers the intersection sensors for the actors queued during the participant phase.  The
+     * candidate sensors are found with a single query of the sensor space (using the union of the
+     * actors' bounds) and sorted along the x axis, as are the actors to be queried.  The actors are
+     * then swept along the axis: each actor's range admits the sensors that begin before it ends
+     * to an active list, from which the sensors ending before it begins (and thus before any later
+     * actor begins) are dropped.  The sensors are triggered in a deterministic order: by actor, in
+     * the order in which they were queued, then by the minimum extents of the sensors' bounds.
+     * Actors destroyed before their turn comes are skipped.
+     */
+    protected void triggerQueuedSensors (int timestamp)
+    {
+        int nactors = _sensorActors.size();
+        if (nactors == 0) {
+            return;
+        }
+        int modCount = _sensorSpace.getModCount();
+
+        // determine which actors must be queried, finding the union of their bounds and sorting
+        // them by the minimum x extents of their bounds
+        if (_sensorQueries.length < nactors) {
+            int length = Math.max(nactors, _sensorQueries.length * 2);
+            _sensorQueries = new int[length];
+            _sensorSweep = new long[length];
+        }
+        _sensorBounds.setToEmpty();
+        int nqueries = 0;
+        for (int ii = 0; ii < nactors; ii++) {
+            ActorLogic actor = _sensorActors.get(ii);
+            if (actor.isDestroyed()) {
+                _sensorQueries[ii] = -1;
+                continue;
+            }
+            SensorContacts contacts = _reuseSensorContacts ? _sensorContacts.get(actor) : null;
+            if (contacts != null && contacts.isValid(actor, modCount)) {
+                _sensorQueries[ii] = -1;
+            } else {
+                Rect bounds = actor.getShape().getBounds();
+                long minx = getSortableBits(bounds.getMinimumExtent().x);
+                _sensorSweep[nqueries] = (minx << 32) | ii;
+                _sensorQueries[ii] = nqueries++;
+                _sensorBounds.addLocal(bounds);
+            }
+        }
+        Arrays.sort(_sensorSweep, 0, nqueries);
+
+        // find the candidate sensors and sort them by their bounds
+        if (nqueries > 0) {
+            _sensorSpace.getElements(_sensorBounds, _sensorCandidates);
+            for (int ii = _sensorCandidates.size() - 1; ii >= 0; ii--) {
+                if (!(_sensorCandidates.get(ii).getUserObject() instanceof IntersectionSensor)) {
+                    _sensorCandidates.remove(ii);
+                }
+            }
+            QuickSort.sort(_sensorCandidates, SENSOR_ORDER);
+        }
+
+        // sweep the queried actors, finding the sensors intersecting each
+        if (_sensorOffsets.length < nqueries * 2) {
+            _sensorOffsets = new int[Math.max(nqueries * 2, _sensorOffsets.length * 2)];
+        }
+        int ncandidates = _sensorCandidates.size(), next = 0;
+        for (int ii = 0; ii < nqueries; ii++) {
+            int idx = (int)_sensorSweep[ii];
+            int query = _sensorQueries[idx];
+            ActorLogic actor = _sensorActors.get(idx);
+            Shape shape = actor.getShape();
+            Rect bounds = shape.getBounds();
+            float minx = bounds.getMinimumExtent().x, maxx = bounds.getMaximumExtent().x;
+
+            // admit the sensors that begin before the actor ends
+            for (; next < ncandidates; next++) {
+                SpaceElement element = _sensorCandidates.get(next);
+                if (element.getBounds().getMinimumExtent().x > maxx) {
+                    break;
+                }
+                _sensorActive.add(element);
+            }
+
+            // test the active sensors, dropping those that end before the actor begins
+            int offset = _sensorOffsets[query*2] = _sensorPairs.size();
+            int flags = actor.getActor().getCollisionFlags();
+            int nactive = 0;
+            for (int jj = 0, nn = _sensorActive.size(); jj < nn; jj++) {
+                SpaceElement element = _sensorActive.get(jj);
+                Rect ebounds = element.getBounds();
+                if (ebounds.getMaximumExtent().x < minx) {
+                    continue;
+                }
+                _sensorActive.set(nactive++, element);
+                if ((flags & ((Sensor)element.getUserObject()).getMask()) != 0 &&
+                        ebounds.intersects(bounds) && shape.intersects(element)) {
+                    _sensorPairs.add(element);
+                }
+            }
+            for (int jj = _sensorActive.size() - 1; jj >= nactive; jj--) {
+                _sensorActive.remove(jj);
+            }
+            _sensorOffsets[query*2 + 1] = _sensorPairs.size();
+            if (_reuseSensorContacts) {
+                SensorContacts contacts = _sensorContacts.get(actor);
+                if (contacts == null) {
+                    _sensorContacts.put(actor, contacts = new SensorContacts());
+                }
+                contacts.set(actor, modCount, _sensorPairs, offset, _sensorPairs.size());
+            }
+        }
+
+        // trigger the sensors
+        for (int ii = 0; ii < nactors; ii++) {
+            ActorLogic actor = _sensorActors.get(ii);
+            if (actor.isDestroyed()) {
+                continue;
+            }
+            int query = _sensorQueries[ii];
+            try {
+                if (query == -1) {
+                    ArrayList<SpaceElement> sensors = _sensorContacts.get(actor).sensors;
+                    triggerQueuedSensors(timestamp, actor, sensors, 0, sensors.size(), modCount);
+                } else {
+                    triggerQueuedSensors(timestamp, actor, _sensorPairs,
+                        _sensorOffsets[query*2], _sensorOffsets[query*2 + 1], modCount);
+                }
+            } catch (Throwable t) {
+                log.warning("Caught throwable triggering sensors.",
+                    "where", where(), "actor", actor, t);
+            }
+        }
+        _sensorActors.clear();
+        _sensorQueued.clear();
+        _sensorCandidates.clear();
+        _sensorActive.clear();
+        _sensorPairs.clear();
+    }
+
+    /**
+     * Returns the bits of a float value transformed so that they sort (as signed ints) in the
+     * same order as the values.
+     */
+    protected static int getSortableBits (float value)
+    {
+        int bits = Float.floatToIntBits(value);
+        return bits ^ ((bits >> 31) & 0x7FFFFFFF);
+    }
+
+    /**
+     * Triggers a range of the sensors found for an actor in the sensor pass.
+     *
+     * @param modCount the modification count of the sensor space when the sensors were found.
+     */
+    protected void triggerQueuedSensors (int timestamp, ActorLogic actor,
+            ArrayList<SpaceElement> sensors, int start, int end, int modCount)
+    {
+        for (int ii = start; ii < end; ii++) {
+            SpaceElement element = sensors.get(ii);
+            // make sure the sensor wasn't removed by an earlier trigger
+            if (_sensorSpace.getModCount() != modCount && element instanceof SimpleSpaceElement &&
+                    ((SimpleSpaceElement)element).getSpace() != _sensorSpace) {
+                continue;
+            }
+            ((Sensor)element.getUserObject()).trigger(timestamp, actor);
         }
-        TickProfile tprof = _profiles.get(cname);
-        if (tprof == null) {
-            _profiles.put(cname, tprof = new TickProfile());
+    }
+
+    /**
+     * Triggers the sensors of the specified type among the supplied (distinct) elements.
+     */
+    protected int triggerSensorElements (Class<? extends Sensor> type, int timestamp,
+            Collection<SpaceElement> elements, int flags, ActorLogic actor)
+    {
+        int count = 0;
+        for (SpaceElement element : elements) {
+            Sensor sensor = (Sensor)element.getUserObject();
+            if (type.isInstance(sensor) && (flags & sensor.getMask()) != 0) {
+                sensor.trigger(timestamp, actor);
+                count++;
+            }
         }
-        tprof.record(elapsed);
+        return count;
     }
 
     /**
@@ -1662,16 +2292,26 @@ public class TudeySceneManager extends SceneManager
      */
     protected static class ProfileTickOp extends TickOp
     {
+        /**
+         * Creates a new op that records samples in the specified profiler.
+         */
+        public ProfileTickOp (TickProfiler profiler)
+        {
+            _profiler = profiler;
+        }
+
         @Override
         public boolean apply (TickParticipant participant)
         {
             try {
-                if (_tickParticipantCount++ % _tickProfInterval != 0) {
+                if ((participant instanceof RatedTicker && !((RatedTicker)participant).isDue()) ||
+                        !_profiler.sampleNext(_tickProfInterval)) {
                     return participant.tick(_timestamp);
                 }
-                long started = System.nanoTime();
+                long started = _profiler.start();
                 boolean result = participant.tick(_timestamp);
-                updateTickProfile(participant, started);
+                _profiler.record((participant instanceof RatedTicker) ?
+                    ((RatedTicker)participant).participant : participant, started);
                 return result;
 
             } catch (Throwable t) {
@@ -1680,30 +2320,153 @@ public class TudeySceneManager extends SceneManager
                 return false;
             }
         }
+
+        /** The profiler in which to record samples. */
+        protected TickProfiler _profiler;
     }
 
     /**
-     * Records information about a tick participant.
+     * Ticks a rated participant on the ticks on which it is due.
      */
-    protected static class TickProfile
+    protected class RatedTicker
+        implements TickParticipant
     {
-        public void record (long elapsed)
+        /** The rated participant. */
+        public RatedTickParticipant participant;
+
+        /**
+         * Creates a new ticker for the specified participant.
+         *
+         * @param nextTick the tick count of the participant's first tick.
+         */
+        public RatedTicker (RatedTickParticipant participant, int nextTick)
+        {
+            this.participant = participant;
+            _nextTick = nextTick;
+            _lastTimestamp = _timestamp;
+        }
+
+        /**
+         * Checks whether the participant is due to tick on the current tick.
+         */
+        public boolean isDue ()
+        {
+            return _tickCount - _nextTick >= 0;
+        }
+
+        // documentation inherited from interface TickParticipant
+        public boolean tick (int timestamp)
         {
-            _totalElapsed += elapsed;
-            _histo.addValue((int)elapsed);
-            _longest = Math.max(elapsed, _longest);
+            if (!isDue()) {
+                return true;
+            }
+            int elapsed = timestamp - _lastTimestamp;
+            _lastTimestamp = timestamp;
+            boolean result = false;
+            try {
+                result = participant.tick(timestamp, elapsed);
+            } finally {
+                // forget the participant if we're dropping it (including if it threw)
+                if (!result && _ratedTickers.get(participant) == this) {
+                    _ratedTickers.remove(participant);
+                }
+            }
+            if (result) {
+                _nextTick = _tickCount + getTickDivisor(participant);
+            }
+            return result;
         }
 
         @Override
         public String toString ()
         {
-            int count = _histo.size();
-            return _totalElapsed + "us/" + count + " = " + (_totalElapsed/count) + "us avg " +
-                StringUtil.toString(_histo.getBuckets()) + " " + _longest + "us longest";
+            return String.valueOf(participant);
+        }
+
+        /** The tick count of the participant's next tick. */
+        protected int _nextTick;
+
+        /** The timestamp of the participant's last tick. */
+        protected int _lastTimestamp;
+    }
+
+    /**
+     * The sensors found for an actor in its last sensor query.
+     */
+    protected static class SensorContacts
+    {
+        /** The sensors intersecting the actor. */
+        public ArrayList<SpaceElement> sensors = Lists.newArrayList();
+
+        /**
+         * Checks whether the contacts remain valid for the specified actor.
+         */
+        public boolean isValid (ActorLogic actor, int modCount)
+        {
+            return _modCount == modCount && _flags == actor.getActor().getCollisionFlags() &&
+                _bounds.equals(actor.getShape().getBounds());
         }
 
-        protected long _totalElapsed, _longest;
-        protected Histogram _histo = new Histogram(0, 20000, 10);
+        /**
+         * Sets the contacts.
+         */
+        public void set (ActorLogic actor, int modCount, ArrayList<SpaceElement> pairs,
+                int start, int end)
+        {
+            _modCount = modCount;
+            _flags = actor.getActor().getCollisionFlags();
+            _bounds.set(actor.getShape().getBounds());
+            sensors.clear();
+            sensors.addAll(pairs.subList(start, end));
+        }
+
+        /** The modification count of the sensor space at the time of the query. */
+        protected int _modCount;
+
+        /** The actor's collision flags at the time of the query. */
+        protected int _flags;
+
+        /** The actor's bounds at the time of the query. */
+        protected Rect _bounds = new Rect();
+    }
+
+    /**
+     * Filters actor elements by their collision flags and destruction times.
+     */
+    protected static class CollisionFilter
+        implements Predicate<SpaceElement>
+    {
+        /**
+         * (Re)initializes the filter.
+         *
+         * @param actor the actor whose collision mask to use, or null to use the mask provided.
+         * @param timestamp actors destroyed at or before this time are excluded.
+         * @return a reference to the filter, for chaining.
+         */
+        public CollisionFilter init (Actor actor, int mask, int timestamp)
+        {
+            _actor = actor;
+            _mask = mask;
+            _timestamp = timestamp;
+            return this;
+        }
+
+        // documentation inherited from interface Predicate
+        public boolean apply (SpaceElement element)
+        {
+            Actor oactor = ((ActorLogic)element.getUserObject()).getActor();
+            return _timestamp < oactor.getDestroyed() && ((_actor == null) ?
+                (oactor.getCollisionFlags() & _mask) != 0 : _actor.canCollide(oactor));
+        }
+
+        /** The actor whose mask to use, if any. */
+        protected Actor _actor;
+
+        /** The mask to use if there's no actor. */
+        protected int _mask;
+
+        /** The timestamp of the query. */
+        protected int _timestamp;
     }
 
     /** The injector that we use to create and initialize our logic objects. */
@@ -1781,6 +2544,129 @@ public class TudeySceneManager extends SceneManager
     /** The pathfinder used for path computation. */
     protected Pathfinder _pathfinder;
 
+    /** Tracks the actors within clients' areas of interest (if not using the actor space). */
+    protected InterestGrid _interestGrid;
+
+    /** Puts actors outside of clients' areas of interest to sleep (if using the interest grid). */
+    protected DormancyTracker _dormancyTracker;
+
+    /** The recent positions of the actors, for rewound queries. */
+    protected PositionHistory _positionHistory;
+
+    /** Shares delta computations between client liaisons. */
+    protected SnapshotCache _snapshotCache = new SnapshotCache();
+
+    /** The wheel on which scene timers are scheduled. */
+    protected TimerWheel _timerWheel = new TimerWheel(0);
+
+    /** Releases agent behavior evaluations as they come due. */
+    protected EvaluationScheduler _evaluationScheduler = new EvaluationScheduler(0);
+
+    /** The number of ticks so far. */
+    protected int _tickCount;
+
+    /** The rated tick participants' tickers, mapped by participant. */
+    protected Map<TickParticipant, RatedTicker> _ratedTickers = Maps.newIdentityHashMap();
+
+    /** Used to stagger the first ticks of rated participants. */
+    protected int _ratedStagger;
+
+    /** Whether or not rated participants may tick at less than the full rate. */
+    protected boolean _tickRatesEnabled;
+
+    /** The distance from the nearest area of interest within which to tick at the full rate. */
+    protected float _fullRateDistance = 8f;
+
+    /** The distance beyond which to tick at the minimum rate. */
+    protected float _minRateDistance = 32f;
+
+    /** The minimum rate (in ticks per second) for distance-based participants. */
+    protected float _minTickRate = 2f;
+
+    /** The clients' areas of interest for the current tick, or null if not yet gathered. */
+    protected ArrayList<Rect> _clientInterests;
+
+    /** Holds the clients' areas of interest. */
+    protected ArrayList<Rect> _clientInterestList = Lists.newArrayList();
+
+    /** Whether or not to batch intersection sensor triggers. */
+    protected boolean _sensorBatching;
+
+    /** Whether or not to reuse the sensor contacts of actors whose bounds haven't changed. */
+    protected boolean _reuseSensorContacts;
+
+    /** Set while the tick participants are ticking (if batching) to queue sensor triggers. */
+    protected boolean _queueSensors;
+
+    /** The actors queued for the sensor pass. */
+    protected ArrayList<ActorLogic> _sensorActors = Lists.newArrayList();
+
+    /** The set of actors queued for the sensor pass, used to queue each actor only once. */
+    protected Set<ActorLogic> _sensorQueued =
+        Sets.newSetFromMap(Maps.<ActorLogic, Boolean>newIdentityHashMap());
+
+    /** For each queued actor, the index of its query in the sensor pass (or -1 if reused or
+     * destroyed). */
+    protected int[] _sensorQueries = new int[0];
+
+    /** The sweep order of the queries: the sortable bits of each queried actor's minimum x
+     * extent in the upper word, its queue index in the lower. */
+    protected long[] _sensorSweep = new long[0];
+
+    /** The union of the bounds of the queried actors. */
+    protected Rect _sensorBounds = new Rect();
+
+    /** The candidate sensors in the sensor pass. */
+    protected ArrayList<SpaceElement> _sensorCandidates = Lists.newArrayList();
+
+    /** The sensors active at the current point of the sweep. */
+    protected ArrayList<SpaceElement> _sensorActive = Lists.newArrayList();
+
+    /** The sensors found for the queried actors, in order. */
+    protected ArrayList<SpaceElement> _sensorPairs = Lists.newArrayList();
+
+    /** The start and end offsets of each query's sensors within the pair list. */
+    protected int[] _sensorOffsets = new int[0];
+
+    /** The last sensor contacts for each actor (when reusing contacts). */
+    protected Map<ActorLogic, SensorContacts> _sensorContacts = Maps.newIdentityHashMap();
+
+    /** Records the samples taken when profiling. */
+    protected TickProfiler _tickProfiler = new TickProfiler();
+
+    /** Scratch lists of space elements. */
+    protected ScratchPool<ArrayList<SpaceElement>> _elementListPool =
+        new ScratchPool<ArrayList<SpaceElement>>(_tickProfiler, "scratch_element_lists") {
+        protected ArrayList<SpaceElement> create () {
+            return Lists.newArrayList();
+        }
+    };
+
+    /** Scratch identity sets of space elements. */
+    protected ScratchPool<Set<SpaceElement>> _elementSetPool =
+        new ScratchPool<Set<SpaceElement>>(_tickProfiler, "scratch_element_sets") {
+        protected Set<SpaceElement> create () {
+            return Sets.newSetFromMap(Maps.<SpaceElement, Boolean>newIdentityHashMap());
+        }
+    };
+
+    /** Scratch identity sets of logic objects. */
+    protected ScratchPool<Set<Logic>> _logicSetPool =
+        new ScratchPool<Set<Logic>>(_tickProfiler, "scratch_logic_sets") {
+        protected Set<Logic> create () {
+            return Sets.newSetFromMap(Maps.<Logic, Boolean>newIdentityHashMap());
+        }
+    };
+
+    /** Maps signal names to their interned ids. */
+    protected HashMap<String, Integer> _signalIds = Maps.newHashMap();
+
+    /** The ids of the signals for which handlers have been created. */
+    protected BitSet _signalSubscribers = new BitSet();
+
+    /** Set when a handler that receives all signals has been created. */
+    protected boolean _allSignalsSubscribed;
+
     /** The logic for static actors added on the current tick. */
     protected Set<ActorLogic> _staticActorsAdded = Sets.newHashSet();
 
@@ -1802,6 +2688,9 @@ public class TudeySceneManager extends SceneManager
     /** Holds collected elements during queries. */
     protected ArrayList<SpaceElement> _elements = Lists.newArrayList();
 
+    /** Filters actor elements during collision queries. */
+    protected CollisionFilter _collisionFilter = new CollisionFilter();
+
     /** Holds collected effects during queries. */
     protected ArrayList<Effect> _effects = Lists.newArrayList();
 
@@ -1812,7 +2701,7 @@ public class TudeySceneManager extends SceneManager
     protected TickOp _tickOp = new TickOp();
 
     /** The tick op used when profiling. */
-    protected ProfileTickOp _profileTickOp = new ProfileTickOp();
+    protected ProfileTickOp _profileTickOp = new ProfileTickOp(_tickProfiler);
 
     /** Stores penetration vector during queries. */
     protected Vector2f _penetration = new Vector2f();
@@ -1823,11 +2712,18 @@ public class TudeySceneManager extends SceneManager
     /** The frequency at which we take tick samples. */
     protected static int _tickProfInterval = 100;
 
-    /** Used to profile our tick participants. */
-    protected static Map<String, TickProfile> _profiles = Maps.newHashMap();
+    /** The size of the interest grid cells. */
+    protected static final float INTEREST_GRANULARITY = 8f;
 
-    /** Incremented on each participant tick when profiling. */
-    protected static long _tickParticipantCount;
+    /** Orders sensor elements by the minimum extents of their bounds. */
+    protected static final Comparator<SpaceElement> SENSOR_ORDER = new Comparator<SpaceElement>() {
+        public int compare (SpaceElement e1, SpaceElement e2) {
+            Vector2f min1 = e1.getBounds().getMinimumExtent();
+            Vector2f min2 = e2.getBounds().getMinimumExtent();
+            int comp = Float.compare(min1.x, min2.x);
+            return (comp == 0) ? Float.compare(min1.y, min2.y) : comp;
+        }
+    };
 
     /** Shutdown observer op. */
     protected static final ObserverList.ObserverOp<ShutdownObserver> _shutdownOp =
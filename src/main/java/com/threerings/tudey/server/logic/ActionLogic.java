@@ -25,7 +25,6 @@
 
 package com.threerings.tudey.server.logic;
 
-import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -37,7 +36,6 @@ import com.google.common.collect.Sets;
 
 import com.google.inject.Inject;
 
-import com.samskivert.util.Interval;
 import com.samskivert.util.Randoms;
 import com.samskivert.util.RandomUtil;
 
@@ -62,6 +60,8 @@ import com.threerings.tudey.data.TudeyOccupantInfo;
 import com.threerings.tudey.data.TudeySceneObject;
 import com.threerings.tudey.server.TudeySceneManager;
 import com.threerings.tudey.server.TudeySceneRegistry;
+import com.threerings.tudey.server.util.ActorFlags;
+import com.threerings.tudey.server.util.TimerWheel;
 import com.threerings.tudey.shape.Segment;
 
 import static com.threerings.tudey.Log.*;
@@ -513,6 +513,10 @@ public abstract class ActionLogic extends Logic
         @Override
         public boolean execute (int timestamp, Logic activator)
         {
+            // no need to resolve the targets if nothing in the scene responds to the signal
+            if (!_scenemgr.hasSignalSubscribers(_signalId)) {
+                return true;
+            }
             String name = ((ActionConfig.Signal)_config).name;
             _target.resolve(activator, _targets);
             for (int ii = 0, nn = _targets.size(); ii < nn; ii++) {
@@ -525,8 +529,13 @@ public abstract class ActionLogic extends Logic
         @Override
         protected void didInit ()
         {
-            _target = createTarget(((ActionConfig.Signal)_config).target, _source);
+            ActionConfig.Signal config = (ActionConfig.Signal)_config;
+            _target = createTarget(config.target, _source);
+            _signalId = _scenemgr.getSignalId(config.name);
         }
+
+        /** The interned id of the signal. */
+        protected int _signalId;
     }
 
     /**
@@ -952,7 +961,7 @@ public abstract class ActionLogic extends Logic
                 Thread.dumpStack();
                 return false;
             }
-            Interval interval = new Interval(_scenemgr) {
+            TimerWheel.Timer interval = new TimerWheel.Timer(_scenemgr.getTimerWheel()) {
                 public void expired () {
                     _intervals.remove(this);
                     _action.execute(_scenemgr.getTimestamp(), activator);
@@ -993,7 +1002,7 @@ public abstract class ActionLogic extends Logic
         protected ActionLogic _action;
 
         /** The time intervals. */
-        protected List<Interval> _intervals = Lists.newArrayList();
+        protected List<TimerWheel.Timer> _intervals = Lists.newArrayList();
     }
 
     /**
@@ -1042,15 +1051,10 @@ public abstract class ActionLogic extends Logic
                 Logic target = _targets.get(ii);
                 if (target instanceof ActorLogic) {
                     Actor actor = ((ActorLogic)target).getActor();
-                    try {
-                        Field flag = actor.getClass().getField(config.flag);
-                        actor.set(flag.getInt(actor), config.on);
+                    Integer flag = _flag.getMask(actor);
+                    if (flag != null) {
+                        actor.set(flag, config.on);
                         ret = true;
-                    } catch (NoSuchFieldException e) {
-                        // that's ok; just fall through
-
-                    } catch (IllegalAccessException e) {
-                        log.warning("Cannot access flag field for Set Flag Action.", e);
                     }
                 }
             }
@@ -1061,8 +1065,13 @@ public abstract class ActionLogic extends Logic
         @Override
         protected void didInit ()
         {
-            _target = createTarget(((ActionConfig.SetFlag)_config).target, _source);
+            ActionConfig.SetFlag config = (ActionConfig.SetFlag)_config;
+            _target = createTarget(config.target, _source);
+            _flag = new ActorFlags.Accessor(config.flag);
         }
+
+        /** Resolves the flag mask. */
+        protected ActorFlags.Accessor _flag;
     }
 
     /**
@@ -28,6 +28,7 @@ package com.threerings.tudey.server.logic;
 import java.util.ArrayList;
 import java.util.Map;
 
+import com.samskivert.util.HashIntMap;
 import com.samskivert.util.ObserverList;
 
 import com.threerings.crowd.data.BodyObject;
@@ -46,6 +47,8 @@ import com.threerings.tudey.data.actor.Actor;
 import com.threerings.tudey.data.actor.HasActor;
 import com.threerings.tudey.dobj.ActorDelta;
 import com.threerings.tudey.server.TudeySceneManager;
+import com.threerings.tudey.server.util.DormancyTracker;
+import com.threerings.tudey.server.util.PositionHistory;
 import com.threerings.tudey.shape.Shape;
 import com.threerings.tudey.shape.ShapeElement;
 
@@ -104,6 +107,7 @@ public class ActorLogic extends Logic
             }
         }
         _handlers = handlers.toArray(new HandlerLogic[handlers.size()]);
+        _signalHandlers = createSignalIndex(_handlers);
 
         // give subclasses a chance to set up
         didInit();
@@ -207,6 +211,10 @@ public class ActorLogic extends Logic
      */
     public Actor getSnapshot ()
     {
+        // being seen wakes the actor
+        if (_dormant) {
+            wake(_scenemgr.getTimestamp());
+        }
         updateSnapshot();
         return _snapshot;
     }
@@ -254,6 +262,71 @@ public class ActorLogic extends Logic
         return _shape.getSpace() == null;
     }
 
+    /**
+     * Checks whether the actor is currently dormant.
+     */
+    public boolean isDormant ()
+    {
+        return _dormant;
+    }
+
+    /**
+     * Returns the timestamp at which the actor last woke (zero if it has never slept).
+     */
+    public int getWakeTimestamp ()
+    {
+        return _wakeTimestamp;
+    }
+
+    /**
+     * Determines whether the actor may be put to sleep when it's outside of all clients' areas
+     * of interest.
+     */
+    public boolean canSleep ()
+    {
+        return !(_destroyed || isStatic() || _config.alwaysActive);
+    }
+
+    /**
+     * Puts the actor to sleep: dormant actors drop out of the tick and their handlers' timers
+     * are suspended until they wake.
+     */
+    public void sleep (int timestamp)
+    {
+        if (_dormant) {
+            return;
+        }
+        _dormant = true;
+        for (HandlerLogic handler : _handlers) {
+            handler.sleep(timestamp);
+        }
+        wentDormant(timestamp);
+        DormancyTracker tracker = _scenemgr.getDormancyTracker();
+        if (tracker != null) {
+            tracker.actorSlept(this);
+        }
+    }
+
+    /**
+     * Wakes the actor if it's dormant.
+     */
+    public void wake (int timestamp)
+    {
+        if (!_dormant) {
+            return;
+        }
+        _dormant = false;
+        _wakeTimestamp = timestamp;
+        for (HandlerLogic handler : _handlers) {
+            handler.wake(timestamp);
+        }
+        wokeUp(timestamp);
+        DormancyTracker tracker = _scenemgr.getDormancyTracker();
+        if (tracker != null) {
+            tracker.actorWoke(this);
+        }
+    }
+
     /**
      * Warps the actor.
      */
@@ -328,6 +401,12 @@ public class ActorLogic extends Logic
 
             _scenemgr.getActorSpace().add(_shape);
         }
+
+        // don't let rewound queries interpolate across the warp
+        PositionHistory history = _scenemgr.getPositionHistory();
+        if (history != null) {
+            history.reset(this);
+        }
         _scenemgr.addTickParticipant(new TudeySceneManager.TickParticipant() {
             public boolean tick (int timestamp) {
                 _actor.clear(Actor.WARP);
@@ -362,6 +441,9 @@ public class ActorLogic extends Logic
         }
         _destroyed = true;
 
+        // make sure the handlers are awake to shut down
+        wake(timestamp);
+
         // set the destroyed time and remove on the next tick
         _actor.setDestroyed(timestamp);
         wasUpdated();
@@ -466,9 +548,11 @@ public class ActorLogic extends Logic
         if (isDestroyed() || _handlers == null) {
             return;
         }
-        for (HandlerLogic handler : _handlers) {
-            handler.signal(timestamp, source, name);
+        int id = _scenemgr.findSignalId(name);
+        if (_dormant && hasSignalHandlers(_signalHandlers, id)) {
+            wake(timestamp);
         }
+        dispatchSignal(_signalHandlers, timestamp, source, id, name);
     }
 
     @Override
@@ -688,6 +772,22 @@ public class ActorLogic extends Logic
         // nothing by default
     }
 
+    /**
+     * Override to perform custom actions when the actor goes to sleep.
+     */
+    protected void wentDormant (int timestamp)
+    {
+        // nothing by default
+    }
+
+    /**
+     * Override to perform custom actions when the actor wakes up.
+     */
+    protected void wokeUp (int timestamp)
+    {
+        // nothing by default
+    }
+
     /**
      * Override to perform custom cleanup.
      */
@@ -742,6 +842,9 @@ public class ActorLogic extends Logic
     /** The actor's event handlers. */
     protected HandlerLogic[] _handlers;
 
+    /** Maps signal ids to the handlers that respond to them (or <code>null</code> for none). */
+    protected HashIntMap<HandlerLogic[]> _signalHandlers;
+
     /** The actor's shape observers. */
     protected ObserverList<ShapeObserver> _shapeObservers = ObserverList.newFastUnsafe();
 
@@ -758,6 +861,12 @@ public class ActorLogic extends Logic
     /** Set when the actor has been destroyed. */
     protected boolean _destroyed;
 
+    /** Set while the actor is dormant. */
+    protected boolean _dormant;
+
+    /** The timestamp at which the actor last woke. */
+    protected int _wakeTimestamp;
+
     /** Used to notify observers when the shape is about to change. */
     protected ObserverList.ObserverOp<ShapeObserver> _shapeWillChangeOp =
         new ObserverList.ObserverOp<ShapeObserver>() {
@@ -35,12 +35,14 @@ import com.threerings.tudey.config.ActorConfig;
 import com.threerings.tudey.config.BehaviorConfig;
 import com.threerings.tudey.data.actor.Agent;
 import com.threerings.tudey.data.actor.Mobile;
+import com.threerings.tudey.server.TudeySceneManager;
 import com.threerings.tudey.util.ActiveAdvancer;
 
 /**
  * Controls an autonomous agent.
  */
 public class AgentLogic extends ActiveLogic
+    implements TudeySceneManager.RatedTickParticipant
 {
     /**
      * Checks whether we can move.
@@ -212,6 +214,25 @@ public class AgentLogic extends ActiveLogic
         _behavior.transfer(asource._behavior, refs);
     }
 
+    // documentation inherited from interface TudeySceneManager.RatedTickParticipant
+    public int getTickRate ()
+    {
+        return ((ActorConfig.Agent)_config).tickRate;
+    }
+
+    // documentation inherited from interface TudeySceneManager.RatedTickParticipant
+    public Vector2f getTickPosition ()
+    {
+        return _actor.getTranslation();
+    }
+
+    // documentation inherited from interface TudeySceneManager.RatedTickParticipant
+    public boolean tick (int timestamp, int elapsed)
+    {
+        // the advancer and the turn update work from the timestamps
+        return tick(timestamp);
+    }
+
     @Override
     public boolean tick (int timestamp)
     {
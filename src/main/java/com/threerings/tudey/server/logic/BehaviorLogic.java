@@ -43,6 +43,9 @@ import com.threerings.tudey.data.EntityKey;
 import com.threerings.tudey.data.actor.Actor;
 import com.threerings.tudey.data.actor.Mobile;
 import com.threerings.tudey.server.TudeySceneManager;
+import com.threerings.tudey.server.util.EvaluationScheduler;
+import com.threerings.tudey.server.util.FlowField;
+import com.threerings.tudey.server.util.Pathfinder;
 
 import static com.threerings.tudey.Log.*;
 
@@ -78,11 +81,23 @@ public abstract class BehaviorLogic extends Logic
             advanceEvaluation();
         }
 
+        @Override
+        public void suspend ()
+        {
+            postponeNextEvaluation();
+        }
+
+        @Override
+        public void shutdown ()
+        {
+            _evaluation.cancel();
+        }
+
         @Override
         public void tick (int timestamp)
         {
-            // if scheduled to do so, evaluate
-            if (_agent.canThink() && timestamp >= _nextEvaluation) {
+            // if released by the scheduler, evaluate
+            if (_evaluation.isDue() && _agent.canThink()) {
                 evaluate();
             }
         }
@@ -91,7 +106,14 @@ public abstract class BehaviorLogic extends Logic
         public void transfer (Logic source, Map<Object, Object> refs)
         {
             super.transfer(source, refs);
-            _nextEvaluation = ((Evaluating)source)._nextEvaluation;
+            _evaluation.transfer(((Evaluating)source)._evaluation);
+        }
+
+        @Override
+        protected void didInit ()
+        {
+            super.didInit();
+            _evaluation = new EvaluationScheduler.Evaluation(_scenemgr.getEvaluationScheduler());
         }
 
         /**
@@ -107,8 +129,9 @@ public abstract class BehaviorLogic extends Logic
          */
         protected void scheduleNextEvaluation ()
         {
-            _nextEvaluation = _scenemgr.getTimestamp() +
-                (int)(((BehaviorConfig.Evaluating)_config).evaluationInterval.getValue() * 1000f);
+            int interval = (int)
+                (((BehaviorConfig.Evaluating)_config).evaluationInterval.getValue() * 1000f);
+            _evaluation.schedule(interval);
         }
 
         /**
@@ -116,7 +139,7 @@ public abstract class BehaviorLogic extends Logic
          */
         protected void postponeNextEvaluation ()
         {
-            _nextEvaluation = Integer.MAX_VALUE;
+            _evaluation.cancel();
         }
 
         /**
@@ -124,11 +147,11 @@ public abstract class BehaviorLogic extends Logic
          */
         protected void advanceEvaluation ()
         {
-            _nextEvaluation = _scenemgr.getTimestamp();
+            _evaluation.advance();
         }
 
-        /** The time for which the next evaluation is scheduled. */
-        protected int _nextEvaluation;
+        /** The scheduled evaluation. */
+        protected EvaluationScheduler.Evaluation _evaluation;
     }
 
     /**
@@ -413,16 +436,7 @@ public abstract class BehaviorLogic extends Logic
             }
             // make sure we're facing the right direction
             Vector2f node = _path[_pidx];
-            float rot = FloatMath.atan2(node.y - trans.y, node.x - trans.x);
-            float dist = FloatMath.getAngularDistance(_agent.getRotation(), rot);
-            if (dist > 0.0001f) {
-                _agent.setTargetRotation(rot);
-            }
-            if (dist > _moveFaceRange) {
-                _agent.stopMoving();
-            } else {
-                _agent.startMoving();
-            }
+            steer(FloatMath.atan2(node.y - trans.y, node.x - trans.x));
         }
 
         @Override
@@ -457,6 +471,23 @@ public abstract class BehaviorLogic extends Logic
             }
         }
 
+        /**
+         * Turns the agent towards the specified direction, moving only once it is facing
+         * (roughly) that way.
+         */
+        protected void steer (float rot)
+        {
+            float dist = FloatMath.getAngularDistance(_agent.getRotation(), rot);
+            if (dist > 0.0001f) {
+                _agent.setTargetRotation(rot);
+            }
+            if (dist > _moveFaceRange) {
+                _agent.stopMoving();
+            } else {
+                _agent.startMoving();
+            }
+        }
+
         /**
          * Returns the radius within which we can be consider ourselves to have reached a node
          * (which depends on the actor's speed, since it's possible to overshoot).
@@ -633,7 +664,31 @@ public abstract class BehaviorLogic extends Logic
      * Handles the follow behavior.
      */
     public static class Follow extends Pathing
+        implements Pathfinder.PathListener
     {
+        @Override
+        public void suspend ()
+        {
+            super.suspend();
+            cancelRequest();
+        }
+
+        @Override
+        public void shutdown ()
+        {
+            super.shutdown();
+            cancelRequest();
+        }
+
+        @Override
+        public void tick (int timestamp)
+        {
+            super.tick(timestamp);
+            if (_flowing) {
+                followFlowField();
+            }
+        }
+
         @Override
         public Logic getCurrentTarget ()
         {
@@ -644,7 +699,11 @@ public abstract class BehaviorLogic extends Logic
         public void transfer (Logic source, Map<Object, Object> refs)
         {
             super.transfer(source, refs);
-            _target.transfer(((Follow)source)._target, refs);
+
+            Follow fsource = (Follow)source;
+            _target.transfer(fsource._target, refs);
+            _currentTarget = (Logic)refs.get(fsource._currentTarget);
+            _flowing = fsource._flowing && _currentTarget != null;
         }
 
         @Override
@@ -674,31 +733,109 @@ public abstract class BehaviorLogic extends Logic
             }
             _targets.clear();
 
-            // if we're within our distance bounds, stop and face the target
+            // if we're within our distance bounds, stop and face the target (if there's no
+            // target, we continue on any path we were following, but have no field to follow)
             if (_currentTarget == null) {
+                if (_flowing) {
+                    clearPath();
+                }
                 return;
             }
             BehaviorConfig.Follow config = (BehaviorConfig.Follow)_config;
             float min2 = config.minimumDistance*config.minimumDistance;
             float max2 = config.maximumDistance*config.maximumDistance;
             if (FloatMath.isWithin(cdist, min2, max2)) {
+                cancelRequest();
                 clearPath();
                 _agent.face(_currentTarget);
                 return;
             }
 
-            // compute a path to the target
-            Vector2f loc = _currentTarget.getTranslation();
-            Vector2f[] path = _scenemgr.getPathfinder().getPath(
-                _agent, MAX_FOLLOW_PATH_LENGTH, loc.x, loc.y, true, true);
-            if (path == null) {
+            // if we lie within the flow field, steer down it on each tick (if the field can't
+            // reach the target, neither can a search)
+            Pathfinder pathfinder = _scenemgr.getPathfinder();
+            if (config.flowField) {
+                FlowField field = pathfinder.getFlowField(
+                    _agent, _currentTarget, MAX_FOLLOW_PATH_LENGTH);
+                if (field.contains(field.getCellX(trans.x), field.getCellY(trans.y))) {
+                    cancelRequest();
+                    _path = null;
+                    _flowing = true;
+                    return;
+                }
+                Vector2f[] path = pathfinder.getFlowPath(_agent, _currentTarget, field, true);
+                if (path != null) {
+                    cancelRequest();
+                    setPath(path);
+                    return;
+                }
+            }
+
+            // otherwise, request a path to the target, continuing on our current path until it
+            // arrives (if a request is still pending, we let it complete rather than resubmitting
+            // it; if it was superseded or cancelled by some other party, we submit a new one)
+            if (_request == null || _request.isCancelled()) {
+                Vector2f loc = _currentTarget.getTranslation();
+                _request = pathfinder.requestPath(
+                    _agent, MAX_FOLLOW_PATH_LENGTH, loc.x, loc.y, true, true, this);
+            }
+        }
+
+        // documentation inherited from interface Pathfinder.PathListener
+        public void pathComputed (Vector2f[] path)
+        {
+            _request = null;
+            if (path != null) {
+                setPath(path);
+                return;
+            }
+            clearPath();
+            if (_currentTarget != null) {
+                _agent.face(_currentTarget);
+            }
+        }
+
+        @Override
+        protected void setPath (Vector2f[] path)
+        {
+            super.setPath(path);
+            _flowing = false;
+        }
+
+        @Override
+        protected void clearPath ()
+        {
+            super.clearPath();
+            if (_flowing) {
+                _agent.stopMoving();
+                _flowing = false;
+            }
+        }
+
+        /**
+         * Cancels the outstanding path request, if any.
+         */
+        protected void cancelRequest ()
+        {
+            if (_request != null) {
+                _request.cancel();
+                _request = null;
+            }
+        }
+
+        /**
+         * Steers the agent in the direction given by the target's flow field, stopping once it
+         * reaches the target (or can no longer find a direction).
+         */
+        protected void followFlowField ()
+        {
+            if (!_scenemgr.getPathfinder().getFlowDirection(
+                    _agent, _currentTarget, MAX_FOLLOW_PATH_LENGTH, _direction)) {
                 clearPath();
                 _agent.face(_currentTarget);
                 return;
             }
-
-            // start out on the path
-            setPath(path);
+            steer(FloatMath.atan2(_direction.y, _direction.x));
         }
 
         /** The target to follow. */
@@ -709,6 +846,15 @@ public abstract class BehaviorLogic extends Logic
 
         /** The current target. */
         protected Logic _currentTarget;
+
+        /** The outstanding path request, if any. */
+        protected Pathfinder.PathRequest _request;
+
+        /** Whether we're steering down the target's flow field (rather than following a path). */
+        protected boolean _flowing;
+
+        /** Holds the direction of the flow field. */
+        protected Vector2f _direction = new Vector2f();
     }
 
     /**
@@ -747,6 +893,15 @@ public abstract class BehaviorLogic extends Logic
             return _active == null ? null : _active.getCurrentTarget();
         }
 
+        @Override
+        public void shutdown ()
+        {
+            super.shutdown();
+            if (_active != null) {
+                _active.shutdown();
+            }
+        }
+
         @Override
         public void transfer (Logic source, Map<Object, Object> refs)
         {
@@ -782,6 +937,10 @@ public abstract class BehaviorLogic extends Logic
             if (nactive == _active) {
                 return;
             }
+            // suspend the outgoing behavior so that its evaluations don't remain scheduled
+            if (_active != null) {
+                _active.suspend();
+            }
             if ((_active = nactive) != null) {
                 _active.startup();
             }
@@ -25,8 +25,6 @@
 
 package com.threerings.tudey.server.logic;
 
-import java.lang.reflect.Field;
-
 import java.util.ArrayList;
 import java.util.Map;
 
@@ -41,6 +39,7 @@ import com.threerings.tudey.data.EntityKey;
 import com.threerings.tudey.data.actor.Actor;
 import com.threerings.tudey.config.ConditionConfig;
 import com.threerings.tudey.server.TudeySceneManager;
+import com.threerings.tudey.server.util.ActorFlags;
 import com.threerings.tudey.shape.Shape;
 
 import static com.threerings.tudey.Log.*;
@@ -465,15 +464,12 @@ public abstract class ConditionLogic extends Logic
                     Logic logic = _targets.get(ii);
                     if (logic instanceof ActorLogic) {
                         Actor actor = ((ActorLogic)logic).getActor();
-                        try {
-                            Field flag = actor.getClass().getField(config.flagName);
-                            if (actor.isSet(flag.getInt(actor))) {
-                                return config.set;
-                            }
-                        } catch (NoSuchFieldException e) {
-                            log.warning("Flag field not found in class for Flag Set Condition.", e);
-                        } catch (IllegalAccessException e) {
-                            log.warning("Cannot access flag field for Flag Set Condition.", e);
+                        Integer flag = _flag.getMask(actor);
+                        if (flag == null) {
+                            log.warning("Flag field not found in class for Flag Set Condition.",
+                                "class", actor.getClass(), "flag", config.flagName);
+                        } else if (actor.isSet(flag)) {
+                            return config.set;
                         }
                     }
                 }
@@ -487,9 +483,14 @@ public abstract class ConditionLogic extends Logic
         @Override
         protected void didInit ()
         {
-            _target = createTarget(((ConditionConfig.FlagSet)_config).target, _source);
+            ConditionConfig.FlagSet config = (ConditionConfig.FlagSet)_config;
+            _target = createTarget(config.target, _source);
+            _flag = new ActorFlags.Accessor(config.flagName);
         }
 
+        /** Resolves the flag mask. */
+        protected ActorFlags.Accessor _flag;
+
         /** Holds targets during evaluation. */
         protected ArrayList<Logic> _targets = Lists.newArrayList();
     }
@@ -569,7 +570,7 @@ public abstract class ConditionLogic extends Logic
         @Override
         public boolean isSatisfied (Logic activator)
         {
-            return ExpressionLogic.coerceToBoolean(_expression.evaluate(activator, null));
+            return _expression.evaluateBoolean(activator, null);
         }
 
         @Override
@@ -28,6 +28,8 @@ package com.threerings.tudey.server.logic;
 import java.util.ArrayList;
 import java.util.Map;
 
+import com.samskivert.util.HashIntMap;
+
 import com.threerings.config.ConfigManager;
 import com.threerings.config.ConfigReference;
 import com.threerings.math.Vector2f;
@@ -135,6 +137,7 @@ public class EntryLogic extends Logic
             }
         }
         _handlers = handlers.toArray(new HandlerLogic[handlers.size()]);
+        _signalHandlers = createSignalIndex(_handlers);
 
         // give subclasses a chance to set up
         didInit();
@@ -239,9 +242,7 @@ public class EntryLogic extends Logic
     @Override
     public void signal (int timestamp, Logic source, String name)
     {
-        for (HandlerLogic handler : _handlers) {
-            handler.signal(timestamp, source, name);
-        }
+        dispatchSignal(_signalHandlers, timestamp, source, _scenemgr.findSignalId(name), name);
     }
 
     @Override
@@ -323,4 +324,7 @@ public class EntryLogic extends Logic
 
     /** The entry's event handlers. */
     protected HandlerLogic[] _handlers;
+
+    /** Maps signal ids to the handlers that respond to them (or <code>null</code> for none). */
+    protected HashIntMap<HandlerLogic[]> _signalHandlers;
 }
@@ -54,10 +54,29 @@ public abstract class ExpressionLogic extends Logic
             return _expr.evaluate(activator, previous);
         }
 
+        @Override
+        public double evaluateDouble (Logic activator, Object previous)
+        {
+            return _expr.evaluateDouble(activator, previous);
+        }
+
+        @Override
+        public boolean evaluateBoolean (Logic activator, Object previous)
+        {
+            return _expr.evaluateBoolean(activator, previous);
+        }
+
+        @Override
+        public boolean isConstant ()
+        {
+            return _expr != null && _expr.isConstant();
+        }
+
         @Override
         protected void didInit ()
         {
-            _expr = createExpression(((ExpressionConfig.Parsed)_config).getExpression(), _source);
+            _expr = fold(createExpression(
+                ((ExpressionConfig.Parsed)_config).getExpression(), _source));
         }
 
         /** The parsed value. */
@@ -75,14 +94,65 @@ public abstract class ExpressionLogic extends Logic
             return _value;
         }
 
+        @Override
+        public double evaluateDouble (Logic activator, Object previous)
+        {
+            return _doubleValue;
+        }
+
+        @Override
+        public boolean evaluateBoolean (Logic activator, Object previous)
+        {
+            return _booleanValue;
+        }
+
+        @Override
+        public boolean isConstant ()
+        {
+            return true;
+        }
+
         @Override
         protected void didInit ()
         {
-            _value = parseValue(((ExpressionConfig.Constant)_config).value);
+            setValue(parseValue(((ExpressionConfig.Constant)_config).value));
+        }
+
+        /**
+         * Sets the value and precomputes its coercions.
+         */
+        protected void setValue (Object value)
+        {
+            _value = value;
+            _doubleValue = coerceToDouble(value);
+            _booleanValue = coerceToBoolean(value);
         }
 
         /** The parsed value. */
         protected Object _value;
+
+        /** The value coerced to a double. */
+        protected double _doubleValue;
+
+        /** The value coerced to a boolean. */
+        protected boolean _booleanValue;
+    }
+
+    /**
+     * A constant that replaces an expression that always evaluates to the same value.
+     */
+    public static class Folded extends Constant
+    {
+        /**
+         * Initializes the logic with the value of the supplied constant expression.
+         */
+        public void init (TudeySceneManager scenemgr, ExpressionLogic expr)
+        {
+            super.init(scenemgr);
+            _config = expr._config;
+            _source = expr._source;
+            setValue(expr.evaluate(null, null));
+        }
     }
 
     /**
@@ -133,6 +203,15 @@ public abstract class ExpressionLogic extends Logic
             return numTargets;
         }
 
+        @Override
+        public double evaluateDouble (Logic activator, Object previous)
+        {
+            _target.resolve(activator, _targets);
+            int numTargets = _targets.size();
+            _targets.clear();
+            return numTargets;
+        }
+
         @Override
         protected void didInit ()
         {
@@ -175,11 +254,17 @@ public abstract class ExpressionLogic extends Logic
      */
     public static abstract class UnaryOperation extends ExpressionLogic
     {
+        @Override
+        public boolean isConstant ()
+        {
+            return _operand != null && _operand.isConstant();
+        }
+
         @Override
         protected void didInit ()
         {
-            _operand = createExpression(
-                ((ExpressionConfig.UnaryOperation)_config).operand, _source);
+            _operand = fold(createExpression(
+                ((ExpressionConfig.UnaryOperation)_config).operand, _source));
         }
 
         /** The operand logic. */
@@ -194,7 +279,13 @@ public abstract class ExpressionLogic extends Logic
         @Override
         public Object evaluate (Logic activator, Object previous)
         {
-            return coerceToDouble(_operand.evaluate(activator, previous)) + 1.0;
+            return evaluateDouble(activator, previous);
+        }
+
+        @Override
+        public double evaluateDouble (Logic activator, Object previous)
+        {
+            return _operand.evaluateDouble(activator, previous) + 1.0;
         }
     }
 
@@ -206,7 +297,13 @@ public abstract class ExpressionLogic extends Logic
         @Override
         public Object evaluate (Logic activator, Object previous)
         {
-            return coerceToDouble(_operand.evaluate(activator, previous)) - 1.0;
+            return evaluateDouble(activator, previous);
+        }
+
+        @Override
+        public double evaluateDouble (Logic activator, Object previous)
+        {
+            return _operand.evaluateDouble(activator, previous) - 1.0;
         }
     }
 
@@ -218,7 +315,13 @@ public abstract class ExpressionLogic extends Logic
         @Override
         public Object evaluate (Logic activator, Object previous)
         {
-            return -coerceToDouble(_operand.evaluate(activator, previous));
+            return evaluateDouble(activator, previous);
+        }
+
+        @Override
+        public double evaluateDouble (Logic activator, Object previous)
+        {
+            return -_operand.evaluateDouble(activator, previous);
         }
     }
 
@@ -227,12 +330,19 @@ public abstract class ExpressionLogic extends Logic
      */
     public static abstract class BinaryOperation extends ExpressionLogic
     {
+        @Override
+        public boolean isConstant ()
+        {
+            return _firstOperand != null && _firstOperand.isConstant() &&
+                _secondOperand != null && _secondOperand.isConstant();
+        }
+
         @Override
         protected void didInit ()
         {
             ExpressionConfig.BinaryOperation config = (ExpressionConfig.BinaryOperation)_config;
-            _firstOperand = createExpression(config.firstOperand, _source);
-            _secondOperand = createExpression(config.secondOperand, _source);
+            _firstOperand = fold(createExpression(config.firstOperand, _source));
+            _secondOperand = fold(createExpression(config.secondOperand, _source));
         }
 
         /** The operand logics. */
@@ -247,8 +357,14 @@ public abstract class ExpressionLogic extends Logic
         @Override
         public Object evaluate (Logic activator, Object previous)
         {
-            return coerceToDouble(_firstOperand.evaluate(activator, previous)) +
-                coerceToDouble(_secondOperand.evaluate(activator, previous));
+            return evaluateDouble(activator, previous);
+        }
+
+        @Override
+        public double evaluateDouble (Logic activator, Object previous)
+        {
+            return _firstOperand.evaluateDouble(activator, previous) +
+                _secondOperand.evaluateDouble(activator, previous);
         }
     }
 
@@ -260,8 +376,14 @@ public abstract class ExpressionLogic extends Logic
         @Override
         public Object evaluate (Logic activator, Object previous)
         {
-            return coerceToDouble(_firstOperand.evaluate(activator, previous)) -
-                coerceToDouble(_secondOperand.evaluate(activator, previous));
+            return evaluateDouble(activator, previous);
+        }
+
+        @Override
+        public double evaluateDouble (Logic activator, Object previous)
+        {
+            return _firstOperand.evaluateDouble(activator, previous) -
+                _secondOperand.evaluateDouble(activator, previous);
         }
     }
 
@@ -273,8 +395,14 @@ public abstract class ExpressionLogic extends Logic
         @Override
         public Object evaluate (Logic activator, Object previous)
         {
-            return coerceToDouble(_firstOperand.evaluate(activator, previous)) *
-                coerceToDouble(_secondOperand.evaluate(activator, previous));
+            return evaluateDouble(activator, previous);
+        }
+
+        @Override
+        public double evaluateDouble (Logic activator, Object previous)
+        {
+            return _firstOperand.evaluateDouble(activator, previous) *
+                _secondOperand.evaluateDouble(activator, previous);
         }
     }
 
@@ -286,8 +414,14 @@ public abstract class ExpressionLogic extends Logic
         @Override
         public Object evaluate (Logic activator, Object previous)
         {
-            return coerceToDouble(_firstOperand.evaluate(activator, previous)) /
-                coerceToDouble(_secondOperand.evaluate(activator, previous));
+            return evaluateDouble(activator, previous);
+        }
+
+        @Override
+        public double evaluateDouble (Logic activator, Object previous)
+        {
+            return _firstOperand.evaluateDouble(activator, previous) /
+                _secondOperand.evaluateDouble(activator, previous);
         }
     }
 
@@ -299,8 +433,14 @@ public abstract class ExpressionLogic extends Logic
         @Override
         public Object evaluate (Logic activator, Object previous)
         {
-            return coerceToDouble(_firstOperand.evaluate(activator, previous)) %
-                coerceToDouble(_secondOperand.evaluate(activator, previous));
+            return evaluateDouble(activator, previous);
+        }
+
+        @Override
+        public double evaluateDouble (Logic activator, Object previous)
+        {
+            return _firstOperand.evaluateDouble(activator, previous) %
+                _secondOperand.evaluateDouble(activator, previous);
         }
     }
 
@@ -312,7 +452,13 @@ public abstract class ExpressionLogic extends Logic
         @Override
         public Object evaluate (Logic activator, Object previous)
         {
-            return !coerceToBoolean(_operand.evaluate(activator, previous));
+            return evaluateBoolean(activator, previous);
+        }
+
+        @Override
+        public boolean evaluateBoolean (Logic activator, Object previous)
+        {
+            return !_operand.evaluateBoolean(activator, previous);
         }
     }
 
@@ -324,8 +470,14 @@ public abstract class ExpressionLogic extends Logic
         @Override
         public Object evaluate (Logic activator, Object previous)
         {
-            return coerceToBoolean(_firstOperand.evaluate(activator, previous)) &&
-                coerceToBoolean(_secondOperand.evaluate(activator, previous));
+            return evaluateBoolean(activator, previous);
+        }
+
+        @Override
+        public boolean evaluateBoolean (Logic activator, Object previous)
+        {
+            return _firstOperand.evaluateBoolean(activator, previous) &&
+                _secondOperand.evaluateBoolean(activator, previous);
         }
     }
 
@@ -337,8 +489,14 @@ public abstract class ExpressionLogic extends Logic
         @Override
         public Object evaluate (Logic activator, Object previous)
         {
-            return coerceToBoolean(_firstOperand.evaluate(activator, previous)) ||
-                coerceToBoolean(_secondOperand.evaluate(activator, previous));
+            return evaluateBoolean(activator, previous);
+        }
+
+        @Override
+        public boolean evaluateBoolean (Logic activator, Object previous)
+        {
+            return _firstOperand.evaluateBoolean(activator, previous) ||
+                _secondOperand.evaluateBoolean(activator, previous);
         }
     }
 
@@ -350,8 +508,14 @@ public abstract class ExpressionLogic extends Logic
         @Override
         public Object evaluate (Logic activator, Object previous)
         {
-            return coerceToBoolean(_firstOperand.evaluate(activator, previous)) ^
-                coerceToBoolean(_secondOperand.evaluate(activator, previous));
+            return evaluateBoolean(activator, previous);
+        }
+
+        @Override
+        public boolean evaluateBoolean (Logic activator, Object previous)
+        {
+            return _firstOperand.evaluateBoolean(activator, previous) ^
+                _secondOperand.evaluateBoolean(activator, previous);
         }
     }
 
@@ -363,8 +527,14 @@ public abstract class ExpressionLogic extends Logic
         @Override
         public Object evaluate (Logic activator, Object previous)
         {
-            return coerceToDouble(_firstOperand.evaluate(activator, previous)) <
-                coerceToDouble(_secondOperand.evaluate(activator, previous));
+            return evaluateBoolean(activator, previous);
+        }
+
+        @Override
+        public boolean evaluateBoolean (Logic activator, Object previous)
+        {
+            return _firstOperand.evaluateDouble(activator, previous) <
+                _secondOperand.evaluateDouble(activator, previous);
         }
     }
 
@@ -376,8 +546,14 @@ public abstract class ExpressionLogic extends Logic
         @Override
         public Object evaluate (Logic activator, Object previous)
         {
-            return coerceToDouble(_firstOperand.evaluate(activator, previous)) >
-                coerceToDouble(_secondOperand.evaluate(activator, previous));
+            return evaluateBoolean(activator, previous);
+        }
+
+        @Override
+        public boolean evaluateBoolean (Logic activator, Object previous)
+        {
+            return _firstOperand.evaluateDouble(activator, previous) >
+                _secondOperand.evaluateDouble(activator, previous);
         }
     }
 
@@ -402,8 +578,14 @@ public abstract class ExpressionLogic extends Logic
         @Override
         public Object evaluate (Logic activator, Object previous)
         {
-            return coerceToDouble(_firstOperand.evaluate(activator, previous)) <=
-                coerceToDouble(_secondOperand.evaluate(activator, previous));
+            return evaluateBoolean(activator, previous);
+        }
+
+        @Override
+        public boolean evaluateBoolean (Logic activator, Object previous)
+        {
+            return _firstOperand.evaluateDouble(activator, previous) <=
+                _secondOperand.evaluateDouble(activator, previous);
         }
     }
 
@@ -415,8 +597,14 @@ public abstract class ExpressionLogic extends Logic
         @Override
         public Object evaluate (Logic activator, Object previous)
         {
-            return coerceToDouble(_firstOperand.evaluate(activator, previous)) >=
-                coerceToDouble(_secondOperand.evaluate(activator, previous));
+            return evaluateBoolean(activator, previous);
+        }
+
+        @Override
+        public boolean evaluateBoolean (Logic activator, Object previous)
+        {
+            return _firstOperand.evaluateDouble(activator, previous) >=
+                _secondOperand.evaluateDouble(activator, previous);
         }
     }
 
@@ -438,6 +626,33 @@ public abstract class ExpressionLogic extends Logic
      */
     public abstract Object evaluate (Logic activator, Object previous);
 
+    /**
+     * Evaluates the expression as a double.  The numeric expressions override this to compute
+     * their results without boxing the intermediate values.
+     */
+    public double evaluateDouble (Logic activator, Object previous)
+    {
+        return coerceToDouble(evaluate(activator, previous));
+    }
+
+    /**
+     * Evaluates the expression as a boolean.  The logical and comparison expressions override
+     * this to compute their results without boxing the intermediate values.
+     */
+    public boolean evaluateBoolean (Logic activator, Object previous)
+    {
+        return coerceToBoolean(evaluate(activator, previous));
+    }
+
+    /**
+     * Checks whether the expression always evaluates to the same value, regardless of the
+     * activator, the previous value, and the state of the scene.
+     */
+    public boolean isConstant ()
+    {
+        return false;
+    }
+
     @Override
     public boolean isActive ()
     {
@@ -470,6 +685,20 @@ public abstract class ExpressionLogic extends Logic
         // nothing by default
     }
 
+    /**
+     * Replaces the supplied expression with a precomputed constant if it always evaluates to the
+     * same value.
+     */
+    protected ExpressionLogic fold (ExpressionLogic expr)
+    {
+        if (expr == null || expr instanceof Constant || !expr.isConstant()) {
+            return expr;
+        }
+        Folded folded = new Folded();
+        folded.init(_scenemgr, expr);
+        return folded;
+    }
+
     /**
      * Attempts to parse the supplied string into one of our known types.
      */
@@ -32,8 +32,6 @@ import java.util.Map;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
-import com.samskivert.util.Interval;
-
 import com.threerings.presents.dobj.EntryAddedEvent;
 import com.threerings.presents.dobj.EntryRemovedEvent;
 import com.threerings.presents.dobj.NamedSetAdapter;
@@ -50,6 +48,7 @@ import com.threerings.tudey.config.ParameterizedHandlerConfig;
 import com.threerings.tudey.data.EntityKey;
 import com.threerings.tudey.data.TudeyOccupantInfo;
 import com.threerings.tudey.server.TudeySceneManager;
+import com.threerings.tudey.server.util.TimerWheel;
 import com.threerings.tudey.shape.Shape;
 import com.threerings.tudey.shape.ShapeElement;
 
@@ -113,6 +112,22 @@ public abstract class HandlerLogic extends Logic
             }
         }
 
+        @Override
+        public void sleep (int timestamp)
+        {
+            if (_handler != null) {
+                _handler.sleep(timestamp);
+            }
+        }
+
+        @Override
+        public void wake (int timestamp)
+        {
+            if (_handler != null) {
+                _handler.wake(timestamp);
+            }
+        }
+
         @Override
         public void transfer (Logic source, Map<Object, Object> refs)
         {
@@ -176,6 +191,18 @@ public abstract class HandlerLogic extends Logic
         {
             _scenemgr.removeTickParticipant(this);
         }
+
+        @Override
+        public void sleep (int timestamp)
+        {
+            _scenemgr.removeTickParticipant(this);
+        }
+
+        @Override
+        public void wake (int timestamp)
+        {
+            _scenemgr.addTickParticipant(this);
+        }
     }
 
     /**
@@ -190,7 +217,7 @@ public abstract class HandlerLogic extends Logic
             _limit = (config.limit == 0) ? Integer.MAX_VALUE : config.limit;
             // offset -> initialDelay: makes offset 0 behave as before and effects negative offsets.
             float initialDelay = Math.max(0f, config.interval + config.offset);
-            (_interval = new Interval(_scenemgr) {
+            (_interval = new TimerWheel.Timer(_scenemgr.getTimerWheel()) {
                 public void expired () {
                     execute(_scenemgr.getTimestamp());
                     if (--_limit > 0 && _interval != null) {
@@ -207,6 +234,18 @@ public abstract class HandlerLogic extends Logic
             _interval = null;
         }
 
+        @Override
+        public void sleep (int timestamp)
+        {
+            _remaining = suspend(_interval);
+        }
+
+        @Override
+        public void wake (int timestamp)
+        {
+            resume(_interval, _remaining);
+        }
+
         @Override
         public void transfer (Logic source, Map<Object, Object> refs)
         {
@@ -220,7 +259,10 @@ public abstract class HandlerLogic extends Logic
         protected int _limit;
 
         /** The timer interval. */
-        protected Interval _interval;
+        protected TimerWheel.Timer _interval;
+
+        /** The time remaining on the interval when suspended (-1 if not scheduled). */
+        protected int _remaining = -1;
     }
 
     /**
@@ -238,7 +280,7 @@ public abstract class HandlerLogic extends Logic
                 return;
             }
             float initialDelay = config.interval - config.warn + config.offset;
-            (_warnInterval = new Interval(_scenemgr) {
+            (_warnInterval = new TimerWheel.Timer(_scenemgr.getTimerWheel()) {
                 public void expired () {
                     _warnAction.execute(_scenemgr.getTimestamp(), _source);
                     if (_limit > 1 && _warnInterval != null) {
@@ -258,6 +300,20 @@ public abstract class HandlerLogic extends Logic
             }
         }
 
+        @Override
+        public void sleep (int timestamp)
+        {
+            super.sleep(timestamp);
+            _warnRemaining = suspend(_warnInterval);
+        }
+
+        @Override
+        public void wake (int timestamp)
+        {
+            super.wake(timestamp);
+            resume(_warnInterval, _warnRemaining);
+        }
+
         @Override
         public void transfer (Logic source, Map<Object, Object> refs)
         {
@@ -281,7 +337,10 @@ public abstract class HandlerLogic extends Logic
         protected ActionLogic _warnAction;
 
         /** The warning interval. */
-        protected Interval _warnInterval;
+        protected TimerWheel.Timer _warnInterval;
+
+        /** The time remaining on the warning interval when suspended (-1 if not scheduled). */
+        protected int _warnRemaining = -1;
     }
 
     /**
@@ -289,6 +348,12 @@ public abstract class HandlerLogic extends Logic
      */
     public static class Signal extends ActionHandlerLogic
     {
+        @Override
+        public String getSignalName ()
+        {
+            return ((HandlerConfig.Signal)_config).name;
+        }
+
         @Override
         public void signal (int timestamp, Logic source, String name)
         {
@@ -391,6 +456,12 @@ public abstract class HandlerLogic extends Logic
             super(true, false);
         }
 
+        @Override
+        public String getSignalName ()
+        {
+            return ((HandlerConfig.SignalStart)_config).name;
+        }
+
         @Override
         public void signal (int timestamp, Logic source, String name)
         {
@@ -413,6 +484,12 @@ public abstract class HandlerLogic extends Logic
             super(false, true);
         }
 
+        @Override
+        public String getSignalName ()
+        {
+            return ((HandlerConfig.SignalStop)_config).name;
+        }
+
         @Override
         public void signal (int timestamp, Logic source, String name)
         {
@@ -510,6 +587,7 @@ public abstract class HandlerLogic extends Logic
         // documentation inherited from interface TudeySceneManager.IntersectionSensor
         public void trigger (int timestamp, ActorLogic actor)
         {
+            wakeSource(timestamp);
             if (timestamp >= _minTimestamp) {
                 execute(timestamp, actor);
                 _minTimestamp = Math.round(timestamp +
@@ -551,6 +629,7 @@ public abstract class HandlerLogic extends Logic
         // documentation inherited from interface TudeySceneManager.IntersectionSensor
         public void trigger (int timestamp, ActorLogic actor)
         {
+            wakeSource(timestamp);
             activate(timestamp, actor);
         }
     }
@@ -578,6 +657,7 @@ public abstract class HandlerLogic extends Logic
         // documentation inherited from interface TudeySceneManager.IntersectionSensor
         public void trigger (int timestamp, ActorLogic actor)
         {
+            wakeSource(timestamp);
             activate(timestamp, actor);
         }
     }
@@ -980,6 +1060,25 @@ public abstract class HandlerLogic extends Logic
         didInit();
     }
 
+    /**
+     * Returns the name of the signal to which this handler responds, or <code>null</code> to
+     * receive all signals.  Handlers that name a signal are only notified of that signal.
+     */
+    public String getSignalName ()
+    {
+        return null;
+    }
+
+    /**
+     * Checks whether this handler must be notified of every signal: that is, whether it names no
+     * signal but overrides {@link #signal(int, Logic, String)} (handlers that don't override it
+     * would ignore the signals anyway).
+     */
+    public boolean receivesAllSignals ()
+    {
+        return getSignalName() == null && overridesSignal();
+    }
+
     /**
      * Starts up the handler.
      */
@@ -1006,6 +1105,23 @@ public abstract class HandlerLogic extends Logic
         // nothing by default
     }
 
+    /**
+     * Notes that the source actor has gone to sleep.  Handlers that tick or run timers should
+     * suspend them until woken.
+     */
+    public void sleep (int timestamp)
+    {
+        // nothing by default
+    }
+
+    /**
+     * Notes that the source actor has woken up.
+     */
+    public void wake (int timestamp)
+    {
+        // nothing by default
+    }
+
     /**
      * Notes that the logic has been removed.
      */
@@ -1055,6 +1171,40 @@ public abstract class HandlerLogic extends Logic
         // nothing by default
     }
 
+    /**
+     * Wakes the source if it's a dormant actor.
+     */
+    protected void wakeSource (int timestamp)
+    {
+        if (_source instanceof ActorLogic) {
+            ((ActorLogic)_source).wake(timestamp);
+        }
+    }
+
+    /**
+     * Suspends a timer (if any), returning the time it had remaining (or -1 if it wasn't
+     * scheduled).
+     */
+    protected static int suspend (TimerWheel.Timer timer)
+    {
+        if (timer == null) {
+            return -1;
+        }
+        int remaining = timer.getRemaining();
+        timer.cancel();
+        return remaining;
+    }
+
+    /**
+     * Resumes a timer suspended with {@link #suspend}.
+     */
+    protected static void resume (TimerWheel.Timer timer, int remaining)
+    {
+        if (timer != null && remaining >= 0) {
+            timer.schedule(remaining);
+        }
+    }
+
     /** The handler configuration. */
     protected HandlerConfig _config;
 
@@ -25,11 +25,15 @@
 
 package com.threerings.tudey.server.logic;
 
+import java.util.List;
 import java.util.Map;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 import com.samskivert.util.ArrayUtil;
+import com.samskivert.util.HashIntMap;
+import com.samskivert.util.IntMaps;
 
 import com.threerings.config.ConfigReference;
 import com.threerings.math.Transform2D;
@@ -76,6 +80,12 @@ public abstract class Logic extends ShallowObject
     public void init (TudeySceneManager scenemgr)
     {
         _scenemgr = scenemgr;
+
+        // logic that handles signals itself (rather than through indexed handlers) may respond
+        // to any signal
+        if (!(this instanceof HandlerLogic) && overridesSignal()) {
+            scenemgr.addSignalSubscriber(ALL_SIGNALS);
+        }
     }
 
     /**
@@ -286,6 +296,107 @@ public abstract class Logic extends ShallowObject
         return logic;
     }
 
+    /**
+     * Creates an index mapping signal ids to the handlers that respond to them.  The list for
+     * each named signal also contains the handlers that receive all signals, so that the
+     * handlers are notified in the order in which they were declared.  Handlers that receive all
+     * signals are additionally mapped to {@link #ALL_SIGNALS}, for signals with no named
+     * handlers.
+     *
+     * @return the index, or <code>null</code> if none of the handlers respond to signals.
+     */
+    protected HashIntMap<HandlerLogic[]> createSignalIndex (HandlerLogic[] handlers)
+    {
+        HashIntMap<HandlerLogic[]> index = null;
+        int[] ids = new int[handlers.length];
+        for (int ii = 0; ii < handlers.length; ii++) {
+            HandlerLogic handler = handlers[ii];
+            String name = handler.getSignalName();
+            if (name != null) {
+                ids[ii] = _scenemgr.getSignalId(name);
+            } else if (handler.receivesAllSignals()) {
+                ids[ii] = ALL_SIGNALS;
+            } else {
+                ids[ii] = -1;
+            }
+        }
+        for (int ii = 0; ii < handlers.length; ii++) {
+            int id = ids[ii];
+            if (id == -1 || (index != null && index.containsKey(id))) {
+                continue;
+            }
+            // the catch-all handlers go in every list, in declaration order
+            List<HandlerLogic> list = Lists.newArrayList();
+            for (int jj = 0; jj < handlers.length; jj++) {
+                if (ids[jj] == id || ids[jj] == ALL_SIGNALS) {
+                    list.add(handlers[jj]);
+                }
+            }
+            if (index == null) {
+                index = IntMaps.newHashIntMap();
+            }
+            index.put(id, list.toArray(new HandlerLogic[list.size()]));
+            _scenemgr.addSignalSubscriber(id);
+        }
+        return index;
+    }
+
+    /**
+     * Checks whether the class of this logic overrides {@link #signal(int, Logic, String)} with
+     * its own handling (beyond the indexed dispatch of {@link ActorLogic} and
+     * {@link EntryLogic}).
+     */
+    protected boolean overridesSignal ()
+    {
+        Class<?> clazz = getClass();
+        synchronized (_overridesSignal) {
+            Boolean overrides = _overridesSignal.get(clazz);
+            if (overrides == null) {
+                Class<?> dclazz;
+                try {
+                    dclazz = clazz.getMethod(
+                        "signal", Integer.TYPE, Logic.class, String.class).getDeclaringClass();
+                } catch (NoSuchMethodException e) {
+                    dclazz = Logic.class; // can't happen
+                }
+                _overridesSignal.put(clazz, overrides = !(dclazz == Logic.class ||
+                    dclazz == ActorLogic.class || dclazz == EntryLogic.class));
+            }
+            return overrides;
+        }
+    }
+
+    /**
+     * Checks whether any of the handlers in the supplied index (which may be <code>null</code>)
+     * respond to the identified signal.
+     */
+    protected static boolean hasSignalHandlers (HashIntMap<HandlerLogic[]> index, int id)
+    {
+        return index != null && (index.containsKey(id) || index.containsKey(ALL_SIGNALS));
+    }
+
+    /**
+     * Dispatches a signal to the handlers in the supplied index (which may be <code>null</code>)
+     * that respond to it.
+     *
+     * @param id the interned id of the signal, or -1 if it has none.
+     */
+    protected static void dispatchSignal (
+        HashIntMap<HandlerLogic[]> index, int timestamp, Logic source, int id, String name)
+    {
+        if (index == null) {
+            return;
+        }
+        // the list for a named signal includes the catch-all handlers
+        HandlerLogic[] handlers = (id == -1) ? null : index.get(id);
+        if (handlers == null && (handlers = index.get(ALL_SIGNALS)) == null) {
+            return;
+        }
+        for (HandlerLogic handler : handlers) {
+            handler.signal(timestamp, source, name);
+        }
+    }
+
     /**
      * Creates an action with the supplied configuration and source.
      */
@@ -371,4 +482,10 @@ public abstract class Logic extends ShallowObject
 
     /** The lazily initialized variable map. */
     protected Map<String, Object> _variables;
+
+    /** The key under which handlers that receive all signals are indexed. */
+    protected static final int ALL_SIGNALS = -2;
+
+    /** Caches, for each logic class, whether it overrides the signal method. */
+    protected static final Map<Class<?>, Boolean> _overridesSignal = Maps.newHashMap();
 }
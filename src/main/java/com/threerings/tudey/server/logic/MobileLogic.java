@@ -119,7 +119,10 @@ public class MobileLogic extends ActorLogic
     @Override
     public Actor getSnapshot ()
     {
-        // wake the actor up if it's in stasis
+        // wake the actor up if it's dormant or in stasis
+        if (_dormant) {
+            wake(_scenemgr.getTimestamp());
+        }
         if (_inStasis) {
             _scenemgr.addTickParticipant(this);
             _inStasis = false;
@@ -162,6 +165,25 @@ public class MobileLogic extends ActorLogic
         }
     }
 
+    @Override
+    protected void wentDormant (int timestamp)
+    {
+        super.wentDormant(timestamp);
+        if (!_inStasis) {
+            _scenemgr.removeTickParticipant(this);
+        }
+    }
+
+    @Override
+    protected void wokeUp (int timestamp)
+    {
+        super.wokeUp(timestamp);
+        if (!_inStasis) {
+            _scenemgr.addTickParticipant(this);
+            _advancer.jump(timestamp);
+        }
+    }
+
     @Override
     protected void wasDestroyed ()
     {
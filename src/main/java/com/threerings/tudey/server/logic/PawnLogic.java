@@ -69,6 +69,12 @@ public class PawnLogic extends ActiveLogic
         return getControlDelta()/2; // split the difference
     }
 
+    @Override
+    public boolean canSleep ()
+    {
+        return false; // controlled by a client
+    }
+
     @Override
     public boolean tick (int timestamp)
     {
@@ -28,13 +28,12 @@ package com.threerings.tudey.server.logic;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.Map;
+import java.util.Set;
 
 import com.google.common.collect.Lists;
 
 import com.samskivert.util.CollectionUtil;
-import com.samskivert.util.QuickSort;
 import com.samskivert.util.RandomUtil;
 
 import com.threerings.math.Vector2f;
@@ -168,12 +167,14 @@ public abstract class TargetLogic extends Logic
         {
             _region.resolve(activator, _shapes);
             TargetConfig.Intersecting config = (TargetConfig.Intersecting)_config;
+            int timestamp = config.rewind ?
+                _scenemgr.getViewTimestamp(activator) : _scenemgr.getTimestamp();
             for (int ii = 0, nn = _shapes.size(); ii < nn; ii++) {
                 Shape shape = _shapes.get(ii);
                 if (config.actors) {
                     @SuppressWarnings("unchecked") ArrayList<SpaceElement> elements =
                         (ArrayList<SpaceElement>)_results;
-                    _scenemgr.getActorSpace().getIntersecting(shape, elements);
+                    _scenemgr.getIntersectingActors(shape, timestamp, elements);
                     for (int jj = 0, mm = elements.size(); jj < mm; jj++) {
                         results.add((ActorLogic)elements.get(jj).getUserObject());
                     }
@@ -283,7 +284,6 @@ public abstract class TargetLogic extends Logic
      * Superclass of the distance-based subsets.
      */
     public static abstract class DistanceSubset extends Subset
-        implements Comparator<Logic>
     {
         @Override
         protected void didInit ()
@@ -312,11 +312,89 @@ public abstract class TargetLogic extends Logic
             _reference.multLocal(1f / nlocs);
             _locations.clear();
 
-            // sort
-            QuickSort.sort(_targets, this);
+            // compute the sort keys
+            int ntargets = _targets.size();
+            if (_keys.length < ntargets) {
+                _keys = new float[Math.max(ntargets, _keys.length * 2)];
+            }
+            for (int ii = 0; ii < ntargets; ii++) {
+                _keys[ii] = getKey(_targets.get(ii).getTranslation().distanceSquared(_reference));
+            }
+
+            // select the indices of the targets with the lowest keys using a bounded max-heap,
+            // rather than sorting the entire list
+            if (_heap.length < size) {
+                _heap = new int[Math.max(size, _heap.length * 2)];
+            }
+            int count = 0;
+            for (int ii = 0; ii < ntargets; ii++) {
+                if (count < size) {
+                    _heap[count] = ii;
+                    siftUp(count++);
+                } else if (_keys[ii] < _keys[_heap[0]]) {
+                    _heap[0] = ii;
+                    siftDown(0, count);
+                }
+            }
+
+            // sort the heap in place (leaving the lowest keys first) and add the targets in order
+            for (int ii = count - 1; ii > 0; ii--) {
+                int tmp = _heap[0];
+                _heap[0] = _heap[ii];
+                _heap[ii] = tmp;
+                siftDown(0, ii);
+            }
+            for (int ii = 0; ii < count; ii++) {
+                results.add(_targets.get(_heap[ii]));
+            }
+        }
+
+        /**
+         * Returns the sort key for a target at the specified squared distance from the reference
+         * point.  The targets with the lowest keys are selected.
+         */
+        protected abstract float getKey (float distanceSquared);
+
+        /**
+         * Moves the heap entry at the specified index up to its proper position.
+         */
+        protected void siftUp (int idx)
+        {
+            int entry = _heap[idx];
+            float key = _keys[entry];
+            while (idx > 0) {
+                int parent = (idx - 1) >> 1;
+                if (_keys[_heap[parent]] >= key) {
+                    break;
+                }
+                _heap[idx] = _heap[parent];
+                idx = parent;
+            }
+            _heap[idx] = entry;
+        }
 
-            // add first size elements
-            results.addAll(_targets.subList(0, size));
+        /**
+         * Moves the heap entry at the specified index down to its proper position.
+         */
+        protected void siftDown (int idx, int count)
+        {
+            int entry = _heap[idx];
+            float key = _keys[entry];
+            while (true) {
+                int child = (idx << 1) + 1;
+                if (child >= count) {
+                    break;
+                }
+                if (child + 1 < count && _keys[_heap[child + 1]] > _keys[_heap[child]]) {
+                    child++;
+                }
+                if (_keys[_heap[child]] <= key) {
+                    break;
+                }
+                _heap[idx] = _heap[child];
+                idx = child;
+            }
+            _heap[idx] = entry;
         }
 
         /** The reference location. */
@@ -327,6 +405,12 @@ public abstract class TargetLogic extends Logic
 
         /** Holds the reference point. */
         protected Vector2f _reference = new Vector2f();
+
+        /** Holds the sort keys of the targets during processing. */
+        protected float[] _keys = new float[0];
+
+        /** Holds the heap of selected target indices during processing. */
+        protected int[] _heap = new int[0];
     }
 
     /**
@@ -334,12 +418,10 @@ public abstract class TargetLogic extends Logic
      */
     public static class NearestSubset extends DistanceSubset
     {
-        // documentation inherited from interface Comparator
-        public int compare (Logic l1, Logic l2)
+        @Override
+        protected float getKey (float distanceSquared)
         {
-            return Float.compare(
-                l1.getTranslation().distance(_reference),
-                l2.getTranslation().distance(_reference));
+            return distanceSquared;
         }
     }
 
@@ -348,12 +430,10 @@ public abstract class TargetLogic extends Logic
      */
     public static class FarthestSubset extends DistanceSubset
     {
-        // documentation inherited from interface Comparator
-        public int compare (Logic l1, Logic l2)
+        @Override
+        protected float getKey (float distanceSquared)
         {
-            return Float.compare(
-                l2.getTranslation().distance(_reference),
-                l1.getTranslation().distance(_reference));
+            return -distanceSquared;
         }
     }
 
@@ -495,12 +575,18 @@ public abstract class TargetLogic extends Logic
         {
             _target.resolve(activator, _targets);
             if (_targets.size() > 0) {
-                _excluding.resolve(activator, _excluded);
-                _targets.removeAll(_excluded);
-                if (_targets.size() > 0) {
-                    results.addAll(_targets);
+                Set<Logic> excluded = _scenemgr.acquireLogicSet();
+                try {
+                    _excluding.resolve(activator, excluded);
+                    for (int ii = 0, nn = _targets.size(); ii < nn; ii++) {
+                        Logic target = _targets.get(ii);
+                        if (!excluded.contains(target)) {
+                            results.add(target);
+                        }
+                    }
+                } finally {
+                    _scenemgr.releaseLogicSet(excluded);
                 }
-                _excluded.clear();
             }
             _targets.clear();
         }
@@ -531,9 +617,6 @@ public abstract class TargetLogic extends Logic
 
         /** Holds the targets during processing. */
         protected ArrayList<Logic> _targets = Lists.newArrayList();
-
-        /** Holds the excluded targets during processing. */
-        protected ArrayList<Logic> _excluded = Lists.newArrayList();
     }
 
     /**
@@ -0,0 +1,361 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.tools;
+
+import com.threerings.tudey.server.logic.ExpressionLogic;
+import com.threerings.tudey.server.logic.Logic;
+
+/**
+ * Compares the time taken by the unboxed {@link ExpressionLogic} evaluation with that of an
+ * equivalent tree that boxes every intermediate value (as all expressions did before the typed
+ * evaluation methods were added).
+ */
+public class ExpressionBenchmark
+{
+    /**
+     * A non-constant input, evaluated (like variables and references) as a boxed value.
+     */
+    public static class Input extends ExpressionLogic
+    {
+        /** The current value of the input. */
+        public double value;
+
+        @Override
+        public Object evaluate (Logic activator, Object previous)
+        {
+            return value;
+        }
+    }
+
+    /**
+     * Program entry point.
+     */
+    public static void main (String[] args)
+    {
+        Input input = new Input();
+        ExpressionLogic boxed = createTree(input, true);
+        ExpressionLogic unboxed = createTree(input, false);
+        for (int ii = 0; ii < WARMUP_RUNS; ii++) {
+            evaluate(boxed, input);
+            evaluate(unboxed, input);
+        }
+        long btime = 0L, utime = 0L;
+        int btrue = 0, utrue = 0;
+        for (int ii = 0; ii < MEASURED_RUNS; ii++) {
+            long start = System.nanoTime();
+            btrue += evaluate(boxed, input);
+            btime += System.nanoTime() - start;
+            start = System.nanoTime();
+            utrue += evaluate(unboxed, input);
+            utime += System.nanoTime() - start;
+        }
+        if (btrue != utrue) {
+            System.err.println("Results differ: boxed " + btrue + ", unboxed " + utrue);
+        }
+        System.out.println("boxed: " + (btime / MEASURED_RUNS / 1000L) + " us per " +
+            EVALUATIONS + " evaluations");
+        System.out.println("unboxed: " + (utime / MEASURED_RUNS / 1000L) + " us per " +
+            EVALUATIONS + " evaluations");
+    }
+
+    /**
+     * Creates the tree for <code>(x + 2) * 3 - x / 4 < 100 && !(x > 50)</code>.
+     *
+     * @param boxed if true, create a tree whose nodes box their intermediate values.
+     */
+    public static ExpressionLogic createTree (Input x, boolean boxed)
+    {
+        ExpressionLogic sum = new Add(boxed, x, new Constant(2.0));
+        ExpressionLogic product = new Multiply(boxed, sum, new Constant(3.0));
+        ExpressionLogic quotient = new Divide(boxed, x, new Constant(4.0));
+        ExpressionLogic difference = new Subtract(boxed, product, quotient);
+        ExpressionLogic less = new Less(boxed, difference, new Constant(100.0));
+        ExpressionLogic greater = new Greater(boxed, x, new Constant(50.0));
+        return new And(boxed, less, new Not(boxed, greater));
+    }
+
+    /**
+     * Evaluates the tree (as a condition would) for a range of inputs.
+     *
+     * @return the number of evaluations that returned true.
+     */
+    protected static int evaluate (ExpressionLogic tree, Input input)
+    {
+        int count = 0;
+        for (int ii = 0; ii < EVALUATIONS; ii++) {
+            input.value = ii % 400 - 200;
+            if (tree.evaluateBoolean(null, null)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * A constant with a preset value.
+     */
+    protected static class Constant extends ExpressionLogic.Constant
+    {
+        public Constant (double value)
+        {
+            setValue(value);
+        }
+    }
+
+    /**
+     * The operations, which optionally box their intermediate values.
+     */
+    protected static class Add extends ExpressionLogic.Add
+    {
+        public Add (boolean boxed, ExpressionLogic first, ExpressionLogic second)
+        {
+            _boxed = boxed;
+            _firstOperand = first;
+            _secondOperand = second;
+        }
+
+        @Override
+        public Object evaluate (Logic activator, Object previous)
+        {
+            return _boxed ? coerceToDouble(_firstOperand.evaluate(activator, previous)) +
+                coerceToDouble(_secondOperand.evaluate(activator, previous)) :
+                super.evaluate(activator, previous);
+        }
+
+        @Override
+        public double evaluateDouble (Logic activator, Object previous)
+        {
+            return _boxed ? coerceToDouble(evaluate(activator, previous)) :
+                super.evaluateDouble(activator, previous);
+        }
+
+        /** Whether or not to box the intermediate values. */
+        protected boolean _boxed;
+    }
+
+    protected static class Subtract extends ExpressionLogic.Subtract
+    {
+        public Subtract (boolean boxed, ExpressionLogic first, ExpressionLogic second)
+        {
+            _boxed = boxed;
+            _firstOperand = first;
+            _secondOperand = second;
+        }
+
+        @Override
+        public Object evaluate (Logic activator, Object previous)
+        {
+            return _boxed ? coerceToDouble(_firstOperand.evaluate(activator, previous)) -
+                coerceToDouble(_secondOperand.evaluate(activator, previous)) :
+                super.evaluate(activator, previous);
+        }
+
+        @Override
+        public double evaluateDouble (Logic activator, Object previous)
+        {
+            return _boxed ? coerceToDouble(evaluate(activator, previous)) :
+                super.evaluateDouble(activator, previous);
+        }
+
+        /** Whether or not to box the intermediate values. */
+        protected boolean _boxed;
+    }
+
+    protected static class Multiply extends ExpressionLogic.Multiply
+    {
+        public Multiply (boolean boxed, ExpressionLogic first, ExpressionLogic second)
+        {
+            _boxed = boxed;
+            _firstOperand = first;
+            _secondOperand = second;
+        }
+
+        @Override
+        public Object evaluate (Logic activator, Object previous)
+        {
+            return _boxed ? coerceToDouble(_firstOperand.evaluate(activator, previous)) *
+                coerceToDouble(_secondOperand.evaluate(activator, previous)) :
+                super.evaluate(activator, previous);
+        }
+
+        @Override
+        public double evaluateDouble (Logic activator, Object previous)
+        {
+            return _boxed ? coerceToDouble(evaluate(activator, previous)) :
+                super.evaluateDouble(activator, previous);
+        }
+
+        /** Whether or not to box the intermediate values. */
+        protected boolean _boxed;
+    }
+
+    protected static class Divide extends ExpressionLogic.Divide
+    {
+        public Divide (boolean boxed, ExpressionLogic first, ExpressionLogic second)
+        {
+            _boxed = boxed;
+            _firstOperand = first;
+            _secondOperand = second;
+        }
+
+        @Override
+        public Object evaluate (Logic activator, Object previous)
+        {
+            return _boxed ? coerceToDouble(_firstOperand.evaluate(activator, previous)) /
+                coerceToDouble(_secondOperand.evaluate(activator, previous)) :
+                super.evaluate(activator, previous);
+        }
+
+        @Override
+        public double evaluateDouble (Logic activator, Object previous)
+        {
+            return _boxed ? coerceToDouble(evaluate(activator, previous)) :
+                super.evaluateDouble(activator, previous);
+        }
+
+        /** Whether or not to box the intermediate values. */
+        protected boolean _boxed;
+    }
+
+    protected static class Less extends ExpressionLogic.Less
+    {
+        public Less (boolean boxed, ExpressionLogic first, ExpressionLogic second)
+        {
+            _boxed = boxed;
+            _firstOperand = first;
+            _secondOperand = second;
+        }
+
+        @Override
+        public Object evaluate (Logic activator, Object previous)
+        {
+            return _boxed ? coerceToDouble(_firstOperand.evaluate(activator, previous)) <
+                coerceToDouble(_secondOperand.evaluate(activator, previous)) :
+                super.evaluate(activator, previous);
+        }
+
+        @Override
+        public boolean evaluateBoolean (Logic activator, Object previous)
+        {
+            return _boxed ? coerceToBoolean(evaluate(activator, previous)) :
+                super.evaluateBoolean(activator, previous);
+        }
+
+        /** Whether or not to box the intermediate values. */
+        protected boolean _boxed;
+    }
+
+    protected static class Greater extends ExpressionLogic.Greater
+    {
+        public Greater (boolean boxed, ExpressionLogic first, ExpressionLogic second)
+        {
+            _boxed = boxed;
+            _firstOperand = first;
+            _secondOperand = second;
+        }
+
+        @Override
+        public Object evaluate (Logic activator, Object previous)
+        {
+            return _boxed ? coerceToDouble(_firstOperand.evaluate(activator, previous)) >
+                coerceToDouble(_secondOperand.evaluate(activator, previous)) :
+                super.evaluate(activator, previous);
+        }
+
+        @Override
+        public boolean evaluateBoolean (Logic activator, Object previous)
+        {
+            return _boxed ? coerceToBoolean(evaluate(activator, previous)) :
+                super.evaluateBoolean(activator, previous);
+        }
+
+        /** Whether or not to box the intermediate values. */
+        protected boolean _boxed;
+    }
+
+    protected static class Not extends ExpressionLogic.Not
+    {
+        public Not (boolean boxed, ExpressionLogic operand)
+        {
+            _boxed = boxed;
+            _operand = operand;
+        }
+
+        @Override
+        public Object evaluate (Logic activator, Object previous)
+        {
+            return _boxed ? !coerceToBoolean(_operand.evaluate(activator, previous)) :
+                super.evaluate(activator, previous);
+        }
+
+        @Override
+        public boolean evaluateBoolean (Logic activator, Object previous)
+        {
+            return _boxed ? coerceToBoolean(evaluate(activator, previous)) :
+                super.evaluateBoolean(activator, previous);
+        }
+
+        /** Whether or not to box the intermediate values. */
+        protected boolean _boxed;
+    }
+
+    protected static class And extends ExpressionLogic.And
+    {
+        public And (boolean boxed, ExpressionLogic first, ExpressionLogic second)
+        {
+            _boxed = boxed;
+            _firstOperand = first;
+            _secondOperand = second;
+        }
+
+        @Override
+        public Object evaluate (Logic activator, Object previous)
+        {
+            return _boxed ? coerceToBoolean(_firstOperand.evaluate(activator, previous)) &&
+                coerceToBoolean(_secondOperand.evaluate(activator, previous)) :
+                super.evaluate(activator, previous);
+        }
+
+        @Override
+        public boolean evaluateBoolean (Logic activator, Object previous)
+        {
+            return _boxed ? coerceToBoolean(evaluate(activator, previous)) :
+                super.evaluateBoolean(activator, previous);
+        }
+
+        /** Whether or not to box the intermediate values. */
+        protected boolean _boxed;
+    }
+
+    /** The number of evaluations per timed run. */
+    protected static final int EVALUATIONS = 100000;
+
+    /** The number of untimed runs with which to warm up the JVM. */
+    protected static final int WARMUP_RUNS = 20;
+
+    /** The number of timed runs over which to average. */
+    protected static final int MEASURED_RUNS = 20;
+}
@@ -0,0 +1,116 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+
+import com.threerings.tudey.data.actor.Actor;
+
+/**
+ * Resolves actor flag names (the names of the public static int fields that define the flags, such
+ * as <code>WARP</code>) to their masks.  The masks for each actor class are looked up reflectively
+ * once and then shared, so that logic can test and set flags by name without reflecting on every
+ * evaluation.
+ */
+public class ActorFlags
+{
+    /**
+     * A per-logic accessor that remembers the mask resolved for the last actor class, so that
+     * repeated lookups against actors of the same class don't touch the shared cache.
+     */
+    public static class Accessor
+    {
+        /**
+         * Creates an accessor for the named flag.
+         */
+        public Accessor (String name)
+        {
+            _name = name;
+        }
+
+        /**
+         * Returns the mask of the flag for the supplied actor, or <code>null</code> if the actor's
+         * class doesn't define the flag.
+         */
+        public Integer getMask (Actor actor)
+        {
+            Class<?> clazz = actor.getClass();
+            if (clazz != _class) {
+                _mask = ActorFlags.getMask(clazz, _name);
+                _class = clazz;
+            }
+            return _mask;
+        }
+
+        /** The name of the flag. */
+        protected String _name;
+
+        /** The class for which we last resolved the mask. */
+        protected Class<?> _class;
+
+        /** The mask resolved for the last class. */
+        protected Integer _mask;
+    }
+
+    /**
+     * Returns the mask of the named flag in the specified actor class, or <code>null</code> if the
+     * class doesn't define the flag.
+     */
+    public static Integer getMask (Class<?> clazz, String name)
+    {
+        return getMasks(clazz).get(name);
+    }
+
+    /**
+     * Returns the map from flag name to mask for the specified class, creating it if necessary.
+     */
+    protected static Map<String, Integer> getMasks (Class<?> clazz)
+    {
+        Map<String, Integer> masks = _masks.get(clazz);
+        if (masks == null) {
+            masks = Maps.newHashMap();
+            for (Field field : clazz.getFields()) {
+                if (field.getType() == Integer.TYPE && Modifier.isStatic(field.getModifiers())) {
+                    try {
+                        masks.put(field.getName(), field.getInt(null));
+                    } catch (IllegalAccessException e) {
+                        // public fields should be accessible; skip it if not
+                    }
+                }
+            }
+            _masks.put(clazz, masks);
+        }
+        return masks;
+    }
+
+    /** The flag masks for each class, mapped by name. */
+    protected static final Map<Class<?>, Map<String, Integer>> _masks = Maps.newConcurrentMap();
+}
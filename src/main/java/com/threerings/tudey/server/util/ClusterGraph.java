@@ -0,0 +1,732 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.samskivert.util.HashIntMap;
+import com.samskivert.util.IntMaps;
+
+import com.threerings.media.util.MathUtil;
+
+import com.threerings.tudey.util.Coord;
+
+/**
+ * A hierarchical (cluster and portal) view of the static collision flags tracked by the
+ * {@link Pathfinder}, for actors with a particular collision mask and footprint.  The pathfinding
+ * grid is divided into square clusters, each of which caches a clearance map indicating where the
+ * actor's footprint fits without intersecting any static flags.  Each run of traversable cells
+ * along the border between two clusters is represented by one or two portals, and the cost of
+ * moving between the portals of each cluster is precomputed.  Long paths are found by searching
+ * the portal graph and refining the result one cluster at a time.  Clusters are computed lazily
+ * and invalidated when the flags within them change.
+ */
+public class ClusterGraph
+{
+    /** Indicates that a path was found. */
+    public static final int FOUND = 0;
+
+    /** Indicates that no path was found, but one may exist (for instance, one longer than the
+     * hierarchical path or one that detours around dynamic obstacles). */
+    public static final int NOT_FOUND = 1;
+
+    /** Indicates that the destination is unreachable even considering only the static flags. */
+    public static final int UNREACHABLE = 2;
+
+    /** The size of the clusters, in pathfinding cells. */
+    public static final int CLUSTER_SIZE = 16;
+
+    /**
+     * Creates a new graph.
+     *
+     * @param mask the collision mask of the actors.
+     * @param left the extent of the footprint to the left of the actor's cell.
+     * @param right the extent of the footprint to the right of the actor's cell.
+     * @param bottom the extent of the footprint below the actor's cell.
+     * @param top the extent of the footprint above the actor's cell.
+     * @param actors whether to include the flags of static actors as well as those of the
+     * scene entries.
+     */
+    public ClusterGraph (
+        Pathfinder pathfinder, int mask, int left, int right, int bottom, int top, boolean actors)
+    {
+        _pathfinder = pathfinder;
+        _mask = mask;
+        _left = left;
+        _right = right;
+        _bottom = bottom;
+        _top = top;
+        _actors = actors;
+    }
+
+    /**
+     * Checks whether the graph includes the flags of static actors.
+     */
+    public boolean includesActors ()
+    {
+        return _actors;
+    }
+
+    /**
+     * Returns a traversal that checks the (cached) static clearance of cells.
+     */
+    public GridSearch.Traversal getTraversal ()
+    {
+        return _passable;
+    }
+
+    /**
+     * Checks whether the actor's footprint fits at the specified cell without intersecting any
+     * static flags.
+     */
+    public boolean isPassable (int x, int y)
+    {
+        Cluster cluster = getCluster(
+            MathUtil.floorDiv(x, CLUSTER_SIZE), MathUtil.floorDiv(y, CLUSTER_SIZE));
+        return getPassable(cluster)[(y - cluster.y0)*CLUSTER_SIZE + (x - cluster.x0)];
+    }
+
+    /**
+     * Invalidates the clusters affected by a change to the static flags of the specified
+     * (inclusive) region of cells.
+     */
+    public void invalidate (int minx, int miny, int maxx, int maxy)
+    {
+        // a cell's clearance depends on all the cells under the footprint
+        int cminx = MathUtil.floorDiv(minx - _right, CLUSTER_SIZE);
+        int cmaxx = MathUtil.floorDiv(maxx + _left, CLUSTER_SIZE);
+        int cminy = MathUtil.floorDiv(miny - _top, CLUSTER_SIZE);
+        int cmaxy = MathUtil.floorDiv(maxy + _bottom, CLUSTER_SIZE);
+        for (int cy = cminy; cy <= cmaxy; cy++) {
+            for (int cx = cminx; cx <= cmaxx; cx++) {
+                Cluster cluster = _clusters.get(Coord.encode(cx, cy));
+                if (cluster != null) {
+                    invalidate(cluster);
+                }
+            }
+        }
+    }
+
+    /**
+     * Attempts to find a path between the specified cells, which should lie in different
+     * clusters.  If a path is found, it may be retrieved with {@link #getPathLength},
+     * {@link #getPathX}, and {@link #getPathY}.
+     *
+     * @param search the search object to use for refinement.
+     * @param trav the traversal to use for refinement (which should include the static clearance
+     * as well as any dynamic obstacles).
+     * @param maxcost the maximum cost of the path.
+     * @return {@link #FOUND}, {@link #NOT_FOUND}, or {@link #UNREACHABLE}.
+     */
+    public int findPath (
+        GridSearch search, GridSearch.Traversal trav, int maxcost, int ax, int ay, int bx, int by)
+    {
+        if (!isPassable(bx, by)) {
+            return UNREACHABLE;
+        }
+        Cluster scluster = getCluster(
+            MathUtil.floorDiv(ax, CLUSTER_SIZE), MathUtil.floorDiv(ay, CLUSTER_SIZE));
+        Cluster gcluster = getCluster(
+            MathUtil.floorDiv(bx, CLUSTER_SIZE), MathUtil.floorDiv(by, CLUSTER_SIZE));
+        List<Portal> sportals = getPortals(scluster);
+        List<Portal> gportals = getPortals(gcluster);
+
+        // find the costs from the start to the portals of its cluster and from the portals of
+        // the goal's cluster to the goal (moves are symmetric, so we can flood from the goal)
+        boolean limited = false;
+        _startCosts = getCosts(search, maxcost, ax, ay, scluster, sportals, _startCosts);
+        limited |= search.wasLimited();
+        _goalCosts = getCosts(search, maxcost, bx, by, gcluster, gportals, _goalCosts);
+        limited |= search.wasLimited();
+
+        // search the portal graph
+        _stamp++;
+        _size = 0;
+        _limited = false;
+        _bx = bx;
+        _by = by;
+        for (int ii = 0, nn = sportals.size(); ii < nn; ii++) {
+            if (_startCosts[ii] >= 0) {
+                relax(sportals.get(ii), _startCosts[ii], null, maxcost);
+            }
+        }
+        Portal portal;
+        while ((portal = poll()) != null && portal != _goal) {
+            if (portal.cluster == gcluster) {
+                int cost = _goalCosts[portal.slot];
+                if (cost >= 0) {
+                    relax(_goal, portal.g + cost, portal, maxcost);
+                }
+            }
+            relax(portal.peer, portal.g + GridSearch.ADJACENT_COST, portal, maxcost);
+            List<Portal> portals = getPortals(portal.cluster);
+            for (int ii = 0, nn = portals.size(); ii < nn; ii++) {
+                // portals may share a cell (at the corners of the cluster), so we can't use a
+                // zero cost to identify the portal itself
+                int cost = portal.costs[ii];
+                if (ii != portal.slot && cost >= 0) {
+                    relax(portals.get(ii), portal.g + cost, portal, maxcost);
+                }
+            }
+        }
+        if (portal == null) {
+            return (limited || _limited) ? NOT_FOUND : UNREACHABLE;
+        }
+
+        // gather the portals on the path
+        _route.clear();
+        for (Portal current = _goal.parent; current != null; current = current.parent) {
+            _route.add(current);
+        }
+
+        // refine the path, one segment at a time
+        _length = 0;
+        append(ax, ay);
+        int x = ax, y = ay, cost = 0;
+        Cluster cluster = scluster;
+        for (int ii = _route.size(); ii >= 0; ii--) {
+            Portal next = (ii == 0) ? null : _route.get(ii - 1);
+            int nx = (next == null) ? bx : next.x, ny = (next == null) ? by : next.y;
+            if (next != null && next.cluster != cluster) {
+                // cross the border into the adjacent cluster
+                if (!trav.canTraverse(nx, ny)) {
+                    return NOT_FOUND;
+                }
+                cost += GridSearch.ADJACENT_COST;
+                cluster = next.cluster;
+            } else {
+                // move within the cluster
+                if (!search.findPath(trav, maxcost - cost, x, y, nx, ny, false,
+                        cluster.x0, cluster.y0, cluster.x0 + CLUSTER_SIZE - 1,
+                        cluster.y0 + CLUSTER_SIZE - 1)) {
+                    return NOT_FOUND;
+                }
+                cost += search.getPathCost();
+                for (int jj = 1, nn = search.getPathLength() - 1; jj < nn; jj++) {
+                    append(search.getPathX(jj), search.getPathY(jj));
+                }
+            }
+            if (cost > maxcost) {
+                return NOT_FOUND;
+            }
+            if (nx != x || ny != y) {
+                append(x = nx, y = ny);
+            }
+        }
+        return FOUND;
+    }
+
+    /**
+     * Returns the number of cells in the last path found.
+     */
+    public int getPathLength ()
+    {
+        return _length;
+    }
+
+    /**
+     * Returns the x coordinate of the cell at the specified index of the last path found.
+     */
+    public int getPathX (int idx)
+    {
+        return _xs[idx];
+    }
+
+    /**
+     * Returns the y coordinate of the cell at the specified index of the last path found.
+     */
+    public int getPathY (int idx)
+    {
+        return _ys[idx];
+    }
+
+    /**
+     * Returns the number of clusters currently cached.
+     */
+    public int getClusterCount ()
+    {
+        return _clusters.size();
+    }
+
+    /**
+     * Floods from the specified cell within its cluster, storing the costs of reaching the
+     * cluster's portals.
+     */
+    protected int[] getCosts (
+        GridSearch search, int maxcost, int x, int y, Cluster cluster,
+        List<Portal> portals, int[] costs)
+    {
+        int size = portals.size();
+        if (costs.length < size) {
+            costs = new int[Math.max(size, costs.length * 2)];
+        }
+        search.flood(_passable, maxcost, x, y, cluster.x0, cluster.y0,
+            cluster.x0 + CLUSTER_SIZE - 1, cluster.y0 + CLUSTER_SIZE - 1);
+        for (int ii = 0; ii < size; ii++) {
+            Portal portal = portals.get(ii);
+            costs[ii] = search.getCost(portal.x, portal.y);
+        }
+        return costs;
+    }
+
+    /**
+     * Returns the cluster at the specified cluster coordinates, creating it if necessary.
+     */
+    protected Cluster getCluster (int cx, int cy)
+    {
+        if (_lastCluster != null && _lastCluster.cx == cx && _lastCluster.cy == cy) {
+            return _lastCluster;
+        }
+        int key = Coord.encode(cx, cy);
+        Cluster cluster = _clusters.get(key);
+        if (cluster == null) {
+            _clusters.put(key, cluster = new Cluster(cx, cy));
+        }
+        return (_lastCluster = cluster);
+    }
+
+    /**
+     * Returns the clearance map of the specified cluster, computing it if necessary.
+     */
+    protected boolean[] getPassable (Cluster cluster)
+    {
+        if (cluster.passable != null) {
+            return cluster.passable;
+        }
+        // compute the summed area table of the blocked cells under all footprints
+        int width = CLUSTER_SIZE + _left + _right, height = CLUSTER_SIZE + _bottom + _top;
+        int stride = width + 1;
+        int size = stride * (height + 1);
+        if (_sums.length < size) {
+            _sums = new int[size];
+        }
+        int ox = cluster.x0 - _left, oy = cluster.y0 - _bottom;
+        for (int yy = 0; yy < height; yy++) {
+            int row = 0;
+            for (int xx = 0; xx < width; xx++) {
+                if ((_pathfinder.getStaticFlags(ox + xx, oy + yy, _actors) & _mask) != 0) {
+                    row++;
+                }
+                _sums[(yy + 1)*stride + xx + 1] = _sums[yy*stride + xx + 1] + row;
+            }
+        }
+
+        // a cell is passable if there are no blocked cells under its footprint
+        boolean[] passable = new boolean[CLUSTER_SIZE * CLUSTER_SIZE];
+        int fwidth = _left + _right + 1, fheight = _bottom + _top + 1;
+        for (int yy = 0; yy < CLUSTER_SIZE; yy++) {
+            for (int xx = 0; xx < CLUSTER_SIZE; xx++) {
+                int lower = yy*stride, upper = (yy + fheight)*stride;
+                passable[yy*CLUSTER_SIZE + xx] =
+                    (_sums[upper + xx + fwidth] - _sums[upper + xx] -
+                        _sums[lower + xx + fwidth] + _sums[lower + xx]) == 0;
+            }
+        }
+        return (cluster.passable = passable);
+    }
+
+    /**
+     * Returns the portals on the east or north border of the specified cluster (on the cluster's
+     * side of the border), computing them if necessary.
+     */
+    protected List<Portal> getBorder (Cluster cluster, boolean east)
+    {
+        List<Portal> border = east ? cluster.east : cluster.north;
+        if (border != null) {
+            return border;
+        }
+        Cluster neighbor = east ?
+            getCluster(cluster.cx + 1, cluster.cy) : getCluster(cluster.cx, cluster.cy + 1);
+        boolean[] cpassable = getPassable(cluster), npassable = getPassable(neighbor);
+        border = new ArrayList<Portal>();
+        for (int ii = 0, start = -1; ii <= CLUSTER_SIZE; ii++) {
+            boolean open = (ii < CLUSTER_SIZE) && (east ?
+                (cpassable[ii*CLUSTER_SIZE + CLUSTER_SIZE - 1] && npassable[ii*CLUSTER_SIZE]) :
+                (cpassable[(CLUSTER_SIZE - 1)*CLUSTER_SIZE + ii] && npassable[ii]));
+            if (open) {
+                if (start == -1) {
+                    start = ii;
+                }
+                continue;
+            }
+            if (start == -1) {
+                continue;
+            }
+            // place a portal in the middle of short runs and at either end of long ones
+            int end = ii - 1;
+            if (end - start + 1 >= LONG_RUN) {
+                addPortal(border, cluster, neighbor, east, start);
+                addPortal(border, cluster, neighbor, east, end);
+            } else {
+                addPortal(border, cluster, neighbor, east, (start + end) / 2);
+            }
+            start = -1;
+        }
+        if (east) {
+            cluster.east = border;
+        } else {
+            cluster.north = border;
+        }
+        return border;
+    }
+
+    /**
+     * Adds a pair of portals to the specified border.
+     */
+    protected void addPortal (
+        List<Portal> border, Cluster cluster, Cluster neighbor, boolean east, int offset)
+    {
+        Portal portal, peer;
+        if (east) {
+            portal = new Portal(cluster, cluster.x0 + CLUSTER_SIZE - 1, cluster.y0 + offset);
+            peer = new Portal(neighbor, neighbor.x0, neighbor.y0 + offset);
+        } else {
+            portal = new Portal(cluster, cluster.x0 + offset, cluster.y0 + CLUSTER_SIZE - 1);
+            peer = new Portal(neighbor, neighbor.x0 + offset, neighbor.y0);
+        }
+        portal.peer = peer;
+        peer.peer = portal;
+        border.add(portal);
+    }
+
+    /**
+     * Returns the portals of the specified cluster, computing them (and the costs of moving
+     * between them) if necessary.
+     */
+    protected List<Portal> getPortals (Cluster cluster)
+    {
+        if (cluster.portals != null) {
+            return cluster.portals;
+        }
+        List<Portal> portals = new ArrayList<Portal>();
+        portals.addAll(getBorder(cluster, true));
+        portals.addAll(getBorder(cluster, false));
+        for (Portal portal : getBorder(getCluster(cluster.cx - 1, cluster.cy), true)) {
+            portals.add(portal.peer);
+        }
+        for (Portal portal : getBorder(getCluster(cluster.cx, cluster.cy - 1), false)) {
+            portals.add(portal.peer);
+        }
+        int size = portals.size();
+        for (int ii = 0; ii < size; ii++) {
+            Portal portal = portals.get(ii);
+            portal.slot = ii;
+            portal.costs = new int[size];
+            _search.flood(_passable, Integer.MAX_VALUE, portal.x, portal.y,
+                cluster.x0, cluster.y0, cluster.x0 + CLUSTER_SIZE - 1,
+                cluster.y0 + CLUSTER_SIZE - 1);
+            for (int jj = 0; jj < size; jj++) {
+                Portal other = portals.get(jj);
+                portal.costs[jj] = _search.getCost(other.x, other.y);
+            }
+        }
+        return (cluster.portals = portals);
+    }
+
+    /**
+     * Invalidates the specified cluster, along with the borders it shares with its neighbors.
+     */
+    protected void invalidate (Cluster cluster)
+    {
+        cluster.passable = null;
+        cluster.east = cluster.north = null;
+        cluster.portals = null;
+        int cx = cluster.cx, cy = cluster.cy;
+        Cluster west = _clusters.get(Coord.encode(cx - 1, cy));
+        if (west != null) {
+            west.east = null;
+            west.portals = null;
+        }
+        Cluster south = _clusters.get(Coord.encode(cx, cy - 1));
+        if (south != null) {
+            south.north = null;
+            south.portals = null;
+        }
+        Cluster east = _clusters.get(Coord.encode(cx + 1, cy));
+        if (east != null) {
+            east.portals = null;
+        }
+        Cluster north = _clusters.get(Coord.encode(cx, cy + 1));
+        if (north != null) {
+            north.portals = null;
+        }
+    }
+
+    /**
+     * Updates the cost of reaching the specified portal in the portal graph search if the new
+     * cost is lower.
+     */
+    protected void relax (Portal portal, int g, Portal parent, int maxcost)
+    {
+        if (g > maxcost) {
+            _limited = true;
+            return;
+        }
+        if (portal.stamp != _stamp) {
+            portal.stamp = _stamp;
+            portal.closed = false;
+            portal.index = -1;
+        } else if (portal.closed || g >= portal.g) {
+            return;
+        }
+        portal.g = g;
+        portal.f = (portal == _goal) ?
+            g : g + GridSearch.getDistanceEstimate(portal.x, portal.y, _bx, _by);
+        portal.parent = parent;
+        if (portal.index == -1) {
+            if (_size == _heap.length) {
+                Portal[] nheap = new Portal[_size * 2];
+                System.arraycopy(_heap, 0, nheap, 0, _size);
+                _heap = nheap;
+            }
+            portal.index = _size++;
+        }
+        siftUp(portal, portal.index);
+    }
+
+    /**
+     * Removes and returns the open portal with the lowest estimated total cost, or returns null
+     * if there are no open portals.
+     */
+    protected Portal poll ()
+    {
+        if (_size == 0) {
+            return null;
+        }
+        Portal portal = _heap[0];
+        Portal last = _heap[--_size];
+        _heap[_size] = null;
+        if (_size > 0) {
+            siftDown(last, 0);
+        }
+        portal.closed = true;
+        portal.index = -1;
+        return portal;
+    }
+
+    /**
+     * Places the specified portal at or above the given heap index.
+     */
+    protected void siftUp (Portal portal, int idx)
+    {
+        while (idx > 0) {
+            int pidx = (idx - 1) / 2;
+            Portal parent = _heap[pidx];
+            if (parent.f <= portal.f) {
+                break;
+            }
+            _heap[parent.index = idx] = parent;
+            idx = pidx;
+        }
+        _heap[portal.index = idx] = portal;
+    }
+
+    /**
+     * Places the specified portal at or below the given heap index.
+     */
+    protected void siftDown (Portal portal, int idx)
+    {
+        while (true) {
+            int cidx = idx*2 + 1;
+            if (cidx >= _size) {
+                break;
+            }
+            if (cidx + 1 < _size && _heap[cidx + 1].f < _heap[cidx].f) {
+                cidx++;
+            }
+            Portal child = _heap[cidx];
+            if (portal.f <= child.f) {
+                break;
+            }
+            _heap[child.index = idx] = child;
+            idx = cidx;
+        }
+        _heap[portal.index = idx] = portal;
+    }
+
+    /**
+     * Appends a cell to the path.
+     */
+    protected void append (int x, int y)
+    {
+        if (_length == _xs.length) {
+            int[] nxs = new int[_length * 2], nys = new int[_length * 2];
+            System.arraycopy(_xs, 0, nxs, 0, _length);
+            System.arraycopy(_ys, 0, nys, 0, _length);
+            _xs = nxs;
+            _ys = nys;
+        }
+        _xs[_length] = x;
+        _ys[_length++] = y;
+    }
+
+    /**
+     * A square region of the grid.
+     */
+    protected static class Cluster
+    {
+        /** The coordinates of the cluster. */
+        public final int cx, cy;
+
+        /** The coordinates of the cluster's lower left cell. */
+        public final int x0, y0;
+
+        /** The clearance map of the cluster, or null if not yet computed. */
+        public boolean[] passable;
+
+        /** The portals on the cluster's side of its east and north borders, or null if not yet
+         * computed. */
+        public List<Portal> east, north;
+
+        /** All of the cluster's portals, or null if not yet computed. */
+        public List<Portal> portals;
+
+        /**
+         * Creates a new cluster.
+         */
+        public Cluster (int cx, int cy)
+        {
+            this.cx = cx;
+            this.cy = cy;
+            x0 = cx * CLUSTER_SIZE;
+            y0 = cy * CLUSTER_SIZE;
+        }
+    }
+
+    /**
+     * A cell on the border of a cluster through which actors may pass to the adjacent cluster.
+     */
+    protected static class Portal
+    {
+        /** The cluster containing the portal (null for the goal node). */
+        public final Cluster cluster;
+
+        /** The location of the portal. */
+        public final int x, y;
+
+        /** The portal on the other side of the border. */
+        public Portal peer;
+
+        /** The index of the portal in its cluster's list. */
+        public int slot;
+
+        /** The costs of moving to each of the cluster's portals (-1 if unreachable). */
+        public int[] costs;
+
+        /** The search stamp for which the search state is valid. */
+        public int stamp;
+
+        /** The cost of reaching the portal and the estimated total cost through it. */
+        public int g, f;
+
+        /** The portal from which we reached this one (null for the start). */
+        public Portal parent;
+
+        /** The index of the portal in the heap, or -1 if not in the heap. */
+        public int index = -1;
+
+        /** Whether or not the portal has been closed. */
+        public boolean closed;
+
+        /**
+         * Creates a new portal.
+         */
+        public Portal (Cluster cluster, int x, int y)
+        {
+            this.cluster = cluster;
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    /** The owning pathfinder. */
+    protected Pathfinder _pathfinder;
+
+    /** The collision mask of the actors. */
+    protected int _mask;
+
+    /** The extents of the actors' footprints. */
+    protected int _left, _right, _bottom, _top;
+
+    /** Whether to include the flags of static actors. */
+    protected boolean _actors;
+
+    /** The clusters mapped by encoded cluster coordinates. */
+    protected HashIntMap<Cluster> _clusters = IntMaps.newHashIntMap();
+
+    /** The last cluster retrieved. */
+    protected Cluster _lastCluster;
+
+    /** Checks the static clearance of cells. */
+    protected GridSearch.Traversal _passable = new GridSearch.Traversal() {
+        public boolean canTraverse (int x, int y) {
+            return isPassable(x, y);
+        }
+    };
+
+    /** Used to compute the costs between portals. */
+    protected GridSearch _search = new GridSearch();
+
+    /** Holds the summed area table when computing clearance maps. */
+    protected int[] _sums = new int[0];
+
+    /** The costs from the start to the portals of its cluster. */
+    protected int[] _startCosts = new int[0];
+
+    /** The costs from the portals of the goal's cluster to the goal. */
+    protected int[] _goalCosts = new int[0];
+
+    /** The node representing the goal in the portal graph search. */
+    protected Portal _goal = new Portal(null, 0, 0);
+
+    /** The current portal graph search stamp. */
+    protected int _stamp;
+
+    /** The open portals, as a binary heap ordered by estimated total cost. */
+    protected Portal[] _heap = new Portal[64];
+
+    /** The number of portals in the heap. */
+    protected int _size;
+
+    /** The location of the goal in the current search. */
+    protected int _bx, _by;
+
+    /** Set if the current search was limited by the maximum cost. */
+    protected boolean _limited;
+
+    /** Holds the portals on the path found, from last to first. */
+    protected List<Portal> _route = new ArrayList<Portal>();
+
+    /** The cells of the last path found. */
+    protected int[] _xs = new int[64], _ys = new int[64];
+
+    /** The number of cells in the last path found. */
+    protected int _length;
+
+    /** The minimum length of a border run for which we place portals at both ends. */
+    protected static final int LONG_RUN = 6;
+}
@@ -0,0 +1,260 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.collect.Sets;
+
+import com.threerings.tudey.server.TudeySceneManager;
+import com.threerings.tudey.server.logic.ActorLogic;
+import com.threerings.tudey.server.logic.Logic;
+
+/**
+ * Puts actors to sleep when they're outside of all clients' areas of interest (as tracked by the
+ * {@link InterestGrid}) and wakes them when a client approaches.  Dormant actors drop out of the
+ * tick and have their timers deferred until they wake; see {@link ActorLogic#sleep}.  Actors may
+ * also be woken by signals, by their sensors, or by becoming visible.
+ *
+ * <p> Candidates are swept periodically (on the scene's timer wheel) and put to sleep if no cell
+ * within the sleep margin of their own is covered; they are woken as soon as a cell within the
+ * (smaller) wake margin becomes covered or they are moved within it.  The difference between the
+ * margins and the minimum waking time keep actors near the edge of an area of interest from
+ * alternating between states.
+ */
+public class DormancyTracker
+    implements TudeySceneManager.ActorObserver, InterestGrid.CoverageObserver,
+        Logic.ShapeObserver
+{
+    /**
+     * Creates a new tracker for the specified scene.
+     */
+    public DormancyTracker (TudeySceneManager scenemgr, InterestGrid grid)
+    {
+        _scenemgr = scenemgr;
+        _grid = grid;
+        _sweep = new TimerWheel.Timer(scenemgr.getTimerWheel()) {
+            public void expired () {
+                sweep();
+                schedule(_interval);
+            }
+        };
+        setWakeDistance(DEFAULT_WAKE_DISTANCE);
+        scenemgr.addActorObserver(this);
+        grid.addCoverageObserver(this);
+    }
+
+    /**
+     * Enables or disables dormancy.  Disabling it wakes any dormant actors.
+     */
+    public void setEnabled (boolean enabled)
+    {
+        if (_enabled == enabled) {
+            return;
+        }
+        if (_enabled = enabled) {
+            _sweep.schedule(_interval);
+        } else {
+            _sweep.cancel();
+            int timestamp = _scenemgr.getTimestamp();
+            for (ActorLogic actor : _dormant.toArray(new ActorLogic[_dormant.size()])) {
+                actor.wake(timestamp);
+            }
+        }
+    }
+
+    /**
+     * Checks whether dormancy is enabled.
+     */
+    public boolean isEnabled ()
+    {
+        return _enabled;
+    }
+
+    /**
+     * Sets the distance from a covered cell within which dormant actors are woken.  Actors are
+     * put to sleep only when they're one cell further away.
+     */
+    public void setWakeDistance (float distance)
+    {
+        _wakeMargin = (int)Math.ceil(distance / _grid.getGranularity());
+    }
+
+    /**
+     * Sets the interval at which candidates are swept, which is also the minimum time for which
+     * actors stay awake after waking.
+     */
+    public void setInterval (int interval)
+    {
+        _interval = interval;
+        if (_enabled) {
+            _sweep.schedule(interval);
+        }
+    }
+
+    /**
+     * Returns the sweep interval.
+     */
+    public int getInterval ()
+    {
+        return _interval;
+    }
+
+    /**
+     * Returns the number of actors that are candidates for dormancy (that is, the number of
+     * non-static actors).
+     */
+    public int getActorCount ()
+    {
+        return _actors.size();
+    }
+
+    /**
+     * Returns the number of dormant actors.
+     */
+    public int getDormantCount ()
+    {
+        return _dormant.size();
+    }
+
+    /**
+     * Called by actors when they go to sleep.
+     */
+    public void actorSlept (ActorLogic actor)
+    {
+        if (_dormant.add(actor)) {
+            actor.addShapeObserver(this);
+        }
+    }
+
+    /**
+     * Called by actors when they wake up.
+     */
+    public void actorWoke (ActorLogic actor)
+    {
+        if (_dormant.remove(actor)) {
+            actor.removeShapeObserver(this);
+        }
+    }
+
+    // documentation inherited from interface TudeySceneManager.ActorObserver
+    public void actorAdded (ActorLogic logic)
+    {
+        if (!logic.isStatic()) {
+            _actors.add(logic);
+        }
+    }
+
+    // documentation inherited from interface TudeySceneManager.ActorObserver
+    public void actorRemoved (ActorLogic logic)
+    {
+        _actors.remove(logic);
+        actorWoke(logic);
+    }
+
+    // documentation inherited from interface InterestGrid.CoverageObserver
+    public void cellCovered (int x, int y)
+    {
+        if (_dormant.isEmpty()) {
+            return;
+        }
+        int timestamp = _scenemgr.getTimestamp();
+        for (int yy = y - _wakeMargin, ymax = y + _wakeMargin; yy <= ymax; yy++) {
+            for (int xx = x - _wakeMargin, xmax = x + _wakeMargin; xx <= xmax; xx++) {
+                List<ActorLogic> actors = _grid.getActors(xx, yy);
+                for (int ii = 0, nn = actors.size(); ii < nn; ii++) {
+                    ActorLogic actor = actors.get(ii);
+                    if (actor.isDormant()) {
+                        actor.wake(timestamp);
+                    }
+                }
+            }
+        }
+    }
+
+    // documentation inherited from interface Logic.ShapeObserver
+    public void shapeWillChange (Logic source)
+    {
+        // no-op
+    }
+
+    // documentation inherited from interface Logic.ShapeObserver
+    public void shapeDidChange (Logic source)
+    {
+        // we only observe dormant actors, which wake if moved near an area of interest
+        ActorLogic actor = (ActorLogic)source;
+        if (actor.isDormant() && _grid.isCovered(actor, _wakeMargin)) {
+            actor.wake(_scenemgr.getTimestamp());
+        }
+    }
+
+    /**
+     * Puts to sleep the candidates that have been awake for at least the sweep interval and are
+     * no longer near any area of interest.
+     */
+    protected void sweep ()
+    {
+        int timestamp = _scenemgr.getTimestamp();
+        for (ActorLogic actor : _actors) {
+            if (!actor.isDormant() && actor.canSleep() &&
+                    timestamp - actor.getWakeTimestamp() >= _interval &&
+                    !_grid.isCovered(actor, _wakeMargin + 1)) {
+                actor.sleep(timestamp);
+            }
+        }
+    }
+
+    /** The owning scene manager. */
+    protected TudeySceneManager _scenemgr;
+
+    /** The grid that tracks clients' areas of interest. */
+    protected InterestGrid _grid;
+
+    /** The timer used to sweep the candidates. */
+    protected TimerWheel.Timer _sweep;
+
+    /** Whether or not dormancy is enabled. */
+    protected boolean _enabled;
+
+    /** The number of cells around a covered cell within which actors are woken. */
+    protected int _wakeMargin;
+
+    /** The sweep interval. */
+    protected int _interval = DEFAULT_INTERVAL;
+
+    /** The candidates for dormancy, in the order in which they were added. */
+    protected Set<ActorLogic> _actors = Sets.newLinkedHashSet();
+
+    /** The dormant actors. */
+    protected Set<ActorLogic> _dormant = Sets.newHashSet();
+
+    /** The default distance within which dormant actors are woken. */
+    protected static final float DEFAULT_WAKE_DISTANCE = 8f;
+
+    /** The default sweep interval. */
+    protected static final int DEFAULT_INTERVAL = 2000;
+}
@@ -0,0 +1,236 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+/**
+ * Schedules the periodic evaluations of agent behaviors.  Evaluations are bucketed by deadline on
+ * a {@link TimerWheel}, so that only those that have come due are touched on each tick.  An
+ * optional budget limits the number of evaluations released per tick; the rest are deferred (in
+ * order of release) to subsequent ticks, spreading the evaluations of large populations of agents
+ * across ticks rather than letting them land on the same one.
+ */
+public class EvaluationScheduler
+{
+    /**
+     * A scheduled evaluation.  When released by the scheduler, the evaluation is marked due; the
+     * owner checks and clears the flag when it next ticks.
+     */
+    public static class Evaluation extends TimerWheel.Timer
+    {
+        /**
+         * Creates a new evaluation for the specified scheduler.
+         */
+        public Evaluation (EvaluationScheduler scheduler)
+        {
+            super(scheduler._wheel);
+            _scheduler = scheduler;
+        }
+
+        /**
+         * Checks whether the evaluation has been released and is due.
+         */
+        public boolean isDue ()
+        {
+            return _due;
+        }
+
+        /**
+         * Marks the evaluation due immediately, bypassing the budget.
+         */
+        public void advance ()
+        {
+            cancel();
+            _due = true;
+        }
+
+        /**
+         * Copies the state of another evaluation.
+         */
+        public void transfer (Evaluation source)
+        {
+            cancel();
+            if (source._due) {
+                _due = true;
+            } else if (source.isScheduled()) {
+                schedule(source._deadline - source._wheel.getTime());
+            } else if (source._queued) {
+                _scheduler.enqueue(this);
+            }
+        }
+
+        @Override
+        public void schedule (long delay)
+        {
+            _scheduler.dequeue(this);
+            _due = false;
+            super.schedule(delay);
+        }
+
+        @Override
+        public void cancel ()
+        {
+            super.cancel();
+            _scheduler.dequeue(this);
+            _due = false;
+        }
+
+        @Override
+        public void expired ()
+        {
+            _scheduler.enqueue(this);
+        }
+
+        /** The owning scheduler. */
+        protected EvaluationScheduler _scheduler;
+
+        /** Whether or not the evaluation is waiting in the release queue. */
+        protected boolean _queued;
+
+        /** Whether or not the evaluation has been released. */
+        protected boolean _due;
+
+        /** The adjacent evaluations in the release queue. */
+        protected Evaluation _prevQueued, _nextQueued;
+    }
+
+    /**
+     * Creates a new scheduler.
+     *
+     * @param time the initial time.
+     */
+    public EvaluationScheduler (int time)
+    {
+        _wheel = new TimerWheel(time);
+    }
+
+    /**
+     * Sets the maximum number of evaluations to release per tick, or zero for no limit.
+     */
+    public void setBudget (int budget)
+    {
+        _budget = budget;
+    }
+
+    /**
+     * Returns the maximum number of evaluations to release per tick (zero for no limit).
+     */
+    public int getBudget ()
+    {
+        return _budget;
+    }
+
+    /**
+     * Returns the number of evaluations released on the last tick.
+     */
+    public int getReleased ()
+    {
+        return _released;
+    }
+
+    /**
+     * Returns the number of evaluations that have come due but have been deferred by the budget.
+     */
+    public int getDeferred ()
+    {
+        return _deferred;
+    }
+
+    /**
+     * Updates the scheduler, releasing the evaluations that have come due (subject to the budget).
+     */
+    public void tick (int timestamp)
+    {
+        _wheel.setTime(timestamp);
+        _wheel.advance();
+
+        int released = 0;
+        while (_head != null && (_budget <= 0 || released < _budget)) {
+            Evaluation evaluation = _head;
+            dequeue(evaluation);
+            evaluation._due = true;
+            released++;
+        }
+        _released = released;
+    }
+
+    /**
+     * Appends an evaluation to the release queue.
+     */
+    protected void enqueue (Evaluation evaluation)
+    {
+        if (evaluation._queued) {
+            return;
+        }
+        evaluation._queued = true;
+        evaluation._prevQueued = _tail;
+        evaluation._nextQueued = null;
+        if (_tail == null) {
+            _head = evaluation;
+        } else {
+            _tail._nextQueued = evaluation;
+        }
+        _tail = evaluation;
+        _deferred++;
+    }
+
+    /**
+     * Removes an evaluation from the release queue, if present.
+     */
+    protected void dequeue (Evaluation evaluation)
+    {
+        if (!evaluation._queued) {
+            return;
+        }
+        if (evaluation._prevQueued == null) {
+            _head = evaluation._nextQueued;
+        } else {
+            evaluation._prevQueued._nextQueued = evaluation._nextQueued;
+        }
+        if (evaluation._nextQueued == null) {
+            _tail = evaluation._prevQueued;
+        } else {
+            evaluation._nextQueued._prevQueued = evaluation._prevQueued;
+        }
+        evaluation._queued = false;
+        evaluation._prevQueued = evaluation._nextQueued = null;
+        _deferred--;
+    }
+
+    /** The wheel on which pending evaluations are scheduled. */
+    protected TimerWheel _wheel;
+
+    /** The ends of the queue of evaluations waiting to be released. */
+    protected Evaluation _head, _tail;
+
+    /** The maximum number of evaluations to release per tick (zero for no limit). */
+    protected int _budget;
+
+    /** The number of evaluations released on the last tick. */
+    protected int _released;
+
+    /** The number of evaluations waiting in the queue. */
+    protected int _deferred;
+}
@@ -0,0 +1,506 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+import java.util.Arrays;
+
+import com.threerings.math.Vector2f;
+
+/**
+ * A cost field flooded outward from a goal cell, allowing any number of actors to find their way
+ * to the goal by following the costs downhill.  When the goal moves, the field is updated by
+ * reflooding only the cells whose costs decrease (the costs of the other cells being bounded by
+ * their old costs plus the cost of moving between the old goal and the new).
+ */
+public class FlowField
+{
+    /**
+     * Creates a new flow field.
+     *
+     * @param graph the cluster graph that determines where the actors can go.
+     * @param maxcost the maximum cost of the paths followed.
+     * @param xoff the x offset used to convert to/from integer coordinates.
+     * @param yoff the y offset used to convert to/from integer coordinates.
+     */
+    public FlowField (ClusterGraph graph, int maxcost, float xoff, float yoff)
+    {
+        _graph = graph;
+        _maxcost = maxcost;
+        _xoff = xoff;
+        _yoff = yoff;
+
+        // the field covers every cell within the maximum cost of the goal, plus a margin within
+        // which the goal may move without forcing a rebuild
+        int radius = maxcost / GridSearch.ADJACENT_COST;
+        _margin = radius / 2 + 1;
+        _extent = radius + _margin;
+        _size = _extent*2 + 1;
+        _costs = new int[_size * _size];
+        _nexts = new byte[_costs.length];
+        _nextStamps = new int[_costs.length];
+    }
+
+    /**
+     * Returns the x coordinate of the cell containing the specified location.
+     */
+    public int getCellX (float x)
+    {
+        return Math.round(x * Pathfinder.SUBDIVISION - _xoff);
+    }
+
+    /**
+     * Returns the y coordinate of the cell containing the specified location.
+     */
+    public int getCellY (float y)
+    {
+        return Math.round(y * Pathfinder.SUBDIVISION - _yoff);
+    }
+
+    /**
+     * Updates the field for the specified goal location.
+     *
+     * @param modcount the static flag modification count of the pathfinder, used to determine
+     * when the field must be rebuilt.
+     */
+    public void update (float x, float y, int modcount)
+    {
+        int gx = getCellX(x), gy = getCellY(y);
+        if (_built && gx == _gx && gy == _gy && modcount == _modcount) {
+            return;
+        }
+        int cost = _built ? getCost(gx, gy) : -1;
+        if (modcount != _modcount || cost < 0 || _offset > MAX_OFFSET ||
+                Math.abs(gx - _cx) > _margin || Math.abs(gy - _cy) > _margin ||
+                !_graph.isPassable(_gx, _gy)) {
+            rebuild(gx, gy, modcount);
+            return;
+        }
+        // every cost can be no greater than that of moving to the old goal and then to the
+        // new one (provided that we can pass through the old goal, which need not be the case
+        // if the target is pressed against an obstacle); flood from the new goal to find the
+        // costs that are lower
+        _offset += cost;
+        _gx = gx;
+        _gy = gy;
+        push(gx, gy, 0);
+        flood();
+        invalidateDirections();
+    }
+
+    /**
+     * Checks whether the specified cell lies within the field.  The field's verdict for cells
+     * within it is definitive (for the scene entries and static actors): if {@link #getCost}
+     * returns -1 for such a cell, the goal can't be reached from it within the maximum cost.
+     */
+    public boolean contains (int x, int y)
+    {
+        return getIndex(x, y) != -1;
+    }
+
+    /**
+     * Returns the cost of moving from the specified cell to the goal, or -1 if the goal is not
+     * reachable within the maximum cost.
+     */
+    public int getCost (int x, int y)
+    {
+        int cost = getFieldCost(x, y);
+        return (cost > _maxcost) ? -1 : cost;
+    }
+
+    /**
+     * Finds the direction in which to move from the specified location in order to approach the
+     * goal.  The neighbor on the way to the goal is cached for each cell until the field next
+     * changes, so once computed, the lookup takes constant time.
+     *
+     * @return true if a direction was found, false if the location is at the goal or unable to
+     * reach it.
+     */
+    public boolean getDirection (float x, float y, Vector2f result)
+    {
+        int cx = getCellX(x), cy = getCellY(y);
+        int next = getNext(cx, cy);
+        if (next == -1) {
+            return false;
+        }
+        float nx = (cx + ((next & 0x03) - 1) + _xoff) / Pathfinder.SUBDIVISION;
+        float ny = (cy + ((next >> 2) - 1) + _yoff) / Pathfinder.SUBDIVISION;
+        result.set(nx - x, ny - y).normalizeLocal();
+        return true;
+    }
+
+    /**
+     * Follows the field from the specified cell to the goal.  If successful, the path may be
+     * retrieved with {@link #getPathLength}, {@link #getPathX}, and {@link #getPathY}.
+     *
+     * @return true if the goal is reachable from the cell.
+     */
+    public boolean findPath (int sx, int sy)
+    {
+        _length = 0;
+        if (getCost(sx, sy) < 0) {
+            return false;
+        }
+        append(sx, sy);
+        for (int x = sx, y = sy; x != _gx || y != _gy; ) {
+            int next = getNext(x, y);
+            if (next == -1) {
+                _length = 0;
+                return false; // shouldn't happen
+            }
+            append(x += (next & 0x03) - 1, y += (next >> 2) - 1);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of cells in the last path found.
+     */
+    public int getPathLength ()
+    {
+        return _length;
+    }
+
+    /**
+     * Returns the x coordinate of the cell at the specified index of the last path found.
+     */
+    public int getPathX (int idx)
+    {
+        return _xs[idx];
+    }
+
+    /**
+     * Returns the y coordinate of the cell at the specified index of the last path found.
+     */
+    public int getPathY (int idx)
+    {
+        return _ys[idx];
+    }
+
+    /**
+     * Returns the x offset used to convert to/from integer coordinates.
+     */
+    public float getXOffset ()
+    {
+        return _xoff;
+    }
+
+    /**
+     * Returns the y offset used to convert to/from integer coordinates.
+     */
+    public float getYOffset ()
+    {
+        return _yoff;
+    }
+
+    /**
+     * Rebuilds the field from scratch for the specified goal cell.
+     */
+    protected void rebuild (int gx, int gy, int modcount)
+    {
+        Arrays.fill(_costs, Integer.MAX_VALUE);
+        _offset = 0;
+        _cx = _gx = gx;
+        _cy = _gy = gy;
+        _modcount = modcount;
+        _built = true;
+        push(gx, gy, 0);
+        flood();
+        invalidateDirections();
+    }
+
+    /**
+     * Invalidates the cached neighbors of all cells.
+     */
+    protected void invalidateDirections ()
+    {
+        if (++_stamp == 0) {
+            Arrays.fill(_nextStamps, 0);
+            _stamp = 1;
+        }
+    }
+
+    /**
+     * Returns the cost of the specified cell according to the field (which may exceed the
+     * maximum cost), or -1 if the cell is unreachable or lies outside the field.
+     */
+    protected int getFieldCost (int x, int y)
+    {
+        int idx = getIndex(x, y);
+        if (idx == -1) {
+            return -1;
+        }
+        int stored = _costs[idx];
+        return (stored == Integer.MAX_VALUE) ? -1 : stored + _offset;
+    }
+
+    /**
+     * Finds the neighbor of the specified cell that lies on the way to the goal, using the cached
+     * value if it is current.
+     *
+     * @return the offset of the neighbor encoded as <code>(dx + 1) | (dy + 1) << 2</code>, or
+     * -1 if there is no such neighbor (because the cell is the goal or unreachable).
+     */
+    protected int getNext (int x, int y)
+    {
+        int idx = getIndex(x, y);
+        if (idx == -1) {
+            return -1;
+        }
+        if (_nextStamps[idx] != _stamp) {
+            _nexts[idx] = (byte)computeNext(x, y);
+            _nextStamps[idx] = _stamp;
+        }
+        return _nexts[idx];
+    }
+
+    /**
+     * Computes the neighbor of the specified cell that lies on the way to the goal.
+     *
+     * @return the encoded offset of the neighbor, or -1 if there is no such neighbor.
+     */
+    protected int computeNext (int x, int y)
+    {
+        int cost = getCost(x, y);
+        if (cost <= 0) {
+            return -1;
+        }
+        int best = -1, btotal = Integer.MAX_VALUE;
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                if (dx == 0 && dy == 0) {
+                    continue;
+                }
+                int ncost = getCost(x + dx, y + dy);
+                if (ncost < 0 || ncost >= cost) {
+                    continue;
+                }
+                int total = ncost;
+                if (dx == 0 || dy == 0) {
+                    total += GridSearch.ADJACENT_COST;
+                } else if (_graph.isPassable(x + dx, y) && _graph.isPassable(x, y + dy)) {
+                    total += GridSearch.DIAGONAL_COST;
+                } else {
+                    continue;
+                }
+                if (total < btotal) {
+                    best = (dx + 1) | (dy + 1) << 2;
+                    btotal = total;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the index of the specified cell within the cost array, or -1 if it lies outside
+     * the field.
+     */
+    protected int getIndex (int x, int y)
+    {
+        int fx = x - _cx + _extent, fy = y - _cy + _extent;
+        return (fx < 0 || fy < 0 || fx >= _size || fy >= _size) ? -1 : fy*_size + fx;
+    }
+
+    /**
+     * Floods outward from the queued cells, lowering costs wherever possible.
+     */
+    protected void flood ()
+    {
+        while (_hsize > 0) {
+            long entry = pop();
+            int cost = (int)(entry >>> 32), idx = (int)entry;
+            if (_costs[idx] != cost - _offset) {
+                continue; // stale entry
+            }
+            int x = idx % _size - _extent + _cx, y = idx / _size - _extent + _cy;
+            boolean left = _graph.isPassable(x - 1, y), right = _graph.isPassable(x + 1, y);
+            boolean down = _graph.isPassable(x, y - 1), up = _graph.isPassable(x, y + 1);
+            if (left) {
+                push(x - 1, y, cost + GridSearch.ADJACENT_COST);
+            }
+            if (right) {
+                push(x + 1, y, cost + GridSearch.ADJACENT_COST);
+            }
+            if (down) {
+                push(x, y - 1, cost + GridSearch.ADJACENT_COST);
+                if (left && _graph.isPassable(x - 1, y - 1)) {
+                    push(x - 1, y - 1, cost + GridSearch.DIAGONAL_COST);
+                }
+                if (right && _graph.isPassable(x + 1, y - 1)) {
+                    push(x + 1, y - 1, cost + GridSearch.DIAGONAL_COST);
+                }
+            }
+            if (up) {
+                push(x, y + 1, cost + GridSearch.ADJACENT_COST);
+                if (left && _graph.isPassable(x - 1, y + 1)) {
+                    push(x - 1, y + 1, cost + GridSearch.DIAGONAL_COST);
+                }
+                if (right && _graph.isPassable(x + 1, y + 1)) {
+                    push(x + 1, y + 1, cost + GridSearch.DIAGONAL_COST);
+                }
+            }
+        }
+    }
+
+    /**
+     * Lowers the cost of the specified cell (queuing it for expansion) if the new cost is lower
+     * than the current one.
+     */
+    protected void push (int x, int y, int cost)
+    {
+        int idx = getIndex(x, y);
+        if (idx == -1) {
+            return;
+        }
+        int stored = cost - _offset;
+        if (_costs[idx] <= stored) {
+            return;
+        }
+        _costs[idx] = stored;
+
+        // add to the heap, ordered by cost
+        if (_hsize == _heap.length) {
+            long[] nheap = new long[_hsize * 2];
+            System.arraycopy(_heap, 0, nheap, 0, _hsize);
+            _heap = nheap;
+        }
+        long entry = ((long)cost << 32) | idx;
+        int hidx = _hsize++;
+        while (hidx > 0) {
+            int pidx = (hidx - 1) / 2;
+            if (_heap[pidx] <= entry) {
+                break;
+            }
+            _heap[hidx] = _heap[pidx];
+            hidx = pidx;
+        }
+        _heap[hidx] = entry;
+    }
+
+    /**
+     * Removes and returns the lowest-cost entry in the heap.
+     */
+    protected long pop ()
+    {
+        long result = _heap[0];
+        long entry = _heap[--_hsize];
+        int hidx = 0;
+        while (true) {
+            int cidx = hidx*2 + 1;
+            if (cidx >= _hsize) {
+                break;
+            }
+            if (cidx + 1 < _hsize && _heap[cidx + 1] < _heap[cidx]) {
+                cidx++;
+            }
+            if (entry <= _heap[cidx]) {
+                break;
+            }
+            _heap[hidx] = _heap[cidx];
+            hidx = cidx;
+        }
+        _heap[hidx] = entry;
+        return result;
+    }
+
+    /**
+     * Appends a cell to the path.
+     */
+    protected void append (int x, int y)
+    {
+        if (_length == _xs.length) {
+            int[] nxs = new int[_length * 2], nys = new int[nxs.length];
+            System.arraycopy(_xs, 0, nxs, 0, _length);
+            System.arraycopy(_ys, 0, nys, 0, _length);
+            _xs = nxs;
+            _ys = nys;
+        }
+        _xs[_length] = x;
+        _ys[_length++] = y;
+    }
+
+    /** The graph that determines where the actors can go. */
+    protected ClusterGraph _graph;
+
+    /** The maximum path cost. */
+    protected int _maxcost;
+
+    /** The offsets used to convert to/from integer coordinates. */
+    protected float _xoff, _yoff;
+
+    /** The distance the goal may move from the center before we rebuild the field. */
+    protected int _margin;
+
+    /** The distance from the center to the edges of the field. */
+    protected int _extent;
+
+    /** The width and height of the field. */
+    protected int _size;
+
+    /** The costs of the cells, relative to the offset ({@link Integer#MAX_VALUE} for cells not
+     * yet reached). */
+    protected int[] _costs;
+
+    /** The cached neighbors of the cells on the way to the goal (see {@link #getNext}). */
+    protected byte[] _nexts;
+
+    /** The stamps identifying the state of the field for which the neighbors were cached. */
+    protected int[] _nextStamps;
+
+    /** The current stamp, incremented whenever the costs change. */
+    protected int _stamp = 1;
+
+    /** The amount to add to the stored costs to obtain the actual costs. */
+    protected int _offset;
+
+    /** Whether or not the field has been built. */
+    protected boolean _built;
+
+    /** The center of the field. */
+    protected int _cx, _cy;
+
+    /** The goal cell. */
+    protected int _gx, _gy;
+
+    /** The static flag modification count when the field was built. */
+    protected int _modcount;
+
+    /** The heap of cells to expand, each encoded as the cost in the high bits and the index in
+     * the low. */
+    protected long[] _heap = new long[64];
+
+    /** The number of entries in the heap. */
+    protected int _hsize;
+
+    /** The cells of the last path found. */
+    protected int[] _xs = new int[16], _ys = new int[16];
+
+    /** The number of cells in the last path found. */
+    protected int _length;
+
+    /** The offset beyond which we rebuild the field rather than risk overflow. */
+    protected static final int MAX_OFFSET = 1 << 24;
+}
@@ -0,0 +1,431 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+import java.util.ArrayList;
+
+import com.samskivert.util.HashIntMap;
+import com.samskivert.util.IntMaps;
+
+import com.threerings.tudey.util.Coord;
+
+/**
+ * Performs A* searches and bounded floods over a grid of cells, reusing its node storage between
+ * searches.  Moves may be made to any of the eight neighbors of a cell; diagonal moves are only
+ * permitted when both of the adjacent orthogonal cells are traversable.
+ */
+public class GridSearch
+{
+    /**
+     * Determines which cells may be traversed.
+     */
+    public interface Traversal
+    {
+        /**
+         * Checks whether the specified cell may be traversed.
+         */
+        public boolean canTraverse (int x, int y);
+    }
+
+    /** The cost of moving to an orthogonally adjacent cell. */
+    public static final int ADJACENT_COST = 10;
+
+    /** The cost of moving to a diagonally adjacent cell. */
+    public static final int DIAGONAL_COST = 14;
+
+    /**
+     * Returns the estimated (minimum) cost of moving between the specified cells.
+     */
+    public static int getDistanceEstimate (int ax, int ay, int bx, int by)
+    {
+        int dx = Math.abs(bx - ax), dy = Math.abs(by - ay);
+        int min = Math.min(dx, dy);
+        return min*DIAGONAL_COST + (Math.max(dx, dy) - min)*ADJACENT_COST;
+    }
+
+    /**
+     * Searches for a path between the specified cells.  The start cell itself need not be
+     * traversable.  If a path is found, it may be retrieved with {@link #getPathLength},
+     * {@link #getPathX}, and {@link #getPathY}.
+     *
+     * @param maxcost the maximum cost of the path.
+     * @param partial if true and the destination is unreachable, find a path to the reachable
+     * cell closest to the destination.
+     * @return true if a path was found.
+     */
+    public boolean findPath (
+        Traversal trav, int maxcost, int ax, int ay, int bx, int by, boolean partial,
+        int minx, int miny, int maxx, int maxy)
+    {
+        reset(trav, maxcost, minx, miny, maxx, maxy);
+        _goal = true;
+        _bx = bx;
+        _by = by;
+        Node best = null;
+        long bestdist = Long.MAX_VALUE;
+        open(ax, ay, 0, null);
+        for (Node node = poll(); node != null; node = poll()) {
+            if (node.x == bx && node.y == by) {
+                storePath(node);
+                return true;
+            }
+            long dx = bx - node.x, dy = by - node.y;
+            long dist = dx*dx + dy*dy;
+            if (dist < bestdist) {
+                bestdist = dist;
+                best = node;
+            }
+            expand(node);
+        }
+        if (partial && best != null) {
+            storePath(best);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Floods outward from the specified cell, computing the cost of reaching every reachable cell
+     * within the bounds.  The costs may then be retrieved with {@link #getCost}.
+     */
+    public void flood (
+        Traversal trav, int maxcost, int sx, int sy, int minx, int miny, int maxx, int maxy)
+    {
+        reset(trav, maxcost, minx, miny, maxx, maxy);
+        _goal = false;
+        open(sx, sy, 0, null);
+        for (Node node = poll(); node != null; node = poll()) {
+            expand(node);
+        }
+    }
+
+    /**
+     * Returns the cost of reaching the specified cell in the last flood, or -1 if it was not
+     * reached.
+     */
+    public int getCost (int x, int y)
+    {
+        Node node = _nodes.get(Coord.encode(x, y));
+        return (node == null || !node.closed) ? -1 : node.g;
+    }
+
+    /**
+     * Checks whether the last search was limited by the maximum cost (as opposed to running out
+     * of traversable cells).
+     */
+    public boolean wasLimited ()
+    {
+        return _limited;
+    }
+
+    /**
+     * Returns the number of cells in the last path found.
+     */
+    public int getPathLength ()
+    {
+        return _length;
+    }
+
+    /**
+     * Returns the x coordinate of the cell at the specified index of the last path found.
+     */
+    public int getPathX (int idx)
+    {
+        return _xs[idx];
+    }
+
+    /**
+     * Returns the y coordinate of the cell at the specified index of the last path found.
+     */
+    public int getPathY (int idx)
+    {
+        return _ys[idx];
+    }
+
+    /**
+     * Returns the cost of the last path found.
+     */
+    public int getPathCost ()
+    {
+        return _cost;
+    }
+
+    /**
+     * Clears the search state in preparation for a new search.
+     */
+    protected void reset (Traversal trav, int maxcost, int minx, int miny, int maxx, int maxy)
+    {
+        _nodes.clear();
+        _used = 0;
+        _size = 0;
+        _length = 0;
+        _limited = false;
+        _trav = trav;
+        _maxcost = maxcost;
+        _minx = minx;
+        _miny = miny;
+        _maxx = maxx;
+        _maxy = maxy;
+    }
+
+    /**
+     * Considers all of the neighbors of the specified (closed) node.
+     */
+    protected void expand (Node node)
+    {
+        int x = node.x, y = node.y;
+        boolean left = canTraverse(x - 1, y), right = canTraverse(x + 1, y);
+        boolean down = canTraverse(x, y - 1), up = canTraverse(x, y + 1);
+        if (left) {
+            consider(node, x - 1, y, ADJACENT_COST);
+        }
+        if (right) {
+            consider(node, x + 1, y, ADJACENT_COST);
+        }
+        if (down) {
+            consider(node, x, y - 1, ADJACENT_COST);
+            if (left && canTraverse(x - 1, y - 1)) {
+                consider(node, x - 1, y - 1, DIAGONAL_COST);
+            }
+            if (right && canTraverse(x + 1, y - 1)) {
+                consider(node, x + 1, y - 1, DIAGONAL_COST);
+            }
+        }
+        if (up) {
+            consider(node, x, y + 1, ADJACENT_COST);
+            if (left && canTraverse(x - 1, y + 1)) {
+                consider(node, x - 1, y + 1, DIAGONAL_COST);
+            }
+            if (right && canTraverse(x + 1, y + 1)) {
+                consider(node, x + 1, y + 1, DIAGONAL_COST);
+            }
+        }
+    }
+
+    /**
+     * Checks whether the specified cell is within the bounds and traversable.
+     */
+    protected boolean canTraverse (int x, int y)
+    {
+        return x >= _minx && x <= _maxx && y >= _miny && y <= _maxy && _trav.canTraverse(x, y);
+    }
+
+    /**
+     * Considers a step from the specified node to an adjacent cell.
+     */
+    protected void consider (Node parent, int x, int y, int cost)
+    {
+        int g = parent.g + cost;
+        if (g > _maxcost) {
+            _limited = true;
+            return;
+        }
+        Node node = _nodes.get(Coord.encode(x, y));
+        if (node == null) {
+            open(x, y, g, parent);
+        } else if (!node.closed && g < node.g) {
+            node.f -= (node.g - g);
+            node.g = g;
+            node.parent = parent;
+            siftUp(node.index);
+        }
+    }
+
+    /**
+     * Creates and adds an open node.
+     */
+    protected void open (int x, int y, int g, Node parent)
+    {
+        Node node;
+        if (_used < _pool.size()) {
+            node = _pool.get(_used);
+        } else {
+            _pool.add(node = new Node());
+        }
+        _used++;
+        node.x = x;
+        node.y = y;
+        node.g = g;
+        node.f = g + (_goal ? getDistanceEstimate(x, y, _bx, _by) : 0);
+        node.parent = parent;
+        node.closed = false;
+        _nodes.put(Coord.encode(x, y), node);
+        if (_size == _heap.length) {
+            Node[] nheap = new Node[_size * 2];
+            System.arraycopy(_heap, 0, nheap, 0, _size);
+            _heap = nheap;
+        }
+        _heap[node.index = _size++] = node;
+        siftUp(node.index);
+    }
+
+    /**
+     * Removes the open node with the lowest estimated total cost, marking it closed.
+     *
+     * @return the node, or null if there are no open nodes.
+     */
+    protected Node poll ()
+    {
+        if (_size == 0) {
+            return null;
+        }
+        Node node = _heap[0];
+        Node last = _heap[--_size];
+        _heap[_size] = null;
+        if (_size > 0) {
+            _heap[last.index = 0] = last;
+            siftDown(0);
+        }
+        node.closed = true;
+        return node;
+    }
+
+    /**
+     * Moves the node at the specified heap index up to its proper position.
+     */
+    protected void siftUp (int idx)
+    {
+        Node node = _heap[idx];
+        while (idx > 0) {
+            int pidx = (idx - 1) / 2;
+            Node parent = _heap[pidx];
+            if (parent.f <= node.f) {
+                break;
+            }
+            _heap[parent.index = idx] = parent;
+            idx = pidx;
+        }
+        _heap[node.index = idx] = node;
+    }
+
+    /**
+     * Moves the node at the specified heap index down to its proper position.
+     */
+    protected void siftDown (int idx)
+    {
+        Node node = _heap[idx];
+        while (true) {
+            int cidx = idx*2 + 1;
+            if (cidx >= _size) {
+                break;
+            }
+            if (cidx + 1 < _size && _heap[cidx + 1].f < _heap[cidx].f) {
+                cidx++;
+            }
+            Node child = _heap[cidx];
+            if (node.f <= child.f) {
+                break;
+            }
+            _heap[child.index = idx] = child;
+            idx = cidx;
+        }
+        _heap[node.index = idx] = node;
+    }
+
+    /**
+     * Stores the path leading to the specified node.
+     */
+    protected void storePath (Node node)
+    {
+        _cost = node.g;
+        _length = 0;
+        for (Node current = node; current != null; current = current.parent) {
+            _length++;
+        }
+        if (_xs.length < _length) {
+            _xs = new int[Math.max(_length, _xs.length * 2)];
+            _ys = new int[_xs.length];
+        }
+        int idx = _length;
+        for (Node current = node; current != null; current = current.parent) {
+            _xs[--idx] = current.x;
+            _ys[idx] = current.y;
+        }
+    }
+
+    /**
+     * A node in the search.
+     */
+    protected static class Node
+    {
+        /** The coordinates of the cell. */
+        public int x, y;
+
+        /** The cost of reaching the cell and the estimated total cost through it. */
+        public int g, f;
+
+        /** The node from which we reached this one. */
+        public Node parent;
+
+        /** The index of the node in the heap. */
+        public int index;
+
+        /** Whether or not the node has been closed. */
+        public boolean closed;
+    }
+
+    /** The traversal for the current search. */
+    protected Traversal _trav;
+
+    /** The maximum cost for the current search. */
+    protected int _maxcost;
+
+    /** The bounds of the current search. */
+    protected int _minx, _miny, _maxx, _maxy;
+
+    /** Whether the current search has a goal (as opposed to being a flood). */
+    protected boolean _goal;
+
+    /** The goal of the current search. */
+    protected int _bx, _by;
+
+    /** Set if the current search was limited by the maximum cost. */
+    protected boolean _limited;
+
+    /** The nodes of the current search mapped by encoded coordinates. */
+    protected HashIntMap<Node> _nodes = IntMaps.newHashIntMap();
+
+    /** Node objects to reuse. */
+    protected ArrayList<Node> _pool = new ArrayList<Node>();
+
+    /** The number of pooled nodes in use. */
+    protected int _used;
+
+    /** The open nodes, as a binary heap ordered by estimated total cost. */
+    protected Node[] _heap = new Node[64];
+
+    /** The number of nodes in the heap. */
+    protected int _size;
+
+    /** The coordinates of the last path found. */
+    protected int[] _xs = new int[64], _ys = new int[64];
+
+    /** The length of the last path found. */
+    protected int _length;
+
+    /** The cost of the last path found. */
+    protected int _cost;
+}
@@ -0,0 +1,573 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import com.samskivert.util.HashIntMap;
+import com.samskivert.util.IntMaps;
+
+import com.threerings.math.FloatMath;
+import com.threerings.math.Rect;
+import com.threerings.math.Vector2f;
+
+import com.threerings.tudey.server.TudeySceneManager;
+import com.threerings.tudey.server.logic.ActorLogic;
+import com.threerings.tudey.server.logic.Logic;
+import com.threerings.tudey.util.Coord;
+
+/**
+ * Tracks the cells occupied by the (non-static) actors in a scene and the cells covered by the
+ * clients' areas of interest, maintaining each client's set of candidate actors incrementally as
+ * actors and interest regions move between cells.  The cost of keeping the sets current thus
+ * depends on how much movement there is across cell boundaries, rather than on the number of
+ * clients times the number of actors they can see.
+ */
+public class InterestGrid
+    implements TudeySceneManager.ActorObserver, Logic.ShapeObserver
+{
+    /**
+     * An interface for objects interested in cells becoming covered.
+     */
+    public interface CoverageObserver
+    {
+        /**
+         * Called when the specified cell goes from being covered by no subscriptions to being
+         * covered by one.
+         */
+        public void cellCovered (int x, int y);
+    }
+
+    /**
+     * A client's subscription to the grid.
+     */
+    public class Subscription
+    {
+        /**
+         * Updates the region of interest, adding or removing members as cells enter or leave
+         * the covered area.
+         */
+        public void update (Rect bounds)
+        {
+            Vector2f min = bounds.getMinimumExtent(), max = bounds.getMaximumExtent();
+            int minx = FloatMath.ifloor(min.x * _rgran);
+            int miny = FloatMath.ifloor(min.y * _rgran);
+            int maxx = FloatMath.ifloor(max.x * _rgran);
+            int maxy = FloatMath.ifloor(max.y * _rgran);
+            if (minx == _minx && miny == _miny && maxx == _maxx && maxy == _maxy) {
+                return;
+            }
+
+            // leave the cells no longer covered, then enter the newly covered ones
+            for (int yy = _miny; yy <= _maxy; yy++) {
+                for (int xx = _minx; xx <= _maxx; xx++) {
+                    if (!contains(minx, miny, maxx, maxy, xx, yy)) {
+                        leaveCell(xx, yy);
+                    }
+                }
+            }
+            for (int yy = miny; yy <= maxy; yy++) {
+                for (int xx = minx; xx <= maxx; xx++) {
+                    if (!contains(_minx, _miny, _maxx, _maxy, xx, yy)) {
+                        enterCell(xx, yy);
+                    }
+                }
+            }
+            _minx = minx;
+            _miny = miny;
+            _maxx = maxx;
+            _maxy = maxy;
+        }
+
+        /**
+         * Returns a reference to the list of current members (actors occupying at least one of the
+         * covered cells).  The list must not be modified.
+         */
+        public List<Member> getMembers ()
+        {
+            return _memberList;
+        }
+
+        /**
+         * Returns a reference to the list of members that have left the covered area since the
+         * last call to {@link #clearLeaving} while marked as visible.
+         */
+        public List<Member> getLeaving ()
+        {
+            return _leavingList;
+        }
+
+        /**
+         * Clears the list of leaving members.
+         */
+        public void clearLeaving ()
+        {
+            for (int ii = 0, nn = _leavingList.size(); ii < nn; ii++) {
+                _leaving.remove(_leavingList.get(ii).getActor());
+            }
+            _leavingList.clear();
+        }
+
+        /**
+         * Marks all members as not visible and forgets the leaving members, as when the client
+         * must start again from scratch.
+         */
+        public void reset ()
+        {
+            for (int ii = 0, nn = _memberList.size(); ii < nn; ii++) {
+                _memberList.get(ii).setVisible(false);
+            }
+            _leaving.clear();
+            _leavingList.clear();
+        }
+
+        /**
+         * Cancels the subscription.
+         */
+        public void cancel ()
+        {
+            for (int yy = _miny; yy <= _maxy; yy++) {
+                for (int xx = _minx; xx <= _maxx; xx++) {
+                    Cell cell = _cells.get(Coord.encode(xx, yy));
+                    if (cell != null) {
+                        cell.subscribers.remove(this);
+                        maybeRemoveCell(xx, yy, cell);
+                    }
+                }
+            }
+            _minx = _miny = 0;
+            _maxx = _maxy = -1;
+            _members.clear();
+            _memberList.clear();
+            _leaving.clear();
+            _leavingList.clear();
+        }
+
+        /**
+         * Notes that an actor has entered one of the covered cells.
+         */
+        protected void increment (ActorLogic actor)
+        {
+            Member member = _members.get(actor);
+            if (member == null) {
+                // if it left earlier in the tick, resume where we were
+                member = _leaving.remove(actor);
+                if (member != null) {
+                    _leavingList.remove(member);
+                } else {
+                    member = new Member(actor);
+                }
+                member._idx = _memberList.size();
+                _memberList.add(member);
+                _members.put(actor, member);
+            }
+            member._count++;
+        }
+
+        /**
+         * Notes that an actor has left one of the covered cells.
+         */
+        protected void decrement (ActorLogic actor)
+        {
+            Member member = _members.get(actor);
+            if (member == null || --member._count > 0) {
+                return;
+            }
+            _members.remove(actor);
+
+            // swap the last member into the removed member's place
+            Member last = _memberList.remove(_memberList.size() - 1);
+            if (last != member) {
+                _memberList.set(last._idx = member._idx, last);
+            }
+            if (member.isVisible()) {
+                _leaving.put(actor, member);
+                _leavingList.add(member);
+            }
+        }
+
+        /**
+         * Starts covering the specified cell.
+         */
+        protected void enterCell (int x, int y)
+        {
+            Cell cell = getCell(x, y);
+            cell.subscribers.add(this);
+            for (int ii = 0, nn = cell.actors.size(); ii < nn; ii++) {
+                increment(cell.actors.get(ii));
+            }
+            if (cell.subscribers.size() == 1) {
+                for (int ii = 0, nn = _coverageObservers.size(); ii < nn; ii++) {
+                    _coverageObservers.get(ii).cellCovered(x, y);
+                }
+            }
+        }
+
+        /**
+         * Stops covering the specified cell.
+         */
+        protected void leaveCell (int x, int y)
+        {
+            Cell cell = _cells.get(Coord.encode(x, y));
+            if (cell == null) {
+                return;
+            }
+            cell.subscribers.remove(this);
+            for (int ii = 0, nn = cell.actors.size(); ii < nn; ii++) {
+                decrement(cell.actors.get(ii));
+            }
+            maybeRemoveCell(x, y, cell);
+        }
+
+        /** The covered range of cells (empty if min exceeds max). */
+        protected int _minx, _miny, _maxx = -1, _maxy = -1;
+
+        /** The current members mapped by actor. */
+        protected HashMap<ActorLogic, Member> _members = Maps.newHashMap();
+
+        /** The current members in iteration order. */
+        protected ArrayList<Member> _memberList = Lists.newArrayList();
+
+        /** The visible members that have left, mapped by actor. */
+        protected HashMap<ActorLogic, Member> _leaving = Maps.newHashMap();
+
+        /** The visible members that have left, in order. */
+        protected ArrayList<Member> _leavingList = Lists.newArrayList();
+    }
+
+    /**
+     * An actor within a subscription's area of interest.
+     */
+    public static class Member
+    {
+        /**
+         * Creates a new member for the specified actor.
+         */
+        public Member (ActorLogic actor)
+        {
+            _actor = actor;
+        }
+
+        /**
+         * Returns a reference to the member's actor.
+         */
+        public ActorLogic getActor ()
+        {
+            return _actor;
+        }
+
+        /**
+         * Sets whether the member was visible to the client on the last update.
+         */
+        public void setVisible (boolean visible)
+        {
+            _visible = visible;
+        }
+
+        /**
+         * Checks whether the member was visible to the client on the last update.
+         */
+        public boolean isVisible ()
+        {
+            return _visible;
+        }
+
+        /** The member's actor. */
+        protected ActorLogic _actor;
+
+        /** Whether the actor was visible on the last update. */
+        protected boolean _visible;
+
+        /** The number of covered cells that the actor occupies. */
+        protected int _count;
+
+        /** The member's index in the subscription's member list. */
+        protected int _idx;
+    }
+
+    /**
+     * Creates a new interest grid for the specified scene.
+     *
+     * @param granularity the size of the grid cells.
+     */
+    public InterestGrid (TudeySceneManager scenemgr, float granularity)
+    {
+        _rgran = 1f / granularity;
+        scenemgr.addActorObserver(this);
+    }
+
+    /**
+     * Creates and returns a new subscription.
+     */
+    public Subscription subscribe ()
+    {
+        return new Subscription();
+    }
+
+    /**
+     * Returns the size of the grid cells.
+     */
+    public float getGranularity ()
+    {
+        return 1f / _rgran;
+    }
+
+    /**
+     * Adds an observer to notify when cells become covered.
+     */
+    public void addCoverageObserver (CoverageObserver observer)
+    {
+        _coverageObservers.add(observer);
+    }
+
+    /**
+     * Removes a coverage observer.
+     */
+    public void removeCoverageObserver (CoverageObserver observer)
+    {
+        _coverageObservers.remove(observer);
+    }
+
+    /**
+     * Checks whether any of the cells occupied by the specified actor (or within the given
+     * number of cells of them) are covered by a subscription.  Actors not tracked by the grid
+     * (static actors, for instance) are always considered covered.
+     */
+    public boolean isCovered (ActorLogic logic, int margin)
+    {
+        int[] range = _ranges.get(logic);
+        if (range == null) {
+            return true;
+        }
+        for (int yy = range[1] - margin, ymax = range[3] + margin; yy <= ymax; yy++) {
+            for (int xx = range[0] - margin, xmax = range[2] + margin; xx <= xmax; xx++) {
+                Cell cell = _cells.get(Coord.encode(xx, yy));
+                if (cell != null && !cell.subscribers.isEmpty()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a reference to the list of actors occupying the specified cell.  The list must not
+     * be modified.
+     */
+    public List<ActorLogic> getActors (int x, int y)
+    {
+        Cell cell = _cells.get(Coord.encode(x, y));
+        return (cell == null) ? Collections.<ActorLogic>emptyList() : cell.actors;
+    }
+
+    /**
+     * Returns the number of actors being tracked.
+     */
+    public int getActorCount ()
+    {
+        return _ranges.size();
+    }
+
+    /**
+     * Returns the number of occupied or covered cells.
+     */
+    public int getCellCount ()
+    {
+        return _cells.size();
+    }
+
+    // documentation inherited from interface TudeySceneManager.ActorObserver
+    public void actorAdded (ActorLogic logic)
+    {
+        if (logic.isStatic()) {
+            return; // static actors are handled separately
+        }
+        int[] range = new int[4];
+        getRange(logic, range);
+        _ranges.put(logic, range);
+        for (int yy = range[1]; yy <= range[3]; yy++) {
+            for (int xx = range[0]; xx <= range[2]; xx++) {
+                addToCell(xx, yy, logic);
+            }
+        }
+        logic.addShapeObserver(this);
+    }
+
+    // documentation inherited from interface TudeySceneManager.ActorObserver
+    public void actorRemoved (ActorLogic logic)
+    {
+        int[] range = _ranges.remove(logic);
+        if (range == null) {
+            return;
+        }
+        logic.removeShapeObserver(this);
+        for (int yy = range[1]; yy <= range[3]; yy++) {
+            for (int xx = range[0]; xx <= range[2]; xx++) {
+                removeFromCell(xx, yy, logic);
+            }
+        }
+    }
+
+    // documentation inherited from interface Logic.ShapeObserver
+    public void shapeWillChange (Logic source)
+    {
+        // no-op
+    }
+
+    // documentation inherited from interface Logic.ShapeObserver
+    public void shapeDidChange (Logic source)
+    {
+        ActorLogic logic = (ActorLogic)source;
+        int[] orange = _ranges.get(logic);
+        if (orange == null) {
+            return;
+        }
+        getRange(logic, _range);
+        if (_range[0] == orange[0] && _range[1] == orange[1] &&
+                _range[2] == orange[2] && _range[3] == orange[3]) {
+            return; // still in the same cells
+        }
+        for (int yy = orange[1]; yy <= orange[3]; yy++) {
+            for (int xx = orange[0]; xx <= orange[2]; xx++) {
+                if (!contains(_range[0], _range[1], _range[2], _range[3], xx, yy)) {
+                    removeFromCell(xx, yy, logic);
+                }
+            }
+        }
+        for (int yy = _range[1]; yy <= _range[3]; yy++) {
+            for (int xx = _range[0]; xx <= _range[2]; xx++) {
+                if (!contains(orange[0], orange[1], orange[2], orange[3], xx, yy)) {
+                    addToCell(xx, yy, logic);
+                }
+            }
+        }
+        System.arraycopy(_range, 0, orange, 0, 4);
+    }
+
+    /**
+     * Computes the range of cells occupied by the specified actor.
+     */
+    protected void getRange (ActorLogic logic, int[] range)
+    {
+        Rect bounds = logic.getShape().getBounds();
+        Vector2f min = bounds.getMinimumExtent(), max = bounds.getMaximumExtent();
+        range[0] = FloatMath.ifloor(min.x * _rgran);
+        range[1] = FloatMath.ifloor(min.y * _rgran);
+        range[2] = FloatMath.ifloor(max.x * _rgran);
+        range[3] = FloatMath.ifloor(max.y * _rgran);
+    }
+
+    /**
+     * Adds an actor to a cell, notifying the cell's subscribers.
+     */
+    protected void addToCell (int x, int y, ActorLogic logic)
+    {
+        Cell cell = getCell(x, y);
+        cell.actors.add(logic);
+        for (int ii = 0, nn = cell.subscribers.size(); ii < nn; ii++) {
+            cell.subscribers.get(ii).increment(logic);
+        }
+    }
+
+    /**
+     * Removes an actor from a cell, notifying the cell's subscribers.
+     */
+    protected void removeFromCell (int x, int y, ActorLogic logic)
+    {
+        Cell cell = _cells.get(Coord.encode(x, y));
+        if (cell == null || !cell.actors.remove(logic)) {
+            return;
+        }
+        for (int ii = 0, nn = cell.subscribers.size(); ii < nn; ii++) {
+            cell.subscribers.get(ii).decrement(logic);
+        }
+        maybeRemoveCell(x, y, cell);
+    }
+
+    /**
+     * Retrieves the cell at the specified coordinates, creating it if necessary.
+     */
+    protected Cell getCell (int x, int y)
+    {
+        int key = Coord.encode(x, y);
+        Cell cell = _cells.get(key);
+        if (cell == null) {
+            _cells.put(key, cell = new Cell());
+        }
+        return cell;
+    }
+
+    /**
+     * Removes the specified cell if it no longer has any actors or subscribers.
+     */
+    protected void maybeRemoveCell (int x, int y, Cell cell)
+    {
+        if (cell.actors.isEmpty() && cell.subscribers.isEmpty()) {
+            _cells.remove(Coord.encode(x, y));
+        }
+    }
+
+    /**
+     * Checks whether the specified range contains the given cell.
+     */
+    protected static boolean contains (int minx, int miny, int maxx, int maxy, int x, int y)
+    {
+        return x >= minx && x <= maxx && y >= miny && y <= maxy;
+    }
+
+    /**
+     * The contents of a single cell.
+     */
+    protected static class Cell
+    {
+        /** The actors occupying the cell. */
+        public ArrayList<ActorLogic> actors = Lists.newArrayList();
+
+        /** The subscriptions covering the cell. */
+        public ArrayList<Subscription> subscribers = Lists.newArrayList();
+    }
+
+    /** The reciprocal of the cell size. */
+    protected float _rgran;
+
+    /** The cells, mapped by encoded coordinates. */
+    protected HashIntMap<Cell> _cells = IntMaps.newHashIntMap();
+
+    /** The ranges of cells occupied by each actor (min x, min y, max x, max y). */
+    protected HashMap<ActorLogic, int[]> _ranges = Maps.newHashMap();
+
+    /** The observers to notify when cells become covered. */
+    protected ArrayList<CoverageObserver> _coverageObservers = Lists.newArrayList();
+
+    /** Holds a range during computation. */
+    protected int[] _range = new int[4];
+}
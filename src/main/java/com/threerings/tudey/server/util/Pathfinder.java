@@ -25,16 +25,18 @@
 
 package com.threerings.tudey.server.util;
 
-import java.awt.Point;
-
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+
+import java.util.concurrent.Executor;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 import com.samskivert.util.IntMap;
 import com.samskivert.util.IntMaps;
 
-import com.threerings.media.util.AStarPathUtil;
 import com.threerings.media.util.MathUtil;
 
 import com.threerings.config.ConfigManager;
@@ -59,17 +61,37 @@ import com.threerings.tudey.space.SpaceElement;
 import com.threerings.tudey.util.Coord;
 import com.threerings.tudey.util.CoordIntMap;
 
+import static com.threerings.ClydeLog.*;
+
 /**
  * A helper class for pathfinding.  Currently the pathfinding strategy is to divide the world up
  * into unit cells and track the collision flags of all scene entries and actors whose shapes
  * intersect those cells.  An alternate method that may be worth exploring would be to have the
  * traversal predicate perform a full intersection query (it seems likely that this would be more
  * expensive than maintaining the collision map for all actors, but it's not entirely clear).
+ *
+ * <p> The flags of the scene entries and static actors are also organized into
+ * {@link ClusterGraph}s (one for each combination of collision mask and footprint), which cache
+ * where actors fit and allow long paths to be found hierarchically.  The graphs are repaired
+ * incrementally as the static flags change.
  */
 public class Pathfinder
     implements TudeySceneModel.Observer, TudeySceneManager.ActorObserver,
-        Logic.ShapeObserver, ActorLogic.CollisionFlagObserver
+        Logic.ShapeObserver, ActorLogic.CollisionFlagObserver, TudeySceneManager.TickParticipant
 {
+    /**
+     * Receives the results of asynchronous path requests.
+     */
+    public interface PathListener
+    {
+        /**
+         * Called on the tick thread when a requested path has been computed.
+         *
+         * @param path the computed path, or null if unreachable.
+         */
+        public void pathComputed (Vector2f[] path);
+    }
+
     /**
      * Creates a new pathfinder.
      */
@@ -95,6 +117,15 @@ public class Pathfinder
     {
         ((TudeySceneModel)_scenemgr.getScene().getSceneModel()).removeObserver(this);
         _scenemgr.removeActorObserver(this);
+
+        // cancel any outstanding requests
+        for (PathRequest request : Lists.newArrayList(_requests.values())) {
+            request.cancel();
+        }
+        if (_registered) {
+            _scenemgr.removeTickParticipant(this);
+            _registered = false;
+        }
     }
 
     /**
@@ -160,6 +191,363 @@ public class Pathfinder
         return getPath(true, actor, longest, ax, ay, bx, by, partial, shortcut);
     }
 
+    /**
+     * Requests that a path be computed asynchronously for the specified actor from its current
+     * location, considering only the scene entries (not the actors).
+     *
+     * @see #requestPath
+     */
+    public PathRequest requestEntryPath (
+        ActorLogic actor, float longest, float bx, float by, boolean partial,
+        boolean shortcut, PathListener listener)
+    {
+        return requestPath(false, actor, longest, bx, by, partial, shortcut, listener);
+    }
+
+    /**
+     * Requests that a path be computed asynchronously for the specified actor from its current
+     * location.  The listener will be notified on a later tick.  Any request still outstanding
+     * for the same actor is superseded (and its listener will not be notified).  Requests for
+     * actors with the same destination and search parameters are satisfied together.
+     *
+     * @param longest the maximum path length.
+     * @param partial if true, return a partial path even if the destination is unreachable.
+     * @param shortcut if true, use swept shapes to find path shortcuts.
+     * @return a handle that may be used to cancel the request.
+     */
+    public PathRequest requestPath (
+        ActorLogic actor, float longest, float bx, float by, boolean partial,
+        boolean shortcut, PathListener listener)
+    {
+        return requestPath(true, actor, longest, bx, by, partial, shortcut, listener);
+    }
+
+    /**
+     * Returns the flow field leading to the specified target for actors like the one given,
+     * creating or updating it as necessary.  The field is shared between all actors with the
+     * same collision mask and footprint that follow the target, and considers the scene entries
+     * and static actors only (not the actors that move).
+     *
+     * @param longest the maximum path length.
+     */
+    public FlowField getFlowField (ActorLogic actor, Logic target, float longest)
+    {
+        // determine the actor's extents
+        Rect bounds = actor.getShape().getBounds();
+        int width = Math.max(1, FloatMath.iceil(bounds.getWidth() * SUBDIVISION));
+        int height = Math.max(1, FloatMath.iceil(bounds.getHeight() * SUBDIVISION));
+        int left = width / 2, right = (width - 1) / 2;
+        int bottom = height / 2, top = (height - 1) / 2;
+        int mask = actor.getActor().getCollisionMask();
+        int maxcost = (int)longest * GridSearch.ADJACENT_COST;
+
+        // purge any fields that haven't been used in a while
+        int timestamp = _scenemgr.getTimestamp();
+        if (timestamp - _lastFieldPurge >= FLOW_FIELD_EXPIRY) {
+            for (Iterator<FlowField> it = _fields.values().iterator(); it.hasNext(); ) {
+                if (timestamp - _fieldTimestamps.get(it.next()) >= FLOW_FIELD_EXPIRY) {
+                    it.remove();
+                }
+            }
+            _fieldTimestamps.keySet().retainAll(_fields.values());
+            _lastFieldPurge = timestamp;
+        }
+
+        // find or create the field
+        SearchKey key = new SearchKey(target, 0, 0, maxcost, mask, left, right, bottom, top, 0);
+        FlowField field = _fields.get(key);
+        if (field == null) {
+            _fields.put(key, field = new FlowField(
+                getClusterGraph(mask, left, right, bottom, top, true), maxcost,
+                (width % 2) * 0.5f / SUBDIVISION, (height % 2) * 0.5f / SUBDIVISION));
+        }
+        _fieldTimestamps.put(field, timestamp);
+
+        // update it for the target's current location
+        Vector2f translation = target.getTranslation();
+        field.update(translation.x, translation.y, _staticModCount);
+        return field;
+    }
+
+    /**
+     * Computes a path for the specified actor to the specified target by following the target's
+     * flow field (see {@link #getFlowField}).
+     *
+     * @param longest the maximum path length.
+     * @param shortcut if true, use swept shapes to find path shortcuts.
+     * @return the computed path, or null if the target is unreachable or the actor lies outside
+     * of the field.
+     */
+    public Vector2f[] getFlowPath (
+        ActorLogic actor, Logic target, float longest, boolean shortcut)
+    {
+        return getFlowPath(actor, target, getFlowField(actor, target, longest), shortcut);
+    }
+
+    /**
+     * Computes a path for the specified actor to the specified target by following a flow field
+     * previously obtained from {@link #getFlowField}.  Callers may use
+     * {@link FlowField#contains} to determine whether a null result means that the target is
+     * unreachable (in which case there's no point in searching for a path) or merely that the
+     * actor lies outside of the field.
+     *
+     * @param shortcut if true, use swept shapes to find path shortcuts.
+     * @return the computed path, or null if the target is unreachable or the actor lies outside
+     * of the field.
+     */
+    public Vector2f[] getFlowPath (
+        ActorLogic actor, Logic target, FlowField field, boolean shortcut)
+    {
+        Vector2f start = actor.getTranslation(), end = target.getTranslation();
+        Vector2f[] path = getDirectPath(true, actor, start.x, start.y, end.x, end.y);
+        if (path != null) {
+            return path;
+        }
+        if (!field.findPath(field.getCellX(start.x), field.getCellY(start.y))) {
+            return null;
+        }
+        float xoff = field.getXOffset(), yoff = field.getYOffset();
+        Vector2f[] waypoints = new Vector2f[field.getPathLength()];
+        for (int ii = 0; ii < waypoints.length; ii++) {
+            waypoints[ii] = new Vector2f(
+                (field.getPathX(ii) + xoff) / SUBDIVISION,
+                (field.getPathY(ii) + yoff) / SUBDIVISION);
+        }
+        return shortcut ? getShortcuts(true, actor, new Vector2f(start), waypoints) : waypoints;
+    }
+
+    /**
+     * Finds the direction in which the specified actor should move to approach the target by
+     * following the target's flow field (see {@link #getFlowField}).  Once the field is up to
+     * date, the lookup takes constant time.
+     *
+     * @param longest the maximum path length.
+     * @return true if a direction was found, false if the actor is at the target, unable to
+     * reach it, or outside of the field.
+     */
+    public boolean getFlowDirection (
+        ActorLogic actor, Logic target, float longest, Vector2f result)
+    {
+        Vector2f translation = actor.getTranslation();
+        return getFlowField(actor, target, longest).getDirection(
+            translation.x, translation.y, result);
+    }
+
+    /**
+     * Sets the amount of time (in microseconds) that may be spent computing requested paths on
+     * each tick when searching on the tick thread.  At least one batch of requests is processed
+     * on each tick regardless of the budget.
+     */
+    public void setTickBudget (int budget)
+    {
+        _tickBudget = budget;
+    }
+
+    /**
+     * Returns the per-tick budget for computing requested paths, in microseconds.
+     */
+    public int getTickBudget ()
+    {
+        return _tickBudget;
+    }
+
+    /**
+     * Sets the executor on which to compute requested paths.  If non-null, the searches for each
+     * tick's requests are performed on the executor against a snapshot of the flag maps and the
+     * results are delivered on the tick thread.  If null (the default), requests are processed
+     * on the tick thread, subject to the tick budget.
+     */
+    public void setExecutor (Executor executor)
+    {
+        _executor = executor;
+    }
+
+    /**
+     * Returns a reference to the executor on which requested paths are computed, if any.
+     */
+    public Executor getExecutor ()
+    {
+        return _executor;
+    }
+
+    // documentation inherited from interface TudeySceneManager.TickParticipant
+    public boolean tick (int timestamp)
+    {
+        // deliver the results of the last background search, if complete
+        if (_searching != null && _searchComplete) {
+            for (PathBatch batch : _searching) {
+                _delivering.addAll(batch.requests);
+            }
+            _searching = null;
+        }
+
+        // process the pending requests
+        if (!_pending.isEmpty()) {
+            if (_executor == null) {
+                long deadline = System.nanoTime() + _tickBudget * 1000L;
+                for (Iterator<PathBatch> it = _pending.values().iterator(); it.hasNext(); ) {
+                    PathBatch batch = it.next();
+                    it.remove();
+                    search(batch.requests);
+                    _delivering.addAll(batch.requests);
+                    if (System.nanoTime() >= deadline) {
+                        break;
+                    }
+                }
+            } else if (_searching == null) {
+                startBackgroundSearch();
+            }
+        }
+
+        // notify the listeners (which may submit further requests)
+        for (int ii = 0, nn = _delivering.size(); ii < nn; ii++) {
+            _delivering.get(ii).deliver();
+        }
+        _delivering.clear();
+
+        // keep ticking as long as we have requests outstanding
+        return (_registered = !(_pending.isEmpty() && _searching == null));
+    }
+
+    /**
+     * Submits a path request.
+     */
+    protected PathRequest requestPath (
+        boolean collideActor, ActorLogic logic, float longest, float bx, float by,
+        boolean partial, boolean shortcut, PathListener listener)
+    {
+        // supersede any outstanding request for the actor
+        PathRequest orequest = _requests.get(logic);
+        if (orequest != null) {
+            orequest.cancel();
+        }
+        Vector2f translation = logic.getTranslation();
+        PathRequest request = new PathRequest(collideActor, logic, longest,
+            translation.x, translation.y, bx, by, partial, shortcut, listener);
+        _requests.put(logic, request);
+
+        // add the request to the batch with the same destination and parameters
+        PathBatch batch = _pending.get(request._key);
+        if (batch == null) {
+            _pending.put(request._key, batch = new PathBatch());
+        }
+        batch.requests.add(request);
+        request._batch = batch;
+
+        // make sure we're ticking
+        if (!_registered) {
+            _scenemgr.addTickParticipant(this);
+            _registered = true;
+        }
+        return request;
+    }
+
+    /**
+     * Starts searching for the pending requests on the executor.
+     */
+    protected void startBackgroundSearch ()
+    {
+        // update the snapshot of the actor flags within the bounds of the searches (and the
+        // entry flags, if they've changed)
+        final List<PathBatch> batches = Lists.newArrayList(_pending.values());
+        _pending.clear();
+        CoordIntMap actorFlags = new CoordIntMap(3, 0);
+        for (PathBatch batch : batches) {
+            copySearchRegion(batch, _actorFlags, actorFlags);
+        }
+        _snapshot = new FlagSnapshot(_entriesChanged ? copy(_entryFlags) : _snapshot.entryFlags,
+            actorFlags);
+        _entriesChanged = false;
+
+        // determine the flags to exclude for each batch by removing and then restoring the
+        // requesters' flags
+        for (PathBatch batch : batches) {
+            _overrides = batch.overrides;
+            for (int ii = 0, nn = batch.requests.size(); ii < nn; ii++) {
+                batch.requests.get(ii).removeFlags();
+            }
+            _overrides = null;
+            for (int ii = 0, nn = batch.requests.size(); ii < nn; ii++) {
+                batch.requests.get(ii).restoreFlags();
+            }
+        }
+        _searching = batches;
+        _searchComplete = false;
+        final FlagSnapshot snapshot = _snapshot;
+        _executor.execute(new Runnable() {
+            public void run () {
+                try {
+                    for (PathBatch batch : batches) {
+                        PathRequest first = batch.requests.get(0);
+                        _snapshotTraversal.init(snapshot, batch.overrides, first._collideActor,
+                            first._mask, first._left, first._right, first._bottom, first._top);
+                        search(batch.requests, _backgroundSearch, _snapshotTraversal, null);
+                    }
+                } catch (Throwable t) {
+                    log.warning("Failed to compute paths.", "where", _scenemgr.where(), t);
+                } finally {
+                    _searchComplete = true;
+                }
+            }
+        });
+    }
+
+    /**
+     * Copies the flags in the region that the searches for the specified batch may examine.  The
+     * searches are limited by the maximum cost, so they can't stray more than a fixed distance
+     * from the start and destination cells (plus one step for the neighbors they test and the
+     * extents of the actors' footprint).
+     */
+    protected static void copySearchRegion (PathBatch batch, CoordIntMap src, CoordIntMap dest)
+    {
+        PathRequest first = batch.requests.get(0);
+        int minx = first._gx, miny = first._gy, maxx = first._gx, maxy = first._gy;
+        for (int ii = 0, nn = batch.requests.size(); ii < nn; ii++) {
+            PathRequest request = batch.requests.get(ii);
+            minx = Math.min(minx, request._sx);
+            miny = Math.min(miny, request._sy);
+            maxx = Math.max(maxx, request._sx);
+            maxy = Math.max(maxy, request._sy);
+        }
+        int range = first._maxcost / GridSearch.ADJACENT_COST + 1;
+        minx -= range + first._left;
+        miny -= range + first._bottom;
+        maxx += range + first._right;
+        maxy += range + first._top;
+
+        // visit either the cells in the region or the entries in the map, whichever is fewer
+        if ((long)(maxx - minx + 1) * (maxy - miny + 1) <= src.size()) {
+            for (int yy = miny; yy <= maxy; yy++) {
+                for (int xx = minx; xx <= maxx; xx++) {
+                    int flags = src.get(xx, yy);
+                    if (flags != 0) {
+                        dest.put(xx, yy, flags);
+                    }
+                }
+            }
+        } else {
+            for (CoordIntMap.CoordIntEntry entry : src.coordIntEntrySet()) {
+                Coord coord = entry.getKey();
+                if (coord.x >= minx && coord.x <= maxx && coord.y >= miny && coord.y <= maxy) {
+                    dest.put(coord.x, coord.y, entry.getIntValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a copy of the specified flag map.
+     */
+    protected static CoordIntMap copy (CoordIntMap map)
+    {
+        CoordIntMap copy = new CoordIntMap(3, 0);
+        for (CoordIntMap.CoordIntEntry entry : map.coordIntEntrySet()) {
+            Coord coord = entry.getKey();
+            copy.put(coord.x, coord.y, entry.getIntValue());
+        }
+        return copy;
+    }
+
     // documentation inherited from interface TudeySceneModel.Observer
     public void entryAdded (Entry entry)
     {
@@ -190,6 +578,10 @@ public class Pathfinder
     // documentation inherited from interface TudeySceneManager.ActorObserver
     public void actorRemoved (ActorLogic logic)
     {
+        PathRequest request = _requests.get(logic);
+        if (request != null) {
+            request.cancel();
+        }
         removeFlags(logic);
         logic.removeShapeObserver(this);
         logic.removeCollisionFlagObserver(this);
@@ -211,6 +603,7 @@ public class Pathfinder
     public void collisionFlagsChanged (ActorLogic logic, int oflags)
     {
         int nflags = logic.getCollisionFlags();
+        boolean statik = logic.isStatic();
         Shape shape = logic.getShape();
         Rect bounds = shape.getBounds();
         Vector2f min = bounds.getMinimumExtent(), max = bounds.getMaximumExtent();
@@ -224,40 +617,33 @@ public class Pathfinder
                     for (int xs = 0; xs < SUBDIVISION; xs++) {
                         updateQuadSubdivision(xx, yy, xs, ys);
                         if (shape.intersects(_quad)) {
-                            // remove an entry from the flag list
                             int sx = xx * SUBDIVISION + xs;
                             int sy = yy * SUBDIVISION + ys;
-                            int coord = Coord.encode(sx, sy);
-                            List<Integer> list = _actorFlagLists.get(coord);
-                            if (oflags != 0 && list != null) {
-                                list.remove((Integer)oflags);
+                            changeFlags(sx, sy, oflags, nflags, _actorFlags, _actorFlagLists);
+                            if (statik) {
+                                changeFlags(sx, sy, oflags, nflags,
+                                    _staticFlags, _staticFlagLists);
                             }
-                            if (nflags != 0) {
-                                if (list == null) {
-                                    _actorFlagLists.put(coord,
-                                        list = Lists.newArrayListWithCapacity(1));
-                                }
-                                list.add(nflags);
-                            }
-                            if (list == null) {
-                                continue;
-                            }
-                            int nsize = list.size();
-                            if (nsize == 0) {
-                                _actorFlagLists.remove(coord);
-                                _actorFlags.remove(sx, sy);
-                                continue;
-                            }
-                            int combined = 0;
-                            for (int ii = 0; ii < nsize; ii++) {
-                                combined |= list.get(ii);
-                            }
-                            _actorFlags.put(sx, sy, combined);
                         }
                     }
                 }
             }
         }
+        if (statik) {
+            invalidate(minx * SUBDIVISION, miny * SUBDIVISION,
+                maxx * SUBDIVISION + SUBDIVISION - 1, maxy * SUBDIVISION + SUBDIVISION - 1, true);
+        }
+    }
+
+    /**
+     * Returns the combined flags of the scene entries (and, if requested, the static actors) at
+     * the specified pathfinding cell.
+     */
+    public int getStaticFlags (int x, int y, boolean actors)
+    {
+        int flags = _entryFlags.get(
+            MathUtil.floorDiv(x, SUBDIVISION), MathUtil.floorDiv(y, SUBDIVISION));
+        return actors ? (flags | _staticFlags.get(x, y)) : flags;
     }
 
     /**
@@ -269,8 +655,33 @@ public class Pathfinder
      * @return the computed path, or null if unreachable.
      */
     protected Vector2f[] getPath (
-        final boolean collideActor, ActorLogic logic, float longest, float ax, float ay,
+        boolean collideActor, ActorLogic logic, float longest, float ax, float ay,
         float bx, float by, boolean partial, boolean shortcut)
+    {
+        // see if we can avoid searching entirely
+        Vector2f[] path = getDirectPath(collideActor, logic, ax, ay, bx, by);
+        if (path != null) {
+            return path;
+        }
+        PathRequest request = new PathRequest(
+            collideActor, logic, longest, ax, ay, bx, by, partial, shortcut, null);
+        if (!(partial || request.isInRange())) {
+            return null;
+        }
+        _searchBatch.add(request);
+        search(_searchBatch);
+        _searchBatch.clear();
+        return request.createPath();
+    }
+
+    /**
+     * Returns the path for the trivial cases that don't require a search: when the actor is
+     * already at the destination or can simply slide on over.
+     *
+     * @return the direct path, or null if a search is required.
+     */
+    protected Vector2f[] getDirectPath (
+        boolean collideActor, ActorLogic logic, float ax, float ay, float bx, float by)
     {
         // first things first: are we there already?
         Vector2f start = new Vector2f(ax, ay);
@@ -283,113 +694,116 @@ public class Pathfinder
         if (!sweptShapeCollides(collideActor, logic, start, end)) {
             return new Vector2f[] { start, end };
         }
+        return null;
+    }
 
-        // determine the actor's extents
-        Rect bounds = logic.getShape().getBounds();
-        int width = Math.max(1, FloatMath.iceil(bounds.getWidth() * SUBDIVISION));
-        int height = Math.max(1, FloatMath.iceil(bounds.getHeight() * SUBDIVISION));
+    /**
+     * Computes the paths for a batch of requests sharing a destination and search parameters
+     * on the tick thread, using the cluster graph and the current flag maps.
+     */
+    protected void search (List<PathRequest> batch)
+    {
+        // the static flags come from the cluster graph, which includes those of the static
+        // actors unless the actors are themselves static (in which case we must omit their
+        // own flags)
+        PathRequest first = batch.get(0);
+        ClusterGraph graph = getClusterGraph(first._mask, first._left, first._right,
+            first._bottom, first._top, first._graphActors);
+        _traversal.init(graph, first._collideActor, first._mask,
+            first._left, first._right, first._bottom, first._top);
 
-        // create the traversal predicate
-        AStarPathUtil.TraversalPred pred;
-        final Actor actor = logic.getActor();
-        final int collisionMask = actor.getCollisionMask();
-        if (width == 1 && height == 1) {
-            // simpler predicates for the common case of 1x1 actors
-            if (collideActor) {
-                pred = new AStarPathUtil.TraversalPred() {
-                    public boolean canTraverse (Object traverser, int x, int y) {
-                        return (collisionMask & _entryFlags.get(
-                            MathUtil.floorDiv(x, SUBDIVISION),
-                            MathUtil.floorDiv(y, SUBDIVISION))) == 0 &&
-                                (collisionMask & _actorFlags.get(x, y)) == 0;
-                    }
-                };
-            } else {
-                pred = new AStarPathUtil.TraversalPred() {
-                    public boolean canTraverse (Object traverser, int x, int y) {
-                        return (collisionMask & _entryFlags.get(
-                            MathUtil.floorDiv(x, SUBDIVISION),
-                            MathUtil.floorDiv(y, SUBDIVISION))) == 0;
-                    }
-                };
-            }
-        } else {
-            final int left = width / 2, right = (width - 1) / 2;
-            final int bottom = height / 2, top = (height - 1) / 2;
-            if (collideActor) {
-                pred = new AStarPathUtil.TraversalPred() {
-                    public boolean canTraverse (Object traverser, int x, int y) {
-                        for (int yy = y - bottom, yymax = y + top; yy <= yymax; yy++) {
-                            for (int xx = x - left, xxmax = x + right; xx <= xxmax; xx++) {
-                                if ((collisionMask & _entryFlags.get(
-                                        MathUtil.floorDiv(xx, SUBDIVISION),
-                                        MathUtil.floorDiv(yy, SUBDIVISION))) != 0 ||
-                                            (collisionMask & _actorFlags.get(xx, yy)) != 0) {
-                                    return false;
-                                }
-                            }
-                        }
-                        return true;
-                    }
-                };
-            } else {
-                pred = new AStarPathUtil.TraversalPred() {
-                    public boolean canTraverse (Object traverser, int x, int y) {
-                        for (int yy = y - bottom, yymax = y + top; yy <= yymax; yy++) {
-                            for (int xx = x - left, xxmax = x + right; xx <= xxmax; xx++) {
-                                if ((collisionMask & _entryFlags.get(
-                                        MathUtil.floorDiv(xx, SUBDIVISION),
-                                        MathUtil.floorDiv(yy, SUBDIVISION))) != 0) {
-                                    return false;
-                                }
-                            }
-                        }
-                        return true;
-                    }
-                };
-            }
+        // if the actors are in the space and can collide with their own flags,
+        // remove them before we compute the paths (note that this means that the requesters in
+        // a batch ignore one another as well as themselves; since they share a destination,
+        // they will usually be moving in the same direction)
+        for (int ii = 0, nn = batch.size(); ii < nn; ii++) {
+            batch.get(ii).removeFlags();
         }
-
-        // compute the offsets for converting to/from integer coordinates
-        float xoff = (width % 2) * 0.5f / SUBDIVISION;
-        float yoff = (height % 2) * 0.5f / SUBDIVISION;
-        ax *= SUBDIVISION;
-        ay *= SUBDIVISION;
-        bx *= SUBDIVISION;
-        by *= SUBDIVISION;
-
-        // if the actor is in the space and can collide with its own flags,
-        // remove them before we compute the path
-        boolean remove = (!logic.isRemoved() && collideActor &&
-            actor.canCollide(logic.getCollisionFlags()));
-        if (remove) {
-            removeFlags(logic);
+        search(batch, _search, _traversal, graph);
+        for (int ii = 0, nn = batch.size(); ii < nn; ii++) {
+            batch.get(ii).restoreFlags();
         }
+    }
 
-        // compute the path
-        List<Point> path = AStarPathUtil.getPath(
-            pred, actor, (int)longest, Math.round(ax - xoff), Math.round(ay - yoff),
-            Math.round(bx - xoff), Math.round(by - yoff), partial);
+    /**
+     * Computes the paths for a batch of requests sharing a destination and search parameters.
+     * When there is more than one request, we flood outward from the destination once and
+     * follow the costs back from each requester's location.  This method may be called on a
+     * background thread, and so must not reference the pathfinder's own state.
+     *
+     * @param graph the cluster graph to use for long paths, or null to search directly.
+     */
+    protected void search (
+        List<PathRequest> batch, GridSearch search, GridSearch.Traversal trav,
+        ClusterGraph graph)
+    {
+        PathRequest first = batch.get(0);
+        int size = batch.size();
+        if (size > 1 && trav.canTraverse(first._gx, first._gy)) {
+            search.flood(trav, first._maxcost, first._gx, first._gy,
+                Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+            for (int ii = 0; ii < size; ii++) {
+                PathRequest request = batch.get(ii);
+                request._flooded = request.descend(search, trav);
+            }
 
-        // add the flags back if we removed them
-        if (remove) {
-            addFlags(logic);
+            // search individually for any requests the flood couldn't satisfy
+            for (int ii = 0; ii < size; ii++) {
+                PathRequest request = batch.get(ii);
+                if (!request._flooded) {
+                    search(request, search, trav, graph);
+                }
+            }
+        } else {
+            for (int ii = 0; ii < size; ii++) {
+                search(batch.get(ii), search, trav, graph);
+            }
         }
+    }
 
-        // convert to fractional coordinates
-        if (path == null) {
-            return null;
+    /**
+     * Computes the path for a single request.
+     */
+    protected void search (
+        PathRequest request, GridSearch search, GridSearch.Traversal trav, ClusterGraph graph)
+    {
+        // use the cluster graph for destinations outside the neighboring clusters and fall back
+        // to a direct search if that doesn't produce a path
+        if (!(request._partial || request.isInRange())) {
+            request.setLength(0);
+            return;
         }
-        Vector2f[] waypoints = new Vector2f[path.size()];
-        for (int ii = 0; ii < waypoints.length; ii++) {
-            Point pt = path.get(ii);
-            waypoints[ii] = new Vector2f((pt.x + xoff) / SUBDIVISION, (pt.y + yoff) / SUBDIVISION);
+        int sx = request._sx, sy = request._sy, gx = request._gx, gy = request._gy;
+        int result = ClusterGraph.NOT_FOUND;
+        if (graph != null &&
+                Math.max(Math.abs(gx - sx), Math.abs(gy - sy)) > ClusterGraph.CLUSTER_SIZE) {
+            result = graph.findPath(search, trav, request._maxcost, sx, sy, gx, gy);
         }
-
-        // process for shortcuts if requested
-        if (!shortcut) {
-            return waypoints;
+        if (result == ClusterGraph.FOUND) {
+            request.setLength(graph.getPathLength());
+            for (int ii = 0; ii < request._length; ii++) {
+                request._xs[ii] = graph.getPathX(ii);
+                request._ys[ii] = graph.getPathY(ii);
+            }
+        } else if ((result == ClusterGraph.NOT_FOUND || request._partial) &&
+                search.findPath(trav, request._maxcost, sx, sy, gx, gy, request._partial,
+                    Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE)) {
+            request.setLength(search.getPathLength());
+            for (int ii = 0; ii < request._length; ii++) {
+                request._xs[ii] = search.getPathX(ii);
+                request._ys[ii] = search.getPathY(ii);
+            }
+        } else {
+            request.setLength(0);
         }
+    }
+
+    /**
+     * Processes shortcuts for the specified path using swept shapes.
+     */
+    protected Vector2f[] getShortcuts (
+        boolean collideActor, ActorLogic logic, Vector2f start, Vector2f[] waypoints)
+    {
         Vector2f current = start;
         for (int ii = 0; ii < waypoints.length; ) {
             for (int jj = waypoints.length - 1; jj >= ii; jj--) {
@@ -432,7 +846,7 @@ public class Pathfinder
             ConfigManager cfgmgr = _scenemgr.getConfigManager();
             Shape shape = entry.createShape(cfgmgr);
             if (shape != null) {
-                addFlags(shape, entry.getCollisionFlags(cfgmgr), true);
+                addFlags(shape, entry.getCollisionFlags(cfgmgr), true, false);
             }
             return;
         }
@@ -447,6 +861,7 @@ public class Pathfinder
                 }
             }
         }
+        invalidateRegion();
     }
 
     /**
@@ -458,7 +873,7 @@ public class Pathfinder
             ConfigManager cfgmgr = _scenemgr.getConfigManager();
             Shape shape = entry.createShape(cfgmgr);
             if (shape != null) {
-                removeFlags(shape, entry.getCollisionFlags(cfgmgr), true, null);
+                removeFlags(shape, entry.getCollisionFlags(cfgmgr), true, null, false);
             }
             return;
         }
@@ -474,6 +889,7 @@ public class Pathfinder
                 }
             }
         }
+        invalidateRegion();
     }
 
     /**
@@ -481,7 +897,7 @@ public class Pathfinder
      */
     protected void addFlags (ActorLogic logic)
     {
-        addFlags(logic.getShape(), logic.getCollisionFlags(), false);
+        addFlags(logic.getShape(), logic.getCollisionFlags(), false, logic.isStatic());
     }
 
     /**
@@ -489,13 +905,16 @@ public class Pathfinder
      */
     protected void removeFlags (ActorLogic logic)
     {
-        removeFlags(logic.getShape(), logic.getCollisionFlags(), false, logic.getShapeElement());
+        removeFlags(logic.getShape(), logic.getCollisionFlags(), false,
+            logic.getShapeElement(), logic.isStatic());
     }
 
     /**
      * Adds the specified flags to the flag map(s).
+     *
+     * @param statik for actors, whether to add the flags to the static flags as well.
      */
-    protected void addFlags (Shape shape, int flags, boolean entry)
+    protected void addFlags (Shape shape, int flags, boolean entry, boolean statik)
     {
         if (flags == 0) {
             return; // nothing to do
@@ -518,31 +937,32 @@ public class Pathfinder
                         for (int xs = 0; xs < SUBDIVISION; xs++) {
                             updateQuadSubdivision(xx, yy, xs, ys);
                             if (shape.intersects(_quad)) {
-                                // set the bits in the combined flags
                                 int sx = xx * SUBDIVISION + xs;
                                 int sy = yy * SUBDIVISION + ys;
-                                _actorFlags.setBits(sx, sy, flags);
-
-                                // add an entry to the list of separate flags
-                                int coord = Coord.encode(sx, sy);
-                                List<Integer> list = _actorFlagLists.get(coord);
-                                if (list == null) {
-                                    _actorFlagLists.put(coord,
-                                        list = Lists.newArrayListWithCapacity(1));
+                                addFlags(sx, sy, flags, _actorFlags, _actorFlagLists);
+                                if (statik) {
+                                    addFlags(sx, sy, flags, _staticFlags, _staticFlagLists);
                                 }
-                                list.add(flags);
                             }
                         }
                     }
                 }
             }
         }
+        if (entry || statik) {
+            invalidate(minx * SUBDIVISION, miny * SUBDIVISION,
+                maxx * SUBDIVISION + SUBDIVISION - 1, maxy * SUBDIVISION + SUBDIVISION - 1,
+                !entry);
+        }
     }
 
     /**
      * Removes the flags for the specified shape.
+     *
+     * @param statik for actors, whether to remove the flags from the static flags as well.
      */
-    protected void removeFlags (Shape shape, int flags, boolean entry, SpaceElement skip)
+    protected void removeFlags (
+        Shape shape, int flags, boolean entry, SpaceElement skip, boolean statik)
     {
         if (flags == 0) {
             return; // nothing to do
@@ -565,32 +985,663 @@ public class Pathfinder
                         for (int xs = 0; xs < SUBDIVISION; xs++) {
                             updateQuadSubdivision(xx, yy, xs, ys);
                             if (shape.intersects(_quad)) {
-                                // remove an entry from the flag list
                                 int sx = xx * SUBDIVISION + xs;
                                 int sy = yy * SUBDIVISION + ys;
-                                int coord = Coord.encode(sx, sy);
-                                List<Integer> list = _actorFlagLists.get(coord);
-                                if (list == null) {
-                                    continue;
+                                changeFlags(sx, sy, flags, 0, _actorFlags, _actorFlagLists);
+                                if (_overrides != null) {
+                                    _overrides.put(Coord.encode(sx, sy), _actorFlags.get(sx, sy));
                                 }
-                                list.remove((Integer)flags);
-                                int nsize = list.size();
-                                if (nsize == 0) {
-                                    _actorFlagLists.remove(coord);
-                                    _actorFlags.remove(sx, sy);
-                                    continue;
+                                if (statik) {
+                                    changeFlags(sx, sy, flags, 0,
+                                        _staticFlags, _staticFlagLists);
                                 }
-                                int combined = 0;
-                                for (int ii = 0; ii < nsize; ii++) {
-                                    combined |= list.get(ii);
-                                }
-                                _actorFlags.put(sx, sy, combined);
                             }
                         }
                     }
                 }
             }
         }
+        if (entry || statik) {
+            invalidate(minx * SUBDIVISION, miny * SUBDIVISION,
+                maxx * SUBDIVISION + SUBDIVISION - 1, maxy * SUBDIVISION + SUBDIVISION - 1,
+                !entry);
+        }
+    }
+
+    /**
+     * Adds a set of actor flags to the specified cell.
+     */
+    protected void addFlags (
+        int sx, int sy, int flags, CoordIntMap map, IntMap<List<Integer>> lists)
+    {
+        // set the bits in the combined flags
+        map.setBits(sx, sy, flags);
+
+        // add an entry to the list of separate flags
+        int coord = Coord.encode(sx, sy);
+        List<Integer> list = lists.get(coord);
+        if (list == null) {
+            lists.put(coord, list = Lists.newArrayListWithCapacity(1));
+        }
+        list.add(flags);
+    }
+
+    /**
+     * Replaces a set of actor flags in the specified cell.
+     *
+     * @param oflags the flags to remove, or zero for none.
+     * @param nflags the flags to add, or zero for none.
+     */
+    protected void changeFlags (
+        int sx, int sy, int oflags, int nflags, CoordIntMap map, IntMap<List<Integer>> lists)
+    {
+        // remove an entry from the flag list
+        int coord = Coord.encode(sx, sy);
+        List<Integer> list = lists.get(coord);
+        if (oflags != 0 && list != null) {
+            list.remove((Integer)oflags);
+        }
+        if (nflags != 0) {
+            if (list == null) {
+                lists.put(coord, list = Lists.newArrayListWithCapacity(1));
+            }
+            list.add(nflags);
+        }
+        if (list == null) {
+            return;
+        }
+        int nsize = list.size();
+        if (nsize == 0) {
+            lists.remove(coord);
+            map.remove(sx, sy);
+            return;
+        }
+        int combined = 0;
+        for (int ii = 0; ii < nsize; ii++) {
+            combined |= list.get(ii);
+        }
+        map.put(sx, sy, combined);
+    }
+
+    /**
+     * Returns the cluster graph for the specified collision mask and footprint, creating it if
+     * necessary.
+     */
+    protected ClusterGraph getClusterGraph (
+        int mask, int left, int right, int bottom, int top, boolean actors)
+    {
+        SearchKey key = new SearchKey(
+            null, 0, 0, 0, mask, left, right, bottom, top, actors ? SearchKey.ACTORS : 0);
+        ClusterGraph graph = _graphs.get(key);
+        if (graph == null) {
+            _graphs.put(key, graph = new ClusterGraph(
+                this, mask, left, right, bottom, top, actors));
+        }
+        return graph;
+    }
+
+    /**
+     * Invalidates the cluster graphs for the tile region stored in {@link #_region}.
+     */
+    protected void invalidateRegion ()
+    {
+        invalidate(_region.x * SUBDIVISION, _region.y * SUBDIVISION,
+            (_region.x + _region.width) * SUBDIVISION - 1,
+            (_region.y + _region.height) * SUBDIVISION - 1, false);
+    }
+
+    /**
+     * Invalidates the cluster graphs affected by a change to the static flags in the specified
+     * (inclusive) region of pathfinding cells.
+     *
+     * @param actors if true, the change was to the flags of the static actors (and thus only
+     * affects the graphs that include them).
+     */
+    protected void invalidate (int minx, int miny, int maxx, int maxy, boolean actors)
+    {
+        _entriesChanged |= !actors;
+        _staticModCount++;
+        for (ClusterGraph graph : _graphs.values()) {
+            if (!actors || graph.includesActors()) {
+                graph.invalidate(minx, miny, maxx, maxy);
+            }
+        }
+    }
+
+    /**
+     * An asynchronous path request.
+     */
+    public class PathRequest
+    {
+        /**
+         * Creates a new request, computing the search parameters.
+         */
+        public PathRequest (
+            boolean collideActor, ActorLogic logic, float longest, float ax, float ay,
+            float bx, float by, boolean partial, boolean shortcut, PathListener listener)
+        {
+            _collideActor = collideActor;
+            _logic = logic;
+            _ax = ax;
+            _ay = ay;
+            _bx = bx;
+            _by = by;
+            _partial = partial;
+            _shortcut = shortcut;
+            _listener = listener;
+
+            // determine the actor's extents
+            Rect bounds = logic.getShape().getBounds();
+            int width = Math.max(1, FloatMath.iceil(bounds.getWidth() * SUBDIVISION));
+            int height = Math.max(1, FloatMath.iceil(bounds.getHeight() * SUBDIVISION));
+            _left = width / 2;
+            _right = (width - 1) / 2;
+            _bottom = height / 2;
+            _top = (height - 1) / 2;
+
+            // compute the offsets for converting to/from integer coordinates
+            _xoff = (width % 2) * 0.5f / SUBDIVISION;
+            _yoff = (height % 2) * 0.5f / SUBDIVISION;
+            _sx = Math.round(ax * SUBDIVISION - _xoff);
+            _sy = Math.round(ay * SUBDIVISION - _yoff);
+            _gx = Math.round(bx * SUBDIVISION - _xoff);
+            _gy = Math.round(by * SUBDIVISION - _yoff);
+            _maxcost = (int)longest * GridSearch.ADJACENT_COST;
+            _mask = logic.getActor().getCollisionMask();
+            _graphActors = collideActor && !logic.isStatic();
+            _key = new SearchKey(null, _gx, _gy, _maxcost, _mask, _left, _right, _bottom, _top,
+                (_collideActor ? SearchKey.COLLIDE_ACTOR : 0) |
+                (_graphActors ? SearchKey.ACTORS : 0));
+        }
+
+        /**
+         * Cancels the request.  The listener will not be notified.
+         */
+        public void cancel ()
+        {
+            if (_cancelled || _done) {
+                return;
+            }
+            _cancelled = true;
+            if (_requests.get(_logic) == this) {
+                _requests.remove(_logic);
+            }
+            // remove from the batch if it hasn't yet been searched
+            if (_batch != null && _pending.get(_key) == _batch) {
+                _batch.requests.remove(this);
+                if (_batch.requests.isEmpty()) {
+                    _pending.remove(_key);
+                }
+            }
+        }
+
+        /**
+         * Checks whether the request has been cancelled.
+         */
+        public boolean isCancelled ()
+        {
+            return _cancelled;
+        }
+
+        /**
+         * Checks whether the request has been completed.
+         */
+        public boolean isDone ()
+        {
+            return _done;
+        }
+
+        /**
+         * Returns the computed path (or null if unreachable or not yet computed).
+         */
+        public Vector2f[] getPath ()
+        {
+            return _path;
+        }
+
+        /**
+         * Checks whether the destination could possibly be reached within the maximum cost.
+         * Requests for partial paths may proceed even if it can't.
+         */
+        protected boolean isInRange ()
+        {
+            return GridSearch.getDistanceEstimate(_sx, _sy, _gx, _gy) <= _maxcost;
+        }
+
+        /**
+         * Removes the actor's flags from the flag maps if it can collide with them.
+         */
+        protected void removeFlags ()
+        {
+            _removed = (!_logic.isRemoved() && _collideActor &&
+                _logic.getActor().canCollide(_logic.getCollisionFlags()));
+            if (_removed) {
+                Pathfinder.this.removeFlags(_logic.getShape(), _logic.getCollisionFlags(),
+                    false, _logic.getShapeElement(), false);
+            }
+        }
+
+        /**
+         * Restores the flags removed by {@link #removeFlags}.
+         */
+        protected void restoreFlags ()
+        {
+            if (_removed) {
+                addFlags(_logic.getShape(), _logic.getCollisionFlags(), false, false);
+                _removed = false;
+            }
+        }
+
+        /**
+         * Attempts to find the path by following the costs of a flood from the destination
+         * back from the start location.
+         *
+         * @return true if the start location was reached by the flood (and thus the path was
+         * found).
+         */
+        protected boolean descend (GridSearch search, GridSearch.Traversal trav)
+        {
+            int x = _sx, y = _sy;
+            int cost = search.getCost(x, y);
+            if (cost < 0 || !trav.canTraverse(x, y)) {
+                return false;
+            }
+            setLength(0);
+            append(x, y);
+            while (cost > 0) {
+                boolean found = false;
+                for (int dy = -1; dy <= 1 && !found; dy++) {
+                    for (int dx = -1; dx <= 1 && !found; dx++) {
+                        if (dx == 0 && dy == 0) {
+                            continue;
+                        }
+                        int ncost = search.getCost(x + dx, y + dy);
+                        if (dx == 0 || dy == 0) {
+                            found = (ncost >= 0 && ncost + GridSearch.ADJACENT_COST == cost);
+                        } else {
+                            found = (ncost >= 0 && ncost + GridSearch.DIAGONAL_COST == cost &&
+                                trav.canTraverse(x + dx, y) && trav.canTraverse(x, y + dy));
+                        }
+                        if (found) {
+                            append(x += dx, y += dy);
+                            cost = ncost;
+                        }
+                    }
+                }
+                if (!found) {
+                    return false; // shouldn't happen
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Sets the length of the path, making sure the arrays can hold it.
+         */
+        protected void setLength (int length)
+        {
+            if (_xs.length < length) {
+                _xs = new int[length];
+                _ys = new int[length];
+            }
+            _length = length;
+        }
+
+        /**
+         * Appends a cell to the path.
+         */
+        protected void append (int x, int y)
+        {
+            if (_length == _xs.length) {
+                int[] nxs = new int[Math.max(8, _length * 2)], nys = new int[nxs.length];
+                System.arraycopy(_xs, 0, nxs, 0, _length);
+                System.arraycopy(_ys, 0, nys, 0, _length);
+                _xs = nxs;
+                _ys = nys;
+            }
+            _xs[_length] = x;
+            _ys[_length++] = y;
+        }
+
+        /**
+         * Converts the computed cells to a path, processing it for shortcuts if requested.
+         *
+         * @return the path, or null if none was found.
+         */
+        protected Vector2f[] createPath ()
+        {
+            if (_length == 0) {
+                return null;
+            }
+            Vector2f[] waypoints = new Vector2f[_length];
+            for (int ii = 0; ii < _length; ii++) {
+                waypoints[ii] = new Vector2f(
+                    (_xs[ii] + _xoff) / SUBDIVISION, (_ys[ii] + _yoff) / SUBDIVISION);
+            }
+            return _shortcut ? getShortcuts(
+                _collideActor, _logic, new Vector2f(_ax, _ay), waypoints) : waypoints;
+        }
+
+        /**
+         * Completes the request (on the tick thread), notifying the listener.
+         */
+        protected void deliver ()
+        {
+            if (_cancelled) {
+                return;
+            }
+            if (_logic.isRemoved()) {
+                cancel();
+                return;
+            }
+            _done = true;
+            if (_requests.get(_logic) == this) {
+                _requests.remove(_logic);
+            }
+            if ((_path = getDirectPath(_collideActor, _logic, _ax, _ay, _bx, _by)) == null &&
+                    (_partial || isInRange())) {
+                _path = createPath();
+            }
+            try {
+                _listener.pathComputed(_path);
+            } catch (Exception e) {
+                log.warning("Path listener failed.", "listener", _listener, e);
+            }
+        }
+
+        /** Whether or not to consider the actors. */
+        protected boolean _collideActor;
+
+        /** The requesting actor. */
+        protected ActorLogic _logic;
+
+        /** The start and destination locations. */
+        protected float _ax, _ay, _bx, _by;
+
+        /** Whether to return partial paths and whether to process shortcuts. */
+        protected boolean _partial, _shortcut;
+
+        /** The listener to notify. */
+        protected PathListener _listener;
+
+        /** The extents of the actor's footprint. */
+        protected int _left, _right, _bottom, _top;
+
+        /** The offsets for converting to/from integer coordinates. */
+        protected float _xoff, _yoff;
+
+        /** The start and destination cells. */
+        protected int _sx, _sy, _gx, _gy;
+
+        /** The maximum path cost. */
+        protected int _maxcost;
+
+        /** The actor's collision mask. */
+        protected int _mask;
+
+        /** Whether the cluster graph should include the static actors. */
+        protected boolean _graphActors;
+
+        /** Identifies the requests that may be satisfied together. */
+        protected SearchKey _key;
+
+        /** The batch to which the request belongs. */
+        protected PathBatch _batch;
+
+        /** The cells of the computed path. */
+        protected int[] _xs = new int[0], _ys = new int[0];
+
+        /** The number of cells in the computed path. */
+        protected int _length;
+
+        /** Whether the path was found by following a shared flood. */
+        protected boolean _flooded;
+
+        /** Whether the actor's flags were removed for the search. */
+        protected boolean _removed;
+
+        /** Whether the request has been cancelled or completed. */
+        protected boolean _cancelled, _done;
+
+        /** The computed path. */
+        protected Vector2f[] _path;
+    }
+
+    /**
+     * A batch of path requests sharing a destination and search parameters.  The flags of all of
+     * the requesters are removed for the search, so the requesters ignore one another.
+     */
+    protected static class PathBatch
+    {
+        /** The requests in the batch. */
+        public List<PathRequest> requests = Lists.newArrayList();
+
+        /** For background searches, the actor flags to use in place of the snapshot's (with
+         * those of the requesters removed). */
+        public IntMap<Integer> overrides = IntMaps.newHashIntMap();
+    }
+
+    /**
+     * Identifies a cluster graph, flow field, or batch of path requests.  Unused components are
+     * left zero (or null).
+     */
+    protected static final class SearchKey
+    {
+        /** Flag indicating that the search considers the actors. */
+        public static final int COLLIDE_ACTOR = (1 << 0);
+
+        /** Flag indicating that the cluster graph includes the static actors. */
+        public static final int ACTORS = (1 << 1);
+
+        /**
+         * Creates a new key.
+         */
+        public SearchKey (
+            Object target, int gx, int gy, int maxcost, int mask,
+            int left, int right, int bottom, int top, int flags)
+        {
+            _target = target;
+            _gx = gx;
+            _gy = gy;
+            _maxcost = maxcost;
+            _mask = mask;
+            _left = left;
+            _right = right;
+            _bottom = bottom;
+            _top = top;
+            _flags = flags;
+
+            int hash = (target == null) ? 0 : target.hashCode();
+            hash = 31*hash + gx;
+            hash = 31*hash + gy;
+            hash = 31*hash + maxcost;
+            hash = 31*hash + mask;
+            hash = 31*hash + left;
+            hash = 31*hash + right;
+            hash = 31*hash + bottom;
+            hash = 31*hash + top;
+            _hash = 31*hash + flags;
+        }
+
+        @Override
+        public int hashCode ()
+        {
+            return _hash;
+        }
+
+        @Override
+        public boolean equals (Object other)
+        {
+            if (other == this) {
+                return true;
+            }
+            if (!(other instanceof SearchKey)) {
+                return false;
+            }
+            SearchKey okey = (SearchKey)other;
+            return _hash == okey._hash && _gx == okey._gx && _gy == okey._gy &&
+                _maxcost == okey._maxcost && _mask == okey._mask && _left == okey._left &&
+                _right == okey._right && _bottom == okey._bottom && _top == okey._top &&
+                _flags == okey._flags && (_target == null ? okey._target == null :
+                    _target.equals(okey._target));
+        }
+
+        /** The target of a flow field, if any. */
+        protected final Object _target;
+
+        /** The destination cell of a batch. */
+        protected final int _gx, _gy;
+
+        /** The maximum path cost. */
+        protected final int _maxcost;
+
+        /** The collision mask. */
+        protected final int _mask;
+
+        /** The extents of the footprint. */
+        protected final int _left, _right, _bottom, _top;
+
+        /** The flags. */
+        protected final int _flags;
+
+        /** The precomputed hash code. */
+        protected final int _hash;
+    }
+
+    /**
+     * A snapshot of the flag maps for background searches.
+     */
+    protected static class FlagSnapshot
+    {
+        /** The entry flags. */
+        public final CoordIntMap entryFlags;
+
+        /** The actor flags. */
+        public final CoordIntMap actorFlags;
+
+        /**
+         * Creates a new snapshot.
+         */
+        public FlagSnapshot (CoordIntMap entryFlags, CoordIntMap actorFlags)
+        {
+            this.entryFlags = entryFlags;
+            this.actorFlags = actorFlags;
+        }
+    }
+
+    /**
+     * Determines which cells an actor may traverse during a background search.
+     */
+    protected static class SnapshotTraversal
+        implements GridSearch.Traversal
+    {
+        /**
+         * Initializes the traversal for a search.
+         */
+        public void init (
+            FlagSnapshot snapshot, IntMap<Integer> overrides, boolean collideActor, int mask,
+            int left, int right, int bottom, int top)
+        {
+            _snapshot = snapshot;
+            _overrides = overrides;
+            _collideActor = collideActor;
+            _mask = mask;
+            _left = left;
+            _right = right;
+            _bottom = bottom;
+            _top = top;
+        }
+
+        // documentation inherited from interface GridSearch.Traversal
+        public boolean canTraverse (int x, int y)
+        {
+            for (int yy = y - _bottom, yymax = y + _top; yy <= yymax; yy++) {
+                for (int xx = x - _left, xxmax = x + _right; xx <= xxmax; xx++) {
+                    int flags = _snapshot.entryFlags.get(
+                        MathUtil.floorDiv(xx, SUBDIVISION), MathUtil.floorDiv(yy, SUBDIVISION));
+                    if (_collideActor) {
+                        Integer override = _overrides.get(Coord.encode(xx, yy));
+                        flags |= (override == null) ?
+                            _snapshot.actorFlags.get(xx, yy) : override;
+                    }
+                    if ((_mask & flags) != 0) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /** The snapshot of the flag maps. */
+        protected FlagSnapshot _snapshot;
+
+        /** The actor flags to use in place of the snapshot's. */
+        protected IntMap<Integer> _overrides;
+
+        /** Whether to check the actor flags. */
+        protected boolean _collideActor;
+
+        /** The collision mask of the actor. */
+        protected int _mask;
+
+        /** The extents of the actor's footprint. */
+        protected int _left, _right, _bottom, _top;
+    }
+
+    /**
+     * Determines which cells an actor may traverse during a search.
+     */
+    protected class PathTraversal
+        implements GridSearch.Traversal
+    {
+        /**
+         * Initializes the traversal for a search.
+         */
+        public void init (
+            ClusterGraph graph, boolean collideActor, int mask,
+            int left, int right, int bottom, int top)
+        {
+            _graph = graph;
+            _collideActor = collideActor;
+            _mask = mask;
+            _left = left;
+            _right = right;
+            _bottom = bottom;
+            _top = top;
+        }
+
+        // documentation inherited from interface GridSearch.Traversal
+        public boolean canTraverse (int x, int y)
+        {
+            // the graph's clearance map accounts for the static flags under the footprint,
+            // so we need only scan the actor flags
+            if (!_graph.isPassable(x, y)) {
+                return false;
+            }
+            if (!_collideActor) {
+                return true;
+            }
+            for (int yy = y - _bottom, yymax = y + _top; yy <= yymax; yy++) {
+                for (int xx = x - _left, xxmax = x + _right; xx <= xxmax; xx++) {
+                    if ((_mask & _actorFlags.get(xx, yy)) != 0) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /** The graph providing the static clearance. */
+        protected ClusterGraph _graph;
+
+        /** Whether to check the actor flags. */
+        protected boolean _collideActor;
+
+        /** The collision mask of the actor. */
+        protected int _mask;
+
+        /** The extents of the actor's footprint. */
+        protected int _left, _right, _bottom, _top;
     }
 
     /**
@@ -665,6 +1716,76 @@ public class Pathfinder
     /** Maps encoded coordinates to lists of separate sets of actor flags. */
     protected IntMap<List<Integer>> _actorFlagLists = IntMaps.newHashIntMap();
 
+    /** The collision flags corresponding to the static actors. */
+    protected CoordIntMap _staticFlags = new CoordIntMap(3, 0);
+
+    /** Maps encoded coordinates to lists of separate sets of static actor flags. */
+    protected IntMap<List<Integer>> _staticFlagLists = IntMaps.newHashIntMap();
+
+    /** The cluster graphs, mapped by collision mask, footprint, and whether they include the
+     * static actors. */
+    protected Map<SearchKey, ClusterGraph> _graphs = Maps.newHashMap();
+
+    /** The search object used to find paths. */
+    protected GridSearch _search = new GridSearch();
+
+    /** The traversal used to find paths. */
+    protected PathTraversal _traversal = new PathTraversal();
+
+    /** Holds the request during synchronous searches. */
+    protected List<PathRequest> _searchBatch = Lists.newArrayList();
+
+    /** The outstanding requests, mapped by actor. */
+    protected Map<ActorLogic, PathRequest> _requests = Maps.newHashMap();
+
+    /** The batches of requests waiting to be searched, in order of submission. */
+    protected Map<SearchKey, PathBatch> _pending = Maps.newLinkedHashMap();
+
+    /** Holds requests to deliver at the end of the tick. */
+    protected List<PathRequest> _delivering = Lists.newArrayList();
+
+    /** The per-tick budget for searching on the tick thread, in microseconds. */
+    protected int _tickBudget = 2000;
+
+    /** The executor on which to search, if any. */
+    protected Executor _executor;
+
+    /** Whether or not we're registered as a tick participant. */
+    protected boolean _registered;
+
+    /** The batches being searched in the background, if any. */
+    protected List<PathBatch> _searching;
+
+    /** Set when the background search has completed. */
+    protected volatile boolean _searchComplete;
+
+    /** The most recent snapshot of the flag maps. */
+    protected FlagSnapshot _snapshot;
+
+    /** Whether the entry flags have changed since the last snapshot. */
+    protected boolean _entriesChanged = true;
+
+    /** When non-null, records the actor flags of cells from which flags are removed. */
+    protected IntMap<Integer> _overrides;
+
+    /** Incremented whenever the static flags change. */
+    protected int _staticModCount;
+
+    /** The flow fields, mapped by target, collision mask, footprint, and maximum cost. */
+    protected Map<SearchKey, FlowField> _fields = Maps.newHashMap();
+
+    /** The timestamps at which the flow fields were last used. */
+    protected Map<FlowField, Integer> _fieldTimestamps = Maps.newHashMap();
+
+    /** The timestamp at which we last purged unused flow fields. */
+    protected int _lastFieldPurge;
+
+    /** The search object used in the background. */
+    protected GridSearch _backgroundSearch = new GridSearch();
+
+    /** The traversal used in the background. */
+    protected SnapshotTraversal _snapshotTraversal = new SnapshotTraversal();
+
     /** Used to store tile shapes for intersecting testing. */
     protected Polygon _quad = new Polygon(4);
 
@@ -691,4 +1812,7 @@ public class Pathfinder
 
     /** The subdivision of the actor collision map. */
     protected static final int SUBDIVISION = 2;
+
+    /** The amount of time after which unused flow fields are discarded. */
+    protected static final int FLOW_FIELD_EXPIRY = 5000;
 }
@@ -0,0 +1,500 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import com.threerings.math.FloatMath;
+import com.threerings.math.Rect;
+import com.threerings.math.Transform2D;
+import com.threerings.math.Vector2f;
+
+import com.threerings.tudey.server.TudeySceneManager;
+import com.threerings.tudey.server.logic.ActorLogic;
+import com.threerings.tudey.server.logic.Logic;
+import com.threerings.tudey.shape.Shape;
+import com.threerings.tudey.shape.ShapeElement;
+import com.threerings.tudey.space.HashSpace;
+import com.threerings.tudey.space.SpaceElement;
+
+/**
+ * Retains a short history of the (non-static) actors' positions so that shapes may be tested
+ * against where actors were at an earlier time, such as the time at which a client saw them.
+ * Each actor's history is a compact ring of timestamps and shape transforms, with entries
+ * recorded only on the ticks on which the actor moves; positions between entries are
+ * interpolated.  The total number of entries is bounded by a per-scene memory budget.  Actors
+ * that don't fit in the budget are tested at their current positions until enough memory is
+ * freed to admit them, and actors that warp lose their histories (so that they aren't rewound
+ * across the warp).
+ */
+public class PositionHistory
+    implements TudeySceneManager.ActorObserver, Logic.ShapeObserver, HashSpace.Rewinder
+{
+    /**
+     * Creates a new history for the specified scene.
+     */
+    public PositionHistory (TudeySceneManager scenemgr)
+    {
+        _scenemgr = scenemgr;
+        setDuration(DEFAULT_DURATION);
+        scenemgr.addActorObserver(this);
+    }
+
+    /**
+     * Sets the amount of time for which to retain positions.  Only affects actors added
+     * afterwards.
+     */
+    public void setDuration (int duration)
+    {
+        _duration = duration;
+        _capacity = duration / Math.max(_scenemgr.getTickInterval(), 1) + 2;
+        if (_steps == null || _steps.length != _capacity) {
+            _steps = new float[_capacity];
+            _stepTimes = new int[_capacity];
+            _stepHead = _stepSize = 0;
+        }
+    }
+
+    /**
+     * Returns the amount of time for which positions are retained.
+     */
+    public int getDuration ()
+    {
+        return _duration;
+    }
+
+    /**
+     * Sets the maximum amount of memory (in bytes) to use for position entries.  Lowering the
+     * budget affects only actors added afterwards; raising it admits any actors waiting for room.
+     */
+    public void setMemoryBudget (int bytes)
+    {
+        _maxEntries = bytes / ENTRY_BYTES;
+        admitWaiting();
+    }
+
+    /**
+     * Returns the number of bytes used for position entries.
+     */
+    public int getMemoryUsed ()
+    {
+        return _entries * ENTRY_BYTES;
+    }
+
+    /**
+     * Returns the oldest timestamp for which positions are retained.
+     */
+    public int getOldestTimestamp ()
+    {
+        return _scenemgr.getTimestamp() - _duration;
+    }
+
+    /**
+     * Finds the transform of the specified actor's shape at the given time.
+     *
+     * @return the result object, or <code>null</code> if the actor was at its current position
+     * (or its history isn't retained).
+     */
+    public Transform2D getTransform (ActorLogic actor, int timestamp, Transform2D result)
+    {
+        Track track = _tracks.get(actor);
+        return (track == null) ? null : track.getTransform(timestamp, result);
+    }
+
+    /**
+     * Clears the history of the specified actor, so that it is tested at its current position
+     * for all earlier times.  Called when the actor warps.
+     */
+    public void reset (ActorLogic actor)
+    {
+        Track track = _tracks.get(actor);
+        if (track != null) {
+            track.reset(_scenemgr.getTimestamp(), actor.getShapeElement().getTransform());
+        }
+    }
+
+    /**
+     * Sets the time to which {@link #getShape} rewinds.
+     *
+     * @return a reference to this history, for chaining.
+     */
+    public PositionHistory rewind (int timestamp)
+    {
+        _timestamp = timestamp;
+        return this;
+    }
+
+    /**
+     * Records the positions of the actors that have moved during the tick.  Called by the scene
+     * manager at the end of each tick.
+     */
+    public void record (int timestamp)
+    {
+        float step = 0f;
+        for (int ii = 0, nn = _dirty.size(); ii < nn; ii++) {
+            step = Math.max(step, _dirty.get(ii).record(timestamp));
+        }
+        _dirty.clear();
+
+        // note the greatest distance moved on this tick
+        if (_stepSize == _steps.length) {
+            _stepHead = (_stepHead + 1) % _steps.length;
+            _stepSize--;
+        }
+        int idx = (_stepHead + _stepSize++) % _steps.length;
+        _steps[idx] = step;
+        _stepTimes[idx] = timestamp;
+    }
+
+    // documentation inherited from interface HashSpace.Rewinder
+    public float getMaximumDisplacement ()
+    {
+        // sum the greatest distances moved on the ticks since the rewound time
+        float displacement = 0f;
+        for (int ii = _stepSize - 1; ii >= 0; ii--) {
+            int idx = (_stepHead + ii) % _steps.length;
+            if (_stepTimes[idx] <= _timestamp) {
+                break;
+            }
+            displacement += _steps[idx];
+        }
+        return displacement;
+    }
+
+    // documentation inherited from interface HashSpace.Rewinder
+    public Shape getShape (SpaceElement element)
+    {
+        Object user = element.getUserObject();
+        if (!(user instanceof ActorLogic) || !(element instanceof ShapeElement) ||
+                getTransform((ActorLogic)user, _timestamp, _transform) == null) {
+            return null;
+        }
+        return (_shape = ((ShapeElement)element).getLocalShape().transform(_transform, _shape));
+    }
+
+    // documentation inherited from interface TudeySceneManager.ActorObserver
+    public void actorAdded (ActorLogic logic)
+    {
+        if (logic.isStatic()) {
+            return;
+        }
+        if (_entries + _capacity > _maxEntries) {
+            _waiting.add(logic);
+        } else {
+            addTrack(logic);
+        }
+    }
+
+    // documentation inherited from interface TudeySceneManager.ActorObserver
+    public void actorRemoved (ActorLogic logic)
+    {
+        Track track = _tracks.remove(logic);
+        if (track == null) {
+            _waiting.remove(logic);
+            return;
+        }
+        logic.removeShapeObserver(this);
+        _entries -= track.getCapacity();
+        if (track.dirty) {
+            _dirty.remove(track);
+        }
+        admitWaiting();
+    }
+
+    // documentation inherited from interface Logic.ShapeObserver
+    public void shapeWillChange (Logic source)
+    {
+        Track track = _tracks.get(source);
+        if (track == null || track.dirty) {
+            return;
+        }
+        // if the actor has been still since its last entry, record where it was on the last tick
+        // so that we don't interpolate across the time it wasn't moving
+        track.dirty = true;
+        _dirty.add(track);
+        track.hold(_scenemgr.getPreviousTimestamp());
+    }
+
+    // documentation inherited from interface Logic.ShapeObserver
+    public void shapeDidChange (Logic source)
+    {
+        // no-op
+    }
+
+    /**
+     * Creates and adds a track for the specified actor.
+     */
+    protected void addTrack (ActorLogic logic)
+    {
+        Track track = new Track(logic, _capacity);
+        _tracks.put(logic, track);
+        _entries += _capacity;
+        track.add(_scenemgr.getTimestamp(), logic.getShapeElement().getTransform());
+        logic.addShapeObserver(this);
+    }
+
+    /**
+     * Adds tracks for the actors waiting for room in the budget, in the order in which they were
+     * added, for as long as there is room.
+     */
+    protected void admitWaiting ()
+    {
+        for (Iterator<ActorLogic> it = _waiting.iterator();
+                it.hasNext() && _entries + _capacity <= _maxEntries; ) {
+            ActorLogic logic = it.next();
+            it.remove();
+            addTrack(logic);
+        }
+    }
+
+    /**
+     * The position history of a single actor.
+     */
+    protected static class Track
+    {
+        /** The actor whose positions are recorded. */
+        public ActorLogic actor;
+
+        /** Whether or not the actor has moved during the current tick. */
+        public boolean dirty;
+
+        /**
+         * Creates a new track for the specified actor.
+         */
+        public Track (ActorLogic actor, int capacity)
+        {
+            this.actor = actor;
+            _times = new int[capacity];
+            _xs = new float[capacity];
+            _ys = new float[capacity];
+            _rotations = new float[capacity];
+        }
+
+        /**
+         * Returns the number of entries the track can hold.
+         */
+        public int getCapacity ()
+        {
+            return _times.length;
+        }
+
+        /**
+         * Records the actor's position at the end of the tick.
+         *
+         * @return the greatest distance that any point of the actor's shape may have moved since
+         * the last entry.
+         */
+        public float record (int timestamp)
+        {
+            dirty = false;
+            int last = (_head + _size - 1) % _times.length;
+            float lx = _xs[last], ly = _ys[last], lrotation = _rotations[last];
+            ShapeElement element = actor.getShapeElement();
+            Transform2D transform = element.getTransform();
+            add(timestamp, transform);
+            Vector2f translation = transform.getTranslation();
+            float distance = FloatMath.hypot(translation.x - lx, translation.y - ly);
+
+            // rotating moves the points of the shape up to the length of the chord swept by the
+            // point farthest from the origin
+            float angle = FloatMath.getAngularDistance(transform.getRotation(), lrotation);
+            if (angle > 0f) {
+                Rect bounds = element.getLocalShape().getBounds();
+                Vector2f min = bounds.getMinimumExtent(), max = bounds.getMaximumExtent();
+                float radius = FloatMath.hypot(
+                    Math.max(Math.abs(min.x), Math.abs(max.x)),
+                    Math.max(Math.abs(min.y), Math.abs(max.y))) * transform.getScale();
+                distance += 2f * radius * FloatMath.sin(Math.min(angle, FloatMath.PI) * 0.5f);
+            }
+            return distance;
+        }
+
+        /**
+         * Clears the track, leaving only an entry with the specified transform.
+         */
+        public void reset (int timestamp, Transform2D transform)
+        {
+            _head = _size = 0;
+            add(timestamp, transform);
+        }
+
+        /**
+         * Repeats the last entry at the specified timestamp if it's older.
+         */
+        public void hold (int timestamp)
+        {
+            int last = (_head + _size - 1) % _times.length;
+            if (_times[last] < timestamp) {
+                add(timestamp, _xs[last], _ys[last], _rotations[last]);
+            }
+        }
+
+        /**
+         * Adds an entry with the specified transform.
+         */
+        public void add (int timestamp, Transform2D transform)
+        {
+            Vector2f translation = transform.getTranslation();
+            add(timestamp, translation.x, translation.y, transform.getRotation());
+        }
+
+        /**
+         * Adds an entry, replacing the last one if it has the same timestamp or the oldest if the
+         * track is full.
+         */
+        public void add (int timestamp, float x, float y, float rotation)
+        {
+            int idx;
+            if (_size > 0 && _times[idx = (_head + _size - 1) % _times.length] == timestamp) {
+                // replace the last entry
+            } else if (_size == _times.length) {
+                idx = _head;
+                _head = (_head + 1) % _times.length;
+            } else {
+                idx = (_head + _size++) % _times.length;
+            }
+            _times[idx] = timestamp;
+            _xs[idx] = x;
+            _ys[idx] = y;
+            _rotations[idx] = rotation;
+        }
+
+        /**
+         * Finds the transform at the specified time.
+         *
+         * @return the result object, or <code>null</code> if the time is at or after the last
+         * entry (and the actor is thus at its current position).
+         */
+        public Transform2D getTransform (int timestamp, Transform2D result)
+        {
+            int len = _times.length;
+            if (_size == 0 || timestamp >= _times[(_head + _size - 1) % len]) {
+                return null;
+            }
+            // clamp to the oldest entry
+            if (timestamp <= _times[_head]) {
+                return set(result, _head, _head, 0f);
+            }
+            // binary search for the last entry at or before the time
+            int lo = 0, hi = _size - 1;
+            while (hi - lo > 1) {
+                int mid = (lo + hi) >>> 1;
+                if (_times[(_head + mid) % len] <= timestamp) {
+                    lo = mid;
+                } else {
+                    hi = mid;
+                }
+            }
+            int sidx = (_head + lo) % len, eidx = (_head + hi) % len;
+            float t = (float)(timestamp - _times[sidx]) / (_times[eidx] - _times[sidx]);
+            return set(result, sidx, eidx, t);
+        }
+
+        /**
+         * Sets the result to the interpolation between two entries.
+         */
+        protected Transform2D set (Transform2D result, int sidx, int eidx, float t)
+        {
+            result.set(Vector2f.ZERO, FloatMath.lerpa(_rotations[sidx], _rotations[eidx], t));
+            result.getTranslation().set(
+                FloatMath.lerp(_xs[sidx], _xs[eidx], t), FloatMath.lerp(_ys[sidx], _ys[eidx], t));
+            return result;
+        }
+
+        /** The timestamps of the entries. */
+        protected int[] _times;
+
+        /** The translations of the entries. */
+        protected float[] _xs, _ys;
+
+        /** The rotations of the entries. */
+        protected float[] _rotations;
+
+        /** The index of the oldest entry. */
+        protected int _head;
+
+        /** The number of entries. */
+        protected int _size;
+    }
+
+    /** The owning scene manager. */
+    protected TudeySceneManager _scenemgr;
+
+    /** The amount of time for which to retain positions. */
+    protected int _duration;
+
+    /** The number of entries in each track. */
+    protected int _capacity;
+
+    /** The maximum total number of entries. */
+    protected int _maxEntries = DEFAULT_MEMORY_BUDGET / ENTRY_BYTES;
+
+    /** The current total number of entries. */
+    protected int _entries;
+
+    /** The tracks of the actors, mapped by actor. */
+    protected Map<ActorLogic, Track> _tracks = Maps.newIdentityHashMap();
+
+    /** The actors waiting for room in the budget, in the order in which they were added. */
+    protected Set<ActorLogic> _waiting = Sets.newLinkedHashSet();
+
+    /** The tracks of the actors that have moved during the current tick. */
+    protected ArrayList<Track> _dirty = Lists.newArrayList();
+
+    /** The greatest distance moved by any point of an actor's shape on each recent tick. */
+    protected float[] _steps;
+
+    /** The timestamps of the recent ticks. */
+    protected int[] _stepTimes;
+
+    /** The index of the oldest tick step and the number of steps. */
+    protected int _stepHead, _stepSize;
+
+    /** The time to which we're rewinding. */
+    protected int _timestamp;
+
+    /** Holds the rewound transform. */
+    protected Transform2D _transform = new Transform2D();
+
+    /** Holds the rewound shape. */
+    protected Shape _shape;
+
+    /** The number of bytes used by each entry. */
+    protected static final int ENTRY_BYTES = 16;
+
+    /** The default amount of time for which to retain positions. */
+    protected static final int DEFAULT_DURATION = 1000;
+
+    /** The default memory budget. */
+    protected static final int DEFAULT_MEMORY_BUDGET = 512 * 1024;
+}
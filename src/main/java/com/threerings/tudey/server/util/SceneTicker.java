@@ -27,8 +27,14 @@ package com.threerings.tudey.server.util;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 import com.samskivert.util.Interval;
 import com.samskivert.util.LoopingThread;
@@ -128,6 +134,261 @@ public abstract class SceneTicker
         protected LoopingThread _thread;
     }
 
+    /**
+     * Ticks the scenes in parallel on a fixed pool of worker threads, driven from a dedicated
+     * thread.  Each scene is assigned to exactly one worker (either explicitly, via {@link #pin},
+     * or to the least loaded worker when it is added), so a scene is only ever ticked by one
+     * thread at a time, but independent scenes no longer wait for one another.
+     */
+    public static class WorkerPool extends DedicatedThread
+    {
+        /**
+         * Creates a new worker pool ticker.
+         *
+         * @param workers the number of worker threads among which to partition the scenes.
+         */
+        public WorkerPool (RunQueue runQueue, int targetInterval, int workers)
+        {
+            super(runQueue, targetInterval);
+            _loads = new int[Math.max(workers, 1)];
+            _lanes = new TudeySceneManager[_loads.length][0];
+        }
+
+        /**
+         * Returns the number of worker threads.
+         */
+        public int getWorkerCount ()
+        {
+            return _loads.length;
+        }
+
+        /**
+         * Pins the specified scene manager to the identified worker.  The pin persists if the
+         * scene is removed and later added again, until cleared with {@link #unpin}.
+         */
+        public void pin (TudeySceneManager scenemgr, int worker)
+        {
+            if (worker < 0 || worker >= _loads.length) {
+                throw new IllegalArgumentException("Invalid worker index: " + worker);
+            }
+            synchronized (_scenemgrs) {
+                _pins.put(scenemgr, worker);
+                Integer current = _assignments.get(scenemgr);
+                if (current != null) {
+                    _loads[current]--;
+                    _assignments.put(scenemgr, worker);
+                    _loads[worker]++;
+                }
+            }
+        }
+
+        /**
+         * Clears any pin for the specified scene manager.  The scene remains on its current worker
+         * until it is removed.
+         */
+        public void unpin (TudeySceneManager scenemgr)
+        {
+            synchronized (_scenemgrs) {
+                _pins.remove(scenemgr);
+            }
+        }
+
+        /**
+         * Returns the index of the worker to which the specified scene manager is assigned, or -1
+         * if it is not being ticked.
+         */
+        public int getWorker (TudeySceneManager scenemgr)
+        {
+            synchronized (_scenemgrs) {
+                Integer worker = _assignments.get(scenemgr);
+                return (worker == null) ? -1 : worker;
+            }
+        }
+
+        @Override
+        public void add (TudeySceneManager scenemgr)
+        {
+            synchronized (_scenemgrs) {
+                if (!_assignments.containsKey(scenemgr)) {
+                    int worker = getInitialWorker(scenemgr);
+                    _assignments.put(scenemgr, worker);
+                    _loads[worker]++;
+                }
+                super.add(scenemgr);
+            }
+        }
+
+        @Override
+        public void remove (TudeySceneManager scenemgr)
+        {
+            synchronized (_scenemgrs) {
+                Integer worker = _assignments.remove(scenemgr);
+                if (worker != null) {
+                    _loads[worker]--;
+                }
+                super.remove(scenemgr);
+            }
+        }
+
+        /**
+         * Selects the worker for a newly added scene manager: the pinned worker, if any, or else
+         * the one with the fewest scenes.
+         */
+        protected int getInitialWorker (TudeySceneManager scenemgr)
+        {
+            Integer pinned = _pins.get(scenemgr);
+            if (pinned != null) {
+                return pinned;
+            }
+            int worker = 0;
+            for (int ii = 1; ii < _loads.length; ii++) {
+                if (_loads[ii] < _loads[worker]) {
+                    worker = ii;
+                }
+            }
+            return worker;
+        }
+
+        @Override
+        protected void start ()
+        {
+            _executors = new ExecutorService[_loads.length];
+            for (int ii = 0; ii < _executors.length; ii++) {
+                final String name = "sceneTicker-" + ii;
+                _executors[ii] = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                    public Thread newThread (Runnable runnable) {
+                        Thread thread = new Thread(runnable, name);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+            super.start();
+        }
+
+        @Override
+        protected void stop ()
+        {
+            super.stop();
+            if (_executors != null) {
+                for (ExecutorService executor : _executors) {
+                    executor.shutdown();
+                }
+                _executors = null;
+            }
+        }
+
+        @Override
+        protected void tickScenes (TudeySceneManager[] scenemgrs)
+        {
+            // partition the scenes into their workers' lanes
+            int[] counts = new int[_lanes.length];
+            synchronized (_scenemgrs) {
+                for (TudeySceneManager scenemgr : scenemgrs) {
+                    if (scenemgr == null) {
+                        break;
+                    }
+                    Integer worker = _assignments.get(scenemgr);
+                    int idx = (worker == null) ? 0 : worker;
+                    TudeySceneManager[] lane = _lanes[idx];
+                    if (counts[idx] == lane.length) {
+                        TudeySceneManager[] nlane =
+                            new TudeySceneManager[Math.max(lane.length * 2, 4)];
+                        System.arraycopy(lane, 0, nlane, 0, lane.length);
+                        _lanes[idx] = lane = nlane;
+                    }
+                    lane[counts[idx]++] = scenemgr;
+                }
+            }
+            ExecutorService[] executors = _executors;
+            int active = 0;
+            for (int count : counts) {
+                if (count > 0) {
+                    active++;
+                }
+            }
+            if (executors == null || active == 0) {
+                return;
+            }
+
+            // hand each non-empty lane to its worker and wait for them all to finish
+            final CountDownLatch latch = new CountDownLatch(active);
+            for (int ii = 0; ii < _lanes.length; ii++) {
+                if (counts[ii] == 0) {
+                    continue;
+                }
+                final TudeySceneManager[] lane = _lanes[ii];
+                final int count = counts[ii];
+                executors[ii].execute(new Runnable() {
+                    public void run () {
+                        try {
+                            for (int jj = 0; jj < count; jj++) {
+                                tickScene(lane[jj]);
+                            }
+                        } finally {
+                            latch.countDown();
+                        }
+                    }
+                });
+            }
+            // the lanes reference scenes that are still ticking, so we must wait for them even
+            // if interrupted (we restore the interrupt status for the looping thread to notice)
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    latch.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            for (TudeySceneManager[] lane : _lanes) {
+                Arrays.fill(lane, null);
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        protected void appendDurations (StringBuilder buf, TudeySceneManager[] scenemgrs)
+        {
+            synchronized (_scenemgrs) {
+                for (int ii = 0; ii < _loads.length; ii++) {
+                    int start = buf.length();
+                    for (TudeySceneManager scenemgr : scenemgrs) {
+                        if (scenemgr == null) {
+                            break;
+                        }
+                        Integer worker = _assignments.get(scenemgr);
+                        if ((worker == null ? 0 : worker) != ii) {
+                            continue;
+                        }
+                        buf.append(buf.length() == start ?
+                            (start == 0 ? "" : "; ") + "worker " + ii + ": " : ", ");
+                        buf.append(scenemgr.where()).append(": ").append(
+                            scenemgr.getTickDuration());
+                    }
+                }
+            }
+        }
+
+        /** The number of scenes assigned to each worker. */
+        protected int[] _loads;
+
+        /** The scenes to be ticked by each worker during processing. */
+        protected TudeySceneManager[][] _lanes;
+
+        /** Maps scene managers to the indices of the workers that tick them. */
+        protected Map<TudeySceneManager, Integer> _assignments = Maps.newHashMap();
+
+        /** Maps scene managers to the indices of the workers to which they've been pinned. */
+        protected Map<TudeySceneManager, Integer> _pins = Maps.newHashMap();
+
+        /** The single-threaded executors representing the workers. */
+        protected volatile ExecutorService[] _executors;
+    }
+
     /**
      * Creates a new scene ticker.
      */
@@ -225,32 +486,14 @@ public abstract class SceneTicker
         synchronized (_scenemgrs) {
             _sarray = _scenemgrs.toArray(_sarray);
         }
-        for (TudeySceneManager scenemgr : _sarray) {
-            if (scenemgr == null) {
-                break;
-            }
-            try {
-                scenemgr.tick();
-            } catch (Exception e) {
-                log.warning("Exception thrown in scene tick.", "where", scenemgr.where(), e);
-            }
-        }
-
+        tickScenes(_sarray);
 
         // find out how long we just spent ticking.  if it's longer than 500ms, the omgr will give
         // us a warning, so let's break it down by scene manager
         long duration = System.currentTimeMillis() - _lastTick;
         if (duration >= 500L) {
             StringBuilder buf = new StringBuilder();
-            for (TudeySceneManager scenemgr : _sarray) {
-                if (scenemgr == null) {
-                    break;
-                }
-                if (buf.length() > 0) {
-                    buf.append(", ");
-                }
-                buf.append(scenemgr.where()).append(": ").append(scenemgr.getTickDuration());
-            }
+            appendDurations(buf, _sarray);
             log.warning("Long tick detected.", "durations", buf);
         }
         Arrays.fill(_sarray, null);
@@ -259,6 +502,48 @@ public abstract class SceneTicker
         return _targetInterval - duration;
     }
 
+    /**
+     * Ticks the supplied scene managers (the array may be padded with trailing nulls).
+     */
+    protected void tickScenes (TudeySceneManager[] scenemgrs)
+    {
+        for (TudeySceneManager scenemgr : scenemgrs) {
+            if (scenemgr == null) {
+                break;
+            }
+            tickScene(scenemgr);
+        }
+    }
+
+    /**
+     * Ticks a single scene manager, logging any exception thrown.
+     */
+    protected void tickScene (TudeySceneManager scenemgr)
+    {
+        try {
+            scenemgr.tick();
+        } catch (Exception e) {
+            log.warning("Exception thrown in scene tick.", "where", scenemgr.where(), e);
+        }
+    }
+
+    /**
+     * Appends the tick durations of the supplied scene managers to the given buffer for a long
+     * tick warning.
+     */
+    protected void appendDurations (StringBuilder buf, TudeySceneManager[] scenemgrs)
+    {
+        for (TudeySceneManager scenemgr : scenemgrs) {
+            if (scenemgr == null) {
+                break;
+            }
+            if (buf.length() > 0) {
+                buf.append(", ");
+            }
+            buf.append(scenemgr.where()).append(": ").append(scenemgr.getTickDuration());
+        }
+    }
+
     /** The event thread run queue. */
     protected RunQueue _runQueue;
 
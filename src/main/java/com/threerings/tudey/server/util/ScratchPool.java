@@ -0,0 +1,119 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of scratch collections for use during the tick.  Collections are acquired for the
+ * duration of a query and released (cleared) afterwards, so that nested (reentrant) queries each
+ * get their own collection and the steady state allocates nothing.
+ */
+public abstract class ScratchPool<T extends Collection<?>>
+{
+    /**
+     * Creates a pool that counts its allocations only in its own and the total counts.
+     */
+    public ScratchPool ()
+    {
+        this(null, null);
+    }
+
+    /**
+     * Creates a pool that also counts its allocations in the specified profiler.
+     *
+     * @param counter the name of the profiler counter to increment on each allocation.
+     */
+    public ScratchPool (TickProfiler profiler, String counter)
+    {
+        _profiler = profiler;
+        _counter = counter;
+    }
+
+    /**
+     * Returns the total number of collections allocated by all pools.
+     */
+    public static long getTotalAllocations ()
+    {
+        return _totalAllocations.get();
+    }
+
+    /**
+     * Acquires a collection from the pool, creating one if none are available.
+     */
+    public T acquire ()
+    {
+        int size = _free.size();
+        if (size > 0) {
+            return _free.remove(size - 1);
+        }
+        _allocations++;
+        _totalAllocations.incrementAndGet();
+        if (_profiler != null) {
+            _profiler.count(_counter, 1L);
+        }
+        return create();
+    }
+
+    /**
+     * Clears the specified collection and returns it to the pool.
+     */
+    public void release (T collection)
+    {
+        collection.clear();
+        _free.add(collection);
+    }
+
+    /**
+     * Returns the number of collections allocated by this pool.
+     */
+    public int getAllocations ()
+    {
+        return _allocations;
+    }
+
+    /**
+     * Creates a new collection.
+     */
+    protected abstract T create ();
+
+    /** The profiler in which to count allocations, if any. */
+    protected TickProfiler _profiler;
+
+    /** The name of the profiler counter. */
+    protected String _counter;
+
+    /** The collections available for reuse. */
+    protected ArrayList<T> _free = new ArrayList<T>();
+
+    /** The number of collections allocated by this pool. */
+    protected int _allocations;
+
+    /** The number of collections allocated by all pools. */
+    protected static final AtomicLong _totalAllocations = new AtomicLong();
+}
@@ -0,0 +1,282 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+import java.io.IOException;
+
+import java.util.HashMap;
+
+import com.google.common.collect.Maps;
+
+import com.threerings.tudey.data.actor.Actor;
+import com.threerings.tudey.dobj.ActorDelta;
+import com.threerings.tudey.dobj.CompactEncoding;
+
+import static com.threerings.tudey.Log.*;
+
+/**
+ * Memoizes the delta operations that client liaisons perform when combining tick records, so that
+ * clients sharing a reference tick (which is most of them) reuse the same delta and snapshot
+ * objects rather than each rebuilding them.  Because snapshots and deltas are immutable once
+ * created, results are keyed on the identities of their inputs.  Entries survive for one tick
+ * after their last use, so lagging clients whose chains of records span several ticks also
+ * reuse the merges computed on earlier ticks.  The resulting deltas are also encoded once per tick
+ * in their streamed form, so that each client's stream copies the encoded bytes.
+ */
+public class SnapshotCache
+{
+    /**
+     * Returns the delta between the two supplied actor states, or <code>null</code> if they are
+     * identical.
+     */
+    public ActorDelta getDelta (Actor original, Actor revised)
+    {
+        Object result = get(DELTA, original, revised);
+        if (result == null) {
+            ActorDelta delta = new ActorDelta(original, revised);
+            put(DELTA, original, revised, result = delta.isEmpty() ? EMPTY : delta);
+        }
+        return (result == EMPTY) ? null : (ActorDelta)result;
+    }
+
+    /**
+     * Returns the result of applying the supplied delta to the given actor state.
+     */
+    public Actor apply (Actor actor, ActorDelta delta)
+    {
+        Object result = get(APPLY, actor, delta);
+        if (result == null) {
+            put(APPLY, actor, delta, result = delta.apply(actor));
+        }
+        return (Actor)result;
+    }
+
+    /**
+     * Returns the result of merging the second delta into the first.
+     */
+    public ActorDelta merge (ActorDelta first, ActorDelta second)
+    {
+        Object result = get(MERGE, first, second);
+        if (result == null) {
+            put(MERGE, first, second, result = first.merge(second));
+        }
+        return (ActorDelta)result;
+    }
+
+    /**
+     * Makes sure that the supplied deltas are encoded in the form in which they will be streamed
+     * to a client, encoding each at most once per tick no matter how many clients it's sent to.
+     *
+     * @param encoding the compact encoding with which the deltas will be streamed, or
+     * <code>null</code> to stream them normally.
+     * @param timestamp the timestamp of the event that will contain the deltas.
+     */
+    public void encode (ActorDelta[] deltas, CompactEncoding encoding, int timestamp)
+    {
+        if (deltas == null) {
+            return;
+        }
+        for (ActorDelta delta : deltas) {
+            int length = delta.getEncodedLength(encoding, timestamp);
+            if (length < 0) {
+                try {
+                    length = delta.encode(encoding, timestamp);
+                } catch (IOException e) {
+                    log.warning("Failed to encode delta.", "delta", delta, e);
+                    continue; // it will be encoded as it's written
+                }
+                _bytesEncoded += length;
+            }
+            _bytesSent += length;
+        }
+    }
+
+    /**
+     * Notes that the current tick has ended, discarding any entries that were not used during
+     * the tick and resetting the per-tick counters.
+     */
+    public void advance ()
+    {
+        HashMap<Key, Object> previous = _previous;
+        _previous = _current;
+        _current = previous;
+        _current.clear();
+        _lastComputed = _computed;
+        _lastReused = _reused;
+        _computed = _reused = 0;
+        _lastBytesEncoded = _bytesEncoded;
+        _lastBytesSent = _bytesSent;
+        _bytesEncoded = _bytesSent = 0L;
+    }
+
+    /**
+     * Returns the number of operations actually computed on the last completed tick.
+     */
+    public int getComputed ()
+    {
+        return _lastComputed;
+    }
+
+    /**
+     * Returns the number of operations satisfied from the cache on the last completed tick.
+     */
+    public int getReused ()
+    {
+        return _lastReused;
+    }
+
+    /**
+     * Returns the number of delta bytes actually encoded on the last completed tick.
+     */
+    public long getBytesEncoded ()
+    {
+        return _lastBytesEncoded;
+    }
+
+    /**
+     * Returns the number of (pre-encoded) delta bytes sent to clients on the last completed
+     * tick.  The ratio of this to {@link #getBytesEncoded} indicates how much encoding work the
+     * cache saved.
+     */
+    public long getBytesSent ()
+    {
+        return _lastBytesSent;
+    }
+
+    /**
+     * Returns the number of entries currently held.
+     */
+    public int size ()
+    {
+        return _current.size() + _previous.size();
+    }
+
+    /**
+     * Looks up a cached result, promoting it to the current generation if found in the previous.
+     */
+    protected Object get (int op, Object first, Object second)
+    {
+        _probe.set(op, first, second);
+        Object result = _current.get(_probe);
+        if (result == null && (result = _previous.remove(_probe)) != null) {
+            _current.put(new Key(op, first, second), result);
+        }
+        if (result != null) {
+            _reused++;
+        }
+        return result;
+    }
+
+    /**
+     * Stores a newly computed result.
+     */
+    protected void put (int op, Object first, Object second, Object result)
+    {
+        _current.put(new Key(op, first, second), result);
+        _computed++;
+    }
+
+    /**
+     * Identifies an operation by its type and the identities of its operands.
+     */
+    protected static class Key
+    {
+        /**
+         * Creates a new key.
+         */
+        public Key (int op, Object first, Object second)
+        {
+            set(op, first, second);
+        }
+
+        /**
+         * (Re)initializes the key.
+         */
+        public void set (int op, Object first, Object second)
+        {
+            _op = op;
+            _first = first;
+            _second = second;
+            _hash = 31 * (31 * op + System.identityHashCode(first)) +
+                System.identityHashCode(second);
+        }
+
+        @Override
+        public int hashCode ()
+        {
+            return _hash;
+        }
+
+        @Override
+        public boolean equals (Object other)
+        {
+            Key okey = (Key)other;
+            return _op == okey._op && _first == okey._first && _second == okey._second;
+        }
+
+        /** The operation type. */
+        protected int _op;
+
+        /** The operands. */
+        protected Object _first, _second;
+
+        /** The precomputed hash code. */
+        protected int _hash;
+    }
+
+    /** The results used on the current tick. */
+    protected HashMap<Key, Object> _current = Maps.newHashMap();
+
+    /** The results used on the previous tick. */
+    protected HashMap<Key, Object> _previous = Maps.newHashMap();
+
+    /** Reused for lookups. */
+    protected Key _probe = new Key(0, null, null);
+
+    /** The operation counts for the current tick. */
+    protected int _computed, _reused;
+
+    /** The operation counts for the last completed tick. */
+    protected int _lastComputed, _lastReused;
+
+    /** The byte counts for the current tick. */
+    protected long _bytesEncoded, _bytesSent;
+
+    /** The byte counts for the last completed tick. */
+    protected long _lastBytesEncoded, _lastBytesSent;
+
+    /** Operation type for delta computation. */
+    protected static final int DELTA = 0;
+
+    /** Operation type for delta application. */
+    protected static final int APPLY = 1;
+
+    /** Operation type for delta merging. */
+    protected static final int MERGE = 2;
+
+    /** Stands in for empty deltas. */
+    protected static final Object EMPTY = new Object();
+}
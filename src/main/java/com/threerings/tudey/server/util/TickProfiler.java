@@ -0,0 +1,492 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import java.lang.management.ManagementFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+
+import com.samskivert.util.Interval;
+import com.samskivert.util.StringUtil;
+
+import com.threerings.config.ConfigReference;
+
+import com.threerings.tudey.server.logic.ActorLogic;
+import com.threerings.tudey.server.logic.EntryLogic;
+import com.threerings.tudey.server.logic.Logic;
+
+import static com.threerings.tudey.Log.*;
+
+/**
+ * Records the time taken (and, where the JVM supports it, the memory allocated) by sampled tick
+ * participants.  Samples are keyed by the participant's class and the name of the configuration of
+ * the actor or entry that owns it, so recording involves no string building.  The profiler also
+ * keeps named counters (such as the number of scratch collections allocated).  Each scene has its
+ * own profiler; samples and counts are also accumulated in a global profiler shared between scenes.
+ */
+public class TickProfiler
+{
+    /**
+     * The profile of a single kind of participant.
+     */
+    public static class Profile
+    {
+        /**
+         * Records a sample.
+         *
+         * @param elapsed the elapsed time in microseconds.
+         * @param allocated the number of bytes allocated, or -1 if unknown.
+         */
+        public void record (long elapsed, long allocated)
+        {
+            _count++;
+            _totalElapsed += elapsed;
+            _longest = Math.max(elapsed, _longest);
+            _buckets[getBucket(elapsed)]++;
+            if (allocated >= 0L) {
+                _allocSamples++;
+                _totalAllocated += allocated;
+                _mostAllocated = Math.max(allocated, _mostAllocated);
+            }
+        }
+
+        /**
+         * Adds the samples of another profile to this one.
+         */
+        public void add (Profile other)
+        {
+            _count += other._count;
+            _totalElapsed += other._totalElapsed;
+            _longest = Math.max(other._longest, _longest);
+            for (int ii = 0; ii < BUCKETS; ii++) {
+                _buckets[ii] += other._buckets[ii];
+            }
+            _allocSamples += other._allocSamples;
+            _totalAllocated += other._totalAllocated;
+            _mostAllocated = Math.max(other._mostAllocated, _mostAllocated);
+        }
+
+        /**
+         * Returns the number of samples recorded.
+         */
+        public long getCount ()
+        {
+            return _count;
+        }
+
+        /**
+         * Returns the total elapsed time in microseconds.
+         */
+        public long getTotalElapsed ()
+        {
+            return _totalElapsed;
+        }
+
+        /**
+         * Returns the mean elapsed time in microseconds.
+         */
+        public long getMeanElapsed ()
+        {
+            return (_count == 0) ? 0L : _totalElapsed / _count;
+        }
+
+        /**
+         * Returns the longest elapsed time in microseconds.
+         */
+        public long getLongest ()
+        {
+            return _longest;
+        }
+
+        /**
+         * Returns the elapsed time in microseconds below which the specified fraction of the
+         * samples fall.  The histogram buckets are a quarter of a power of two wide, so the value
+         * is accurate to within 25%.
+         */
+        public long getPercentile (double fraction)
+        {
+            long threshold = (long)Math.ceil(_count * fraction);
+            long total = 0L;
+            for (int ii = 0; ii < BUCKETS; ii++) {
+                if ((total += _buckets[ii]) >= threshold && total > 0L) {
+                    return Math.min(getBucketMaximum(ii), _longest);
+                }
+            }
+            return _longest;
+        }
+
+        /**
+         * Returns the total number of bytes allocated, or -1 if unknown.
+         */
+        public long getTotalAllocated ()
+        {
+            return (_allocSamples == 0) ? -1L : _totalAllocated;
+        }
+
+        /**
+         * Returns the mean number of bytes allocated, or -1 if unknown.
+         */
+        public long getMeanAllocated ()
+        {
+            return (_allocSamples == 0) ? -1L : _totalAllocated / _allocSamples;
+        }
+
+        /**
+         * Returns the greatest number of bytes allocated in a single sample, or -1 if unknown.
+         */
+        public long getMostAllocated ()
+        {
+            return (_allocSamples == 0) ? -1L : _mostAllocated;
+        }
+
+        @Override
+        public String toString ()
+        {
+            return _totalElapsed + "us/" + _count + " = " + getMeanElapsed() + "us avg, " +
+                getPercentile(0.5) + "us p50, " + getPercentile(0.9) + "us p90, " +
+                getPercentile(0.99) + "us p99, " + _longest + "us longest" +
+                (_allocSamples == 0 ? "" : ", " + getMeanAllocated() + "B avg alloc, " +
+                    _mostAllocated + "B most alloc");
+        }
+
+        /** The number of samples. */
+        protected long _count;
+
+        /** The total and longest elapsed times. */
+        protected long _totalElapsed, _longest;
+
+        /** The histogram of elapsed times. */
+        protected long[] _buckets = new long[BUCKETS];
+
+        /** The number of samples for which the allocation was known. */
+        protected long _allocSamples;
+
+        /** The total and greatest number of bytes allocated. */
+        protected long _totalAllocated, _mostAllocated;
+    }
+
+    /**
+     * Returns a reference to the global profiler.
+     */
+    public static TickProfiler getGlobal ()
+    {
+        return _global;
+    }
+
+    /**
+     * Checks whether the JVM supports measuring the memory allocated by a thread.
+     */
+    public static boolean isAllocationSupported ()
+    {
+        return _threadBean != null;
+    }
+
+    /**
+     * Determines whether the next participant should be sampled.  Each profiler keeps its own
+     * count, so that scenes sample independently of one another.
+     *
+     * @param interval the number of participants per sample.
+     */
+    public boolean sampleNext (int interval)
+    {
+        return _participantCount++ % interval == 0;
+    }
+
+    /**
+     * Notes the start of a sample.
+     *
+     * @return the start time, to be passed to {@link #record}.
+     */
+    public long start ()
+    {
+        _allocStarted = getAllocatedBytes();
+        return System.nanoTime();
+    }
+
+    /**
+     * Records a sample for the specified participant.
+     *
+     * @param started the start time returned by {@link #start}.
+     */
+    public void record (Object participant, long started)
+    {
+        long elapsed = (System.nanoTime() - started) / 1000L;
+        long allocated = (_allocStarted < 0L) ? -1L : getAllocatedBytes() - _allocStarted;
+
+        // the type is the class of the participant (or of the interval it runs)
+        Object type = (participant instanceof Interval.RunBuddy) ?
+            ((Interval.RunBuddy)participant).getIntervalClassName() : participant.getClass();
+
+        // the config is that of the actor or entry that owns the participant, if any
+        if (participant instanceof Logic) {
+            Logic logic = (Logic)participant;
+            participant = logic.getSceneManager().getLogic(logic.getEntityKey());
+        }
+        ConfigReference<?> ref = null;
+        if (participant instanceof ActorLogic) {
+            ref = ((ActorLogic)participant).getActor().getConfig();
+        } else if (participant instanceof EntryLogic) {
+            ref = ((EntryLogic)participant).getEntry().getReference();
+        }
+        String config = (ref == null) ? null : ref.getName();
+
+        record(type, config, elapsed, allocated);
+        if (this != _global) {
+            _global.record(type, config, elapsed, allocated);
+        }
+    }
+
+    /**
+     * Adds to the named counter.
+     */
+    public void count (String name, long amount)
+    {
+        addCount(name, amount);
+        if (this != _global) {
+            _global.addCount(name, amount);
+        }
+    }
+
+    /**
+     * Returns a snapshot of the counters, mapped by name.
+     */
+    public synchronized Map<String, Long> getCounters ()
+    {
+        Map<String, Long> counters = Maps.newTreeMap();
+        for (Map.Entry<String, long[]> entry : _counters.entrySet()) {
+            counters.put(entry.getKey(), entry.getValue()[0]);
+        }
+        return counters;
+    }
+
+    /**
+     * Returns a snapshot of the profiles, mapped by name.
+     */
+    public synchronized Map<String, Profile> getProfiles ()
+    {
+        Map<String, Profile> profiles = Maps.newTreeMap();
+        for (Map.Entry<Object, HashMap<String, Profile>> tentry : _profiles.entrySet()) {
+            Object type = tentry.getKey();
+            String tname = StringUtil.shortClassName(
+                (type instanceof Class) ? ((Class<?>)type).getName() : (String)type);
+            for (Map.Entry<String, Profile> centry : tentry.getValue().entrySet()) {
+                String config = centry.getKey();
+                String name = (config == null) ?
+                    tname : tname + ":" + config.substring(config.lastIndexOf('/') + 1);
+                Profile profile = profiles.get(name);
+                if (profile == null) {
+                    profiles.put(name, profile = new Profile());
+                }
+                profile.add(centry.getValue());
+            }
+        }
+        return profiles;
+    }
+
+    /**
+     * Dumps the profiles to the log.
+     */
+    public void dump ()
+    {
+        StringBuilder buf = new StringBuilder();
+        for (Map.Entry<String, Profile> entry : getProfiles().entrySet()) {
+            buf.append(entry.getKey()).append(" => ").append(entry.getValue()).append('\n');
+        }
+        for (Map.Entry<String, Long> entry : getCounters().entrySet()) {
+            buf.append(entry.getKey()).append(" => ").append(entry.getValue()).append('\n');
+        }
+        log.info(buf.toString());
+    }
+
+    /**
+     * Exports the profiles to the specified file in CSV format, one row per profile (sorted by
+     * name, so that exports from different builds can be compared with diff) followed by one row
+     * per counter (with only the count column filled in).
+     */
+    public void export (File file)
+        throws IOException
+    {
+        PrintWriter out = new PrintWriter(new FileWriter(file));
+        try {
+            export(out);
+        } finally {
+            out.close();
+        }
+        if (out.checkError()) {
+            throw new IOException("Error writing tick profiles to " + file);
+        }
+    }
+
+    /**
+     * Exports the profiles to the specified writer in CSV format.
+     */
+    public void export (PrintWriter out)
+    {
+        out.println("name,count,total_us,mean_us,p50_us,p90_us,p99_us,max_us," +
+            "total_alloc_bytes,mean_alloc_bytes,max_alloc_bytes");
+        for (Map.Entry<String, Profile> entry : getProfiles().entrySet()) {
+            Profile profile = entry.getValue();
+            out.println(quote(entry.getKey()) + "," + profile.getCount() + "," +
+                profile.getTotalElapsed() + "," + profile.getMeanElapsed() + "," +
+                profile.getPercentile(0.5) + "," + profile.getPercentile(0.9) + "," +
+                profile.getPercentile(0.99) + "," + profile.getLongest() + "," +
+                profile.getTotalAllocated() + "," + profile.getMeanAllocated() + "," +
+                profile.getMostAllocated());
+        }
+        for (Map.Entry<String, Long> entry : getCounters().entrySet()) {
+            out.println(quote(entry.getKey()) + "," + entry.getValue() + ",,,,,,,,,");
+        }
+    }
+
+    /**
+     * Clears the profiles.
+     */
+    public synchronized void clear ()
+    {
+        _profiles.clear();
+        _counters.clear();
+    }
+
+    /**
+     * Adds to the named counter in this profiler only.
+     */
+    protected synchronized void addCount (String name, long amount)
+    {
+        long[] counter = _counters.get(name);
+        if (counter == null) {
+            _counters.put(name, counter = new long[1]);
+        }
+        counter[0] += amount;
+    }
+
+    /**
+     * Records a sample in the profile for the specified type and config.
+     */
+    protected synchronized void record (Object type, String config, long elapsed, long allocated)
+    {
+        HashMap<String, Profile> profiles = _profiles.get(type);
+        if (profiles == null) {
+            _profiles.put(type, profiles = Maps.newHashMap());
+        }
+        Profile profile = profiles.get(config);
+        if (profile == null) {
+            profiles.put(config, profile = new Profile());
+        }
+        profile.record(elapsed, allocated);
+    }
+
+    /**
+     * Quotes a value for inclusion in a CSV file.
+     */
+    protected static String quote (String value)
+    {
+        return (value.indexOf(',') == -1 && value.indexOf('"') == -1) ?
+            value : "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * Returns the number of bytes allocated by the current thread, or -1 if unknown.
+     */
+    protected static long getAllocatedBytes ()
+    {
+        return (_threadBean == null) ?
+            -1L : _threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Returns the histogram bucket for the specified value.  Values below four have their own
+     * buckets; above that, each power of two is divided into four buckets.
+     */
+    protected static int getBucket (long value)
+    {
+        if (value < 4L) {
+            return (int)Math.max(value, 0L);
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(value);
+        return (exp - 1)*4 + ((int)(value >>> (exp - 2)) & 3);
+    }
+
+    /**
+     * Returns the greatest value that falls into the specified bucket.
+     */
+    protected static long getBucketMaximum (int bucket)
+    {
+        if (bucket < 4) {
+            return bucket;
+        }
+        int exp = bucket/4 + 1;
+        return ((4L | (bucket & 3)) + 1L << (exp - 2)) - 1L;
+    }
+
+    /**
+     * Returns the thread bean used to measure allocation, or <code>null</code> if not supported.
+     */
+    protected static com.sun.management.ThreadMXBean createThreadBean ()
+    {
+        try {
+            java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean sbean = (com.sun.management.ThreadMXBean)bean;
+                if (sbean.isThreadAllocatedMemorySupported()) {
+                    sbean.setThreadAllocatedMemoryEnabled(true);
+                    return sbean;
+                }
+            }
+        } catch (Throwable t) {
+            // fall through; the bean is specific to certain JVMs
+        }
+        return null;
+    }
+
+    /** The profiles, mapped by type (class or class name) and config name. */
+    protected HashMap<Object, HashMap<String, Profile>> _profiles = Maps.newHashMap();
+
+    /** The counters, mapped by name. */
+    protected HashMap<String, long[]> _counters = Maps.newHashMap();
+
+    /** The number of participants considered for sampling. */
+    protected long _participantCount;
+
+    /** The allocation count at the start of the current sample. */
+    protected long _allocStarted = -1L;
+
+    /** The number of histogram buckets. */
+    protected static final int BUCKETS = 248;
+
+    /** The global profiler. */
+    protected static final TickProfiler _global = new TickProfiler();
+
+    /** The bean used to measure allocation, if supported. */
+    protected static final com.sun.management.ThreadMXBean _threadBean = createThreadBean();
+}
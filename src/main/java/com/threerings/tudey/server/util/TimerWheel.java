@@ -0,0 +1,342 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+import static com.threerings.tudey.Log.*;
+
+/**
+ * A hierarchical timer wheel driven by the scene clock.  Timers are scheduled in milliseconds of
+ * scene time and fire, in order of their deadlines, when the owner advances the wheel during the
+ * tick.  Scheduling and cancellation take constant time.
+ */
+public class TimerWheel
+{
+    /**
+     * A timer that may be scheduled on the wheel.
+     */
+    public static abstract class Timer
+    {
+        /**
+         * Creates a new timer for the specified wheel.
+         */
+        public Timer (TimerWheel wheel)
+        {
+            _wheel = wheel;
+        }
+
+        /**
+         * Schedules the timer to fire after the specified delay (relative to the wheel's current
+         * time), rescheduling it if it's already scheduled.
+         */
+        public void schedule (long delay)
+        {
+            _wheel.schedule(this, delay);
+        }
+
+        /**
+         * Cancels the timer if it's scheduled.
+         */
+        public void cancel ()
+        {
+            _wheel.cancel(this);
+        }
+
+        /**
+         * Checks whether the timer is scheduled.
+         */
+        public boolean isScheduled ()
+        {
+            return _slot != null;
+        }
+
+        /**
+         * Returns the time remaining until the timer fires, or -1 if it isn't scheduled.
+         */
+        public int getRemaining ()
+        {
+            return (_slot == null) ? -1 : Math.max(_deadline - _wheel._time, 0);
+        }
+
+        /**
+         * Called when the timer expires.
+         */
+        public abstract void expired ();
+
+        /** The owning wheel. */
+        protected TimerWheel _wheel;
+
+        /** The time at which the timer is to fire. */
+        protected int _deadline;
+
+        /** The slot containing the timer, or null if not scheduled. */
+        protected Timer[] _slot;
+
+        /** The index of the timer's list within the slot array. */
+        protected int _index;
+
+        /** The adjacent timers in the slot's list. */
+        protected Timer _prev, _next;
+    }
+
+    /**
+     * Creates a new wheel.
+     *
+     * @param time the initial time.
+     */
+    public TimerWheel (int time)
+    {
+        _time = _current = time;
+    }
+
+    /**
+     * Sets the current time (without firing any timers).
+     */
+    public void setTime (int time)
+    {
+        _time = time;
+    }
+
+    /**
+     * Returns the current time.
+     */
+    public int getTime ()
+    {
+        return _time;
+    }
+
+    /**
+     * Fires all timers whose deadlines are at or before the current time.
+     *
+     * @return the number of timers fired.
+     */
+    public int advance ()
+    {
+        int fired = 0;
+        _advancing = true;
+        try {
+            for (; _current - _time <= 0; _current++) {
+                if (_count == 0) {
+                    _current = _time; // nothing to fire; skip ahead
+                    continue;
+                }
+                // when the lower levels wrap around, cascade the timers from the higher levels
+                // (starting with the highest, since its timers may land in the lower slots)
+                int idx = _current & LEVEL0_MASK;
+                if (idx == 0) {
+                    int top = 1;
+                    while (top < LEVELS && ((_current >> getShift(top)) & LEVEL_MASK) == 0) {
+                        top++;
+                    }
+                    for (int ll = Math.min(top, LEVELS - 1); ll >= 1; ll--) {
+                        if (ll == LEVELS - 1 && top == LEVELS) {
+                            cascade(_levels[LEVELS], 0);
+                        }
+                        cascade(_levels[ll], (_current >> getShift(ll)) & LEVEL_MASK);
+                    }
+                }
+                // fire the timers in the current slot, then insert any that were scheduled in
+                // the process
+                Timer[] slot = _levels[0];
+                for (Timer timer = slot[idx]; timer != null; timer = slot[idx]) {
+                    remove(timer);
+                    fired++;
+                    try {
+                        timer.expired();
+                    } catch (Throwable t) {
+                        log.warning("Timer failed.", "timer", timer, t);
+                    }
+                }
+                cascade(_deferred, 0);
+            }
+        } finally {
+            _advancing = false;
+        }
+        _fired = fired;
+        return fired;
+    }
+
+    /**
+     * Returns the number of timers fired in the last call to {@link #advance}.
+     */
+    public int getFired ()
+    {
+        return _fired;
+    }
+
+    /**
+     * Returns the number of timers currently scheduled.
+     */
+    public int getCount ()
+    {
+        return _count;
+    }
+
+    /**
+     * Schedules a timer to fire after the specified delay.
+     */
+    protected void schedule (Timer timer, long delay)
+    {
+        if (timer._slot != null) {
+            remove(timer);
+        }
+        int deadline = _time + (int)Math.min(Math.max(delay, 0L), Integer.MAX_VALUE / 2);
+        if (deadline - _current < 0 || (_advancing && deadline - _current == 0)) {
+            // timers scheduled while firing go no earlier than the next slot
+            deadline = _advancing ? _current + 1 : _current;
+        }
+        timer._deadline = deadline;
+        if (_advancing) {
+            // hold the timer aside until the current slot has drained
+            append(_deferred, 0, timer);
+        } else {
+            insert(timer);
+        }
+    }
+
+    /**
+     * Cancels a timer.
+     */
+    protected void cancel (Timer timer)
+    {
+        if (timer._slot != null) {
+            remove(timer);
+        }
+    }
+
+    /**
+     * Inserts a timer into the slot appropriate for its deadline.
+     */
+    protected void insert (Timer timer)
+    {
+        // the timer goes in the lowest level above which its deadline agrees with the current
+        // time, in a slot that we'll reach (and cascade) before the deadline; timers beyond the
+        // range of the top level go in the overflow slot
+        int deadline = timer._deadline;
+        int level = 0;
+        while (level < LEVELS &&
+                (deadline >> getShift(level + 1)) != (_current >> getShift(level + 1))) {
+            level++;
+        }
+        int idx = (level == LEVELS) ? 0 :
+            (deadline >> getShift(level)) & (level == 0 ? LEVEL0_MASK : LEVEL_MASK);
+        append(_levels[level], idx, timer);
+    }
+
+    /**
+     * Adds a timer to the list at the specified index of the given slot array.
+     */
+    protected void append (Timer[] slot, int idx, Timer timer)
+    {
+        Timer head = slot[idx];
+        timer._slot = slot;
+        timer._index = idx;
+        timer._prev = null;
+        timer._next = head;
+        if (head != null) {
+            head._prev = timer;
+        }
+        slot[idx] = timer;
+        _count++;
+    }
+
+    /**
+     * Removes a timer from its slot.
+     */
+    protected void remove (Timer timer)
+    {
+        if (timer._prev == null) {
+            timer._slot[timer._index] = timer._next;
+        } else {
+            timer._prev._next = timer._next;
+        }
+        if (timer._next != null) {
+            timer._next._prev = timer._prev;
+        }
+        timer._slot = null;
+        timer._prev = timer._next = null;
+        _count--;
+    }
+
+    /**
+     * Moves the timers in the specified slot down to the lower levels.
+     */
+    protected void cascade (Timer[] slot, int idx)
+    {
+        Timer timer = slot[idx];
+        while (timer != null) {
+            Timer next = timer._next;
+            remove(timer);
+            insert(timer);
+            timer = next;
+        }
+    }
+
+    /**
+     * Returns the bit shift for the specified level.
+     */
+    protected static int getShift (int level)
+    {
+        return (level == 0) ? 0 : LEVEL0_BITS + (level - 1)*LEVEL_BITS;
+    }
+
+    /** The slots for each level (plus the overflow slot), each containing a list of timers. */
+    protected Timer[][] _levels = new Timer[][] {
+        new Timer[1 << LEVEL0_BITS], new Timer[1 << LEVEL_BITS],
+        new Timer[1 << LEVEL_BITS], new Timer[1 << LEVEL_BITS], new Timer[1] };
+
+    /** Holds the timers scheduled while firing the current slot. */
+    protected Timer[] _deferred = new Timer[1];
+
+    /** The current time. */
+    protected int _time;
+
+    /** The next time to process. */
+    protected int _current;
+
+    /** The number of timers scheduled. */
+    protected int _count;
+
+    /** The number of timers fired in the last advance. */
+    protected int _fired;
+
+    /** Whether we're in the process of advancing. */
+    protected boolean _advancing;
+
+    /** The number of bits covered by the first level. */
+    protected static final int LEVEL0_BITS = 8;
+
+    /** The number of bits covered by each subsequent level. */
+    protected static final int LEVEL_BITS = 6;
+
+    /** The number of levels. */
+    protected static final int LEVELS = 4;
+
+    /** The mask for the slot indices of the first level. */
+    protected static final int LEVEL0_MASK = (1 << LEVEL0_BITS) - 1;
+
+    /** The mask for the slot indices of the subsequent levels. */
+    protected static final int LEVEL_MASK = (1 << LEVEL_BITS) - 1;
+}
@@ -49,6 +49,23 @@ import com.threerings.tudey.util.Coord;
  */
 public class HashSpace extends Space
 {
+    /**
+     * Provides the shapes that elements had at an earlier time, for rewound queries.
+     */
+    public interface Rewinder
+    {
+        /**
+         * Returns the greatest distance that any element may have moved since the rewound time.
+         */
+        public float getMaximumDisplacement ();
+
+        /**
+         * Returns the shape of the specified element at the rewound time, or <code>null</code>
+         * if the element was where it is now.  The returned shape may be reused by the next call.
+         */
+        public Shape getShape (SpaceElement element);
+    }
+
     /**
      * Creates a new hash space.
      *
@@ -126,6 +143,34 @@ public class HashSpace extends Space
         return closest;
     }
 
+    /**
+     * Retrieves all elements whose shapes (as of an earlier time, as provided by the rewinder)
+     * intersect the provided shape.
+     */
+    public void getIntersecting (
+        Shape shape, Rewinder rewinder, Predicate<? super SpaceElement> filter,
+        Collection<SpaceElement> results)
+    {
+        // find the candidates within the bounds expanded by the distance they may have moved
+        float displacement = rewinder.getMaximumDisplacement();
+        _rewindBounds.set(shape.getBounds()).expandLocal(displacement, displacement);
+        getElements(_rewindBounds, _rewindCandidates);
+        try {
+            for (int ii = 0, nn = _rewindCandidates.size(); ii < nn; ii++) {
+                SpaceElement element = _rewindCandidates.get(ii);
+                if (!filter.apply(element)) {
+                    continue;
+                }
+                Shape rewound = rewinder.getShape(element);
+                if (rewound == null ? shape.intersects(element) : shape.intersects(rewound)) {
+                    results.add(element);
+                }
+            }
+        } finally {
+            _rewindCandidates.clear();
+        }
+    }
+
     @Override
     public void getIntersecting (Shape shape, Predicate<? super SpaceElement> filter,
             Collection<SpaceElement> results)
@@ -760,6 +805,12 @@ public class HashSpace extends Space
     /** A reusable rect. */
     protected Rect _rect = new Rect();
 
+    /** The expanded bounds of a rewound query. */
+    protected Rect _rewindBounds = new Rect();
+
+    /** Holds the candidates of a rewound query. */
+    protected ArrayList<SpaceElement> _rewindCandidates = Lists.newArrayList();
+
     /** Reusable location vector. */
     protected Vector2f _pt = new Vector2f();
 
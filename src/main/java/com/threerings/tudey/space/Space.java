@@ -49,6 +49,7 @@ public abstract class Space
     {
         // add to spatial data structure
         addToSpatial(element);
+        _modCount++;
 
         // notify the element
         element.wasAdded(this);
@@ -68,6 +69,7 @@ public abstract class Space
 
         // remove from spatial data structure
         removeFromSpatial(element);
+        _modCount++;
     }
 
     /**
@@ -134,7 +136,17 @@ public abstract class Space
      */
     public void boundsDidChange (SpaceElement element)
     {
-        // nothing by default
+        _modCount++;
+    }
+
+    /**
+     * Returns the modification count, which is incremented whenever an element is added or
+     * removed or its bounds change.  Callers may use it to determine whether the results of
+     * previous queries remain valid.
+     */
+    public int getModCount ()
+    {
+        return _modCount;
     }
 
     /**
@@ -209,6 +221,9 @@ public abstract class Space
     /** Set when we've been disposed. */
     protected boolean _disposed;
 
+    /** Incremented on each modification. */
+    protected int _modCount;
+
     /** Result vector for intersection testing. */
     protected Vector2f _result = new Vector2f();
 }
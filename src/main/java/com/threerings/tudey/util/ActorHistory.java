@@ -25,14 +25,15 @@
 
 package com.threerings.tudey.util;
 
-import java.util.ArrayList;
-
 import com.threerings.math.FloatMath;
 
 import com.threerings.tudey.data.actor.Actor;
 
 /**
- * Records a sequence of actor states and allows finding the interpolated historical state.
+ * Records a sequence of actor states and allows finding the interpolated historical state.  The
+ * entries are held in a circular buffer and their actor states are copied into instances that are
+ * reused in place, so that once the buffer holds the retained duration, recording creates no new
+ * entries or actors.
  */
 public class ActorHistory
 {
@@ -40,8 +41,20 @@ public class ActorHistory
      * Creates a new history with the provided initial time and state.
      */
     public ActorHistory (int timestamp, Actor actor, int duration)
+    {
+        this(timestamp, actor, duration, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new history with the provided initial time and state.
+     *
+     * @param capacity the initial capacity of the buffer, which should be enough to hold the
+     * entries recorded over the duration (it will grow if not).
+     */
+    public ActorHistory (int timestamp, Actor actor, int duration, int capacity)
     {
         _duration = duration;
+        _entries = new Entry[Math.max(capacity, 2)];
         init(timestamp, actor);
     }
 
@@ -50,7 +63,7 @@ public class ActorHistory
      */
     public void init (int timestamp, Actor actor)
     {
-        _entries.clear();
+        _head = _size = 0;
         record(timestamp, actor, true);
     }
 
@@ -59,18 +72,52 @@ public class ActorHistory
      */
     public void record (int timestamp, Actor actor, boolean updated)
     {
-        // add the new entry
-        _entries.add(new Entry(timestamp, actor));
+        // remove any out-of-date entries (leaving them in place for reuse)
+        int oldest = timestamp - _duration;
+        while (_size > 0 && getEntry(0).getTimestamp() < oldest) {
+            _head = (_head + 1) % _entries.length;
+            _size--;
+        }
+
+        // grow the buffer if all of its entries are still current
+        if (_size == _entries.length) {
+            Entry[] entries = new Entry[_entries.length * 2];
+            for (int ii = 0; ii < _size; ii++) {
+                entries[ii] = getEntry(ii);
+            }
+            _entries = entries;
+            _head = 0;
+        }
+
+        // add the new entry, reusing the one in its slot if possible
+        int idx = (_head + _size) % _entries.length;
+        Entry entry = _entries[idx];
+        if (entry == null) {
+            _entries[idx] = entry = new Entry();
+        }
+        entry.set(timestamp, actor);
+        _size++;
         if (updated) {
             _lastUpdate = timestamp;
             _seenLast = false;
         }
+    }
 
-        // remove any out-of-date entries
-        int oldest = timestamp - _duration;
-        while (_entries.get(0).getTimestamp() < oldest) {
-            _entries.remove(0);
-        }
+    /**
+     * Returns the number of entries currently in the history.
+     */
+    public int getEntryCount ()
+    {
+        return _size;
+    }
+
+    /**
+     * Returns the capacity of the buffer (the number of entries that may be held before it must
+     * grow).
+     */
+    public int getCapacity ()
+    {
+        return _entries.length;
     }
 
     /**
@@ -78,7 +125,7 @@ public class ActorHistory
      */
     public boolean isCreated (int timestamp)
     {
-        return timestamp >= _entries.get(0).getActor().getCreated();
+        return timestamp >= getEntry(0).getActor().getCreated();
     }
 
     /**
@@ -86,7 +133,7 @@ public class ActorHistory
      */
     public boolean isDestroyed (int timestamp)
     {
-        return timestamp >= _entries.get(_entries.size() - 1).getActor().getDestroyed();
+        return timestamp >= getEntry(_size - 1).getActor().getDestroyed();
     }
 
     /**
@@ -99,13 +146,13 @@ public class ActorHistory
         }
         _seenLast = timestamp >= _lastUpdate;
         // extrapolate if before start or after end
-        Entry start = _entries.get(0);
+        Entry start = getEntry(0);
         if (timestamp <= start.getTimestamp()) {
             start.extrapolate(timestamp, result);
             return true;
         }
-        int eidx = _entries.size() - 1;
-        Entry end = _entries.get(eidx);
+        int eidx = _size - 1;
+        Entry end = getEntry(eidx);
         if (timestamp >= end.getTimestamp()) {
             end.extrapolate(timestamp, result);
             return true;
@@ -123,7 +170,7 @@ public class ActorHistory
                         FloatMath.round(dist * start.getPortion(end, timestamp)),
                     1), dist - 1);
             }
-            Entry middle = _entries.get(midx);
+            Entry middle = getEntry(midx);
             if (timestamp < middle.getTimestamp()) {
                 eidx = midx;
                 end = middle;
@@ -136,18 +183,26 @@ public class ActorHistory
         return true;
     }
 
+    /**
+     * Returns the entry at the specified index, counting from the oldest.
+     */
+    protected Entry getEntry (int idx)
+    {
+        return _entries[(_head + idx) % _entries.length];
+    }
+
     /**
      * A single historical entry.
      */
     protected static class Entry
     {
         /**
-         * Creates a new entry.
+         * Sets the entry's timestamp and copies the actor state into the entry's own instance.
          */
-        public Entry (int timestamp, Actor actor)
+        public void set (int timestamp, Actor actor)
         {
             _timestamp = timestamp;
-            _actor = actor;
+            _actor = (Actor)actor.copy(_actor);
         }
 
         /**
@@ -201,12 +256,21 @@ public class ActorHistory
     /** The amount of time to retain entries. */
     protected int _duration;
 
-    /** The stored list of entries. */
-    protected ArrayList<Entry> _entries = new ArrayList<Entry>();
+    /** The circular buffer of entries (null where not yet allocated). */
+    protected Entry[] _entries;
+
+    /** The index of the oldest entry in the buffer. */
+    protected int _head;
+
+    /** The number of entries in the history. */
+    protected int _size;
 
     /** If the last entry has been seen by the actor sprite. */
     protected boolean _seenLast;
 
     /** The timestamp of the last update. */
     protected int _lastUpdate;
+
+    /** The initial capacity used when none is specified. */
+    protected static final int DEFAULT_CAPACITY = 16;
 }
@@ -0,0 +1,391 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.util;
+
+import java.util.AbstractCollection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable map from integers to values.  Adding or removing a mapping returns a new map that
+ * shares all of the unaffected structure with the original (a hash array mapped trie keyed on the
+ * bits of the integer, five at a time), so that deriving one version of a map from another takes
+ * time proportional to the number of changes rather than to the size of the map.
+ */
+public class PersistentIntMap<V>
+{
+    /**
+     * Returns an empty map.
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> PersistentIntMap<V> empty ()
+    {
+        return (PersistentIntMap<V>)EMPTY;
+    }
+
+    /**
+     * Returns the number of mappings in the map.
+     */
+    public int size ()
+    {
+        return _size;
+    }
+
+    /**
+     * Checks whether the map is empty.
+     */
+    public boolean isEmpty ()
+    {
+        return _size == 0;
+    }
+
+    /**
+     * Checks whether the map contains a mapping for the specified key.
+     */
+    public boolean containsKey (int key)
+    {
+        return getLeaf(key) != null;
+    }
+
+    /**
+     * Returns the value mapped to the specified key, or <code>null</code> for none.
+     */
+    public V get (int key)
+    {
+        Leaf<V> leaf = getLeaf(key);
+        return (leaf == null) ? null : leaf.value;
+    }
+
+    /**
+     * Returns a map with the specified mapping added (or replaced).
+     *
+     * @return the new map, or this map if it already contained the mapping.
+     */
+    public PersistentIntMap<V> put (int key, V value)
+    {
+        int size = containsKey(key) ? _size : _size + 1;
+        Node root = (_root == null) ?
+            new Node(bit(key, 0), new Object[] { new Leaf<V>(key, value) }) :
+            _root.put(0, key, value);
+        return (root == _root) ? this : new PersistentIntMap<V>(root, size);
+    }
+
+    /**
+     * Returns a map with the mapping for the specified key removed.
+     *
+     * @return the new map, or this map if it contained no such mapping.
+     */
+    public PersistentIntMap<V> remove (int key)
+    {
+        if (!containsKey(key)) {
+            return this;
+        }
+        Object root = _root.remove(0, key);
+        if (root instanceof Leaf) {
+            Leaf<?> leaf = (Leaf<?>)root;
+            root = new Node(bit(leaf.key, 0), new Object[] { leaf });
+        }
+        return (root == null) ? PersistentIntMap.<V>empty() :
+            new PersistentIntMap<V>((Node)root, _size - 1);
+    }
+
+    /**
+     * Returns a view of the values in the map.
+     */
+    public AbstractCollection<V> values ()
+    {
+        return new AbstractCollection<V>() {
+            public Iterator<V> iterator () {
+                return new ValueIterator<V>(_root);
+            }
+            public int size () {
+                return _size;
+            }
+        };
+    }
+
+    /**
+     * Creates a new map with the supplied root.
+     */
+    protected PersistentIntMap (Node root, int size)
+    {
+        _root = root;
+        _size = size;
+    }
+
+    /**
+     * Finds the leaf for the specified key, if any.
+     */
+    @SuppressWarnings("unchecked")
+    protected Leaf<V> getLeaf (int key)
+    {
+        Node node = _root;
+        for (int shift = 0; node != null; shift += BITS) {
+            int bit = bit(key, shift);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            Object slot = node.slots[node.index(bit)];
+            if (slot instanceof Leaf) {
+                Leaf<V> leaf = (Leaf<V>)slot;
+                return (leaf.key == key) ? leaf : null;
+            }
+            node = (Node)slot;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the bit corresponding to the portion of the key at the specified shift.
+     */
+    protected static int bit (int key, int shift)
+    {
+        return 1 << ((key >>> shift) & MASK);
+    }
+
+    /**
+     * An interior node of the trie, whose bitmap indicates which of its (up to 32) slots are
+     * occupied.  The occupied slots hold either leaves or child nodes.
+     */
+    protected static class Node
+    {
+        /** The bitmap of occupied slots. */
+        public final int bitmap;
+
+        /** The contents of the occupied slots, in order. */
+        public final Object[] slots;
+
+        /**
+         * Creates a new node.
+         */
+        public Node (int bitmap, Object[] slots)
+        {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        /**
+         * Returns the index within the slot array of the slot corresponding to the given bit.
+         */
+        public int index (int bit)
+        {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        /**
+         * Returns a node with the specified mapping added (or this node, if it already contains
+         * the mapping).
+         */
+        public <V> Node put (int shift, int key, V value)
+        {
+            int bit = bit(key, shift), idx = index(bit);
+            if ((bitmap & bit) == 0) {
+                Object[] nslots = new Object[slots.length + 1];
+                System.arraycopy(slots, 0, nslots, 0, idx);
+                nslots[idx] = new Leaf<V>(key, value);
+                System.arraycopy(slots, idx, nslots, idx + 1, slots.length - idx);
+                return new Node(bitmap | bit, nslots);
+            }
+            Object slot = slots[idx], nslot;
+            if (slot instanceof Node) {
+                nslot = ((Node)slot).put(shift + BITS, key, value);
+            } else {
+                Leaf<?> leaf = (Leaf<?>)slot;
+                if (leaf.key == key) {
+                    nslot = (leaf.value == value) ? leaf : new Leaf<V>(key, value);
+                } else {
+                    nslot = merge(shift + BITS, leaf, new Leaf<V>(key, value));
+                }
+            }
+            return (nslot == slot) ? this : replace(idx, nslot);
+        }
+
+        /**
+         * Returns the result of removing the mapping for the specified key (which must be
+         * present): a node, a single leaf (if that's all that remains), or <code>null</code>.
+         */
+        public Object remove (int shift, int key)
+        {
+            int bit = bit(key, shift), idx = index(bit);
+            Object slot = slots[idx];
+            Object nslot = (slot instanceof Node) ? ((Node)slot).remove(shift + BITS, key) : null;
+            if (nslot != null) {
+                return replace(idx, nslot);
+            }
+            if (slots.length == 1) {
+                return null;
+            }
+            if (slots.length == 2 && slots[1 - idx] instanceof Leaf) {
+                return slots[1 - idx]; // collapse into the parent
+            }
+            Object[] nslots = new Object[slots.length - 1];
+            System.arraycopy(slots, 0, nslots, 0, idx);
+            System.arraycopy(slots, idx + 1, nslots, idx, nslots.length - idx);
+            return new Node(bitmap & ~bit, nslots);
+        }
+
+        /**
+         * Returns a copy of this node with the specified slot replaced.
+         */
+        protected Node replace (int idx, Object slot)
+        {
+            Object[] nslots = slots.clone();
+            nslots[idx] = slot;
+            return new Node(bitmap, nslots);
+        }
+
+        /**
+         * Creates a node containing two leaves with distinct keys.
+         */
+        protected static Node merge (int shift, Leaf<?> l1, Leaf<?> l2)
+        {
+            int i1 = (l1.key >>> shift) & MASK, i2 = (l2.key >>> shift) & MASK;
+            if (i1 == i2) {
+                return new Node(1 << i1, new Object[] { merge(shift + BITS, l1, l2) });
+            }
+            return new Node((1 << i1) | (1 << i2),
+                (i1 < i2) ? new Object[] { l1, l2 } : new Object[] { l2, l1 });
+        }
+    }
+
+    /**
+     * A single mapping.
+     */
+    protected static class Leaf<V>
+    {
+        /** The key of the mapping. */
+        public final int key;
+
+        /** The value of the mapping. */
+        public final V value;
+
+        /**
+         * Creates a new leaf.
+         */
+        public Leaf (int key, V value)
+        {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Iterates over the values in a trie.
+     */
+    protected static class ValueIterator<V>
+        implements Iterator<V>
+    {
+        /**
+         * Creates a new iterator for the trie with the specified root.
+         */
+        public ValueIterator (Node root)
+        {
+            if (root != null) {
+                _nodes[0] = root;
+                _depth = 1;
+                advance();
+            }
+        }
+
+        // documentation inherited from interface Iterator
+        public boolean hasNext ()
+        {
+            return _next != null;
+        }
+
+        // documentation inherited from interface Iterator
+        public V next ()
+        {
+            if (_next == null) {
+                throw new NoSuchElementException();
+            }
+            V value = _next.value;
+            advance();
+            return value;
+        }
+
+        // documentation inherited from interface Iterator
+        public void remove ()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Finds the next leaf.
+         */
+        @SuppressWarnings("unchecked")
+        protected void advance ()
+        {
+            while (_depth > 0) {
+                int level = _depth - 1;
+                Node node = _nodes[level];
+                if (_indices[level] == node.slots.length) {
+                    _indices[level] = 0;
+                    _depth--;
+                    continue;
+                }
+                Object slot = node.slots[_indices[level]++];
+                if (slot instanceof Leaf) {
+                    _next = (Leaf<V>)slot;
+                    return;
+                }
+                _nodes[_depth] = (Node)slot;
+                _indices[_depth++] = 0;
+            }
+            _next = null;
+        }
+
+        /** The stack of nodes being visited. */
+        protected Node[] _nodes = new Node[MAX_DEPTH];
+
+        /** The index of the next slot to visit in each node. */
+        protected int[] _indices = new int[MAX_DEPTH];
+
+        /** The current depth of the stack. */
+        protected int _depth;
+
+        /** The next leaf to return, if any. */
+        protected Leaf<V> _next;
+    }
+
+    /** The root of the trie (null if empty). */
+    protected final Node _root;
+
+    /** The number of mappings. */
+    protected final int _size;
+
+    /** The number of key bits consumed at each level. */
+    protected static final int BITS = 5;
+
+    /** Masks the key bits consumed at each level. */
+    protected static final int MASK = (1 << BITS) - 1;
+
+    /** The maximum depth of the trie. */
+    protected static final int MAX_DEPTH = (32 + BITS - 1) / BITS;
+
+    /** The empty map. */
+    protected static final PersistentIntMap<Object> EMPTY = new PersistentIntMap<Object>(null, 0);
+}
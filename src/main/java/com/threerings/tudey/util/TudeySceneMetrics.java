@@ -126,19 +126,21 @@ public class TudeySceneMetrics
     }
 
     /**
-     * Returns a reference to the default camera config.
+     * Returns a reference to the default camera config.  Each thread receives its own copy, since
+     * scenes may be ticked on several threads at once.
      */
     public static CameraConfig getDefaultCameraConfig ()
     {
-        return _defaultCameraConfig;
+        return _threadCameraConfig.get();
     }
 
     /**
-     * Returns the default local interest region (as derived from the camera parameters).
+     * Returns a copy of the default local interest region (as derived from the camera
+     * parameters).
      */
     public static Rect getDefaultLocalInterest ()
     {
-        return _defaultLocalInterest;
+        return new Rect(_defaultLocalInterest);
     }
 
     /**
@@ -180,6 +182,14 @@ public class TudeySceneMetrics
     /** The default camera config. */
     protected static CameraConfig _defaultCameraConfig = new CameraConfig();
 
+    /** The per-thread copies of the default camera config. */
+    protected static ThreadLocal<CameraConfig> _threadCameraConfig =
+        new ThreadLocal<CameraConfig>() {
+            @Override protected CameraConfig initialValue () {
+                return new CameraConfig(_defaultCameraConfig);
+            }
+        };
+
     /** The fixed amount by which to expand the area of interest. */
     protected static float _interestExpansion;
 
@@ -0,0 +1,320 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.export;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import com.samskivert.util.RandomUtil;
+
+/**
+ * Tests the {@link BinaryExporter}.
+ */
+public class BinaryExporterTest extends TestCase
+{
+    public BinaryExporterTest (String name)
+    {
+        super(name);
+    }
+
+    @Override
+    public void setUp ()
+    {
+        // use a fixed seed so that our results are reproducible
+        RandomUtil.rand.setSeed(1199325877849L);
+    }
+
+    public void testRoundTrip ()
+        throws IOException
+    {
+        Outer o1 = new Outer(), o2 = new Outer();
+        o1.randomize();
+        o2.randomize();
+        o2.shared = o1.shared;
+
+        // write both objects to the same stream, so that the second reuses the field ids
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        BinaryExporter out = new BinaryExporter(bout);
+        out.writeObject(o1);
+        out.writeObject(o2);
+        out.writeObject(new Outer());
+        out.close();
+
+        BinaryImporter in = new BinaryImporter(new ByteArrayInputStream(bout.toByteArray()));
+        Outer r1 = (Outer)in.readObject(), r2 = (Outer)in.readObject(), r3 = (Outer)in.readObject();
+        in.close();
+        assertEquals(o1, r1);
+        assertEquals(o2, r2);
+        assertEquals(new Outer(), r3);
+        assertSame(r1.shared, r2.shared);
+    }
+
+    public void testRepeatable ()
+        throws IOException
+    {
+        Outer outer = new Outer();
+        outer.randomize();
+        assertEquals(true, Arrays.equals(export(outer), export(outer)));
+    }
+
+    public void testGolden ()
+        throws IOException
+    {
+        // the output must match that of the map-based exporter (as of Java 8)
+        Outer outer = new Outer();
+        outer.randomize();
+        byte[] bytes = export(outer);
+        StringBuilder buf = new StringBuilder();
+        for (byte b : bytes) {
+            buf.append(Character.forDigit((b >> 4) & 0xF, 16));
+            buf.append(Character.forDigit(b & 0xF, 16));
+        }
+        assertEquals(GOLDEN_OUTER, buf.toString());
+    }
+
+    public void testFieldOrder ()
+    {
+        // the fields must be written in the order in which a hash map would iterate over them
+        BinaryExporter out = new BinaryExporter(new ByteArrayOutputStream());
+        BinaryExporter.FieldBuffer buffer = out.new FieldBuffer();
+        for (int ii = 0; ii < 100; ii++) {
+            BinaryExporter.ClassData cdata = out.new ClassData();
+            HashMap<String, Object> map = Maps.newHashMap();
+            List<String> names = Lists.newArrayList();
+            buffer.init(cdata);
+            for (int jj = 0, nn = RandomUtil.getInRange(1, 100); jj < nn; jj++) {
+                String name = (names.isEmpty() || RandomUtil.rand.nextBoolean()) ?
+                    ("field" + RandomUtil.getInt(1000)) :
+                    names.get(RandomUtil.getInt(names.size()));
+                names.add(name);
+                map.put(name, jj);
+                buffer.putLong(name, Integer.TYPE, jj);
+            }
+            buffer.sortSlots();
+            List<String> order = Lists.newArrayList();
+            for (int jj = 0; jj < buffer._size; jj++) {
+                order.add(buffer._names[buffer._order[jj]]);
+            }
+            assertEquals(new ArrayList<String>(map.keySet()), order);
+            buffer.clear();
+        }
+    }
+
+    public void testCollisions ()
+    {
+        // find names that share a bucket even in a table of 64 buckets, so that the map resizes
+        // its table and then converts the bucket to a tree; "Q" precedes "B" in a table of 16
+        // buckets, but follows it in larger tables
+        List<String> colliding = Lists.newArrayList("Q", "B");
+        for (int ii = 0; colliding.size() < 14; ii++) {
+            String name = "field" + ii;
+            int h = name.hashCode();
+            if (((h ^ (h >>> 16)) & 63) == 0) {
+                colliding.add(name);
+            }
+        }
+        BinaryExporter out = new BinaryExporter(new ByteArrayOutputStream());
+        BinaryExporter.FieldBuffer buffer = out.new FieldBuffer();
+        for (int ii = 3; ii <= colliding.size(); ii++) {
+            HashMap<String, Object> map = Maps.newHashMap();
+            buffer.init(out.new ClassData());
+            for (int jj = 0; jj < ii; jj++) {
+                String name = colliding.get(jj);
+                map.put(name, jj);
+                buffer.putLong(name, Integer.TYPE, jj);
+            }
+            buffer.sortSlots();
+            List<String> order = Lists.newArrayList();
+            for (int jj = 0; jj < buffer._size; jj++) {
+                order.add(buffer._names[buffer._order[jj]]);
+            }
+            assertEquals(new ArrayList<String>(map.keySet()), order);
+            buffer.clear();
+        }
+    }
+
+    protected static byte[] export (Object object)
+        throws IOException
+    {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        BinaryExporter out = new BinaryExporter(bout, false);
+        out.writeObject(object);
+        out.close();
+        return bout.toByteArray();
+    }
+
+    public static class Outer
+        implements Exportable
+    {
+        public boolean v1;
+        public byte v2;
+        public char v3;
+        public double v4;
+        public float v5;
+        public int v6;
+        public long v7;
+        public short v8;
+        public String v9;
+        public int[] v10;
+        public ArrayList<Object> v11 = new ArrayList<Object>();
+        public HashMap<String, Inner> v12 = new HashMap<String, Inner>();
+        public Inner[] v13;
+        public Inner shared;
+
+        public void randomize ()
+        {
+            v1 = RandomUtil.rand.nextBoolean();
+            v2 = (byte)RandomUtil.rand.nextInt();
+            v3 = (char)RandomUtil.rand.nextInt();
+            v4 = RandomUtil.rand.nextDouble();
+            v5 = RandomUtil.rand.nextFloat();
+            v6 = RandomUtil.rand.nextInt();
+            v7 = RandomUtil.rand.nextLong();
+            v8 = (short)RandomUtil.rand.nextInt();
+            v9 = "string" + RandomUtil.rand.nextInt();
+            v10 = new int[RandomUtil.getInRange(5, 11)];
+            for (int ii = 0; ii < v10.length; ii++) {
+                v10[ii] = RandomUtil.rand.nextInt();
+            }
+            for (int ii = 0, nn = RandomUtil.getInRange(5, 11); ii < nn; ii++) {
+                v11.add(RandomUtil.rand.nextBoolean() ?
+                    (Object)RandomUtil.rand.nextFloat() : Inner.random());
+            }
+            for (int ii = 0, nn = RandomUtil.getInRange(5, 11); ii < nn; ii++) {
+                v12.put("key" + ii, Inner.random());
+            }
+            v13 = new Inner[RandomUtil.getInRange(5, 11)];
+            for (int ii = 0; ii < v13.length; ii++) {
+                v13[ii] = RandomUtil.rand.nextBoolean() ? Inner.random() : null;
+            }
+            shared = Inner.random();
+        }
+
+        @Override
+        public boolean equals (Object other)
+        {
+            if (!(other instanceof Outer)) {
+                return false;
+            }
+            Outer oouter = (Outer)other;
+            return v1 == oouter.v1 && v2 == oouter.v2 && v3 == oouter.v3 &&
+                v4 == oouter.v4 && v5 == oouter.v5 && v6 == oouter.v6 &&
+                v7 == oouter.v7 && v8 == oouter.v8 && equals(v9, oouter.v9) &&
+                Arrays.equals(v10, oouter.v10) && v11.equals(oouter.v11) &&
+                v12.equals(oouter.v12) && Arrays.equals(v13, oouter.v13) &&
+                equals(shared, oouter.shared);
+        }
+
+        @Override
+        public int hashCode ()
+        {
+            return v6;
+        }
+
+        protected static boolean equals (Object o1, Object o2)
+        {
+            return (o1 == null) ? (o2 == null) : o1.equals(o2);
+        }
+    }
+
+    public static class Inner
+        implements Exportable
+    {
+        public float x, y;
+        public Map<String, Integer> counts;
+
+        public static Inner random ()
+        {
+            Inner inner = new Inner();
+            inner.x = RandomUtil.rand.nextFloat();
+            inner.y = RandomUtil.rand.nextFloat();
+            if (RandomUtil.rand.nextBoolean()) {
+                inner.counts = new HashMap<String, Integer>();
+                inner.counts.put("count", RandomUtil.rand.nextInt());
+            }
+            return inner;
+        }
+
+        @Override
+        public boolean equals (Object other)
+        {
+            if (!(other instanceof Inner)) {
+                return false;
+            }
+            Inner oinner = (Inner)other;
+            return x == oinner.x && y == oinner.y &&
+                Outer.equals(counts, oinner.counts);
+        }
+
+        @Override
+        public int hashCode ()
+        {
+            return Float.floatToIntBits(x);
+        }
+    }
+
+    /** The output of the map-based exporter for the randomized {@link Outer}, in hex. */
+    protected static final String GOLDEN_OUTER =
+        "faceaf0e100000000109002e636f6d2e746872656572696e67732e6578706f72742e42696e617279" +
+        "4578706f7274657254657374244f75746572000000000e01020002763606d6c557c0020300027637" +
+        "074e83da64af89a36b030400067368617265640a002e636f6d2e746872656572696e67732e657870" +
+        "6f72742e42696e6172794578706f727465725465737424496e6e657200050a000000030106000663" +
+        "6f756e74730b000d6a6176612e7574696c2e4d617008070c00116a6176612e7574696c2e48617368" +
+        "4d61700800000001080d00106a6176612e6c616e672e537472696e67010005636f756e74090e0011" +
+        "6a6176612e6c616e672e496e746567657201c9e087a8020a000178053f2474fc030b000179053f29" +
+        "48b3040c0002763808aefa050d000276390d0e000f737472696e67343737323437383437060f0003" +
+        "7631300f00025b49011000000008bdc748bf6f088361712a2a38e7e4801659af3fbf327ed4c4ca00" +
+        "9286964307c4071100037631320c120c00000009130d00046b657931140a0000000301150c000000" +
+        "0108160e56589da8023f24eb10033f73f26d170d00046b657932180a0000000301190c0000000108" +
+        "1a0e83665eba023ef2b5f6033f4e5b751b0d00046b6579301c0a00000003011d0c00000001081e0e" +
+        "b6ff41c5023ec1d5a0033f5522651f0d00046b657935200a00000002023f5278cd033e0b3be8210d" +
+        "00046b657936220a00000002023e87eec6033f52dd6a230d00046b657933240a0000000301250c00" +
+        "00000108260e3014bb6a023f7d40af033f434208270d00046b657934280a0000000301290c000000" +
+        "01082a0e76f0ccb4023ee7c9bc033f68345a2b0d00046b6579372c0a00000002023dc78af8033f67" +
+        "77412d0d00046b6579382e0a00000002023cf27b20033f596cf6082f00037631311000136a617661" +
+        "2e7574696c2e41727261794c69737404301000000009310a00000002023f2bbe8c033ee933463211" +
+        "000f6a6176612e6c616e672e466c6f6174013f6154a033113e8a5bf8340a0000000301350c000000" +
+        "0108360e49042238023e62edc8033b288400370a0000000301380c0000000108390e3b0af671023e" +
+        "a8c7f0033f0b55783a0a00000002023f6f2c3d033ee77ace3b113f3dfbfb3c0a00000003013d0c00" +
+        "000001083e0ed0786f82023e9fef0c033f16a63a3f113f693fb7094000037631331200315b4c636f" +
+        "6d2e746872656572696e67732e6578706f72742e42696e6172794578706f72746572546573742449" +
+        "6e6e65723b00410000000700420a0000000301430c0000000108440eba3c7e61023f721f78033f3f" +
+        "077e450a00000002023f5c1f93033f4bfeea000000460a00000002023af05800033f5ebd9b0a4700" +
+        "02763101010b480002763202050c4900027633036fb50d4a00027634043fee2814cdfd2b870e4b00" +
+        "027635053f66dded";
+}
@@ -0,0 +1,307 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.export;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.google.common.collect.Lists;
+
+import com.samskivert.util.RandomUtil;
+
+import com.threerings.export.tools.DOMXMLImporter;
+
+/**
+ * Tests the {@link XMLImporter} against the output of the {@link XMLExporter} and the results of
+ * the {@link DOMXMLImporter}.
+ */
+public class XMLImporterTest extends TestCase
+{
+    public XMLImporterTest (String name)
+    {
+        super(name);
+    }
+
+    @Override
+    public void setUp ()
+    {
+        // use a fixed seed so that our results are reproducible
+        RandomUtil.rand.setSeed(1199325877849L);
+    }
+
+    public void testRoundTrip ()
+        throws IOException
+    {
+        // multiple top-level objects, the second referring to an object in the first (by id)
+        BinaryExporterTest.Outer o1 = new BinaryExporterTest.Outer();
+        BinaryExporterTest.Outer o2 = new BinaryExporterTest.Outer();
+        o1.randomize();
+        o2.randomize();
+        o2.shared = o1.shared;
+        byte[] bytes = export(o1, o2, new BinaryExporterTest.Outer());
+
+        for (Importer in : createImporters(bytes)) {
+            BinaryExporterTest.Outer r1 = (BinaryExporterTest.Outer)in.readObject();
+            BinaryExporterTest.Outer r2 = (BinaryExporterTest.Outer)in.readObject();
+            BinaryExporterTest.Outer r3 = (BinaryExporterTest.Outer)in.readObject();
+            assertEquals(o1, r1);
+            assertEquals(o2, r2);
+            assertEquals(new BinaryExporterTest.Outer(), r3);
+            assertSame(r1.shared, r2.shared);
+            assertEnd(in);
+        }
+    }
+
+    public void testCycles ()
+        throws IOException
+    {
+        // references to ancestors are written with depth/rdepth rather than id/ref
+        Tree root = Tree.random(null, 3);
+        root.self = root;
+        byte[] bytes = export(root);
+        assertEquals(true, new String(bytes, "UTF-8").contains("rdepth="));
+
+        for (Importer in : createImporters(bytes)) {
+            Tree result = (Tree)in.readObject();
+            assertEquals(root, result);
+            assertSame(result, result.self);
+            checkParents(result);
+            assertEnd(in);
+        }
+    }
+
+    public void testArrays ()
+        throws IOException
+    {
+        Arrays2 arrays = new Arrays2();
+        arrays.floats = new float[][] { { 1f, 2f }, {}, null, { 3f } };
+        arrays.strings = new String[] { "a", "b" };
+        arrays.objects = new Object[] { 1, "two", null, new int[] { 3, 4 }, new Tree() };
+        arrays.objects[2] = arrays.objects[4];
+        arrays.empty = new Tree[0];
+        byte[] bytes = export(arrays);
+
+        for (Importer in : createImporters(bytes)) {
+            Arrays2 result = (Arrays2)in.readObject();
+            assertEquals(arrays, result);
+            assertSame(result.objects[2], result.objects[4]);
+            assertEnd(in);
+        }
+    }
+
+    public void testWhitespace ()
+        throws IOException
+    {
+        // whitespace-only strings must survive, though the text between elements is ignored
+        Strings strings = new Strings();
+        strings.space = " ";
+        strings.mixed = "\n\t  \n";
+        strings.empty = "";
+        strings.padded = "  x  ";
+        strings.list.add(" ");
+        strings.list.add("\t");
+        strings.list.add("");
+        strings.map.put(" ", "  ");
+        strings.map.put("\n", "");
+        byte[] bytes = export(strings, new Strings());
+
+        for (Importer in : createImporters(bytes)) {
+            assertEquals(strings, in.readObject());
+            assertEquals(new Strings(), in.readObject());
+            assertEnd(in);
+        }
+    }
+
+    /**
+     * Exports the specified objects to a byte array.
+     */
+    protected static byte[] export (Object... objects)
+        throws IOException
+    {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        XMLExporter out = new XMLExporter(bout);
+        for (Object object : objects) {
+            out.writeObject(object);
+        }
+        out.close();
+        return bout.toByteArray();
+    }
+
+    /**
+     * Creates the streaming and DOM importers for the specified exported bytes.
+     */
+    protected static List<Importer> createImporters (byte[] bytes)
+    {
+        return Lists.<Importer>newArrayList(
+            new XMLImporter(new ByteArrayInputStream(bytes)),
+            new DOMXMLImporter(new ByteArrayInputStream(bytes)));
+    }
+
+    /**
+     * Makes sure that the importer has no more objects.
+     */
+    protected static void assertEnd (Importer in)
+        throws IOException
+    {
+        try {
+            in.readObject();
+            fail("Expected end of stream.");
+        } catch (EOFException e) {
+            // expected
+        }
+        in.close();
+    }
+
+    /**
+     * Makes sure that the parents of all of the tree's descendants were resolved to the very
+     * objects containing them.
+     */
+    protected static void checkParents (Tree tree)
+    {
+        for (Tree child : tree.children) {
+            assertSame(tree, child.parent);
+            checkParents(child);
+        }
+    }
+
+    /**
+     * A tree whose nodes refer to their parents.
+     */
+    public static class Tree
+        implements Exportable
+    {
+        public Tree parent;
+        public Tree self;
+        public ArrayList<Tree> children = new ArrayList<Tree>();
+        public int value;
+
+        public static Tree random (Tree parent, int depth)
+        {
+            Tree tree = new Tree();
+            tree.parent = parent;
+            tree.value = RandomUtil.rand.nextInt();
+            if (depth > 0) {
+                for (int ii = 0, nn = RandomUtil.getInRange(1, 4); ii < nn; ii++) {
+                    tree.children.add(random(tree, depth - 1));
+                }
+            }
+            return tree;
+        }
+
+        @Override
+        public boolean equals (Object other)
+        {
+            // parents and self references are checked by identity elsewhere
+            if (!(other instanceof Tree)) {
+                return false;
+            }
+            Tree otree = (Tree)other;
+            return value == otree.value && children.equals(otree.children) &&
+                (parent == null) == (otree.parent == null) &&
+                (self == null) == (otree.self == null);
+        }
+
+        @Override
+        public int hashCode ()
+        {
+            return value;
+        }
+    }
+
+    /**
+     * Holds various kinds of arrays.
+     */
+    public static class Arrays2
+        implements Exportable
+    {
+        public float[][] floats;
+        public String[] strings;
+        public Object[] objects;
+        public Tree[] empty;
+
+        @Override
+        public boolean equals (Object other)
+        {
+            if (!(other instanceof Arrays2)) {
+                return false;
+            }
+            Arrays2 oarrays = (Arrays2)other;
+            return Arrays.deepEquals(floats, oarrays.floats) &&
+                Arrays.equals(strings, oarrays.strings) &&
+                Arrays.deepEquals(objects, oarrays.objects) &&
+                Arrays.equals(empty, oarrays.empty);
+        }
+
+        @Override
+        public int hashCode ()
+        {
+            return Arrays.deepHashCode(floats);
+        }
+    }
+
+    /**
+     * Holds strings that may be mangled by whitespace handling.
+     */
+    public static class Strings
+        implements Exportable
+    {
+        public String space;
+        public String mixed;
+        public String empty;
+        public String padded;
+        public ArrayList<String> list = new ArrayList<String>();
+        public HashMap<String, String> map = new HashMap<String, String>();
+
+        @Override
+        public boolean equals (Object other)
+        {
+            if (!(other instanceof Strings)) {
+                return false;
+            }
+            Strings ostrings = (Strings)other;
+            return BinaryExporterTest.Outer.equals(space, ostrings.space) &&
+                BinaryExporterTest.Outer.equals(mixed, ostrings.mixed) &&
+                BinaryExporterTest.Outer.equals(empty, ostrings.empty) &&
+                BinaryExporterTest.Outer.equals(padded, ostrings.padded) &&
+                list.equals(ostrings.list) && map.equals(ostrings.map);
+        }
+
+        @Override
+        public int hashCode ()
+        {
+            return list.size();
+        }
+    }
+}
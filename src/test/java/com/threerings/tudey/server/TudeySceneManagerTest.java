@@ -0,0 +1,371 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+import junit.framework.TestCase;
+
+import com.samskivert.util.RandomUtil;
+
+import com.threerings.math.Vector2f;
+
+import com.threerings.tudey.data.actor.Actor;
+import com.threerings.tudey.server.logic.ActorLogic;
+import com.threerings.tudey.shape.Circle;
+import com.threerings.tudey.shape.Shape;
+import com.threerings.tudey.shape.ShapeElement;
+
+/**
+ * Tests the {@link TudeySceneManager}.
+ */
+public class TudeySceneManagerTest extends TestCase
+{
+    public TudeySceneManagerTest (String name)
+    {
+        super(name);
+    }
+
+    @Override
+    public void setUp ()
+    {
+        // use a fixed seed so that our results are reproducible
+        RandomUtil.rand.setSeed(1199325877849L);
+        _scenemgr = new TudeySceneManager();
+    }
+
+    public void testTickRates ()
+    {
+        _scenemgr.setTickRatesEnabled(true);
+        List<Participant> participants = Lists.newArrayList();
+        for (int rate = 1; rate <= 4; rate++) {
+            for (int ii = 0; ii < 4; ii++) {
+                Participant participant = new Participant(rate);
+                participants.add(participant);
+                _scenemgr.addTickParticipant(participant);
+            }
+        }
+        for (int ii = 0; ii < 24; ii++) {
+            tick();
+        }
+        for (Participant participant : participants) {
+            // the first tick falls within the first period, then one every nth tick
+            int rate = participant.rate;
+            assertEquals(24 / rate, participant.ticks.size());
+            int first = participant.ticks.get(0);
+            assertTrue(first >= 1 && first <= rate);
+            for (int ii = 1; ii < participant.ticks.size(); ii++) {
+                assertEquals(first + ii * rate, (int)participant.ticks.get(ii));
+            }
+
+            // the elapsed times sum the skipped intervals
+            assertEquals(first * INTERVAL, (int)participant.elapsed.get(0));
+            for (int ii = 1; ii < participant.elapsed.size(); ii++) {
+                assertEquals(rate * INTERVAL, (int)participant.elapsed.get(ii));
+            }
+        }
+
+        // the participants of each rate added together are staggered across the period
+        for (int rate = 1; rate <= 4; rate++) {
+            boolean[] firsts = new boolean[rate + 1];
+            for (Participant participant : participants.subList((rate - 1) * 4, rate * 4)) {
+                firsts[participant.ticks.get(0)] = true;
+            }
+            for (int ii = 1; ii <= rate; ii++) {
+                assertTrue(firsts[ii]);
+            }
+        }
+    }
+
+    public void testTickRatesDisabled ()
+    {
+        Participant participant = new Participant(4);
+        _scenemgr.addTickParticipant(participant);
+        for (int ii = 0; ii < 10; ii++) {
+            tick();
+        }
+        assertEquals(10, participant.ticks.size());
+        for (int ii = 0; ii < 10; ii++) {
+            assertEquals(ii + 1, (int)participant.ticks.get(ii));
+            assertEquals(INTERVAL, (int)participant.elapsed.get(ii));
+        }
+    }
+
+    public void testTickRemoval ()
+    {
+        _scenemgr.setTickRatesEnabled(true);
+        Participant participant = new Participant(2);
+        participant.fail = true;
+        _scenemgr.addTickParticipant(participant);
+        tick();
+        tick();
+        assertEquals(1, participant.ticks.size());
+        assertEquals(0, _scenemgr.getRatedTickParticipantCount());
+
+        // a participant dropped because it threw may be added again
+        participant.fail = false;
+        _scenemgr.addTickParticipant(participant);
+        assertEquals(1, _scenemgr.getRatedTickParticipantCount());
+        for (int ii = 0; ii < 4; ii++) {
+            tick();
+        }
+        assertEquals(3, participant.ticks.size());
+
+        _scenemgr.removeTickParticipant(participant);
+        assertEquals(0, _scenemgr.getRatedTickParticipantCount());
+        tick();
+        tick();
+        assertEquals(3, participant.ticks.size());
+    }
+
+    public void testSensorBatching ()
+    {
+        List<String> triggers = Lists.newArrayList();
+        for (int ii = 0; ii < 200; ii++) {
+            ShapeElement element = new ShapeElement(createCircle(2f));
+            element.setUserObject(new TestSensor(ii, RandomUtil.getInRange(1, 4), triggers));
+            _scenemgr.getSensorSpace().add(element);
+        }
+        List<TestActor> actors = Lists.newArrayList();
+        for (int ii = 0; ii < 100; ii++) {
+            actors.add(new TestActor(ii, RandomUtil.getInRange(1, 4), createCircle(1.5f)));
+        }
+        actors.get(7).destroyed = true;
+        actors.get(42).destroyed = true;
+
+        // trigger the sensors one actor at a time
+        for (TestActor actor : actors) {
+            if (!actor.destroyed) {
+                _scenemgr.triggerIntersectionSensors(0, actor);
+            }
+        }
+        List<String> expected = sorted(triggers);
+        assertTrue(expected.size() > 0);
+
+        // batch the triggers, requesting some twice; then again, reusing the contacts
+        _scenemgr.setSensorBatching(true);
+        _scenemgr.setReuseSensorContacts(true);
+        for (int ii = 0; ii < 2; ii++) {
+            triggers.clear();
+            _scenemgr._queueSensors = true;
+            for (TestActor actor : actors) {
+                assertEquals(0, _scenemgr.triggerIntersectionSensors(0, actor));
+                if (actor.id % 3 == 0) {
+                    _scenemgr.triggerIntersectionSensors(0, actor);
+                }
+            }
+            _scenemgr._queueSensors = false;
+            _scenemgr.triggerQueuedSensors(0);
+            assertEquals(expected, sorted(triggers));
+        }
+
+        // move an actor so that its contacts are no longer valid
+        triggers.clear();
+        TestActor moved = actors.get(0);
+        moved.shape = createCircle(1.5f);
+        _scenemgr.setSensorBatching(false);
+        _scenemgr.triggerIntersectionSensors(0, moved);
+        expected = sorted(triggers);
+        triggers.clear();
+        _scenemgr.setSensorBatching(true);
+        _scenemgr._queueSensors = true;
+        _scenemgr.triggerIntersectionSensors(0, moved);
+        _scenemgr._queueSensors = false;
+        _scenemgr.triggerQueuedSensors(0);
+        assertEquals(expected, sorted(triggers));
+    }
+
+    /**
+     * Creates a circle at a random location.
+     */
+    protected static Shape createCircle (float maxRadius)
+    {
+        return new Circle(new Vector2f(RandomUtil.getFloat(100f), RandomUtil.getFloat(100f)),
+            0.1f + RandomUtil.getFloat(maxRadius));
+    }
+
+    /**
+     * Returns a sorted copy of the supplied list.
+     */
+    protected static List<String> sorted (List<String> list)
+    {
+        List<String> copy = Lists.newArrayList(list);
+        Collections.sort(copy);
+        return copy;
+    }
+
+    /**
+     * Advances the scene by one tick, ticking only the participants.
+     */
+    protected void tick ()
+    {
+        _scenemgr._timestamp += INTERVAL;
+        _scenemgr._tickCount++;
+        _scenemgr._ticking = true;
+        _scenemgr._tickOp.init(_scenemgr._timestamp);
+        _scenemgr._tickParticipants.apply(_scenemgr._tickOp);
+        _scenemgr._ticking = false;
+    }
+
+    /**
+     * Records the ticks on which it was ticked.
+     */
+    protected class Participant
+        implements TudeySceneManager.RatedTickParticipant
+    {
+        /** The participant's tick rate. */
+        public int rate;
+
+        /** If true, throw an exception when ticked. */
+        public boolean fail;
+
+        /** The counts of the ticks on which the participant was ticked. */
+        public List<Integer> ticks = Lists.newArrayList();
+
+        /** The elapsed times passed to the participant. */
+        public List<Integer> elapsed = Lists.newArrayList();
+
+        public Participant (int rate)
+        {
+            this.rate = rate;
+        }
+
+        // documentation inherited from interface TudeySceneManager.RatedTickParticipant
+        public int getTickRate ()
+        {
+            return rate;
+        }
+
+        // documentation inherited from interface TudeySceneManager.RatedTickParticipant
+        public Vector2f getTickPosition ()
+        {
+            return Vector2f.ZERO;
+        }
+
+        // documentation inherited from interface TudeySceneManager.RatedTickParticipant
+        public boolean tick (int timestamp, int elapsed)
+        {
+            ticks.add(_scenemgr._tickCount);
+            this.elapsed.add(elapsed);
+            if (fail) {
+                throw new IllegalStateException("Failing as requested.");
+            }
+            return true;
+        }
+
+        // documentation inherited from interface TudeySceneManager.TickParticipant
+        public boolean tick (int timestamp)
+        {
+            return tick(timestamp, 0);
+        }
+    }
+
+    /**
+     * An actor logic with a fixed shape and flags.
+     */
+    protected class TestActor extends ActorLogic
+    {
+        /** The actor's id. */
+        public int id;
+
+        /** The actor's shape. */
+        public Shape shape;
+
+        /** Whether or not the actor is destroyed. */
+        public boolean destroyed;
+
+        public TestActor (int id, final int flags, Shape shape)
+        {
+            this.id = id;
+            this.shape = shape;
+            _actor = new Actor() {
+                @Override
+                public int getCollisionFlags () {
+                    return flags;
+                }
+            };
+        }
+
+        @Override
+        public Shape getShape ()
+        {
+            return shape;
+        }
+
+        @Override
+        public boolean isDestroyed ()
+        {
+            return destroyed;
+        }
+
+        @Override
+        public String toString ()
+        {
+            return "actor" + id;
+        }
+    }
+
+    /**
+     * Records the actors by which it was triggered.
+     */
+    protected static class TestSensor
+        implements TudeySceneManager.IntersectionSensor
+    {
+        public TestSensor (int id, int mask, List<String> triggers)
+        {
+            _id = id;
+            _mask = mask;
+            _triggers = triggers;
+        }
+
+        // documentation inherited from interface TudeySceneManager.Sensor
+        public int getMask ()
+        {
+            return _mask;
+        }
+
+        // documentation inherited from interface TudeySceneManager.Sensor
+        public void trigger (int timestamp, ActorLogic actor)
+        {
+            _triggers.add(actor + ":sensor" + _id);
+        }
+
+        /** The sensor's id and mask. */
+        protected int _id, _mask;
+
+        /** The list in which to record triggers. */
+        protected List<String> _triggers;
+    }
+
+    /** The scene manager under test. */
+    protected TudeySceneManager _scenemgr;
+
+    /** The simulated tick interval. */
+    protected static final int INTERVAL = 50;
+}
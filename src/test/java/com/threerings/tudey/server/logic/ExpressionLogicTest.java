@@ -0,0 +1,56 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.logic;
+
+import junit.framework.TestCase;
+
+import com.threerings.tudey.server.tools.ExpressionBenchmark;
+import com.threerings.tudey.server.tools.ExpressionBenchmark.Input;
+
+/**
+ * Compares the results of the unboxed {@link ExpressionLogic} evaluation with those of an
+ * equivalent tree that boxes every intermediate value (as all expressions did before the typed
+ * evaluation methods were added).
+ */
+public class ExpressionLogicTest extends TestCase
+{
+    public ExpressionLogicTest (String name)
+    {
+        super(name);
+    }
+
+    public void testResults ()
+    {
+        Input input = new Input();
+        ExpressionLogic unboxed = ExpressionBenchmark.createTree(input, false);
+        ExpressionLogic boxed = ExpressionBenchmark.createTree(input, true);
+        for (int ii = -200; ii <= 200; ii++) {
+            input.value = ii * 0.5;
+            assertEquals(boxed.evaluate(null, null), unboxed.evaluate(null, null));
+            assertEquals(boxed.evaluateBoolean(null, null), unboxed.evaluateBoolean(null, null));
+        }
+    }
+}
@@ -0,0 +1,353 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+import junit.framework.TestCase;
+
+import com.samskivert.util.RandomUtil;
+
+import com.threerings.whirled.data.SceneImpl;
+
+import com.threerings.tudey.data.TudeySceneModel;
+import com.threerings.tudey.server.TudeySceneManager;
+
+/**
+ * Tests the {@link GridSearch} and the {@link ClusterGraph} against a brute-force search on
+ * random grids of flags.
+ */
+public class ClusterGraphTest extends TestCase
+{
+    public ClusterGraphTest (String name)
+    {
+        super(name);
+    }
+
+    @Override
+    public void setUp ()
+    {
+        // use a fixed seed so that our results are reproducible
+        RandomUtil.rand.setSeed(1199325877849L);
+        _pathfinder = new Pathfinder(new TestSceneManager());
+    }
+
+    public void testGridSearch ()
+    {
+        GridSearch search = new GridSearch();
+        GridSearch.Traversal trav = new GridSearch.Traversal() {
+            public boolean canTraverse (int x, int y) {
+                return isPassable(x, y);
+            }
+        };
+        int found = 0, unreachable = 0;
+        for (int ii = 0; ii < GRIDS; ii++) {
+            randomizeFlags(0.2f + 0.2f * RandomUtil.getFloat(1f));
+            setFootprint(0, 0, 0, 0);
+            for (int jj = 0; jj < QUERIES; jj++) {
+                int ax = RandomUtil.getInt(SIZE), ay = RandomUtil.getInt(SIZE);
+                int bx = RandomUtil.getInt(SIZE), by = RandomUtil.getInt(SIZE);
+                int cost = getCost(ax, ay, bx, by);
+                boolean result = search.findPath(
+                    trav, MAX_COST, ax, ay, bx, by, false, 0, 0, SIZE - 1, SIZE - 1);
+                assertEquals(cost >= 0, result);
+                if (result) {
+                    assertEquals(cost, search.getPathCost());
+                    int[] xs = new int[search.getPathLength()], ys = new int[xs.length];
+                    for (int kk = 0; kk < xs.length; kk++) {
+                        xs[kk] = search.getPathX(kk);
+                        ys[kk] = search.getPathY(kk);
+                    }
+                    assertEquals(cost, checkPath(xs, ys, ax, ay, bx, by));
+                    found++;
+                } else {
+                    unreachable++;
+                }
+            }
+        }
+        assertTrue(found > 0 && unreachable > 0);
+    }
+
+    public void testClusterGraph ()
+    {
+        for (int ii = 0; ii < GRIDS; ii++) {
+            randomizeFlags(0.2f + 0.2f * RandomUtil.getFloat(1f));
+            checkClusterGraph(createClusterGraph(0, 0, 0, 0));
+            checkClusterGraph(createClusterGraph(1, 0, 1, 0));
+        }
+        assertTrue(_found > 0 && _unreachable > 0);
+    }
+
+    public void testInvalidation ()
+    {
+        randomizeFlags(0.15f);
+        ClusterGraph graph = createClusterGraph(1, 0, 1, 0);
+        checkClusterGraph(graph);
+        for (int ii = 0; ii < GRIDS; ii++) {
+            // toggle a few cells at a time, some in single cells and some in blocks
+            for (int jj = 0; jj < 8; jj++) {
+                int minx = RandomUtil.getInt(SIZE), miny = RandomUtil.getInt(SIZE);
+                int maxx = Math.min(SIZE - 1, minx + RandomUtil.getInt(4));
+                int maxy = Math.min(SIZE - 1, miny + RandomUtil.getInt(4));
+                boolean blocked = RandomUtil.getBoolean();
+                for (int yy = miny; yy <= maxy; yy++) {
+                    for (int xx = minx; xx <= maxx; xx++) {
+                        setBlocked(xx, yy, blocked);
+                    }
+                }
+                graph.invalidate(minx, miny, maxx, maxy);
+            }
+            checkClusterGraph(graph);
+        }
+        assertTrue(_found > 0 && _unreachable > 0);
+    }
+
+    /**
+     * Creates a cluster graph for actors with the specified footprint over the current flags.
+     */
+    protected ClusterGraph createClusterGraph (int left, int right, int bottom, int top)
+    {
+        setFootprint(left, right, bottom, top);
+        return new ClusterGraph(_pathfinder, MASK, left, right, bottom, top, true);
+    }
+
+    /**
+     * Checks the results of the graph for random pairs of cells in different clusters.  The graph
+     * should find a valid path whenever the brute-force search does and report the destination
+     * as unreachable otherwise.
+     */
+    protected void checkClusterGraph (ClusterGraph graph)
+    {
+        GridSearch search = new GridSearch();
+        for (int ii = 0; ii < QUERIES; ii++) {
+            int ax, ay, bx, by;
+            do {
+                ax = RandomUtil.getInt(SIZE);
+                ay = RandomUtil.getInt(SIZE);
+                bx = RandomUtil.getInt(SIZE);
+                by = RandomUtil.getInt(SIZE);
+            } while (!isPassable(ax, ay) ||
+                Math.max(Math.abs(bx - ax), Math.abs(by - ay)) <= ClusterGraph.CLUSTER_SIZE);
+
+            int cost = getCost(ax, ay, bx, by);
+            int result = graph.findPath(
+                search, graph.getTraversal(), MAX_COST, ax, ay, bx, by);
+            if (cost < 0) {
+                assertEquals(ClusterGraph.UNREACHABLE, result);
+                _unreachable++;
+                continue;
+            }
+            assertEquals(ClusterGraph.FOUND, result);
+            int[] xs = new int[graph.getPathLength()], ys = new int[xs.length];
+            for (int jj = 0; jj < xs.length; jj++) {
+                xs[jj] = graph.getPathX(jj);
+                ys[jj] = graph.getPathY(jj);
+            }
+            assertTrue(checkPath(xs, ys, ax, ay, bx, by) >= cost);
+            _found++;
+        }
+    }
+
+    /**
+     * Fills the grid with random flags.  Only some of the flags intersect the collision mask; the
+     * cells just outside the grid are always blocked.
+     */
+    protected void randomizeFlags (float density)
+    {
+        _pathfinder._staticFlags.clear();
+        for (int yy = -1; yy <= SIZE; yy++) {
+            for (int xx = -1; xx <= SIZE; xx++) {
+                if (xx < 0 || yy < 0 || xx == SIZE || yy == SIZE) {
+                    _pathfinder._staticFlags.put(xx, yy, MASK);
+                } else {
+                    setBlocked(xx, yy, RandomUtil.getFloat(1f) < density);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets whether the specified cell of the grid is blocked.
+     */
+    protected void setBlocked (int x, int y, boolean blocked)
+    {
+        _blocked[y*SIZE + x] = blocked;
+        if (blocked) {
+            _pathfinder._staticFlags.put(x, y, MASK | OTHER_FLAG);
+        } else if (RandomUtil.getBoolean()) {
+            _pathfinder._staticFlags.put(x, y, OTHER_FLAG);
+        } else {
+            _pathfinder._staticFlags.remove(x, y);
+        }
+    }
+
+    /**
+     * Sets the footprint of the actors for which {@link #isPassable} checks cells.
+     */
+    protected void setFootprint (int left, int right, int bottom, int top)
+    {
+        _left = left;
+        _right = right;
+        _bottom = bottom;
+        _top = top;
+    }
+
+    /**
+     * Checks whether the footprint fits at the specified cell without covering a blocked cell or
+     * leaving the grid.
+     */
+    protected boolean isPassable (int x, int y)
+    {
+        for (int yy = y - _bottom; yy <= y + _top; yy++) {
+            for (int xx = x - _left; xx <= x + _right; xx++) {
+                if (xx < 0 || yy < 0 || xx >= SIZE || yy >= SIZE || _blocked[yy*SIZE + xx]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the cost of the cheapest path between the specified cells using Dijkstra's algorithm
+     * over the entire grid.  As in the searches, diagonal moves may not cut corners and the start
+     * cell need not be passable.
+     *
+     * @return the cost of the path, or -1 if there is none.
+     */
+    protected int getCost (int ax, int ay, int bx, int by)
+    {
+        int[] costs = new int[SIZE * SIZE];
+        Arrays.fill(costs, Integer.MAX_VALUE);
+        PriorityQueue<Long> queue = new PriorityQueue<Long>();
+        costs[ay*SIZE + ax] = 0;
+        queue.add((long)(ay*SIZE + ax));
+        while (!queue.isEmpty()) {
+            long entry = queue.poll();
+            int idx = (int)(entry & 0xFFFFFFFFL), cost = (int)(entry >> 32);
+            if (cost > costs[idx]) {
+                continue;
+            }
+            int x = idx % SIZE, y = idx / SIZE;
+            if (x == bx && y == by) {
+                return cost;
+            }
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    int nx = x + dx, ny = y + dy;
+                    if ((dx == 0 && dy == 0) || !isPassable(nx, ny)) {
+                        continue;
+                    }
+                    int ncost = cost;
+                    if (dx == 0 || dy == 0) {
+                        ncost += GridSearch.ADJACENT_COST;
+                    } else if (isPassable(nx, y) && isPassable(x, ny)) {
+                        ncost += GridSearch.DIAGONAL_COST;
+                    } else {
+                        continue;
+                    }
+                    int nidx = ny*SIZE + nx;
+                    if (ncost < costs[nidx]) {
+                        costs[nidx] = ncost;
+                        queue.add(((long)ncost << 32) | nidx);
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Verifies that the specified path leads from the start to the destination through passable
+     * cells without cutting corners.
+     *
+     * @return the cost of the path.
+     */
+    protected int checkPath (int[] xs, int[] ys, int ax, int ay, int bx, int by)
+    {
+        assertTrue(xs.length > 0);
+        assertEquals(ax, xs[0]);
+        assertEquals(ay, ys[0]);
+        assertEquals(bx, xs[xs.length - 1]);
+        assertEquals(by, ys[ys.length - 1]);
+        int cost = 0;
+        for (int ii = 1; ii < xs.length; ii++) {
+            int px = xs[ii - 1], py = ys[ii - 1], x = xs[ii], y = ys[ii];
+            int dx = x - px, dy = y - py;
+            assertTrue(isPassable(x, y));
+            assertTrue(Math.abs(dx) <= 1 && Math.abs(dy) <= 1 && (dx != 0 || dy != 0));
+            if (dx == 0 || dy == 0) {
+                cost += GridSearch.ADJACENT_COST;
+            } else {
+                assertTrue(isPassable(px, y) && isPassable(x, py));
+                cost += GridSearch.DIAGONAL_COST;
+            }
+        }
+        return cost;
+    }
+
+    /**
+     * A scene manager with an empty scene.
+     */
+    protected static class TestSceneManager extends TudeySceneManager
+    {
+        public TestSceneManager ()
+        {
+            _scene = new SceneImpl(new TudeySceneModel(), null);
+        }
+    }
+
+    /** The pathfinder whose static flags the graphs use. */
+    protected Pathfinder _pathfinder;
+
+    /** Whether each cell of the grid is blocked. */
+    protected boolean[] _blocked = new boolean[SIZE * SIZE];
+
+    /** The numbers of paths found and destinations reported unreachable by the graphs. */
+    protected int _found, _unreachable;
+
+    /** The footprint used to check passability. */
+    protected int _left, _right, _bottom, _top;
+
+    /** The size of the grid (three clusters on a side). */
+    protected static final int SIZE = ClusterGraph.CLUSTER_SIZE * 3;
+
+    /** The number of grids to test. */
+    protected static final int GRIDS = 20;
+
+    /** The number of queries to make on each grid. */
+    protected static final int QUERIES = 50;
+
+    /** The collision mask of the actors. */
+    protected static final int MASK = 0x01;
+
+    /** A flag that doesn't intersect the mask. */
+    protected static final int OTHER_FLAG = 0x02;
+
+    /** A maximum cost high enough not to limit the searches. */
+    protected static final int MAX_COST = 1000000;
+}
@@ -0,0 +1,174 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+import junit.framework.TestCase;
+
+import com.samskivert.util.RandomUtil;
+
+import com.threerings.math.Vector2f;
+
+/**
+ * Tests the {@link FlowField}.
+ */
+public class FlowFieldTest extends TestCase
+{
+    public FlowFieldTest (String name)
+    {
+        super(name);
+    }
+
+    @Override
+    public void setUp ()
+    {
+        // use a fixed seed so that our results are reproducible
+        RandomUtil.rand.setSeed(1199325877849L);
+        _pathfinder = new Pathfinder(new ClusterGraphTest.TestSceneManager());
+    }
+
+    public void testUpdate ()
+    {
+        int updates = 0;
+        for (int ii = 0; ii < GRIDS; ii++) {
+            randomizeFlags(0.25f);
+            ClusterGraph graph = new ClusterGraph(_pathfinder, MASK, 0, 0, 0, 0, true);
+            FlowField field = new FlowField(graph, MAX_COST, OFFSET, OFFSET);
+            int gx = SIZE / 2, gy = SIZE / 2;
+            field.update(getX(gx), getY(gy), 0);
+
+            // wander the goal around, comparing the updated field against a fresh one
+            for (int jj = 0; jj < MOVES; jj++) {
+                // (the goal may land on a blocked cell, as when the target is pressed against a
+                // wall that the followers' footprint can't approach)
+                int nx = gx + RandomUtil.getInt(5) - 2, ny = gy + RandomUtil.getInt(5) - 2;
+                if (nx < 0 || ny < 0 || nx >= SIZE || ny >= SIZE) {
+                    continue;
+                }
+                field.update(getX(gx = nx), getY(gy = ny), 0);
+                if (field._offset > 0) {
+                    updates++;
+                }
+                FlowField fresh = new FlowField(graph, MAX_COST, OFFSET, OFFSET);
+                fresh.update(getX(gx), getY(gy), 0);
+                int extent = fresh._extent + fresh._margin;
+                for (int yy = gy - extent; yy <= gy + extent; yy++) {
+                    for (int xx = gx - extent; xx <= gx + extent; xx++) {
+                        if (field.contains(xx, yy) && fresh.contains(xx, yy)) {
+                            assertEquals(fresh.getCost(xx, yy), field.getCost(xx, yy));
+                        }
+                    }
+                }
+            }
+        }
+        // make sure we actually exercised the incremental update
+        assertTrue(updates > 0);
+    }
+
+    public void testDirections ()
+    {
+        Vector2f dir = new Vector2f();
+        for (int ii = 0; ii < GRIDS; ii++) {
+            randomizeFlags(0.25f);
+            ClusterGraph graph = new ClusterGraph(_pathfinder, MASK, 0, 0, 0, 0, true);
+            FlowField field = new FlowField(graph, MAX_COST, OFFSET, OFFSET);
+            int gx = SIZE / 2 + RandomUtil.getInt(5) - 2, gy = SIZE / 2 + RandomUtil.getInt(5) - 2;
+            field.update(getX(gx), getY(gy), 0);
+            for (int yy = 0; yy < SIZE; yy++) {
+                for (int xx = 0; xx < SIZE; xx++) {
+                    int cost = field.getCost(xx, yy);
+                    boolean found = field.getDirection(getX(xx), getY(yy), dir);
+                    assertEquals(cost > 0, found);
+                    if (!found) {
+                        continue;
+                    }
+                    // the direction must lead to a neighbor that is exactly one step closer
+                    int dx = Math.round(dir.x * 1.2f), dy = Math.round(dir.y * 1.2f);
+                    int ncost = field.getCost(xx + dx, yy + dy);
+                    assertTrue(ncost >= 0);
+                    if (dx == 0 || dy == 0) {
+                        assertEquals(cost - GridSearch.ADJACENT_COST, ncost);
+                    } else {
+                        assertTrue(graph.isPassable(xx + dx, yy) && graph.isPassable(xx, yy + dy));
+                        assertEquals(cost - GridSearch.DIAGONAL_COST, ncost);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Fills the grid with random flags, blocking the cells just outside of it.
+     */
+    protected void randomizeFlags (float density)
+    {
+        _pathfinder._staticFlags.clear();
+        for (int yy = -1; yy <= SIZE; yy++) {
+            for (int xx = -1; xx <= SIZE; xx++) {
+                if (xx < 0 || yy < 0 || xx == SIZE || yy == SIZE ||
+                        RandomUtil.getFloat(1f) < density) {
+                    _pathfinder._staticFlags.put(xx, yy, MASK);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the x coordinate of the center of the specified cell.
+     */
+    protected static float getX (int x)
+    {
+        return (x + OFFSET) / Pathfinder.SUBDIVISION;
+    }
+
+    /**
+     * Returns the y coordinate of the center of the specified cell.
+     */
+    protected static float getY (int y)
+    {
+        return (y + OFFSET) / Pathfinder.SUBDIVISION;
+    }
+
+    /** The pathfinder whose static flags the graphs use. */
+    protected Pathfinder _pathfinder;
+
+    /** The size of the grid. */
+    protected static final int SIZE = 48;
+
+    /** The number of grids to test. */
+    protected static final int GRIDS = 10;
+
+    /** The number of times to move the goal on each grid. */
+    protected static final int MOVES = 20;
+
+    /** The collision mask of the actors. */
+    protected static final int MASK = 0x01;
+
+    /** The maximum cost of the fields. */
+    protected static final int MAX_COST = 16 * GridSearch.ADJACENT_COST;
+
+    /** The offset used to convert to/from integer coordinates (that of a one-cell footprint). */
+    protected static final float OFFSET = 0.5f / Pathfinder.SUBDIVISION;
+}
@@ -0,0 +1,458 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import com.google.common.collect.Lists;
+
+import junit.framework.TestCase;
+
+import com.samskivert.util.RandomUtil;
+
+import com.threerings.math.Vector2f;
+
+import com.threerings.whirled.data.SceneImpl;
+
+import com.threerings.tudey.data.TudeySceneModel;
+import com.threerings.tudey.data.actor.Actor;
+import com.threerings.tudey.server.TudeySceneManager;
+import com.threerings.tudey.server.logic.ActorLogic;
+import com.threerings.tudey.shape.Circle;
+import com.threerings.tudey.shape.Shape;
+import com.threerings.tudey.shape.ShapeElement;
+
+/**
+ * Tests the asynchronous path requests of the {@link Pathfinder}.
+ */
+public class PathfinderTest extends TestCase
+{
+    public PathfinderTest (String name)
+    {
+        super(name);
+    }
+
+    @Override
+    public void setUp ()
+    {
+        // use a fixed seed so that our results are reproducible
+        RandomUtil.rand.setSeed(1199325877849L);
+        _scenemgr = new TestSceneManager();
+        _pathfinder = new Pathfinder(_scenemgr);
+
+        // wall off the grid and scatter obstacles within it
+        for (int yy = -1; yy <= SIZE; yy++) {
+            for (int xx = -1; xx <= SIZE; xx++) {
+                if (xx < 0 || yy < 0 || xx == SIZE || yy == SIZE ||
+                        RandomUtil.getFloat(1f) < 0.2f) {
+                    _pathfinder._entryFlags.put(xx, yy, MASK);
+                }
+            }
+        }
+    }
+
+    public void testBudget ()
+    {
+        // with no budget, we process a single batch on each tick
+        _pathfinder.setTickBudget(0);
+        TestListener[] listeners = new TestListener[4];
+        requestDistinctPaths(listeners);
+        assertEquals(listeners.length, _pathfinder._pending.size());
+        assertEquals(0, getCalls(listeners));
+        for (int ii = 1; ii <= listeners.length; ii++) {
+            _scenemgr.tickParticipants();
+            assertEquals(ii, getCalls(listeners));
+        }
+        assertTrue(_scenemgr.participants.isEmpty());
+
+        // with a generous budget, we process them all at once
+        _pathfinder.setTickBudget(1000000);
+        requestDistinctPaths(listeners);
+        _scenemgr.tickParticipants();
+        assertEquals(listeners.length, getCalls(listeners));
+        assertTrue(_scenemgr.participants.isEmpty());
+    }
+
+    public void testCancel ()
+    {
+        TestActor actor = createActor();
+        Vector2f dest = getRandomLocation();
+        TestListener listener = new TestListener();
+        Pathfinder.PathRequest request = _pathfinder.requestPath(
+            actor, LONGEST, dest.x, dest.y, true, false, listener);
+        request.cancel();
+        assertTrue(request.isCancelled());
+        assertTrue(_pathfinder._pending.isEmpty());
+        assertTrue(_pathfinder._requests.isEmpty());
+        _scenemgr.tickParticipants();
+        assertEquals(0, listener.calls);
+        assertFalse(request.isDone());
+
+        // cancelling a completed request has no effect
+        request = _pathfinder.requestPath(actor, LONGEST, dest.x, dest.y, true, false, listener);
+        _scenemgr.tickParticipants();
+        assertEquals(1, listener.calls);
+        request.cancel();
+        assertTrue(request.isDone());
+        assertFalse(request.isCancelled());
+
+        // nor do we deliver the results for actors removed in the meantime
+        request = _pathfinder.requestPath(actor, LONGEST, dest.x, dest.y, true, false, listener);
+        actor.removed = true;
+        _scenemgr.tickParticipants();
+        assertEquals(1, listener.calls);
+        assertFalse(request.isDone());
+    }
+
+    public void testSupersede ()
+    {
+        TestActor actor = createActor();
+        Vector2f trans = actor.getTranslation();
+        Vector2f odest = getRandomLocation(), ndest = getRandomLocation(trans);
+        Vector2f[] expected = _pathfinder.getPath(
+            actor, LONGEST, trans.x, trans.y, ndest.x, ndest.y, true, false);
+        TestListener olistener = new TestListener(), nlistener = new TestListener();
+        Pathfinder.PathRequest orequest = _pathfinder.requestPath(
+            actor, LONGEST, odest.x, odest.y, true, false, olistener);
+        Pathfinder.PathRequest nrequest = _pathfinder.requestPath(
+            actor, LONGEST, ndest.x, ndest.y, true, false, nlistener);
+        assertTrue(orequest.isCancelled());
+        assertEquals(1, _pathfinder._pending.size());
+        _scenemgr.tickParticipants();
+        assertEquals(0, olistener.calls);
+        assertEquals(1, nlistener.calls);
+        assertTrue(nrequest.isDone());
+        assertPathsEqual(expected, nlistener.path);
+    }
+
+    public void testBatching ()
+    {
+        // requests sharing a destination are satisfied together by a single flood
+        _pathfinder.setTickBudget(0);
+        Vector2f dest = getRandomLocation();
+        TestActor[] actors = new TestActor[8];
+        TestListener[] listeners = new TestListener[actors.length];
+        Pathfinder.PathRequest[] requests = new Pathfinder.PathRequest[actors.length];
+        for (int ii = 0; ii < actors.length; ii++) {
+            Vector2f location = getRandomLocation(dest);
+            actors[ii] = new TestActor(location.x, location.y);
+            requests[ii] = _pathfinder.requestPath(actors[ii], LONGEST,
+                dest.x, dest.y, false, false, listeners[ii] = new TestListener());
+        }
+        assertEquals(1, _pathfinder._pending.size());
+        _scenemgr.tickParticipants();
+        assertEquals(actors.length, getCalls(listeners));
+
+        // the paths should be as short as those found individually
+        for (int ii = 0; ii < actors.length; ii++) {
+            Vector2f trans = actors[ii].getTranslation();
+            Vector2f[] expected = _pathfinder.getPath(
+                actors[ii], LONGEST, trans.x, trans.y, dest.x, dest.y, false, false);
+            Vector2f[] path = listeners[ii].path;
+            assertEquals(expected == null, path == null);
+            assertEquals(expected != null, requests[ii]._flooded);
+            if (path != null) {
+                assertEquals(getCost(expected), getCost(path));
+                assertEquals(expected[0], path[0]);
+                assertEquals(dest, path[path.length - 1]);
+            }
+        }
+    }
+
+    public void testExecutor ()
+    {
+        // scatter some actor flags, which the background searches should see as of the tick on
+        // which they start
+        for (int ii = 0; ii < 64; ii++) {
+            _pathfinder._actorFlags.put(RandomUtil.getInt(SIZE * Pathfinder.SUBDIVISION),
+                RandomUtil.getInt(SIZE * Pathfinder.SUBDIVISION), MASK);
+        }
+        TestActor[] actors = new TestActor[16];
+        Vector2f[] dests = new Vector2f[actors.length];
+        Vector2f[][] expected = new Vector2f[actors.length][];
+        for (int ii = 0; ii < actors.length; ii++) {
+            actors[ii] = createActor();
+            dests[ii] = getRandomLocation(actors[ii].getTranslation());
+            Vector2f trans = actors[ii].getTranslation();
+            expected[ii] = _pathfinder.getPath(actors[ii], LONGEST, trans.x, trans.y,
+                dests[ii].x, dests[ii].y, ii % 2 == 0, false);
+        }
+        final List<Runnable> tasks = Lists.newArrayList();
+        _pathfinder.setExecutor(new Executor() {
+            public void execute (Runnable task) {
+                tasks.add(task);
+            }
+        });
+        TestListener[] listeners = new TestListener[actors.length];
+        for (int ii = 0; ii < actors.length; ii++) {
+            _pathfinder.requestPath(actors[ii], LONGEST, dests[ii].x, dests[ii].y,
+                ii % 2 == 0, false, listeners[ii] = new TestListener());
+        }
+
+        // the first tick starts the search
+        _scenemgr.tickParticipants();
+        assertEquals(1, tasks.size());
+        assertEquals(0, getCalls(listeners));
+
+        // changes made after the snapshot don't affect the search
+        for (int yy = 0; yy < SIZE * Pathfinder.SUBDIVISION; yy++) {
+            for (int xx = 0; xx < SIZE * Pathfinder.SUBDIVISION; xx++) {
+                _pathfinder._actorFlags.put(xx, yy, MASK);
+            }
+        }
+
+        // we deliver on the tick after the search completes
+        _scenemgr.tickParticipants();
+        assertEquals(0, getCalls(listeners));
+        tasks.remove(0).run();
+        _scenemgr.tickParticipants();
+        assertEquals(actors.length, getCalls(listeners));
+        for (int ii = 0; ii < actors.length; ii++) {
+            assertPathsEqual(expected[ii], listeners[ii].path);
+        }
+        assertTrue(tasks.isEmpty());
+        assertTrue(_scenemgr.participants.isEmpty());
+    }
+
+    /**
+     * Requests paths for new actors to distinct destinations, so that each request forms its own
+     * batch.
+     */
+    protected void requestDistinctPaths (TestListener[] listeners)
+    {
+        List<Vector2f> dests = Lists.newArrayList();
+        for (int ii = 0; ii < listeners.length; ii++) {
+            Vector2f dest;
+            do {
+                dest = getRandomLocation();
+            } while (dests.contains(dest));
+            dests.add(dest);
+            _pathfinder.requestPath(createActor(), LONGEST, dest.x, dest.y, false, false,
+                listeners[ii] = new TestListener());
+        }
+    }
+
+    /**
+     * Creates an actor at a random location.
+     */
+    protected TestActor createActor ()
+    {
+        Vector2f location = getRandomLocation();
+        return new TestActor(location.x, location.y);
+    }
+
+    /**
+     * Returns a random location within an open tile of the grid.  The location is that of the
+     * center of the upper right pathfinding cell of the tile (offset as for the actors'
+     * single-cell footprint), so that the paths lead exactly to it.
+     */
+    protected Vector2f getRandomLocation ()
+    {
+        int x, y;
+        do {
+            x = RandomUtil.getInt(SIZE);
+            y = RandomUtil.getInt(SIZE);
+        } while (_pathfinder._entryFlags.get(x, y) != 0);
+        return new Vector2f(x + 0.625f, y + 0.625f);
+    }
+
+    /**
+     * Returns the center of a random open tile near the specified location (near enough that the
+     * synchronous searches won't use the cluster graph).
+     */
+    protected Vector2f getRandomLocation (Vector2f origin)
+    {
+        Vector2f location;
+        do {
+            location = getRandomLocation();
+        } while (Math.max(Math.abs(location.x - origin.x), Math.abs(location.y - origin.y)) *
+            Pathfinder.SUBDIVISION > ClusterGraph.CLUSTER_SIZE);
+        return location;
+    }
+
+    /**
+     * Verifies that the specified paths are identical.
+     */
+    protected static void assertPathsEqual (Vector2f[] expected, Vector2f[] path)
+    {
+        assertEquals(expected == null, path == null);
+        if (path != null) {
+            assertEquals(expected.length, path.length);
+            for (int ii = 0; ii < path.length; ii++) {
+                assertEquals(expected[ii], path[ii]);
+            }
+        }
+    }
+
+    /**
+     * Returns the total number of times the specified listeners have been notified.
+     */
+    protected static int getCalls (TestListener[] listeners)
+    {
+        int calls = 0;
+        for (TestListener listener : listeners) {
+            calls += listener.calls;
+        }
+        return calls;
+    }
+
+    /**
+     * Returns the cost of the specified path in the units used by the searches.
+     */
+    protected static int getCost (Vector2f[] path)
+    {
+        int cost = 0;
+        for (int ii = 1; ii < path.length; ii++) {
+            boolean dx = path[ii].x != path[ii - 1].x, dy = path[ii].y != path[ii - 1].y;
+            cost += (dx && dy) ? GridSearch.DIAGONAL_COST : GridSearch.ADJACENT_COST;
+        }
+        return cost;
+    }
+
+    /**
+     * A scene manager with an empty scene whose tick participants are ticked by the test.  All
+     * swept shapes collide, so that paths are always searched.
+     */
+    protected static class TestSceneManager extends TudeySceneManager
+    {
+        /** The registered tick participants. */
+        public List<TickParticipant> participants = Lists.newArrayList();
+
+        public TestSceneManager ()
+        {
+            _scene = new SceneImpl(new TudeySceneModel(), null);
+        }
+
+        /**
+         * Ticks the participants.
+         */
+        public void tickParticipants ()
+        {
+            _timestamp += 100;
+            for (TickParticipant participant : Lists.newArrayList(participants)) {
+                if (!participant.tick(_timestamp)) {
+                    participants.remove(participant);
+                }
+            }
+        }
+
+        @Override
+        public void addTickParticipant (TickParticipant participant)
+        {
+            participants.add(participant);
+        }
+
+        @Override
+        public void removeTickParticipant (TickParticipant participant)
+        {
+            participants.remove(participant);
+        }
+
+        @Override
+        public boolean collides (ActorLogic logic, Shape shape)
+        {
+            return true;
+        }
+    }
+
+    /**
+     * A non-static actor with a small circular footprint.
+     */
+    protected static class TestActor extends ActorLogic
+    {
+        /** Whether or not the actor has been removed. */
+        public boolean removed;
+
+        public TestActor (float x, float y)
+        {
+            _actor = new Actor() {
+                @Override
+                public int getCollisionMask () {
+                    return MASK;
+                }
+            };
+            _actor.getTranslation().set(x, y);
+            _shape = new ShapeElement(new Circle(Vector2f.ZERO, RADIUS));
+        }
+
+        @Override
+        public boolean isStatic ()
+        {
+            return false;
+        }
+
+        @Override
+        public boolean isRemoved ()
+        {
+            return removed;
+        }
+
+        @Override
+        public Shape getShape ()
+        {
+            return new Circle(getTranslation(), RADIUS);
+        }
+    }
+
+    /**
+     * Records the paths computed.
+     */
+    protected static class TestListener
+        implements Pathfinder.PathListener
+    {
+        /** The number of times the listener has been notified. */
+        public int calls;
+
+        /** The last path received. */
+        public Vector2f[] path;
+
+        // documentation inherited from interface Pathfinder.PathListener
+        public void pathComputed (Vector2f[] path)
+        {
+            calls++;
+            this.path = path;
+        }
+    }
+
+    /** The scene manager. */
+    protected TestSceneManager _scenemgr;
+
+    /** The pathfinder under test. */
+    protected Pathfinder _pathfinder;
+
+    /** The size of the grid, in tiles. */
+    protected static final int SIZE = 24;
+
+    /** The collision mask of the actors. */
+    protected static final int MASK = 0x01;
+
+    /** The radius of the actors. */
+    protected static final float RADIUS = 0.2f;
+
+    /** The maximum path length. */
+    protected static final float LONGEST = 64f;
+}
@@ -0,0 +1,296 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+import java.util.List;
+
+import com.google.common.base.Predicates;
+import com.google.common.collect.Lists;
+
+import junit.framework.TestCase;
+
+import com.threerings.math.FloatMath;
+import com.threerings.math.Transform2D;
+import com.threerings.math.Vector2f;
+
+import com.threerings.tudey.server.TudeySceneManager;
+import com.threerings.tudey.server.logic.ActorLogic;
+import com.threerings.tudey.shape.Circle;
+import com.threerings.tudey.shape.Polygon;
+import com.threerings.tudey.shape.Shape;
+import com.threerings.tudey.shape.ShapeElement;
+import com.threerings.tudey.space.HashSpace;
+import com.threerings.tudey.space.SpaceElement;
+
+/**
+ * Tests the {@link PositionHistory}.
+ */
+public class PositionHistoryTest extends TestCase
+{
+    public PositionHistoryTest (String name)
+    {
+        super(name);
+    }
+
+    @Override
+    public void setUp ()
+    {
+        _scenemgr = new TestSceneManager();
+        _history = new PositionHistory(_scenemgr);
+    }
+
+    public void testWraparound ()
+    {
+        PositionHistory.Track track = new PositionHistory.Track(null, 4);
+        for (int ii = 0; ii <= 10; ii++) {
+            track.add(ii * 100, ii, 0f, 0f);
+        }
+        // only the last four entries remain, the oldest of which is the clamp
+        assertEquals(4, track._size);
+        assertEquals(7f, getX(track, 0), EPSILON);
+        assertEquals(7f, getX(track, 700), EPSILON);
+        assertEquals(8.5f, getX(track, 850), EPSILON);
+        assertEquals(9.25f, getX(track, 925), EPSILON);
+        assertNull(track.getTransform(1000, new Transform2D()));
+        assertNull(track.getTransform(1100, new Transform2D()));
+
+        // adding at the same timestamp replaces the last entry
+        track.add(1000, 20f, 0f, 0f);
+        assertEquals(4, track._size);
+        assertEquals(14.5f, getX(track, 950), EPSILON);
+    }
+
+    public void testHold ()
+    {
+        PositionHistory.Track track = new PositionHistory.Track(null, 8);
+        track.add(0, 0f, 0f, 0f);
+
+        // the actor was still until the tick before it moved
+        track.hold(400);
+        track.add(500, 10f, 0f, FloatMath.HALF_PI);
+        assertEquals(0f, getX(track, 200), EPSILON);
+        assertEquals(0f, getX(track, 400), EPSILON);
+        assertEquals(5f, getX(track, 450), EPSILON);
+        Transform2D result = track.getTransform(450, new Transform2D());
+        assertEquals(FloatMath.QUARTER_PI, result.getRotation(), EPSILON);
+
+        // holding at or before the last entry does nothing
+        int size = track._size;
+        track.hold(500);
+        track.hold(300);
+        assertEquals(size, track._size);
+    }
+
+    public void testReset ()
+    {
+        PositionHistory.Track track = new PositionHistory.Track(null, 8);
+        track.add(0, 0f, 0f, 0f);
+        track.add(100, 10f, 0f, 0f);
+
+        // after warping, earlier times find the actor at its current position
+        track.reset(100, new Transform2D(new Vector2f(50f, 0f), 0f));
+        assertEquals(1, track._size);
+        assertEquals(50f, getX(track, 0), EPSILON);
+        assertNull(track.getTransform(100, new Transform2D()));
+        track.add(200, 60f, 0f, 0f);
+        assertEquals(50f, getX(track, 0), EPSILON);
+        assertEquals(55f, getX(track, 150), EPSILON);
+    }
+
+    public void testBudget ()
+    {
+        _history.setDuration(1000);
+        int capacity = _history._capacity;
+        _history.setMemoryBudget(capacity * 2 * PositionHistory.ENTRY_BYTES);
+        TestActor a1 = new TestActor(), a2 = new TestActor(), a3 = new TestActor();
+        _scenemgr.addActor(a1);
+        _scenemgr.addActor(a2);
+        _scenemgr.addActor(a3);
+        assertNotNull(_history._tracks.get(a1));
+        assertNotNull(_history._tracks.get(a2));
+        assertNull(_history._tracks.get(a3));
+        assertEquals(capacity * 2 * PositionHistory.ENTRY_BYTES, _history.getMemoryUsed());
+
+        // removing an actor admits the waiting one
+        _scenemgr.removeActor(a1);
+        assertNull(_history._tracks.get(a1));
+        assertNotNull(_history._tracks.get(a3));
+
+        // as does raising the budget
+        TestActor a4 = new TestActor();
+        _scenemgr.addActor(a4);
+        assertNull(_history._tracks.get(a4));
+        _history.setMemoryBudget(capacity * 3 * PositionHistory.ENTRY_BYTES);
+        assertNotNull(_history._tracks.get(a4));
+
+        // removing a waiting actor just forgets it
+        TestActor a5 = new TestActor();
+        _scenemgr.addActor(a5);
+        _scenemgr.removeActor(a5);
+        assertTrue(_history._waiting.isEmpty());
+    }
+
+    public void testRotation ()
+    {
+        // a long bar, horizontal at first
+        TestActor actor = new TestActor(new Polygon(
+            new Vector2f(-5f, -0.5f), new Vector2f(5f, -0.5f),
+            new Vector2f(5f, 0.5f), new Vector2f(-5f, 0.5f)));
+        HashSpace space = new HashSpace(64f, 6);
+        space.add(actor.getShapeElement());
+        _scenemgr.addActor(actor);
+
+        // on the next tick but one, it turns to vertical without moving
+        _scenemgr.tick(100);
+        _history.record(100);
+        _scenemgr.tick(200);
+        _history.shapeWillChange(actor);
+        actor.getShapeElement().getTransform().set(Vector2f.ZERO, FloatMath.HALF_PI, 1f);
+        actor.getShapeElement().updateBounds();
+        _history.record(200);
+
+        // a shape where its end was at the earlier time must still find it
+        _history.rewind(100);
+        assertTrue(_history.getMaximumDisplacement() > 0f);
+        List<SpaceElement> results = Lists.newArrayList();
+        space.getIntersecting(new Circle(new Vector2f(4.5f, 0f), 0.25f), _history,
+            Predicates.alwaysTrue(), results);
+        assertEquals(1, results.size());
+
+        // but not at the current time
+        results.clear();
+        space.getIntersecting(new Circle(new Vector2f(4.5f, 0f), 0.25f), results);
+        assertEquals(0, results.size());
+    }
+
+    /**
+     * Returns the x coordinate of the track's translation at the specified time.
+     */
+    protected static float getX (PositionHistory.Track track, int timestamp)
+    {
+        return track.getTransform(timestamp, new Transform2D()).getTranslation().x;
+    }
+
+    /**
+     * A scene manager whose clock is set by the test.
+     */
+    protected static class TestSceneManager extends TudeySceneManager
+    {
+        /**
+         * Advances the clock to the specified time.
+         */
+        public void tick (int timestamp)
+        {
+            _previous = _current;
+            _current = timestamp;
+        }
+
+        /**
+         * Notifies the observers that an actor has been added.
+         */
+        public void addActor (ActorLogic actor)
+        {
+            for (ActorObserver observer : _observers) {
+                observer.actorAdded(actor);
+            }
+        }
+
+        /**
+         * Notifies the observers that an actor has been removed.
+         */
+        public void removeActor (ActorLogic actor)
+        {
+            for (ActorObserver observer : _observers) {
+                observer.actorRemoved(actor);
+            }
+        }
+
+        @Override
+        public void addActorObserver (ActorObserver observer)
+        {
+            _observers.add(observer);
+        }
+
+        @Override
+        public int getTimestamp ()
+        {
+            return _current;
+        }
+
+        @Override
+        public int getPreviousTimestamp ()
+        {
+            return _previous;
+        }
+
+        /** The observers of the actors. */
+        protected List<ActorObserver> _observers = Lists.newArrayList();
+
+        /** The current and previous timestamps. */
+        protected int _current, _previous;
+    }
+
+    /**
+     * A non-static actor with a shape element.
+     */
+    protected static class TestActor extends ActorLogic
+    {
+        public TestActor ()
+        {
+            this(new Circle(Vector2f.ZERO, 1f));
+        }
+
+        public TestActor (Shape shape)
+        {
+            _element = new ShapeElement(shape);
+            _element.setUserObject(this);
+        }
+
+        @Override
+        public boolean isStatic ()
+        {
+            return false;
+        }
+
+        @Override
+        public ShapeElement getShapeElement ()
+        {
+            return _element;
+        }
+
+        /** The actor's shape element. */
+        protected ShapeElement _element;
+    }
+
+    /** The scene manager. */
+    protected TestSceneManager _scenemgr;
+
+    /** The history under test. */
+    protected PositionHistory _history;
+
+    /** The tolerance for floating point comparisons. */
+    protected static final float EPSILON = 0.0001f;
+}
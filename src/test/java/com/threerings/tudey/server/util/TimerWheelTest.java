@@ -0,0 +1,212 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.server.util;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+import junit.framework.TestCase;
+
+import com.samskivert.util.RandomUtil;
+
+/**
+ * Tests the {@link TimerWheel}.
+ */
+public class TimerWheelTest extends TestCase
+{
+    public TimerWheelTest (String name)
+    {
+        super(name);
+    }
+
+    @Override
+    public void setUp ()
+    {
+        // use a fixed seed so that our results are reproducible
+        RandomUtil.rand.setSeed(1199325877849L);
+    }
+
+    public void testCascade ()
+    {
+        // delays chosen to land in each level and in the overflow slot
+        checkRandomTimers(0, new int[] { 0, 1, 255, 256, 257, 16383, 16384, 16385,
+            1048575, 1048576, 67108863, 67108864, 100000000 });
+    }
+
+    public void testWraparound ()
+    {
+        checkRandomTimers(Integer.MAX_VALUE - 5000, new int[] {
+            1, 255, 4999, 5000, 5001, 20000, 2000000, 100000000 });
+    }
+
+    public void testCancel ()
+    {
+        TimerWheel wheel = new TimerWheel(0);
+        TestTimer t1 = new TestTimer(wheel), t2 = new TestTimer(wheel);
+        t1.schedule(100);
+        t2.schedule(100000);
+        assertEquals(2, wheel.getCount());
+        t1.cancel();
+        t2.cancel();
+        assertEquals(false, t1.isScheduled());
+        assertEquals(-1, t2.getRemaining());
+        assertEquals(0, wheel.getCount());
+        advanceTo(wheel, 200000);
+        assertEquals(0, t1.fired.size());
+        assertEquals(0, t2.fired.size());
+
+        // cancelling a timer from the expiry of one that precedes it in the same advance
+        // prevents it from firing
+        final TestTimer victim = new TestTimer(wheel);
+        TestTimer killer = new TestTimer(wheel) {
+            @Override public void expired () {
+                super.expired();
+                victim.cancel();
+            }
+        };
+        killer.schedule(10);
+        victim.schedule(20);
+        wheel.setTime(wheel.getTime() + 20);
+        wheel.advance();
+        assertEquals(1, killer.fired.size());
+        assertEquals(0, victim.fired.size());
+        assertEquals(0, wheel.getCount());
+    }
+
+    public void testReschedule ()
+    {
+        // a timer that reschedules itself with no delay fires once per advance, not repeatedly
+        // within the same slot
+        TimerWheel wheel = new TimerWheel(1000);
+        TestTimer repeater = new TestTimer(wheel) {
+            @Override public void expired () {
+                super.expired();
+                schedule(0);
+            }
+        };
+        repeater.schedule(0);
+        wheel.setTime(1000);
+        assertEquals(1, wheel.advance());
+        assertEquals(true, repeater.isScheduled());
+        wheel.setTime(1001);
+        assertEquals(1, wheel.advance());
+
+        // a periodic timer fires at each multiple of its period, including across the slots
+        // that cascade from the higher levels
+        TimerWheel pwheel = new TimerWheel(0);
+        final int period = 100;
+        TestTimer periodic = new TestTimer(pwheel) {
+            @Override public void expired () {
+                super.expired();
+                schedule(period);
+            }
+        };
+        periodic.schedule(period);
+        for (int time = 1; time <= 100000; time += RandomUtil.getInRange(1, 50)) {
+            pwheel.setTime(time);
+            pwheel.advance();
+        }
+        int last = 0;
+        for (int time : periodic.fired) {
+            assertEquals(true, time - last >= period);
+            assertEquals(true, time - last < period + 50);
+            last = time;
+        }
+        assertEquals(true, periodic.fired.size() > 100000 / (period + 50));
+    }
+
+    /**
+     * Schedules timers with the specified delays (and with random delays), advances the wheel in
+     * random steps, and makes sure that each timer fires exactly once, at the first advance at or
+     * after its deadline.
+     */
+    protected void checkRandomTimers (int start, int[] delays)
+    {
+        TimerWheel wheel = new TimerWheel(start);
+        List<TestTimer> timers = Lists.newArrayList();
+        List<Integer> deadlines = Lists.newArrayList();
+        for (int ii = 0; ii < delays.length + 200; ii++) {
+            int delay = (ii < delays.length) ? delays[ii] : RandomUtil.getInt(3000000);
+            TestTimer timer = new TestTimer(wheel);
+            timer.schedule(delay);
+            timers.add(timer);
+            deadlines.add(start + delay);
+        }
+        int time = start, end = start + 101000000;
+        while (end - time > 0) {
+            int previous = time;
+            time += RandomUtil.getInRange(1, 5000);
+            wheel.setTime(time);
+            wheel.advance();
+            for (int ii = 0; ii < timers.size(); ii++) {
+                TestTimer timer = timers.get(ii);
+                int deadline = deadlines.get(ii);
+                if (deadline - time <= 0 && deadline - previous > 0) {
+                    assertEquals(1, timer.fired.size());
+                    assertEquals(time, (int)timer.fired.get(0));
+                }
+            }
+        }
+        for (TestTimer timer : timers) {
+            assertEquals(1, timer.fired.size());
+            assertEquals(false, timer.isScheduled());
+        }
+        assertEquals(0, wheel.getCount());
+    }
+
+    /**
+     * Advances the wheel in steps of 1000 to the specified time.
+     */
+    protected static void advanceTo (TimerWheel wheel, int time)
+    {
+        for (int now = wheel.getTime(); time - now > 0; ) {
+            now = (time - now > 1000) ? (now + 1000) : time;
+            wheel.setTime(now);
+            wheel.advance();
+        }
+    }
+
+    /**
+     * Records the times at which it fires.
+     */
+    protected static class TestTimer extends TimerWheel.Timer
+    {
+        /** The times at which the timer fired. */
+        public List<Integer> fired = Lists.newArrayList();
+
+        public TestTimer (TimerWheel wheel)
+        {
+            super(wheel);
+        }
+
+        @Override
+        public void expired ()
+        {
+            fired.add(_wheel.getTime());
+        }
+    }
+}
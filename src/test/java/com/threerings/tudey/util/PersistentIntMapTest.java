@@ -0,0 +1,199 @@
+//
+// $Id$
+//
+// Clyde library - tools for developing networked games
+// Copyright (C) 2005-2012 Three Rings Design, Inc.
+// http://code.google.com/p/clyde/
+//
+// Redistribution and use in source and binary forms, with or without modification, are permitted
+// provided that the following conditions are met:
+//
+// 1. Redistributions of source code must retain the above copyright notice, this list of
+//    conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright notice, this list of
+//    conditions and the following disclaimer in the documentation and/or other materials provided
+//    with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR IMPLIED WARRANTIES,
+// INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+// PARTICULAR PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT,
+// INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+// TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+// LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+// SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+package com.threerings.tudey.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.samskivert.util.RandomUtil;
+
+/**
+ * Tests the {@link PersistentIntMap} class against a {@link HashMap}.
+ */
+public class PersistentIntMapTest extends TestCase
+{
+    public PersistentIntMapTest (String name)
+    {
+        super(name);
+    }
+
+    @Override
+    public void setUp ()
+    {
+        // use a fixed seed so that our results are reproducible
+        RandomUtil.rand.setSeed(1199325877849L);
+    }
+
+    public void testRandom ()
+    {
+        // small key ranges make for frequent replacements and removals; large ones for deep tries
+        runOperations(64, 2000);
+        runOperations(4096, 20000);
+        runOperations(Integer.MAX_VALUE, 20000);
+    }
+
+    public void testCollisions ()
+    {
+        // keys sharing their low bits share the upper levels of the trie and differ only in
+        // the lower ones (including the last level, which consumes only the top two bits)
+        for (int shared : new int[] { 5, 10, 20, 25, 30 }) {
+            PersistentIntMap<Integer> map = PersistentIntMap.empty();
+            Map<Integer, Integer> oracle = new HashMap<Integer, Integer>();
+            int low = RandomUtil.rand.nextInt() & ((1 << shared) - 1);
+            int variants = Math.min(1 << (32 - shared), 256);
+            for (int ii = 0; ii < 2000; ii++) {
+                int key = (RandomUtil.getInt(variants) << shared) | low;
+                map = apply(map, oracle, key, ii);
+                verify(map, oracle, key);
+            }
+            verifyAll(map, oracle);
+        }
+
+        // keys differing only in the top bits, with the sign bit set and not
+        int[] keys = { 0, 1 << 30, 1 << 31, 3 << 30, -1, Integer.MAX_VALUE, 1 << 25, 1 << 26 };
+        PersistentIntMap<Integer> map = PersistentIntMap.empty();
+        Map<Integer, Integer> oracle = new HashMap<Integer, Integer>();
+        for (int ii = 0; ii < keys.length; ii++) {
+            map = map.put(keys[ii], ii);
+            oracle.put(keys[ii], ii);
+            verifyAll(map, oracle);
+        }
+        for (int ii = keys.length - 1; ii >= 0; ii -= 2) {
+            map = map.remove(keys[ii]);
+            oracle.remove(keys[ii]);
+            verifyAll(map, oracle);
+        }
+        for (int ii = 0; ii < keys.length; ii += 2) {
+            map = map.remove(keys[ii]);
+            oracle.remove(keys[ii]);
+            verifyAll(map, oracle);
+        }
+        assertEquals(true, map.isEmpty());
+    }
+
+    public void testPersistence ()
+    {
+        // make sure that deriving new versions doesn't affect the old ones
+        PersistentIntMap<Integer> map = PersistentIntMap.empty();
+        Map<Integer, Integer> oracle = new HashMap<Integer, Integer>();
+        List<PersistentIntMap<Integer>> versions = new ArrayList<PersistentIntMap<Integer>>();
+        List<Map<Integer, Integer>> oracles = new ArrayList<Map<Integer, Integer>>();
+        for (int ii = 0; ii < 5000; ii++) {
+            map = apply(map, oracle, RandomUtil.getInt(512) - 256, ii);
+            if (ii % 100 == 0) {
+                versions.add(map);
+                oracles.add(new HashMap<Integer, Integer>(oracle));
+            }
+        }
+        for (int ii = 0, nn = versions.size(); ii < nn; ii++) {
+            verifyAll(versions.get(ii), oracles.get(ii));
+        }
+
+        // redundant operations return the same map
+        Integer value = 1;
+        map = map.put(1000, value);
+        assertSame(map, map.put(1000, value));
+        assertSame(map, map.remove(1001));
+    }
+
+    /**
+     * Performs random puts and removes with keys in the specified range, verifying the map after
+     * each.
+     */
+    protected static void runOperations (int range, int count)
+    {
+        PersistentIntMap<Integer> map = PersistentIntMap.empty();
+        Map<Integer, Integer> oracle = new HashMap<Integer, Integer>();
+        for (int ii = 0; ii < count; ii++) {
+            int key = (range == Integer.MAX_VALUE) ?
+                RandomUtil.rand.nextInt() : RandomUtil.getInt(range) - range/2;
+            map = apply(map, oracle, key, ii);
+            verify(map, oracle, key);
+            if (ii % 500 == 0) {
+                verifyAll(map, oracle);
+            }
+        }
+        verifyAll(map, oracle);
+
+        // remove everything
+        for (Integer key : new ArrayList<Integer>(oracle.keySet())) {
+            map = map.remove(key);
+            oracle.remove(key);
+            verify(map, oracle, key);
+        }
+        assertEquals(true, map.isEmpty());
+        assertEquals(false, map.values().iterator().hasNext());
+    }
+
+    /**
+     * Randomly puts or removes the specified key in both the map and the oracle.
+     *
+     * @return the new map.
+     */
+    protected static PersistentIntMap<Integer> apply (
+        PersistentIntMap<Integer> map, Map<Integer, Integer> oracle, int key, int value)
+    {
+        if (RandomUtil.getInt(3) == 0) {
+            oracle.remove(key);
+            return map.remove(key);
+        }
+        oracle.put(key, value);
+        return map.put(key, value);
+    }
+
+    /**
+     * Verifies the size of the map and its mapping for the specified key.
+     */
+    protected static void verify (PersistentIntMap<Integer> map, Map<Integer, Integer> oracle,
+        int key)
+    {
+        assertEquals(oracle.size(), map.size());
+        assertEquals(oracle.containsKey(key), map.containsKey(key));
+        assertEquals(oracle.get(key), map.get(key));
+    }
+
+    /**
+     * Verifies all of the map's mappings and the values returned by its iterator.
+     */
+    protected static void verifyAll (PersistentIntMap<Integer> map, Map<Integer, Integer> oracle)
+    {
+        assertEquals(oracle.size(), map.size());
+        assertEquals(oracle.isEmpty(), map.isEmpty());
+        for (Map.Entry<Integer, Integer> entry : oracle.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+        List<Integer> values = new ArrayList<Integer>(map.values());
+        List<Integer> expected = new ArrayList<Integer>(oracle.values());
+        Collections.sort(values);
+        Collections.sort(expected);
+        assertEquals(expected, values);
+    }
+}